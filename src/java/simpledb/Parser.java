@@ -13,6 +13,7 @@ import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.execution.*;
+import simpledb.optimizer.CardinalityFeedback;
 import simpledb.optimizer.LogicalPlan;
 import simpledb.optimizer.TableStats;
 import simpledb.storage.IntField;
@@ -303,6 +304,7 @@ public class Parser {
                 System.out.println("The query plan is:");
                 m.invoke(null, physicalPlan,
                         lp.getTableAliasToIdMapping(), TableStats.getStatsMap());
+                CardinalityFeedback.correctEstimates(physicalPlan);
                 c = Class.forName("simpledb.optimizer.QueryPlanVisualizer");
                 m = c.getMethod(
                         "printQueryPlanTree", OpIterator.class, System.out.getClass());
@@ -352,7 +354,17 @@ public class Parser {
                     throw new simpledb.ParsingException(
                             "Complex expressions not allowed in INSERT statements.");
                 ZConstant zc = (ZConstant) e;
-                if (zc.getType() == ZConstant.NUMBER) {
+                Type type = td.getFieldType(i);
+                if (type != Type.INT_TYPE && type != Type.STRING_TYPE
+                        && (zc.getType() == ZConstant.NUMBER || zc.getType() == ZConstant.STRING)) {
+                    // numbers, and dates and times written as strings
+                    try {
+                        t.setField(i, type.parse(zc.getValue()));
+                    } catch (java.text.ParseException pe) {
+                        throw new simpledb.ParsingException("Value "
+                                + zc.getValue() + " is not a " + type);
+                    }
+                } else if (zc.getType() == ZConstant.NUMBER) {
                     if (td.getFieldType(i) != Type.INT_TYPE) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
@@ -1,8 +1,10 @@
 package simpledb;
+import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.storage.*;
+import simpledb.transaction.Transaction;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
@@ -37,10 +39,9 @@ public class SimpleDb {
                         }
                         int index = 0;
                         for (String s : typeStringAr) {
-                            if (s.equalsIgnoreCase("int"))
-                                ts[index++] = Type.INT_TYPE;
-                            else if (s.equalsIgnoreCase("string"))
-                                ts[index++] = Type.STRING_TYPE;
+                            Type type = Type.forName(s);
+                            if (type != null)
+                                ts[index++] = type;
                             else {
                                 System.err.println("Unknown type " + s);
                                 return;
@@ -94,6 +95,23 @@ public class SimpleDb {
                     e.printStackTrace();
                 }
 
+                break;
+            case "recoverybench":
+                try {
+                    int txns = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+                    int tuplesPerTxn = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+                    recoveryBenchmark(txns, tuplesPerTxn);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                break;
+            case "iobench":
+                try {
+                    int pages = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+                    ioBenchmark(pages);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
                 break;
             default:
                 System.err.println("Unknown command: " + args[0]);
@@ -101,4 +119,98 @@ public class SimpleDb {
         }
     }
 
+    /**
+     * Run txns insert transactions against a scratch table, leave the last
+     * one uncommitted, simulate a crash, and report how fast the log is
+     * replayed by LogFile.recover().  The number of recovery threads can be
+     * set with -Dsimpledb.storage.LogRecovery.workers=N.
+     */
+    private static void recoveryBenchmark(int txns, int tuplesPerTxn)
+            throws IOException, DbException, TransactionAbortedException {
+        File f = File.createTempFile("recoverybench", ".dat");
+        f.deleteOnExit();
+        Database.reset();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+
+        for (int i = 0; i < txns; i++) {
+            Transaction t = new Transaction();
+            t.start();
+            for (int j = 0; j < tuplesPerTxn; j++) {
+                Database.getBufferPool().insertTuple(t.getId(), hf.getId(),
+                        Utility.getHeapTuple(new int[]{i, j}));
+            }
+            if (i % 100 == 99) {
+                // steal some uncommitted pages so recovery has undo work too
+                Database.getBufferPool().flushAllPages();
+            }
+            if (i < txns - 1) {
+                t.commit();
+            }
+        }
+
+        // crash: throw away the buffer pool and reopen the table
+        Database.reset();
+        Utility.openHeapFile(2, f);
+        long start = System.nanoTime();
+        Database.getLogFile().recover();
+        double secs = (System.nanoTime() - start) / 1e9;
+        // only the log from the last checkpoint on is replayed
+        double mb = Database.getLogFile().getRecoveredBytes() / (1024.0 * 1024.0);
+        System.out.printf("recovered %.1f MB of log in %.3f s: %.1f MB/s%n", mb, secs, mb / secs);
+    }
+
+    /**
+     * Build a scratch table of the specified number of pages, then scan it
+     * and rewrite every page of it, once with page I/O through the OS page
+     * cache and once with direct I/O, and report the throughput of each.
+     * The buffer pool is emptied before each pass, so every page is read
+     * from the file.
+     */
+    private static void ioBenchmark(int pages)
+            throws IOException, DbException, TransactionAbortedException {
+        File f = File.createTempFile("iobench", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".fsm").deleteOnExit();
+        new File(f.getPath() + ".zm").deleteOnExit();
+        Database.reset();
+        HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+        int perPage = (BufferPool.getPageSize() * 8) / (hf.getTupleDesc().getSize() * 8 + 1);
+        java.util.List<Tuple> tuples = new java.util.ArrayList<>();
+        for (int i = 0; i < pages * perPage; i++) {
+            tuples.add(Utility.getHeapTuple(new int[]{i, -i}));
+        }
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuples(tid, hf.getId(), tuples);
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+        double mb = (double) hf.numPages() * BufferPool.getPageSize() / (1024 * 1024);
+
+        if (!PageIO.isDirectSupported()) {
+            System.out.println("direct I/O is not supported by this JVM; both passes use the page cache");
+        }
+        for (boolean direct : new boolean[]{false, true}) {
+            PageIO.setDirect(direct);
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            tid = new TransactionId();
+            long start = System.nanoTime();
+            DbFileIterator it = hf.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                it.next();
+            }
+            it.close();
+            double scanSecs = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            for (int i = 0; i < hf.numPages(); i++) {
+                hf.writePage(hf.readPage(new HeapPageId(hf.getId(), i)));
+            }
+            double rewriteSecs = (System.nanoTime() - start) / 1e9;
+            Database.getBufferPool().transactionComplete(tid);
+            System.out.printf("%-10s scan %.1f MB/s, read+write %.1f MB/s%n",
+                    PageIO.isDirect() ? "direct" : "page cache", mb / scanSecs, mb / rewriteSecs);
+        }
+        PageIO.setDirect(false);
+    }
+
 }
@@ -1,8 +1,11 @@
 package simpledb.common;
 
 import simpledb.common.Type;
+import simpledb.storage.CompressedHeapFile;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
+import simpledb.storage.PaxHeapFile;
+import simpledb.storage.SlottedHeapFile;
 import simpledb.storage.TupleDesc;
 
 import java.io.BufferedReader;
@@ -173,6 +176,17 @@ public class Catalog {
 
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line of the file describes one table, as
+     * <pre>
+     *   name (field type [pk] [dict], field type, ...) [format]
+     * </pre>
+     * where <tt>dict</tt> marks a low-cardinality string field as dictionary
+     * encoded, giving it a {@link simpledb.storage.StringDictionary} of its
+     * own, held by the table's TupleDesc, and the
+     * optional storage format is one of <tt>row</tt> (a HeapFile, the
+     * default), <tt>slotted</tt> (a SlottedHeapFile, for variable-length
+     * records), <tt>pax</tt> (a PaxHeapFile, storing each page column by column)
+     * or <tt>compressed</tt> (a CompressedHeapFile, compressing pages on disk).
      *
      * @param catalogFile
      */
@@ -183,38 +197,55 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(catalogFile));
 
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [format]
                 String name = line.substring(0, line.indexOf("(")).trim();
+                String format = line.substring(line.indexOf(")") + 1).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
                 String[] els = fields.split(",");
                 ArrayList<String> names = new ArrayList<>();
                 ArrayList<Type> types = new ArrayList<>();
+                boolean[] dictionaryEncoded = new boolean[els.length];
                 String primaryKey = "";
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
-                    if (els2[1].trim().equalsIgnoreCase("int"))
-                        types.add(Type.INT_TYPE);
-                    else if (els2[1].trim().equalsIgnoreCase("string"))
-                        types.add(Type.STRING_TYPE);
+                    Type type = Type.forName(els2[1]);
+                    if (type != null)
+                        types.add(type);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int k = 2; k < els2.length; k++) {
+                        if (els2[k].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[k].trim().equals("dict") && type == Type.STRING_TYPE)
+                            dictionaryEncoded[names.size() - 1] = true;
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[k]);
                             System.exit(0);
                         }
                     }
                 }
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
-                TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder + "/" + name + ".dat"), t);
+                TupleDesc t = new TupleDesc(typeAr, namesAr, dictionaryEncoded);
+                File tabFile = new File(baseFolder + "/" + name + ".dat");
+                HeapFile tabHf;
+                if (format.isEmpty() || format.equalsIgnoreCase("row"))
+                    tabHf = new HeapFile(tabFile, t);
+                else if (format.equalsIgnoreCase("slotted"))
+                    tabHf = new SlottedHeapFile(tabFile, t);
+                else if (format.equalsIgnoreCase("pax"))
+                    tabHf = new PaxHeapFile(tabFile, t);
+                else if (format.equalsIgnoreCase("compressed"))
+                    tabHf = new CompressedHeapFile(tabFile, t);
+                else {
+                    System.out.println("Unknown storage format " + format);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf, name, primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
@@ -1,16 +1,20 @@
 package simpledb.common;
 
-import simpledb.storage.StringField;
-import simpledb.storage.Field;
-import simpledb.storage.IntField;
+import simpledb.storage.*;
 
 import java.text.ParseException;
 import java.io.*;
+import java.time.DateTimeException;
 
 /**
  * Class representing a type in SimpleDB.
  * Types are static objects defined by this class; hence, the Type
  * constructor is private.
+ * <p>
+ * Besides 32-bit ints and fixed-length strings there are 64-bit integers
+ * (LONG_TYPE, BIGINT in schemas), doubles, dates, timestamps and booleans.
+ * These are all stored in fixed-width binary form: a date takes 4 bytes and
+ * a timestamp 8, where a string holding either takes STRING_LEN + 4.
  */
 public enum Type implements Serializable {
     INT_TYPE() {
@@ -28,6 +32,15 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(String s) throws ParseException {
+            try {
+                return new IntField(Integer.parseInt(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("not an int: " + s, 0);
+            }
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -46,6 +59,134 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(String s) {
+            return new StringField(s, STRING_LEN);
+        }
+
+    }, LONG_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new LongField(dis.readLong());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(String s) throws ParseException {
+            try {
+                return new LongField(Long.parseLong(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("not a long: " + s, 0);
+            }
+        }
+
+    }, DOUBLE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DoubleField(dis.readDouble());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(String s) throws ParseException {
+            try {
+                return new DoubleField(Double.parseDouble(s.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("not a double: " + s, 0);
+            }
+        }
+
+    }, DATE_TYPE() {
+        @Override
+        public int getLen() {
+            return 4;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DateField(dis.readInt());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(String s) throws ParseException {
+            try {
+                return DateField.parse(s);
+            } catch (DateTimeException e) {
+                throw new ParseException("not a date: " + s, 0);
+            }
+        }
+
+    }, TIMESTAMP_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new TimestampField(dis.readLong());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(String s) throws ParseException {
+            try {
+                return TimestampField.parse(s);
+            } catch (DateTimeException e) {
+                throw new ParseException("not a timestamp: " + s, 0);
+            }
+        }
+
+    }, BOOLEAN_TYPE() {
+        @Override
+        public int getLen() {
+            return 1;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new BooleanField(dis.readBoolean());
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(String s) throws ParseException {
+            s = s.trim();
+            if (s.equalsIgnoreCase("true") || s.equals("1")) {
+                return new BooleanField(true);
+            }
+            if (s.equalsIgnoreCase("false") || s.equals("0")) {
+                return new BooleanField(false);
+            }
+            throw new ParseException("not a boolean: " + s, 0);
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -64,4 +205,39 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object holding the
+   *   value written in s, as in a data file or query.
+   * @param s The text of the value
+   * @throws ParseException if s is not a value of this type.
+   */
+    public abstract Field parse(String s) throws ParseException;
+
+  /**
+   * @return the type a schema names name, or null if there is no such
+   *   type.  Names are not case sensitive.
+   */
+    public static Type forName(String name) {
+        switch (name.trim().toLowerCase()) {
+        case "int":
+            return INT_TYPE;
+        case "string":
+            return STRING_TYPE;
+        case "long":
+        case "bigint":
+            return LONG_TYPE;
+        case "double":
+            return DOUBLE_TYPE;
+        case "date":
+            return DATE_TYPE;
+        case "timestamp":
+            return TIMESTAMP_TYPE;
+        case "boolean":
+        case "bool":
+            return BOOLEAN_TYPE;
+        default:
+            return null;
+        }
+    }
+
 }
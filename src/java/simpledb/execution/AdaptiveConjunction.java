@@ -0,0 +1,165 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AdaptiveConjunction evaluates a conjunction of predicates in the order
+ * that is expected to reject a tuple most cheaply, and keeps adjusting that
+ * order to the pass rates it observes.
+ * <p>
+ * The predicates are grouped by the column they test, and each group is
+ * compiled into one condition by {@link PredicateCompiler}, so that
+ * comparisons of the same int column are still folded into a range.  The
+ * groups are then ordered by their rank, the fraction of tuples they reject
+ * per unit of evaluation cost, highest first.  The pass rate of a group
+ * starts out as the product of the estimated selectivities of its
+ * predicates; every {@link #REORDER_INTERVAL} tuples it is re-estimated from
+ * the tuples the group has seen, which are weighed as much as
+ * {@link #PRIOR_WEIGHT} tuples of the estimate, and the groups re-sorted.
+ * Counts are halved at each re-sort, so the order follows changes in the
+ * data as a scan moves through a table.
+ */
+class AdaptiveConjunction implements PredicateCompiler.TupleCondition {
+
+    static final int REORDER_INTERVAL = 1024;
+    static final double PRIOR_WEIGHT = 16;
+
+    private final List<List<Predicate>> groups;
+    private final PredicateCompiler.TupleCondition[] conditions;
+    private final double[] estimates;
+    private final double[] costs;
+    private final long[] tested;
+    private final long[] passed;
+    /** the groups, in evaluation order */
+    private final int[] order;
+    private int untilReorder = REORDER_INTERVAL;
+
+    private AdaptiveConjunction(List<List<Predicate>> groups, List<PredicateCompiler.TupleCondition> conditions,
+                                List<Double> estimates, List<Double> costs) {
+        int n = conditions.size();
+        this.groups = groups;
+        this.conditions = conditions.toArray(new PredicateCompiler.TupleCondition[n]);
+        this.estimates = new double[n];
+        this.costs = new double[n];
+        for (int i = 0; i < n; i++) {
+            this.estimates[i] = estimates.get(i);
+            this.costs[i] = costs.get(i);
+        }
+        this.tested = new long[n];
+        this.passed = new long[n];
+        this.order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        reorder();
+    }
+
+    /**
+     * Compile the conjunction of some predicates.
+     *
+     * @param td            the schema of the tuples the predicates will be
+     *                      applied to
+     * @param conjuncts     the predicates
+     * @param selectivities the estimated selectivity of each predicate, or
+     *                      null if there are no estimates
+     * @return the condition; a plain compiled condition if the predicates
+     *         all test the same column
+     */
+    static PredicateCompiler.TupleCondition compile(TupleDesc td, List<Predicate> conjuncts,
+                                                   List<Double> selectivities) {
+        Map<Integer, List<Predicate>> groups = new LinkedHashMap<>();
+        Map<Integer, Double> estimates = new LinkedHashMap<>();
+        Map<Integer, Double> costs = new LinkedHashMap<>();
+        for (int i = 0; i < conjuncts.size(); i++) {
+            Predicate p = conjuncts.get(i);
+            double sel = selectivities == null ? 1.0 : selectivities.get(i);
+            groups.computeIfAbsent(p.getField(), f -> new ArrayList<>()).add(p);
+            estimates.merge(p.getField(), sel, (a, b) -> a * b);
+            costs.merge(p.getField(), cost(td, p), Double::sum);
+        }
+        if (groups.size() <= 1) {
+            return PredicateCompiler.compile(td, conjuncts);
+        }
+        List<PredicateCompiler.TupleCondition> conditions = new ArrayList<>();
+        for (List<Predicate> group : groups.values()) {
+            conditions.add(PredicateCompiler.compile(td, group));
+        }
+        return new AdaptiveConjunction(new ArrayList<>(groups.values()), conditions,
+                new ArrayList<>(estimates.values()), new ArrayList<>(costs.values()));
+    }
+
+    /**
+     * @return the relative cost of evaluating p
+     */
+    static double cost(TupleDesc td, Predicate p) {
+        if (td.getFieldType(p.getField()) != Type.STRING_TYPE) {
+            return 1;
+        }
+        switch (p.getOp()) {
+        case EQUALS:
+        case NOT_EQUALS:
+            return 2;
+        case LIKE:
+            return 6;
+        default:
+            return 3;
+        }
+    }
+
+    /**
+     * @return the predicates in the order they are currently evaluated
+     */
+    List<Predicate> evaluationOrder() {
+        List<Predicate> ps = new ArrayList<>();
+        for (int g : order) {
+            ps.addAll(groups.get(g));
+        }
+        return ps;
+    }
+
+    public boolean test(Tuple t) {
+        if (--untilReorder == 0) {
+            reorder();
+        }
+        for (int g : order) {
+            tested[g]++;
+            if (!conditions[g].test(t)) {
+                return false;
+            }
+            passed[g]++;
+        }
+        return true;
+    }
+
+    private double rank(int g) {
+        double pass = (passed[g] + estimates[g] * PRIOR_WEIGHT) / (tested[g] + PRIOR_WEIGHT);
+        return (1 - pass) / costs[g];
+    }
+
+    private void reorder() {
+        untilReorder = REORDER_INTERVAL;
+        double[] ranks = new double[order.length];
+        for (int g = 0; g < ranks.length; g++) {
+            ranks[g] = rank(g);
+            tested[g] >>= 1;
+            passed[g] >>= 1;
+        }
+        // insertion sort: there are few groups, and the order rarely changes
+        for (int i = 1; i < order.length; i++) {
+            int g = order[i];
+            int j = i - 1;
+            while (j >= 0 && ranks[order[j]] < ranks[g]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = g;
+        }
+    }
+}
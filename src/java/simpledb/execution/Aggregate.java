@@ -47,16 +47,32 @@ public class Aggregate extends Operator {
         if (gfield != Aggregator.NO_GROUPING) {
             gfieldType = child.getTupleDesc().getFieldType(gfield);
         }
-        switch (child.getTupleDesc().getFieldType(afield)) {
+        aggregator = newAggregator(child.getTupleDesc().getFieldType(afield), gfield, gfieldType, afield, aop);
+    }
+
+    /**
+     * @return an aggregator for a field of type afieldType
+     */
+    static Aggregator newAggregator(Type afieldType, int gfield, Type gfieldType, int afield, Aggregator.Op aop) {
+        switch (afieldType) {
             case INT_TYPE:
-                aggregator = new IntegerAggregator(gfield, gfieldType, afield, aop);
-                break;
+                return new IntegerAggregator(gfield, gfieldType, afield, aop);
             case STRING_TYPE:
-                aggregator = new StringAggregator(gfield, gfieldType, afield, aop);
-                break;
+                return new StringAggregator(gfield, gfieldType, afield, aop);
             default:
-                throw new UnsupportedOperationException("Aggregator.Op" + aop);
+                return new NumericAggregator(gfield, gfieldType, afield, afieldType, aop);
+        }
+    }
+
+    /**
+     * @return the type of the aggregate value of aop over a field of type
+     *         afieldType
+     */
+    public static Type resultType(Type afieldType, Aggregator.Op aop) {
+        if (afieldType == Type.INT_TYPE || afieldType == Type.STRING_TYPE) {
+            return Type.INT_TYPE;
         }
+        return NumericAggregator.resultType(afieldType, aop);
     }
 
     /**
@@ -118,7 +134,12 @@ public class Aggregate extends Operator {
         while (resultIterator == null && child.hasNext()) {
             aggregator.mergeTupleIntoGroup(child.next());
         }
-        resultIterator = aggregator.iterator();
+        try {
+            resultIterator = aggregator.iterator();
+        } catch (ArithmeticException e) {
+            throw new DbException(nameOfAggregatorOp(aop) + " of " + aggregateFieldName()
+                    + " does not fit in its result type");
+        }
         resultIterator.open();
         super.open();
     }
@@ -0,0 +1,130 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Tuple;
+
+/**
+ * BloomFilter is a set of join keys that may answer that a key is in the set
+ * when it is not, but never that a key is not in the set when it is.
+ * {@link HashEquiJoin} fills one with the keys of the tuples it has hashed,
+ * and hands a {@link #probe} of it to the scan of the other side, which then
+ * drops the tuples that can't join before they go up the plan.
+ * <p>
+ * The filter has {@link #BITS_PER_KEY} bits per key, rounded up to a power of
+ * two, and sets {@link #HASHES} bits per key, derived from one 64-bit hash of
+ * the key; about one key in two hundred that is not in the set passes.
+ */
+class BloomFilter {
+
+    static final int BITS_PER_KEY = 16;
+    static final int HASHES = 3;
+    /** tuples a probe tests before it decides whether it pays off */
+    static final int PROBE_SAMPLE = 1024;
+    /** the smallest fraction of tuples a probe must drop to keep testing */
+    static final double MIN_REJECT_RATE = 0.1;
+
+    private final long[] bits;
+    private final long mask;
+
+    /**
+     * Creates an empty filter.
+     *
+     * @param expected the number of keys that will be added
+     */
+    BloomFilter(int expected) {
+        long n = Long.highestOneBit(Math.max(64L, (long) expected * BITS_PER_KEY - 1) << 1);
+        this.bits = new long[(int) (n >>> 6)];
+        this.mask = n - 1;
+    }
+
+    /**
+     * @return a hash of field i of t; equal keys of the same type have equal
+     *         hashes
+     */
+    static long hash(Tuple t, int i) {
+        long v;
+        if (t.getTupleDesc().getFieldType(i) == Type.STRING_TYPE) {
+            String s = t.getString(i);
+            v = s == null ? 0 : s.hashCode();
+        } else {
+            // ints, longs, doubles (as their bits) and the rest are kept as longs
+            v = t.getLong(i);
+        }
+        // the finalizer of MurmurHash3
+        v ^= v >>> 33;
+        v *= 0xff51afd7ed558ccdL;
+        v ^= v >>> 33;
+        v *= 0xc4ceb9fe1a85ec53L;
+        v ^= v >>> 33;
+        return v;
+    }
+
+    /**
+     * Add the key with hash h.
+     */
+    void add(long h) {
+        long h2 = (h >>> 32) | 1;
+        for (int k = 0; k < HASHES; k++, h += h2) {
+            long b = h & mask;
+            bits[(int) (b >>> 6)] |= 1L << b;
+        }
+    }
+
+    /**
+     * @return false if no key with hash h has been added
+     */
+    boolean mightContain(long h) {
+        long h2 = (h >>> 32) | 1;
+        for (int k = 0; k < HASHES; k++, h += h2) {
+            long b = h & mask;
+            if ((bits[(int) (b >>> 6)] & (1L << b)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return a condition that passes the tuples whose field i may have a key
+     *         of this filter.  After {@link #PROBE_SAMPLE} tuples, if it has
+     *         dropped fewer than {@link #MIN_REJECT_RATE} of them, it stops
+     *         testing and passes every tuple.
+     */
+    Probe probe(int i) {
+        return new Probe(i);
+    }
+
+    /** A test of one field of tuples against the filter. */
+    class Probe implements PredicateCompiler.TupleCondition {
+
+        private final int field;
+        private long tested;
+        private long rejected;
+        private boolean active = true;
+
+        private Probe(int field) {
+            this.field = field;
+        }
+
+        public boolean test(Tuple t) {
+            if (!active) {
+                return true;
+            }
+            if (++tested == PROBE_SAMPLE && rejected < PROBE_SAMPLE * MIN_REJECT_RATE) {
+                active = false;
+            }
+            if (mightContain(hash(t, field))) {
+                return true;
+            }
+            rejected++;
+            return false;
+        }
+
+        /**
+         * @return the number of tuples the probe has dropped
+         */
+        long rejected() {
+            return rejected;
+        }
+    }
+}
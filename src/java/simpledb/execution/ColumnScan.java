@@ -0,0 +1,138 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColumnScan is a scan access method that returns only some of the columns
+ * of a table, optionally keeping only the tuples that satisfy a predicate
+ * on one of its columns.
+ * <p>
+ * On a {@link PaxHeapFile} only the filter column and the projected columns
+ * are decoded, and the projected columns only for tuples that pass the
+ * filter.  Any other table is scanned in full, and the filter and
+ * projection applied to each tuple.
+ */
+public class ColumnScan extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final int tableid;
+    private final String tableAlias;
+    private final int[] columns;
+    private final Predicate filter;
+    private final TupleDesc td;
+    private final TupleDesc fileTd;
+    private transient DbFileIterator it;
+    // true if it already applies the filter and projection
+    private transient boolean columnar;
+
+    /**
+     * Creates a column scan over the specified table.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the table to scan.
+     * @param tableAlias the alias of this table; the returned tupleDesc has
+     *                   fields named tableAlias.fieldName, as for SeqScan
+     * @param columns    the indexes of the columns to return, in order
+     * @param filter     a predicate on one of the table's columns (its field
+     *                   is an index into the table's TupleDesc, not into
+     *                   columns), or null to return every tuple
+     */
+    public ColumnScan(TransactionId tid, int tableid, String tableAlias, int[] columns, Predicate filter) {
+        this.tid = tid;
+        this.tableid = tableid;
+        this.tableAlias = tableAlias;
+        this.columns = columns.clone();
+        this.filter = filter;
+
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(tableid);
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            types[k] = tableTd.getFieldType(columns[k]);
+            names[k] = tableAlias + "." + tableTd.getFieldName(columns[k]);
+        }
+        this.td = new TupleDesc(types, names);
+        String[] fileNames = new String[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            fileNames[k] = tableTd.getFieldName(columns[k]);
+        }
+        this.fileTd = new TupleDesc(types, fileNames);
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    @Override
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        columnar = f instanceof PaxHeapFile;
+        if (columnar) {
+            it = ((PaxHeapFile) f).iterator(tid, columns, filter);
+        } else {
+            it = f.iterator(tid);
+        }
+        it.open();
+        super.open();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (it != null) {
+            it.close();
+        }
+        it = null;
+    }
+
+    @Override
+    public void rewind() throws DbException, TransactionAbortedException {
+        it.rewind();
+    }
+
+    @Override
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        if (columnar) {
+            return it.hasNext() ? it.next() : null;
+        }
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (filter != null && !filter.filter(t)) {
+                continue;
+            }
+            Tuple out = new Tuple(fileTd);
+            out.setRecordId(t.getRecordId());
+            for (int k = 0; k < columns.length; k++) {
+                out.setField(k, t.getField(columns[k]));
+            }
+            return out;
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[0];
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+    }
+
+    @Override
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+}
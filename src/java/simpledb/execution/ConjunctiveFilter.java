@@ -0,0 +1,123 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * ConjunctiveFilter is an operator that implements a relational select on
+ * the conjunction of several predicates, in place of a stack of
+ * {@link Filter}s.  The predicates are evaluated cheapest and most selective
+ * first, in an order that starts from the estimated selectivities given to
+ * the filter and then follows the pass rates observed while it runs.
+ */
+public class ConjunctiveFilter extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<Predicate> predicates;
+    private final List<Double> selectivities;
+    private OpIterator child;
+    private final TupleDesc td;
+    /** the predicates compiled for td, when the filter is open */
+    private transient PredicateCompiler.TupleCondition condition;
+
+    /**
+     * Constructor accepts the predicates to apply, their estimated
+     * selectivities, and a child operator to read tuples to filter from.
+     *
+     * @param predicates    The predicates tuples must all pass
+     * @param selectivities The estimated fraction of tuples that pass each
+     *                      predicate, or null if unknown
+     * @param child         The child operator
+     */
+    public ConjunctiveFilter(List<Predicate> predicates, List<Double> selectivities, OpIterator child) {
+        if (selectivities != null && selectivities.size() != predicates.size()) {
+            throw new IllegalArgumentException("need one selectivity per predicate");
+        }
+        this.predicates = predicates;
+        this.selectivities = selectivities;
+        this.child = child;
+        this.td = child.getTupleDesc();
+    }
+
+    /**
+     * @return the predicates, in the order given
+     */
+    public List<Predicate> getPredicates() {
+        return predicates;
+    }
+
+    /**
+     * @return the estimated selectivities of the predicates, or null
+     */
+    public List<Double> getSelectivities() {
+        return selectivities;
+    }
+
+    /**
+     * @return the predicates in the order the open filter currently
+     *         evaluates them, or in the order given if it is not open or
+     *         does not reorder them
+     */
+    public List<Predicate> getEvaluationOrder() {
+        if (condition instanceof AdaptiveConjunction) {
+            return ((AdaptiveConjunction) condition).evaluationOrder();
+        }
+        return predicates;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        condition = AdaptiveConjunction.compile(td, predicates, selectivities);
+        child.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    /**
+     * Iterates over tuples from the child operator, returning those that
+     * pass all of the predicates.
+     *
+     * @return The next tuple that passes the filter, or null if there are no
+     *         more tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (condition.test(t)) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{this.child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        if (this.child != children[0]) {
+            this.child = children[0];
+        }
+    }
+}
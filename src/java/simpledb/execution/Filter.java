@@ -17,6 +17,8 @@ public class Filter extends Operator {
     private Predicate p;
     private OpIterator child;
     private final TupleDesc td;
+    /** p compiled for td, when the filter is open */
+    private transient PredicateCompiler.TupleCondition condition;
 
     /**
      * Constructor accepts a predicate to apply and a child operator to read
@@ -47,6 +49,7 @@ public class Filter extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // some code goes here
+        condition = PredicateCompiler.compile(td, p);
         child.open();
         super.open();
     }
@@ -76,13 +79,8 @@ public class Filter extends Operator {
         // some code goes here
         while(child.hasNext()){
             Tuple t = child.next();
-            if (p.filter(t)){
-                Tuple newTuple = new Tuple(td);
-                newTuple.setRecordId(t.getRecordId());
-                for (int i = 0; i < td.numFields(); i++) {
-                    newTuple.setField(i, t.getField(i));
-                }
-                return newTuple;
+            if (condition.test(t)){
+                return t;
             }
         }
         return null;
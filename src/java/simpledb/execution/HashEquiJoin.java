@@ -9,15 +9,47 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * Each batch of tuples of the left child hashed is also added to a
+ * {@link BloomFilter}, and, when the right child is a scan with at most
+ * filters and projections above it, the scan drops the tuples whose join
+ * key is not in the filter before they go up to the join.  The filters can
+ * be turned off with the simpledb.execution.bloomJoins system property or
+ * {@link #setBloomFiltersEnabled}.
+ * <p>
+ * The left child is hashed on the assumption that it is the smaller side.
+ * When it fills the first hash table while its estimated cardinality is less
+ * than a simpledb.execution.HashEquiJoin.reoptimizeFactor'th (4 by default,
+ * 0 to never switch) of that, the estimate that chose this order was wrong,
+ * and the join tries to switch sides: if the right child fits in one hash
+ * table it is hashed instead, and the left child, starting with the tuples
+ * already read, is streamed past it once rather than rescanning the right
+ * child once per batch.  The output tuples are the same either way.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    private static volatile boolean bloomFilters =
+            Boolean.parseBoolean(System.getProperty("simpledb.execution.bloomJoins", "true"));
+    private static final int REOPTIMIZE_FACTOR = Integer.getInteger("simpledb.execution.HashEquiJoin.reoptimizeFactor", 4);
     private final JoinPredicate pred;
     private OpIterator child1, child2;
     private final TupleDesc comboTD;
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
+    /** the scan the right child reads, if it can take a Bloom filter */
+    transient private SeqScan probeScan;
+    /** the field of probeScan's tuples holding the join key */
+    transient private int probeField;
+    transient private BloomFilter.Probe probe;
+    private long bloomRejected;
+    /** true until the first batch of the left child of a pass is hashed */
+    transient private boolean firstBatch;
+    /** true if the right child is hashed and the left child streamed */
+    transient private boolean reversed;
+    /** when reversed, the tuples of the left child read before switching */
+    transient private Iterator<Tuple> pending;
 
     /**
      * Constructor. Accepts to children to join and the predicate to join them
@@ -37,6 +69,29 @@ public class HashEquiJoin extends Operator {
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
+    /**
+     * Turn the Bloom filters of joins opened from now on on or off.
+     */
+    public static void setBloomFiltersEnabled(boolean on) {
+        bloomFilters = on;
+    }
+
+    /**
+     * @return the number of tuples of the right child dropped by Bloom
+     *         filters of this join
+     */
+    public long getBloomRejected() {
+        return bloomRejected + (probe == null ? 0 : probe.rejected());
+    }
+
+    /**
+     * @return true if the join switched to hashing its right child in its
+     *         last pass, as its left child was far larger than estimated
+     */
+    public boolean isReversed() {
+        return reversed;
+    }
+
     public JoinPredicate getJoinPredicate() {
         return pred;
     }
@@ -65,34 +120,154 @@ public class HashEquiJoin extends Operator {
             t1 = child1.next();
             List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
             list.add(t1);
-            if (cnt++ == MAP_SIZE)
+            if (cnt++ == MAP_SIZE) {
+                if (firstBatch && underestimated(cnt) && reverse()) {
+                    return true;
+                }
+                firstBatch = false;
+                buildBloomFilter();
                 return true;
+            }
         }
+        firstBatch = false;
+        buildBloomFilter();
         return cnt > 0;
 
     }
 
+    /**
+     * @return true if the left child has produced far more than the n tuples
+     *         it was estimated to
+     */
+    private boolean underestimated(int n) {
+        if (REOPTIMIZE_FACTOR <= 0 || !(child1 instanceof Operator)) {
+            return false;
+        }
+        long estimate = ((Operator) child1).getEstimatedCardinality();
+        return estimate > 0 && estimate * REOPTIMIZE_FACTOR < n;
+    }
+
+    /**
+     * Hash the right child instead of the left one, if it fits in one hash
+     * table, and stream the left child past it, starting with the tuples of
+     * the left child in map.
+     *
+     * @return true if the sides were switched, false if the right child is
+     *         too large too and the join goes on in batches
+     */
+    private boolean reverse() throws DbException, TransactionAbortedException {
+        Map<Object, List<Tuple>> right = new HashMap<>();
+        int cnt = 0;
+        while (child2.hasNext()) {
+            if (cnt++ == MAP_SIZE) {
+                child2.rewind();
+                return false;
+            }
+            Tuple t = child2.next();
+            right.computeIfAbsent(t.getField(pred.getField2()), k -> new ArrayList<>()).add(t);
+        }
+        List<Tuple> read = new ArrayList<>();
+        for (List<Tuple> l : map.values()) {
+            read.addAll(l);
+        }
+        map.clear();
+        map.putAll(right);
+        pending = read.iterator();
+        reversed = true;
+        firstBatch = false;
+        return true;
+    }
+
+    /**
+     * Find the scan the right child reads, and the field of its tuples that
+     * is the join key, following the key down through filters and
+     * projections.
+     */
+    private void findProbeScan() {
+        probeScan = null;
+        if (!bloomFilters || pred.getOperator() != Predicate.Op.EQUALS || child1.getTupleDesc()
+                .getFieldType(pred.getField1()) != child2.getTupleDesc().getFieldType(pred.getField2())) {
+            return;
+        }
+        OpIterator op = child2;
+        int f = pred.getField2();
+        while (true) {
+            if (op instanceof SeqScan) {
+                probeScan = (SeqScan) op;
+                probeField = f;
+                return;
+            } else if (op instanceof Filter || op instanceof ConjunctiveFilter) {
+                op = ((Operator) op).getChildren()[0];
+            } else if (op instanceof Project) {
+                f = ((Project) op).getOutFieldIds().get(f);
+                op = ((Project) op).getChildren()[0];
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Give the probe scan a Bloom filter of the keys of the tuples in map.
+     */
+    private void buildBloomFilter() {
+        if (probeScan == null) {
+            return;
+        }
+        if (probe != null) {
+            bloomRejected += probe.rejected();
+        }
+        BloomFilter bloom = new BloomFilter(map.size());
+        for (List<Tuple> l : map.values()) {
+            bloom.add(BloomFilter.hash(l.get(0), pred.getField1()));
+        }
+        probe = bloom.probe(probeField);
+        probeScan.setRuntimeFilter(probe);
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child1.open();
         child2.open();
+        findProbeScan();
+        firstBatch = true;
         loadMap();
         super.open();
     }
 
     public void close() {
         super.close();
+        dropBloomFilter();
+        probeScan = null;
         child2.close();
         child1.close();
         this.t1=null;
         this.t2=null;
         this.listIt=null;
         this.map.clear();
+        this.reversed = false;
+        this.pending = null;
+    }
+
+    private void dropBloomFilter() {
+        if (probeScan != null) {
+            probeScan.setRuntimeFilter(null);
+        }
+        if (probe != null) {
+            bloomRejected += probe.rejected();
+            probe = null;
+        }
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        dropBloomFilter();
         child1.rewind();
         child2.rewind();
+        listIt = null;
+        reversed = false;
+        pending = null;
+        firstBatch = true;
+        loadMap();
     }
 
     transient Iterator<Tuple> listIt = null;
@@ -116,17 +291,23 @@ public class HashEquiJoin extends Operator {
      * @see JoinPredicate#filter
      */
     private Tuple processList() {
+        if (reversed) {
+            return combine(t1, listIt.next());
+        }
         t1 = listIt.next();
+        return combine(t1, t2);
+    }
 
+    private Tuple combine(Tuple t1, Tuple t2) {
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
 
         // set fields in combined tuple
         Tuple t = new Tuple(comboTD);
         for (int i = 0; i < td1n; i++)
-            t.setField(i, t1.getField(i));
+            t.copyField(i, t1, i);
         for (int i = 0; i < td2n; i++)
-            t.setField(td1n + i, t2.getField(i));
+            t.copyField(td1n + i, t2, i);
         return t;
 
     }
@@ -136,6 +317,19 @@ public class HashEquiJoin extends Operator {
             return processList();
         }
 
+        if (reversed) {
+            // stream the left child past the hashed right child
+            while (pending.hasNext() || child1.hasNext()) {
+                t1 = pending.hasNext() ? pending.next() : child1.next();
+                List<Tuple> l = map.get(t1.getField(pred.getField1()));
+                if (l != null) {
+                    listIt = l.iterator();
+                    return processList();
+                }
+            }
+            return null;
+        }
+
         // loop around child2
         while (child2.hasNext()) {
             t2 = child2.next();
@@ -8,6 +8,8 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Inserts tuples read from the child operator into the tableId specified in the
@@ -17,6 +19,8 @@ import java.io.IOException;
 public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
+    /** Number of child tuples handed to the buffer pool at a time. */
+    private static final int BATCH_SIZE = 1024;
     private final TransactionId tid;
     private OpIterator child;
     private final int tableId;
@@ -74,7 +78,7 @@ public class Insert extends Operator {
      * @return A 1-field tuple containing the number of inserted records, or
      * null if called more than once.
      * @see Database#getBufferPool
-     * @see BufferPool#insertTuple
+     * @see BufferPool#insertTuples
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
@@ -83,14 +87,18 @@ public class Insert extends Operator {
             return null;
         }
         int cnt = 0;
-        while (child.hasNext()) {
-            Tuple t = child.next();
-            try {
-                bufferPool.insertTuple(tid, tableId, t);
-                cnt++;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        List<Tuple> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (child.hasNext()) {
+                batch.add(child.next());
+                if (batch.size() == BATCH_SIZE || !child.hasNext()) {
+                    bufferPool.insertTuples(tid, tableId, batch);
+                    cnt += batch.size();
+                    batch.clear();
+                }
             }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
         inserted = true;
         Tuple result = new Tuple(td);
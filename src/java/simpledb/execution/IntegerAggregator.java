@@ -8,9 +8,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
 
 /**
- * Knows how to compute some aggregate over a set of IntFields.
+ * Knows how to compute some aggregate over a set of IntFields.  Sums are
+ * accumulated in 64 bits, so averages do not overflow; the aggregate value
+ * itself is an int, and a sum or count that does not fit in one is an
+ * error rather than wrapped around.
  */
 public class IntegerAggregator implements Aggregator {
 
@@ -18,8 +22,8 @@ public class IntegerAggregator implements Aggregator {
     private final Integer gbfield;
     private final Type gbfieldType;
     private final Integer afield;
-    private final Map<Field, Integer[]> groupedMap = new HashMap<>();
-    private final BiConsumer<Field, IntField> consumer;
+    private final Map<Field, long[]> groupedMap = new HashMap<>();
+    private final ObjIntConsumer<Field> consumer;
 
     /**
      * Aggregate constructor
@@ -41,31 +45,31 @@ public class IntegerAggregator implements Aggregator {
             case MIN:
                 consumer = (field, min) -> {
                     if (groupedMap.containsKey(field)) {
-                        Integer[] v = groupedMap.get(field);
-                        v[0] = v[0] <= min.getValue() ? v[0] : min.getValue();
+                        long[] v = groupedMap.get(field);
+                        v[0] = v[0] <= min ? v[0] : min;
                     } else {
-                        groupedMap.put(field, new Integer[]{min.getValue()});
+                        groupedMap.put(field, new long[]{min});
                     }
                 };
                 break;
             case AVG:
                 consumer = (field, val) -> {
                     if (groupedMap.containsKey(field)) {
-                        Integer[] v = groupedMap.get(field);
-                        v[1] += val.getValue();
+                        long[] v = groupedMap.get(field);
+                        v[1] += val;
                         v[2]++;
                         v[0] = v[1] / v[2];
                     } else {
-                        groupedMap.put(field, new Integer[]{val.getValue(), val.getValue(), 1});
+                        groupedMap.put(field, new long[]{val, val, 1});
                     }
                 };
                 break;
             case SUM:
                 consumer = (field, val) -> {
                     if (groupedMap.containsKey(field)) {
-                        groupedMap.get(field)[0] += val.getValue();
+                        groupedMap.get(field)[0] += val;
                     } else {
-                        groupedMap.put(field, new Integer[]{val.getValue()});
+                        groupedMap.put(field, new long[]{val});
                     }
                 };
                 break;
@@ -74,17 +78,17 @@ public class IntegerAggregator implements Aggregator {
                     if (groupedMap.containsKey(field)) {
                         groupedMap.get(field)[0] += 1;
                     } else {
-                        groupedMap.put(field, new Integer[]{1});
+                        groupedMap.put(field, new long[]{1});
                     }
                 };
                 break;
             case MAX:
                 consumer = (field, max) -> {
                     if (groupedMap.containsKey(field)) {
-                        Integer[] v = groupedMap.get(field);
-                        v[0] = v[0] >= max.getValue() ? v[0] : max.getValue();
+                        long[] v = groupedMap.get(field);
+                        v[0] = v[0] >= max ? v[0] : max;
                     } else {
-                        groupedMap.put(field, new Integer[]{max.getValue()});
+                        groupedMap.put(field, new long[]{max});
                     }
                 };
                 break;
@@ -105,7 +109,7 @@ public class IntegerAggregator implements Aggregator {
         if (gbfield != NO_GROUPING) {
             f = tup.getField(gbfield);
         }
-        consumer.accept(f, (IntField) tup.getField(afield));
+        consumer.accept(f, tup.getInt(afield));
     }
 
     /**
@@ -115,18 +119,20 @@ public class IntegerAggregator implements Aggregator {
      * if using group, or a single (aggregateVal) if no grouping. The
      * aggregateVal is determined by the type of aggregate specified in
      * the constructor.
+     * @throws ArithmeticException if an aggregate value does not fit in an
+     *                             int
      */
     public OpIterator iterator() {
         // some code goes here
         List<Tuple> tuples = new ArrayList<>();
-        final BiConsumer<Field, Integer[]> biConsumer;
+        final BiConsumer<Field, long[]> biConsumer;
         final TupleDesc tupleDesc;
 
         if (gbfield == NO_GROUPING){
             tupleDesc = new TupleDesc(new Type[]{Type.INT_TYPE}, new String[]{"AggregateValue"});
             biConsumer = (k, v)->{
                 Tuple tuple = new Tuple(tupleDesc);
-                tuple.setField(0, new IntField(v[0]));
+                tuple.setField(0, new IntField(Math.toIntExact(v[0])));
                 tuples.add(tuple);
             };
         }else{
@@ -134,7 +140,7 @@ public class IntegerAggregator implements Aggregator {
             biConsumer = (k, v)->{
                 Tuple tuple = new Tuple(tupleDesc);
                 tuple.setField(0, k);
-                tuple.setField(1, new IntField(v[0]));
+                tuple.setField(1, new IntField(Math.toIntExact(v[0])));
                 tuples.add(tuple);
             };
         }
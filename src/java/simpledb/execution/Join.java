@@ -23,6 +23,8 @@ public class Join extends Operator {
     private String joinField1Name;
     private String joinField2Name;
     private Tuple t1;
+    /** p compiled for the inputs' schemas, when the join is open */
+    private transient PredicateCompiler.PairCondition condition;
 
     /**
      * Constructor. Accepts two children to join and the predicate to join them
@@ -78,6 +80,7 @@ public class Join extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // some code goes here
+        condition = PredicateCompiler.compile(child1.getTupleDesc(), child2.getTupleDesc(), p);
         child1.open();
         child2.open();
         super.open();
@@ -125,14 +128,14 @@ public class Join extends Operator {
             }
             while(child2.hasNext()){
                 Tuple t2 = child2.next();
-                if (p.filter(t1, t2)){
+                if (condition.test(t1, t2)){
                     Tuple newTuple = new Tuple(td);
                     newTuple.setRecordId(t1.getRecordId());
                     for (int i = 0; i < t1.getTupleDesc().numFields(); i++) {
-                        newTuple.setField(i, t1.getField(i));
+                        newTuple.copyField(i, t1, i);
                     }
                     for (int i = 0; i < t2.getTupleDesc().numFields(); i++) {
-                        newTuple.setField(i+t1.getTupleDesc().numFields(), t2.getField(i));
+                        newTuple.copyField(i+t1.getTupleDesc().numFields(), t2, i);
                     }
                     return newTuple;
                 }
@@ -1,6 +1,9 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -47,6 +50,13 @@ public class JoinPredicate implements Serializable {
      * @return true if the tuples satisfy the predicate.
      */
     public boolean filter(Tuple t1, Tuple t2) {
+        Type type = t1.getTupleDesc().getFieldType(field1);
+        if (type == Type.INT_TYPE && t2.getTupleDesc().getFieldType(field2) == Type.INT_TYPE) {
+            return IntField.compare(op, t1.getInt(field1), t2.getInt(field2));
+        }
+        if (type == Type.STRING_TYPE && t1.getString(field1) != null && t2.getString(field2) != null) {
+            return StringField.compare(op, t1.getString(field1), t2.getString(field2));
+        }
         return t1.getField(field1).compare(op, t2.getField(field2));
     }
     
@@ -0,0 +1,164 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Knows how to compute some aggregate over a set of LongFields,
+ * DoubleFields, DateFields, TimestampFields or BooleanFields.
+ * <p>
+ * MIN and MAX give a value of the aggregated type, and COUNT an int.  SUM
+ * and AVG of longs are longs, with AVG rounded towards zero as for ints, and
+ * SUM and AVG of doubles are doubles.  SUM of booleans counts the true
+ * values.  Dates and timestamps can't be summed or averaged.
+ */
+public class NumericAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+    private final int gbfield;
+    private final Type gbfieldType;
+    private final int afield;
+    private final Type afieldType;
+    private final Op what;
+    /** per group: {aggregate value, sum, count}, doubles kept as their bits */
+    private final Map<Field, long[]> groupedMap = new HashMap<>();
+
+    /**
+     * Aggregate constructor
+     *
+     * @param gbfield     the 0-based index of the group-by field in the tuple, or
+     *                    NO_GROUPING if there is no grouping
+     * @param gbfieldtype the type of the group by field (e.g., Type.INT_TYPE), or null
+     *                    if there is no grouping
+     * @param afield      the 0-based index of the aggregate field in the tuple
+     * @param afieldtype  the type of the aggregate field
+     * @param what        the aggregation operator
+     * @throws UnsupportedOperationException if what can't be applied to
+     *                                       afieldtype
+     */
+    public NumericAggregator(int gbfield, Type gbfieldtype, int afield, Type afieldtype, Op what) {
+        this.gbfield = gbfield;
+        this.gbfieldType = gbfieldtype;
+        this.afield = afield;
+        this.afieldType = afieldtype;
+        this.what = what;
+        resultType(afieldtype, what);
+    }
+
+    /**
+     * @return the type of the aggregate value of what over a field of type
+     *         afieldtype
+     * @throws UnsupportedOperationException if what can't be applied to
+     *                                       afieldtype
+     */
+    public static Type resultType(Type afieldtype, Op what) {
+        switch (what) {
+            case COUNT:
+                return Type.INT_TYPE;
+            case MIN:
+            case MAX:
+                return afieldtype;
+            case SUM:
+                if (afieldtype == Type.BOOLEAN_TYPE) {
+                    return Type.LONG_TYPE;
+                }
+                // fall through
+            case AVG:
+                if (afieldtype == Type.LONG_TYPE || afieldtype == Type.DOUBLE_TYPE) {
+                    return afieldtype;
+                }
+                // fall through
+            default:
+                throw new UnsupportedOperationException("unsupported op: " + what + " over " + afieldtype);
+        }
+    }
+
+    /**
+     * Merge a new tuple into the aggregate, grouping as indicated in the
+     * constructor
+     *
+     * @param tup the Tuple containing an aggregate field and a group-by field
+     */
+    public void mergeTupleIntoGroup(Tuple tup) {
+        Field f = null;
+        if (gbfield != NO_GROUPING) {
+            f = tup.getField(gbfield);
+        }
+        long v = tup.getLong(afield);
+        long[] acc = groupedMap.get(f);
+        if (acc == null) {
+            groupedMap.put(f, new long[]{v, v, 1});
+            return;
+        }
+        acc[2]++;
+        if (afieldType == Type.DOUBLE_TYPE) {
+            double d = Double.longBitsToDouble(v);
+            double a = Double.longBitsToDouble(acc[0]);
+            switch (what) {
+                case MIN:
+                    acc[0] = Double.compare(d, a) < 0 ? v : acc[0];
+                    break;
+                case MAX:
+                    acc[0] = Double.compare(d, a) > 0 ? v : acc[0];
+                    break;
+                case SUM:
+                case AVG:
+                    double sum = Double.longBitsToDouble(acc[1]) + d;
+                    acc[1] = Double.doubleToLongBits(sum);
+                    acc[0] = Double.doubleToLongBits(what == Op.SUM ? sum : sum / acc[2]);
+                    break;
+            }
+        } else {
+            switch (what) {
+                case MIN:
+                    acc[0] = Math.min(acc[0], v);
+                    break;
+                case MAX:
+                    acc[0] = Math.max(acc[0], v);
+                    break;
+                case SUM:
+                case AVG:
+                    acc[1] += v;
+                    acc[0] = what == Op.SUM ? acc[1] : acc[1] / acc[2];
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Create a OpIterator over group aggregate results.
+     *
+     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
+     * if using group, or a single (aggregateVal) if no grouping.
+     */
+    public OpIterator iterator() {
+        Type rtype = resultType(afieldType, what);
+        TupleDesc tupleDesc;
+        if (gbfield == NO_GROUPING) {
+            tupleDesc = new TupleDesc(new Type[]{rtype}, new String[]{"AggregateValue"});
+        } else {
+            tupleDesc = new TupleDesc(new Type[]{gbfieldType, rtype}, new String[]{"GroupValue", "AggregateValue"});
+        }
+        int a = tupleDesc.numFields() - 1;
+        List<Tuple> tuples = new ArrayList<>();
+        groupedMap.forEach((k, v) -> {
+            Tuple tuple = new Tuple(tupleDesc);
+            if (gbfield != NO_GROUPING) {
+                tuple.setField(0, k);
+            }
+            if (what == Op.COUNT) {
+                tuple.setInt(a, (int) v[2]);
+            } else {
+                tuple.setLong(a, v[0]);
+            }
+            tuples.add(tuple);
+        });
+        return new TupleIterator(tupleDesc, tuples);
+    }
+
+}
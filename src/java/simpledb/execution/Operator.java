@@ -21,14 +21,14 @@ public abstract class Operator implements OpIterator {
             throw new IllegalStateException("Operator not yet open");
         
         if (next == null)
-            next = fetchNext();
+            next = counted(fetchNext());
         return next != null;
     }
 
     public Tuple next() throws DbException, TransactionAbortedException,
             NoSuchElementException {
         if (next == null) {
-            next = fetchNext();
+            next = counted(fetchNext());
             if (next == null)
                 throw new NoSuchElementException();
         }
@@ -38,6 +38,19 @@ public abstract class Operator implements OpIterator {
         return result;
     }
 
+    /**
+     * Count t as produced by the current pass, or end the pass if t is null.
+     */
+    private Tuple counted(Tuple t) {
+        if (t != null) {
+            produced++;
+        } else {
+            actualCardinality = Math.max(actualCardinality, produced);
+            produced = 0;
+        }
+        return t;
+    }
+
     /**
      * Returns the next Tuple in the iterator, or null if the iteration is
      * finished. Operator uses this method to implement both <code>next</code>
@@ -62,9 +75,12 @@ public abstract class Operator implements OpIterator {
     private Tuple next = null;
     private boolean open = false;
     private int estimatedCardinality = 0;
+    private long produced = 0;
+    private long actualCardinality = -1;
 
     public void open() throws DbException, TransactionAbortedException {
         this.open = true;
+        this.produced = 0;
     }
 
     /**
@@ -109,4 +125,13 @@ public abstract class Operator implements OpIterator {
         this.estimatedCardinality = card;
     }
 
+    /**
+     * @return the number of tuples this operator has returned in a full
+     *         pass over its output (the most, if it has been rewound and
+     *         read again), or -1 if it has not yet been read to the end
+     * */
+    public long getActualCardinality() {
+        return this.actualCardinality;
+    }
+
 }
@@ -1,6 +1,9 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -109,6 +112,13 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
+        // compare unboxed values where we can
+        if (operand instanceof IntField && t.getTupleDesc().getFieldType(field) == Type.INT_TYPE) {
+            return IntField.compare(op, t.getInt(field), ((IntField) operand).getValue());
+        }
+        if (operand instanceof StringField && t.getString(field) != null) {
+            return StringField.compare(op, t.getString(field), operand.toString());
+        }
         return t.getField(field).compare(op, operand);
     }
 
@@ -0,0 +1,316 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.DoubleField;
+import simpledb.storage.IntField;
+import simpledb.storage.LongField;
+import simpledb.storage.StringDictionary;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PredicateCompiler turns {@link Predicate}s and {@link JoinPredicate}s into
+ * conditions specialized for the types of the columns they compare, their
+ * operators and their operands, so that evaluating them neither switches on
+ * the operator nor creates Field objects.
+ * <p>
+ * Operands are folded into the conditions as constants.  The comparisons
+ * of a conjunction against int constants are folded into one range check
+ * per column, so that, for example, <tt>a &gt; 5 AND a &lt;= 10 AND a &gt; 7</tt>
+ * becomes <tt>8 &lt;= a &lt;= 10</tt>, and a conjunction whose ranges are
+ * empty becomes false.  Longs, dates, timestamps and booleans are compared
+ * as the longs {@link Tuple} keeps them as, and doubles as doubles.
+ * Equality comparisons on dictionary-encoded string columns compare
+ * {@link StringDictionary} codes, and only compare strings for tuples whose
+ * values have no code.
+ * <p>
+ * Compilation can be turned off, for comparison, with the
+ * simpledb.execution.interpretPredicates system property; the conditions
+ * then just call {@link Predicate#filter} and {@link JoinPredicate#filter}.
+ */
+public final class PredicateCompiler {
+
+    private static final boolean INTERPRET = Boolean.getBoolean("simpledb.execution.interpretPredicates");
+
+    /** A compiled selection condition. */
+    public interface TupleCondition {
+        boolean test(Tuple t);
+    }
+
+    /** A compiled join condition. */
+    public interface PairCondition {
+        boolean test(Tuple t1, Tuple t2);
+    }
+
+    private static final TupleCondition TRUE = t -> true;
+    private static final TupleCondition FALSE = t -> false;
+
+    private PredicateCompiler() {
+    }
+
+    /**
+     * Compile a single predicate.
+     *
+     * @param td the schema of the tuples the predicate will be applied to
+     */
+    public static TupleCondition compile(TupleDesc td, Predicate p) {
+        List<Predicate> ps = new ArrayList<>();
+        ps.add(p);
+        return compile(td, ps);
+    }
+
+    /**
+     * Compile the conjunction of some predicates.  The conjuncts are
+     * evaluated in the order given, except that comparisons of the same int
+     * column are folded into one.
+     *
+     * @param td the schema of the tuples the predicates will be applied to
+     */
+    public static TupleCondition compile(TupleDesc td, List<Predicate> conjuncts) {
+        if (INTERPRET) {
+            return t -> {
+                for (Predicate p : conjuncts) {
+                    if (!p.filter(t)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+        // int columns compared with constants, in order of first use: {lo, hi}
+        Map<Integer, long[]> ranges = new LinkedHashMap<>();
+        // where each range goes among the other conditions
+        Map<Integer, Integer> rangeAt = new LinkedHashMap<>();
+        List<TupleCondition> conditions = new ArrayList<>();
+        for (Predicate p : conjuncts) {
+            int f = p.getField();
+            if (td.getFieldType(f) == Type.INT_TYPE && p.getOperand() instanceof IntField
+                    && p.getOp() != Predicate.Op.NOT_EQUALS) {
+                long[] r = ranges.get(f);
+                if (r == null) {
+                    r = new long[]{Integer.MIN_VALUE, Integer.MAX_VALUE};
+                    ranges.put(f, r);
+                    rangeAt.put(f, conditions.size());
+                    conditions.add(null);
+                }
+                narrow(r, p.getOp(), ((IntField) p.getOperand()).getValue());
+            } else {
+                conditions.add(condition(td, p));
+            }
+        }
+        for (Map.Entry<Integer, long[]> e : ranges.entrySet()) {
+            long[] r = e.getValue();
+            if (r[0] > r[1]) {
+                return FALSE;
+            }
+            conditions.set(rangeAt.get(e.getKey()), range(e.getKey(), (int) r[0], (int) r[1]));
+        }
+        TupleCondition c = TRUE;
+        for (int i = conditions.size() - 1; i >= 0; i--) {
+            c = and(conditions.get(i), c);
+        }
+        return c;
+    }
+
+    private static TupleCondition and(TupleCondition a, TupleCondition b) {
+        if (b == TRUE) {
+            return a;
+        }
+        return t -> a.test(t) && b.test(t);
+    }
+
+    /** Narrow the inclusive range r to the values v for which v op c holds. */
+    private static void narrow(long[] r, Predicate.Op op, int c) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            r[0] = Math.max(r[0], c);
+            r[1] = Math.min(r[1], c);
+            break;
+        case GREATER_THAN:
+            r[0] = Math.max(r[0], (long) c + 1);
+            break;
+        case GREATER_THAN_OR_EQ:
+            r[0] = Math.max(r[0], c);
+            break;
+        case LESS_THAN:
+            r[1] = Math.min(r[1], (long) c - 1);
+            break;
+        case LESS_THAN_OR_EQ:
+            r[1] = Math.min(r[1], c);
+            break;
+        default:
+            throw new IllegalArgumentException("can't narrow a range with " + op);
+        }
+    }
+
+    private static TupleCondition range(int f, int lo, int hi) {
+        if (lo == hi) {
+            return t -> t.getInt(f) == lo;
+        }
+        if (lo == Integer.MIN_VALUE) {
+            return hi == Integer.MAX_VALUE ? TRUE : t -> t.getInt(f) <= hi;
+        }
+        if (hi == Integer.MAX_VALUE) {
+            return t -> t.getInt(f) >= lo;
+        }
+        return t -> {
+            int v = t.getInt(f);
+            return v >= lo && v <= hi;
+        };
+    }
+
+    private static TupleCondition condition(TupleDesc td, Predicate p) {
+        int f = p.getField();
+        Type type = td.getFieldType(f);
+        if (type == Type.INT_TYPE && p.getOperand() instanceof IntField) {
+            // the other int comparisons are folded into ranges
+            int c = ((IntField) p.getOperand()).getValue();
+            return t -> t.getInt(f) != c;
+        }
+        if (type == Type.STRING_TYPE && p.getOperand() instanceof StringField) {
+            String c = p.getOperand().toString();
+            // a literal no stored value has been coded as cannot equal a coded
+            // value, and is left to the string comparisons below
+            int code = td.isDictionaryEncoded(f) ? td.getDictionary(f).lookup(c) : StringDictionary.NO_CODE;
+            if (code != StringDictionary.NO_CODE && p.getOp() == Predicate.Op.EQUALS) {
+                return t -> {
+                    int k = t.getCode(f);
+                    if (k != StringDictionary.NO_CODE) {
+                        return k == code;
+                    }
+                    String s = t.getString(f);
+                    return s != null ? s.equals(c) : p.filter(t);
+                };
+            }
+            if (code != StringDictionary.NO_CODE && p.getOp() == Predicate.Op.NOT_EQUALS) {
+                return t -> {
+                    int k = t.getCode(f);
+                    if (k != StringDictionary.NO_CODE) {
+                        return k != code;
+                    }
+                    String s = t.getString(f);
+                    return s != null ? !s.equals(c) : p.filter(t);
+                };
+            }
+            switch (p.getOp()) {
+            case EQUALS:
+                return t -> {
+                    String s = t.getString(f);
+                    return s != null ? s.equals(c) : p.filter(t);
+                };
+            case NOT_EQUALS:
+                return t -> {
+                    String s = t.getString(f);
+                    return s != null ? !s.equals(c) : p.filter(t);
+                };
+            case LIKE:
+                return t -> {
+                    String s = t.getString(f);
+                    return s != null ? s.contains(c) : p.filter(t);
+                };
+            default:
+                return t -> {
+                    String s = t.getString(f);
+                    return s != null ? StringField.compare(p.getOp(), s, c) : p.filter(t);
+                };
+            }
+        }
+        if (p.getOperand() != null && p.getOperand().getType() == type && type != Type.STRING_TYPE) {
+            // the operand's value as a tuple keeps it
+            Tuple holder = new Tuple(td);
+            holder.setField(f, p.getOperand());
+            long c = holder.getLong(f);
+            if (type == Type.DOUBLE_TYPE) {
+                double d = Double.longBitsToDouble(c);
+                Predicate.Op op = p.getOp();
+                return t -> DoubleField.compare(op, t.getDouble(f), d);
+            }
+            switch (p.getOp()) {
+            case EQUALS:
+            case LIKE:
+                return t -> t.getLong(f) == c;
+            case NOT_EQUALS:
+                return t -> t.getLong(f) != c;
+            case GREATER_THAN:
+                return t -> t.getLong(f) > c;
+            case GREATER_THAN_OR_EQ:
+                return t -> t.getLong(f) >= c;
+            case LESS_THAN:
+                return t -> t.getLong(f) < c;
+            case LESS_THAN_OR_EQ:
+                return t -> t.getLong(f) <= c;
+            }
+        }
+        return p::filter;
+    }
+
+    /**
+     * Compile a join predicate.
+     *
+     * @param td1 the schema of the tuples of the left input
+     * @param td2 the schema of the tuples of the right input
+     */
+    public static PairCondition compile(TupleDesc td1, TupleDesc td2, JoinPredicate p) {
+        if (INTERPRET) {
+            return p::filter;
+        }
+        int f1 = p.getField1();
+        int f2 = p.getField2();
+        Type type = td1.getFieldType(f1);
+        if (type != td2.getFieldType(f2)) {
+            return p::filter;
+        }
+        if (type == Type.INT_TYPE) {
+            switch (p.getOperator()) {
+            case EQUALS:
+            case LIKE:
+                return (t1, t2) -> t1.getInt(f1) == t2.getInt(f2);
+            case NOT_EQUALS:
+                return (t1, t2) -> t1.getInt(f1) != t2.getInt(f2);
+            case GREATER_THAN:
+                return (t1, t2) -> t1.getInt(f1) > t2.getInt(f2);
+            case GREATER_THAN_OR_EQ:
+                return (t1, t2) -> t1.getInt(f1) >= t2.getInt(f2);
+            case LESS_THAN:
+                return (t1, t2) -> t1.getInt(f1) < t2.getInt(f2);
+            case LESS_THAN_OR_EQ:
+                return (t1, t2) -> t1.getInt(f1) <= t2.getInt(f2);
+            }
+        }
+        Predicate.Op op = p.getOperator();
+        if (type == Type.DOUBLE_TYPE) {
+            return (t1, t2) -> DoubleField.compare(op, t1.getDouble(f1), t2.getDouble(f2));
+        }
+        if (type == Type.STRING_TYPE && td1.isDictionaryEncoded(f1) && td1.getDictionary(f1) == td2.getDictionary(f2)
+                && (op == Predicate.Op.EQUALS || op == Predicate.Op.NOT_EQUALS)) {
+            // both columns are coded with one dictionary, so equal strings have equal codes
+            boolean equals = op == Predicate.Op.EQUALS;
+            return (t1, t2) -> {
+                int k1 = t1.getCode(f1);
+                int k2 = t2.getCode(f2);
+                if (k1 != StringDictionary.NO_CODE && k2 != StringDictionary.NO_CODE) {
+                    return (k1 == k2) == equals;
+                }
+                String s1 = t1.getString(f1);
+                String s2 = t2.getString(f2);
+                return s1 != null && s2 != null ? StringField.compare(op, s1, s2) : p.filter(t1, t2);
+            };
+        }
+        if (type == Type.STRING_TYPE) {
+            return (t1, t2) -> {
+                String s1 = t1.getString(f1);
+                String s2 = t2.getString(f2);
+                return s1 != null && s2 != null ? StringField.compare(op, s1, s2) : p.filter(t1, t2);
+            };
+        }
+        // the other types are kept as ordered longs
+        return (t1, t2) -> LongField.compare(op, t1.getLong(f1), t2.getLong(f2));
+    }
+}
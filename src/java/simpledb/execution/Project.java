@@ -44,6 +44,13 @@ public class Project extends Operator {
         td = new TupleDesc(types, fieldAr);
     }
 
+    /**
+     * @return the ids of the child's fields that are projected out
+     */
+    public List<Integer> getOutFieldIds() {
+        return outFieldIds;
+    }
+
     public TupleDesc getTupleDesc() {
         return td;
     }
@@ -76,7 +83,7 @@ public class Project extends Operator {
         Tuple newTuple = new Tuple(td);
         newTuple.setRecordId(t.getRecordId());
         for (int i = 0; i < td.numFields(); i++) {
-            newTuple.setField(i, t.getField(outFieldIds.get(i)));
+            newTuple.copyField(i, t, outFieldIds.get(i));
         }
         return newTuple;
     }
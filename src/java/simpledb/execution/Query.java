@@ -1,5 +1,6 @@
 package simpledb.execution;
 
+import simpledb.optimizer.CardinalityFeedback;
 import simpledb.optimizer.LogicalPlan;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
@@ -93,9 +94,15 @@ public class Query implements Serializable {
         return op.next();
     }
 
-    /** Close the iterator */
+    /**
+     * Close the iterator, and keep the number of tuples the parts of the plan
+     * produced for planning later queries (see {@link CardinalityFeedback})
+     */
     public void close() {
         op.close();
+        if (started) {
+            CardinalityFeedback.record(op);
+        }
         started = false;
     }
 
@@ -6,8 +6,11 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 import simpledb.common.Type;
 import simpledb.common.DbException;
+import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
 import simpledb.storage.Tuple;
+import simpledb.storage.StringDictionary;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
@@ -28,6 +31,15 @@ public class SeqScan implements OpIterator {
     private boolean opened;
     private TupleDesc tupleDesc;
     private String tableName;
+    /** predicates the scan may skip pages by, or null */
+    private List<Predicate> pagePredicates;
+    /** a condition tuples must pass to be returned, or null */
+    private transient PredicateCompiler.TupleCondition runtimeFilter;
+    /** the next tuple that passed runtimeFilter, if already read */
+    private transient Tuple lookahead;
+    /** the tuples read from the table in this pass, and the most in a full pass */
+    private transient long produced;
+    private long actualCardinality = -1;
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -78,17 +90,62 @@ public class SeqScan implements OpIterator {
         this.tableAlias = tableAlias;
         this.opened = false;
         this.tableName = Database.getCatalog().getTableName(this.tableid);
-        this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(transactionId);
+        this.it = newIterator();
         this.tupleDesc = Database.getCatalog().getTupleDesc(tableid);
         String[] newNames = new String[this.tupleDesc.numFields()];
         Type[] newTypes = new Type[this.tupleDesc.numFields()];
+        StringDictionary[] dictionaries = new StringDictionary[this.tupleDesc.numFields()];
         for (int i = 0; i < this.tupleDesc.numFields(); i++) {
             String name = this.tupleDesc.getFieldName(i);
             Type t = this.tupleDesc.getFieldType(i);
             newNames[i] = tableAlias + "." + name;
             newTypes[i] = t;
+            dictionaries[i] = this.tupleDesc.getDictionary(i);
         }
-        this.tupleDesc = new TupleDesc(newTypes, newNames);
+        this.tupleDesc = new TupleDesc(newTypes, newNames, dictionaries);
+    }
+
+    private DbFileIterator newIterator() {
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        if (pagePredicates != null && f instanceof HeapFile) {
+            return ((HeapFile) f).iterator(transactionId, pagePredicates);
+        }
+        return f.iterator(transactionId);
+    }
+
+    /**
+     * Let the scan skip the pages of the table that cannot hold a tuple
+     * satisfying all of predicates, as shown by the zone map of a
+     * {@link HeapFile}.  The scan still returns every tuple of the pages it
+     * reads, so the predicates must still be applied above it.  Must be
+     * called before the scan is opened.
+     *
+     * @param predicates predicates on the fields of this scan's TupleDesc
+     */
+    public void setPagePredicates(List<Predicate> predicates) {
+        if (this.opened) {
+            throw new IllegalStateException("SeqScan: iterator is open");
+        }
+        this.pagePredicates = predicates;
+        this.it = newIterator();
+    }
+
+    /**
+     * @return the predicates the scan skips pages by, or null
+     */
+    public List<Predicate> getPagePredicates() {
+        return this.pagePredicates;
+    }
+
+    /**
+     * Set a condition the tuples of the scan must pass, such as a probe of
+     * a {@link BloomFilter} built by a join above the scan.  Tuples that
+     * fail it are dropped by the scan itself.
+     *
+     * @param filter the condition, or null to return every tuple
+     */
+    void setRuntimeFilter(PredicateCompiler.TupleCondition filter) {
+        this.runtimeFilter = filter;
     }
 
     public SeqScan(TransactionId tid, int tableId) {
@@ -101,6 +158,26 @@ public class SeqScan implements OpIterator {
         }
         it.open();
         opened = true;
+        produced = 0;
+    }
+
+    /**
+     * @return the number of tuples of the table read in a full pass of the
+     *         scan, before any runtime filter (the most, if it has been
+     *         rewound and read again), or -1 if it has not yet been read to
+     *         the end
+     */
+    public long getActualCardinality() {
+        return this.actualCardinality;
+    }
+
+    private boolean more() throws TransactionAbortedException, DbException {
+        if (it.hasNext()) {
+            return true;
+        }
+        actualCardinality = Math.max(actualCardinality, produced);
+        produced = 0;
+        return false;
     }
 
     /**
@@ -121,7 +198,17 @@ public class SeqScan implements OpIterator {
         if (!opened) {
             throw new IllegalStateException("SeqScan: iterator is closed");
         }
-        return it.hasNext();
+        if (runtimeFilter == null) {
+            return lookahead != null || more();
+        }
+        while (lookahead == null && more()) {
+            Tuple t = it.next();
+            produced++;
+            if (runtimeFilter.test(t)) {
+                lookahead = t;
+            }
+        }
+        return lookahead != null;
     }
 
     public Tuple next() throws NoSuchElementException,
@@ -129,12 +216,23 @@ public class SeqScan implements OpIterator {
         if (!opened) {
             throw new IllegalStateException("SeqScan: iterator is closed");
         }
-        return it.next();
+        if (runtimeFilter != null && !hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (lookahead != null) {
+            Tuple t = lookahead;
+            lookahead = null;
+            return t;
+        }
+        Tuple t = it.next();
+        produced++;
+        return t;
     }
 
     public void close() {
         it.close();
         opened = false;
+        lookahead = null;
     }
 
     public void rewind() throws DbException, NoSuchElementException,
@@ -191,6 +191,24 @@ public class BTreeFile implements DbFile {
         return null;
 	}
 	
+	/**
+	 * Start reading the leaves to the right of leaf into the buffer pool in
+	 * the background, so that a scan moving right along the leaves does not
+	 * wait for each read in turn.  Scans call this for every leaf they
+	 * visit; the read-ahead is only topped up every half window of leaves.
+	 * 
+	 * @param leaf - the leaf the scan has just moved to
+	 * @param visited - the number of leaves the scan visited before this one
+	 */
+	static void readAheadLeaves(BTreeLeafPage leaf, int visited) {
+		int window = BufferPool.getReadAheadPages();
+		if (window == 0 || visited % Math.max(1, window / 2) != 0) {
+			return;
+		}
+		Database.getBufferPool().prefetch(leaf.getRightSiblingId(), window,
+				p -> ((BTreeLeafPage) p).getRightSiblingId());
+	}
+
 	/**
 	 * Convenience method to find a leaf page when there is no dirtypages HashMap.
 	 * Used by the BTreeFile iterator.
@@ -1062,6 +1080,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	int leaves = 0;
 
 	final TransactionId tid;
 	final BTreeFile f;
@@ -1084,6 +1103,8 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 				tid, BTreeRootPtrPage.getId(f.getId()), Permissions.READ_ONLY);
 		BTreePageId root = rootPtr.getRootId();
 		curp = f.findLeafPage(tid, root, null);
+		leaves = 0;
+		BTreeFile.readAheadLeaves(curp, leaves++);
 		it = curp.iterator();
 	}
 
@@ -1106,6 +1127,7 @@ class BTreeFileIterator extends AbstractDbFileIterator {
 			else {
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
 						nextp, Permissions.READ_ONLY);
+				BTreeFile.readAheadLeaves(curp, leaves++);
 				it = curp.iterator();
 				if (!it.hasNext())
 					it = null;
@@ -1143,6 +1165,7 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 
 	Iterator<Tuple> it = null;
 	BTreeLeafPage curp = null;
+	int leaves = 0;
 
 	final TransactionId tid;
 	final BTreeFile f;
@@ -1175,6 +1198,8 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 		else {
 			curp = f.findLeafPage(tid, root, null);
 		}
+		leaves = 0;
+		BTreeFile.readAheadLeaves(curp, leaves++);
 		it = curp.iterator();
 	}
 
@@ -1215,6 +1240,7 @@ class BTreeSearchIterator extends AbstractDbFileIterator {
 			else {
 				curp = (BTreeLeafPage) Database.getBufferPool().getPage(tid,
 						nextp, Permissions.READ_ONLY);
+				BTreeFile.readAheadLeaves(curp, leaves++);
 				it = curp.iterator();
 			}
 		}
@@ -135,12 +135,7 @@ public class BTreeLeafPage extends BTreePage {
         -- used by recovery */
 	public BTreeLeafPage getBeforeImage(){
 		try {
-			byte[] oldDataRef = null;
-			synchronized(oldDataLock)
-			{
-				oldDataRef = oldData;
-			}
-			return new BTreeLeafPage(pid,oldDataRef,keyField);
+			return new BTreeLeafPage(pid,getBeforeImageData(),keyField);
 		} catch (IOException e) {
 			e.printStackTrace();
 			//should never happen -- we parsed it OK before!
@@ -149,13 +144,6 @@ public class BTreeLeafPage extends BTreePage {
 		return null;
 	}
 
-	public void setBeforeImage() {
-		synchronized(oldDataLock)
-		{
-			oldData = getPageData().clone();
-		}
-	}
-
 	/**
 	 * Read tuples from the source file.
 	 */
@@ -297,6 +285,7 @@ public class BTreeLeafPage extends BTreePage {
 			throw new DbException("tried to delete tuple on invalid page or table");
 		if (!isSlotUsed(rid.getTupleNumber()))
 			throw new DbException("tried to delete null tuple.");
+		beforeChange();
 		markSlotUsed(rid.getTupleNumber(), false);
 		t.setRecordId(null);
 	}
@@ -324,6 +313,7 @@ public class BTreeLeafPage extends BTreePage {
 
 		if (emptySlot == -1)
 			throw new DbException("called addTuple on page with no empty slots.");
+		beforeChange();
 
 		// find the last key less than or equal to the key being inserted
 		int lessOrEqKey = -1;
@@ -403,6 +393,7 @@ public class BTreeLeafPage extends BTreePage {
 	 * @throws DbException if the id is not valid
 	 */
 	public void setLeftSiblingId(BTreePageId id) throws DbException {
+		beforeChange();
 		if(id == null) {
 			leftSibling = 0;
 		}
@@ -423,6 +414,7 @@ public class BTreeLeafPage extends BTreePage {
 	 * @throws DbException if the id is not valid
 	 */
 	public void setRightSiblingId(BTreePageId id) throws DbException {
+		beforeChange();
 		if(id == null) {
 			rightSibling = 0;
 		}
@@ -28,6 +28,8 @@ public abstract class BTreePage implements Page {
 	protected final int keyField;
 
 	protected int parent; // parent is always internal node or 0 for root node
+	// the page before the changes made since the last setBeforeImage, or
+	// null if there have been none: the before image is copied on write
 	protected byte[] oldData;
 	protected final Byte oldDataLock= (byte) 0;
 
@@ -107,6 +109,7 @@ public abstract class BTreePage implements Page {
 		if(id.pgcateg() != BTreePageId.INTERNAL && id.pgcateg() != BTreePageId.ROOT_PTR) {
 			throw new DbException("parent must be an internal node or root pointer");
 		}
+		beforeChange();
 		if(id.pgcateg() == BTreePageId.ROOT_PTR) {
 			parent = 0;
 		}
@@ -115,6 +118,42 @@ public abstract class BTreePage implements Page {
 		}
 	}
 
+	/**
+	 * Make the current contents of the page its before image.  No copy is
+	 * made until the page is next changed.
+	 */
+	public void setBeforeImage() {
+		synchronized(oldDataLock)
+		{
+			oldData = null;
+		}
+	}
+
+	/**
+	 * Called before each change to the page.  The first change since the
+	 * last {@link #setBeforeImage} saves the page's bytes as its before
+	 * image, so that pages that are only read never pay for one.
+	 */
+	protected void beforeChange() {
+		synchronized(oldDataLock)
+		{
+			if(oldData == null) {
+				oldData = getPageData();
+			}
+		}
+	}
+
+	/**
+	 * @return the bytes of the before image of this page
+	 */
+	protected byte[] getBeforeImageData() {
+		synchronized(oldDataLock)
+		{
+			// unchanged since the last before image was taken
+			return oldData != null ? oldData : getPageData();
+		}
+	}
+
 	/**
 	 * Marks this page as dirty/not dirty and record that transaction
 	 * that did the dirtying
@@ -0,0 +1,338 @@
+package simpledb.optimizer;
+
+import simpledb.execution.*;
+import simpledb.storage.TupleDesc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CardinalityFeedback remembers how many tuples the parts of executed plans
+ * actually produced, so that later plans over the same tables and predicates
+ * are costed with those counts instead of estimates.
+ * <p>
+ * When a {@link Query} is closed, {@link #record} walks its plan and stores
+ * the number of tuples each part returned in a full pass (see
+ * {@link Operator#getActualCardinality}) under a signature of what the part
+ * computes:
+ * <ul>
+ * <li>a scanned table with the predicates applied to it, e.g.
+ * <tt>emp[age &gt; 30 AND dept = 3]</tt>, with <tt>emp[]</tt> for the whole
+ * table;</li>
+ * <li>a join of such relations, as the sorted relations and the sorted join
+ * predicates between their fields.</li>
+ * </ul>
+ * Signatures name tables and fields, not aliases, so a count is reused by
+ * any query that filters and joins the same tables in the same way.
+ * {@link LogicalPlan} takes filter selectivities from them and
+ * {@link JoinOptimizer} the cardinalities of relations and of joined sets of
+ * relations; {@link #correctEstimates} shows them in the plans explained by
+ * the parser.  The last count seen for a signature wins, so counts follow the
+ * data as it changes.
+ * <p>
+ * Counts below the probe side of a {@link HashEquiJoin} whose Bloom filter
+ * dropped tuples are not recorded, as they are smaller than what the
+ * operators compute on their own.  At most
+ * simpledb.optimizer.CardinalityFeedback.maxEntries signatures (65536 by
+ * default) are kept; counts for new ones are dropped once it is full.
+ */
+public class CardinalityFeedback {
+
+    private static final int MAX_ENTRIES =
+            Integer.getInteger("simpledb.optimizer.CardinalityFeedback.maxEntries", 1 << 16);
+
+    private static final Map<String, Long> observed = new ConcurrentHashMap<>();
+
+    private CardinalityFeedback() {
+    }
+
+    /**
+     * @return the field name of column i of td without the alias it is
+     *         qualified with
+     */
+    public static String fieldName(TupleDesc td, int i) {
+        String name = td.getFieldName(i);
+        return name == null ? null : name.substring(name.indexOf('.') + 1);
+    }
+
+    /**
+     * @return the signature of predicate p over tuples of schema td
+     */
+    public static String predicate(TupleDesc td, Predicate p) {
+        return fieldName(td, p.getField()) + " " + p.getOp() + " " + p.getOperand();
+    }
+
+    /**
+     * @return the signature of table filtered by the predicates with the
+     *         given signatures
+     */
+    public static String relation(String table, List<String> predicates) {
+        List<String> ps = new ArrayList<>(predicates);
+        Collections.sort(ps);
+        return table + "[" + String.join(" AND ", ps) + "]";
+    }
+
+    /**
+     * @return the signature of the join predicate between field f1 of
+     *         relation r1 and field f2 of relation r2, the same whichever way
+     *         round they are given
+     */
+    public static String join(String r1, String f1, Predicate.Op op, String r2, String f2) {
+        String left = r1 + "." + f1, right = r2 + "." + f2;
+        if (left.compareTo(right) > 0) {
+            String tmp = left;
+            left = right;
+            right = tmp;
+            op = flip(op);
+        }
+        return left + " " + op + " " + right;
+    }
+
+    private static Predicate.Op flip(Predicate.Op op) {
+        switch (op) {
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    /**
+     * @return the signature of the join of relations by the join predicates
+     *         with the given signatures
+     */
+    public static String joinSet(List<String> relations, List<String> joins) {
+        List<String> rs = new ArrayList<>(relations);
+        List<String> js = new ArrayList<>(joins);
+        Collections.sort(rs);
+        Collections.sort(js);
+        return String.join(" x ", rs) + " ON " + String.join(" AND ", js);
+    }
+
+    /**
+     * @return the number of tuples last seen for signature, or null if none
+     *         has been
+     */
+    public static Long lookup(String signature) {
+        return signature == null ? null : observed.get(signature);
+    }
+
+    /**
+     * Forget every count.
+     */
+    public static void clear() {
+        observed.clear();
+    }
+
+    /**
+     * @return the number of signatures with a count
+     */
+    public static int size() {
+        return observed.size();
+    }
+
+    /**
+     * Store the counts of the parts of plan that have been read to the end.
+     */
+    public static void record(OpIterator plan) {
+        walk(plan, true, true);
+    }
+
+    /**
+     * Set the estimated cardinality of the operators of plan whose
+     * signatures have counts to those counts.  Projections and sorts take
+     * the estimate of their child.
+     */
+    public static void correctEstimates(OpIterator plan) {
+        walk(plan, false, true);
+    }
+
+    /** What a part of a plan computes, in signatures. */
+    private static class Part {
+        /** the scanned table and its predicates, if the part is one relation */
+        String table;
+        List<String> predicates;
+        List<String> relations;
+        List<String> joins;
+        /** per column, the signature of the relation it comes from and its field */
+        String[] relationOf;
+        String[] fieldOf;
+
+        String signature() {
+            return table != null ? relation(table, predicates) : joinSet(relations, joins);
+        }
+    }
+
+    private static Part relationPart(String table, List<String> predicates, String[] fieldOf) {
+        Part part = new Part();
+        part.table = table;
+        part.predicates = predicates;
+        String r = relation(table, predicates);
+        part.relations = Collections.singletonList(r);
+        part.joins = Collections.emptyList();
+        part.fieldOf = fieldOf;
+        part.relationOf = new String[fieldOf.length];
+        Arrays.fill(part.relationOf, r);
+        return part;
+    }
+
+    private static Part filtered(Part child, TupleDesc td, List<Predicate> ps) {
+        if (child == null || child.table == null) {
+            return null;
+        }
+        List<String> predicates = new ArrayList<>(child.predicates);
+        for (Predicate p : ps) {
+            predicates.add(predicate(td, p));
+        }
+        return relationPart(child.table, predicates, child.fieldOf);
+    }
+
+    private static Part projected(Part child, List<Integer> outFields) {
+        if (child == null) {
+            return null;
+        }
+        Part part = new Part();
+        part.relations = child.relations;
+        part.joins = child.joins;
+        part.relationOf = new String[outFields.size()];
+        part.fieldOf = new String[outFields.size()];
+        for (int i = 0; i < outFields.size(); i++) {
+            part.relationOf[i] = child.relationOf[outFields.get(i)];
+            part.fieldOf[i] = child.fieldOf[outFields.get(i)];
+        }
+        // a projection of one relation is still that relation
+        if (child.relations.size() == 1) {
+            part.table = child.table;
+            part.predicates = child.predicates;
+        }
+        return part;
+    }
+
+    private static Part joined(Part a, Part b, JoinPredicate p) {
+        if (a == null || b == null) {
+            return null;
+        }
+        Part part = new Part();
+        part.relations = new ArrayList<>(a.relations);
+        part.relations.addAll(b.relations);
+        part.joins = new ArrayList<>(a.joins);
+        part.joins.addAll(b.joins);
+        part.joins.add(join(a.relationOf[p.getField1()], a.fieldOf[p.getField1()], p.getOperator(),
+                b.relationOf[p.getField2()], b.fieldOf[p.getField2()]));
+        int n = a.fieldOf.length + b.fieldOf.length;
+        part.relationOf = Arrays.copyOf(a.relationOf, n);
+        part.fieldOf = Arrays.copyOf(a.fieldOf, n);
+        System.arraycopy(b.relationOf, 0, part.relationOf, a.fieldOf.length, b.fieldOf.length);
+        System.arraycopy(b.fieldOf, 0, part.fieldOf, a.fieldOf.length, b.fieldOf.length);
+        return part;
+    }
+
+    /**
+     * Describe the part of the plan rooted at op, and record or apply the
+     * counts of it and of the parts below it.
+     *
+     * @param record  true to record counts, false to apply them to estimates
+     * @param exact   false if the counts of op may be lowered by a filter
+     *                handed down from above
+     * @return what op computes, or null if it is not a filtered, projected
+     *         join of scanned tables
+     */
+    private static Part walk(OpIterator op, boolean record, boolean exact) {
+        Part part;
+        if (op instanceof SeqScan) {
+            SeqScan s = (SeqScan) op;
+            TupleDesc td = s.getTupleDesc();
+            String[] fields = new String[td.numFields()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fieldName(td, i);
+            }
+            part = relationPart(s.getTableName(), Collections.emptyList(), fields);
+            // counted before any runtime filter, but after the zone map has
+            // skipped pages, which leaves fewer tuples than the table has
+            if (record && s.getPagePredicates() == null) {
+                put(part.signature(), s.getActualCardinality());
+            }
+            return part;
+        }
+        if (!(op instanceof Operator)) {
+            return null;
+        }
+        Operator o = (Operator) op;
+        OpIterator[] children = o.getChildren();
+        long actual = o.getActualCardinality();
+        if (o instanceof Filter) {
+            Part child = walk(children[0], record, exact);
+            part = filtered(child, children[0].getTupleDesc(),
+                    Collections.singletonList(((Filter) o).getPredicate()));
+        } else if (o instanceof ConjunctiveFilter) {
+            Part child = walk(children[0], record, exact);
+            part = filtered(child, children[0].getTupleDesc(), ((ConjunctiveFilter) o).getPredicates());
+        } else if (o instanceof Project) {
+            Part child = walk(children[0], record, exact);
+            if (!record) {
+                copyEstimate(o, children[0]);
+            }
+            return projected(child, ((Project) o).getOutFieldIds());
+        } else if (o instanceof HashEquiJoin || o instanceof Join) {
+            JoinPredicate p;
+            boolean probeExact = exact;
+            if (o instanceof HashEquiJoin) {
+                p = ((HashEquiJoin) o).getJoinPredicate();
+                probeExact &= ((HashEquiJoin) o).getBloomRejected() == 0;
+            } else {
+                p = ((Join) o).getJoinPredicate();
+            }
+            part = joined(walk(children[0], record, exact), walk(children[1], record, probeExact), p);
+        } else {
+            for (OpIterator child : children) {
+                walk(child, record, exact);
+            }
+            if (!record && o instanceof OrderBy) {
+                copyEstimate(o, children[0]);
+            }
+            return null;
+        }
+        if (part != null) {
+            apply(part.signature(), o, actual, record, exact);
+        }
+        return part;
+    }
+
+    private static void apply(String signature, Operator o, long actual, boolean record, boolean exact) {
+        if (record) {
+            if (exact) {
+                put(signature, actual);
+            }
+        } else if (o != null) {
+            Long n = observed.get(signature);
+            if (n != null) {
+                o.setEstimatedCardinality((int) Math.min(n, Integer.MAX_VALUE));
+            }
+        }
+    }
+
+    private static void copyEstimate(Operator o, OpIterator child) {
+        if (child instanceof Operator) {
+            o.setEstimatedCardinality(((Operator) child).getEstimatedCardinality());
+        }
+    }
+
+    private static void put(String signature, long actual) {
+        if (actual < 0) {
+            return;
+        }
+        if (observed.size() < MAX_ENTRIES || observed.containsKey(signature)) {
+            observed.put(signature, actual);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package simpledb.optimizer;
+
+import simpledb.execution.Predicate;
+
+/**
+ * A class to represent a fixed-width histogram over a single double field.
+ * <p>
+ * Values within a bucket are taken to be spread evenly over its range, and
+ * to be distinct, so an equality predicate is expected to match one value.
+ */
+public class DoubleHistogram {
+
+    private final double min;
+    private final double max;
+    private final int[] counts;
+    private final double width;
+    private int total;
+
+    /**
+     * Create a new DoubleHistogram.
+     *
+     * @param buckets The number of buckets to split the input value into.
+     * @param min     The minimum value that will ever be passed to this
+     *                class for histogramming
+     * @param max     The maximum value that will ever be passed to this
+     *                class for histogramming
+     */
+    public DoubleHistogram(int buckets, double min, double max) {
+        this.min = min;
+        this.max = max;
+        this.counts = new int[Math.max(1, buckets)];
+        this.width = (max - min) / counts.length;
+    }
+
+    private int bucket(double v) {
+        if (width == 0) {
+            return 0;
+        }
+        return (int) Math.max(0, Math.min(counts.length - 1, (v - min) / width));
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     *
+     * @param v Value to add to the histogram
+     */
+    public void addValue(double v) {
+        if (v < min || v > max) {
+            throw new IllegalArgumentException(v + " is outside [" + min + ", " + max + "]");
+        }
+        counts[bucket(v)]++;
+        total++;
+    }
+
+    /** @return the estimated fraction of values equal to v */
+    private double equal(double v) {
+        if (v < min || v > max || counts[bucket(v)] == 0) {
+            return 0;
+        }
+        return 1.0 / total;
+    }
+
+    /** @return the estimated fraction of values greater than v */
+    private double greater(double v) {
+        if (v < min) {
+            return 1;
+        }
+        if (v >= max) {
+            return 0;
+        }
+        int b = bucket(v);
+        double right = min + (b + 1) * width;
+        double n = counts[b] * Math.max(0, Math.min(1, (right - v) / width));
+        for (int i = b + 1; i < counts.length; i++) {
+            n += counts[i];
+        }
+        return n / total;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this
+     * table.
+     *
+     * @param op Operator
+     * @param v  Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, double v) {
+        if (total == 0) {
+            return 0;
+        }
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return equal(v);
+            case NOT_EQUALS:
+                return 1 - equal(v);
+            case GREATER_THAN:
+                return greater(v);
+            case GREATER_THAN_OR_EQ:
+                return Math.min(1, greater(v) + equal(v));
+            case LESS_THAN:
+                return Math.max(0, 1 - greater(v) - equal(v));
+            case LESS_THAN_OR_EQ:
+                return 1 - greater(v);
+        }
+        return 1.0;
+    }
+
+    /**
+     * @return the average selectivity of an equality predicate on this
+     *         histogram
+     */
+    public double avgSelectivity() {
+        return total == 0 ? 0 : 1.0 / total;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("DoubleHistogram[").append(min).append(", ").append(max).append("]");
+        for (int c : counts) {
+            sb.append(' ').append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -16,6 +16,10 @@ import javax.swing.tree.*;
  * logical plan.
  */
 public class JoinOptimizer {
+
+    /** the most joins {@link #orderJoins} plans by dynamic programming */
+    private static volatile int dpJoinLimit = Integer.getInteger("simpledb.optimizer.JoinOptimizer.dpJoinLimit", 12);
+
     final LogicalPlan p;
     final List<LogicalJoinNode> joins;
 
@@ -32,6 +36,14 @@ public class JoinOptimizer {
         this.joins = joins;
     }
 
+    /**
+     * Set the most joins {@link #orderJoins} plans by dynamic programming
+     * rather than greedily.
+     */
+    public static void setDpJoinLimit(int joins) {
+        dpJoinLimit = joins;
+    }
+
     /**
      * Return best iterator for computing a given logical join, given the
      * specified statistics, and the provided left and right subplans. Note that
@@ -126,11 +138,15 @@ public class JoinOptimizer {
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
         } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return -1.0;
+            if (j.p == Predicate.Op.EQUALS) {
+                // HashEquiJoin hashes the left side in batches of MAP_SIZE
+                // tuples, and scans the right side once per batch; hashing a
+                // tuple costs about twice as much as probing with one
+                double batches = Math.max(1, Math.ceil((double) card1 / HashEquiJoin.MAP_SIZE));
+                return cost1 + 2.0 * card1 + batches * (cost2 + card2);
+            }
+            // nested loops: the right side is scanned once per left tuple
+            return cost1 + (double) card1 * cost2 + (double) card1 * card2;
         }
     }
 
@@ -174,46 +190,46 @@ public class JoinOptimizer {
                                                    String field2PureName, int card1, int card2, boolean t1pkey,
                                                    boolean t2pkey, Map<String, TableStats> stats,
                                                    Map<String, Integer> tableAliasToId) {
-        int card = 1;
-        // some code goes here
-        return card <= 0 ? 1 : card;
-    }
-
-    /**
-     * Helper method to enumerate all of the subsets of a given size of a
-     * specified vector.
-     * 
-     * @param v
-     *            The vector whose subsets are desired
-     * @param size
-     *            The size of the subsets of interest
-     * @return a set of all subsets of the specified size
-     */
-    public <T> Set<Set<T>> enumerateSubsets(List<T> v, int size) {
-        Set<Set<T>> els = new HashSet<>();
-        els.add(new HashSet<>());
-        // Iterator<Set> it;
-        // long start = System.currentTimeMillis();
-
-        for (int i = 0; i < size; i++) {
-            Set<Set<T>> newels = new HashSet<>();
-            for (Set<T> s : els) {
-                for (T t : v) {
-                    Set<T> news = new HashSet<>(s);
-                    if (news.add(t))
-                        newels.add(news);
-                }
-            }
-            els = newels;
+        long card;
+        long equal;
+        if (t1pkey && t2pkey) {
+            equal = Math.min(card1, card2);
+        } else if (t1pkey) {
+            equal = card2;
+        } else if (t2pkey) {
+            equal = card1;
+        } else {
+            equal = Math.max(card1, card2);
         }
-
-        return els;
-
+        if (joinOp == Predicate.Op.EQUALS) {
+            card = equal;
+        } else if (joinOp == Predicate.Op.NOT_EQUALS) {
+            card = (long) card1 * card2 - equal;
+        } else {
+            // range joins keep about a third of the cross product
+            card = (long) (0.3 * card1 * card2);
+        }
+        card = Math.min(card, Integer.MAX_VALUE);
+        return card <= 0 ? 1 : (int) card;
     }
 
     /**
-     * Compute a logical, reasonably efficient join on the specified tables. See
-     * PS4 for hints on how this should be implemented.
+     * Compute a logical, reasonably efficient join on the specified tables.
+     * <p>
+     * The tables and the join predicates between them form a join graph.
+     * With at most simpledb.optimizer.JoinOptimizer.dpJoinLimit joins (12 by
+     * default; see {@link #setDpJoinLimit}), the cheapest plan is found by dynamic programming over the
+     * connected subgraphs of the join graph and their connected complements
+     * (DPccp), so only sets of tables that join without a cross product are
+     * ever costed, each pair of them once.  Sets of tables are longs in the
+     * {@link PlanCache}.  Plans may be bushy: the joins building each side of
+     * a join come before it.  With more joins, or more than 63 tables, the
+     * plan is built greedily instead, by always making next the join with
+     * the smallest result (GOO).
+     * <p>
+     * Join predicates between tables the plan has already joined come after
+     * the joins of the plan, and joins with subqueries last, in the order
+     * they are given in.
      * 
      * @param stats
      *            Statistics for each table involved in the join, referenced by
@@ -225,8 +241,8 @@ public class JoinOptimizer {
      * @param explain
      *            Indicates whether your code should explain its query plan or
      *            simply execute it
-     * @return A List<LogicalJoinNode> that stores joins in the left-deep
-     *         order in which they should be executed.
+     * @return A List<LogicalJoinNode> that stores joins in the order in which
+     *         they should be executed.
      * @throws ParsingException
      *             when stats or filter selectivities is missing a table in the
      *             join, or or when another internal error occurs
@@ -236,172 +252,365 @@ public class JoinOptimizer {
             Map<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
 
-        // some code goes here
-        //Replace the following
-        return joins;
+        List<LogicalJoinNode> edges = new ArrayList<>();
+        List<LogicalJoinNode> subplans = new ArrayList<>();
+        for (LogicalJoinNode j : joins) {
+            if (j instanceof LogicalSubplanJoinNode) {
+                subplans.add(j);
+            } else {
+                edges.add(j);
+            }
+        }
+        JoinGraph g = new JoinGraph(edges, stats, filterSelectivities);
+
+        List<LogicalJoinNode> order = null;
+        if (edges.size() <= dpJoinLimit && g.aliases.size() < Long.SIZE) {
+            order = g.dpccp();
+        }
+        if (order == null) {
+            // too many joins, or the graph is not connected
+            order = g.greedy();
+        }
+        order.addAll(g.unused(order));
+        order.addAll(subplans);
+
+        if (explain && g.aliases.size() < Long.SIZE) {
+            printJoins(order, g.pc, g.aliases, stats, filterSelectivities);
+        }
+        return order;
     }
 
     // ===================== Private Methods =================================
 
     /**
-     * This is a helper method that computes the cost and cardinality of joining
-     * joinToRemove to joinSet (joinSet should contain joinToRemove), given that
-     * all of the subsets of size joinSet.size() - 1 have already been computed
-     * and stored in PlanCache pc.
-     * 
-     * @param stats
-     *            table stats for all of the tables, referenced by table names
-     *            rather than alias (see {@link #orderJoins})
-     * @param filterSelectivities
-     *            the selectivities of the filters over each of the tables
-     *            (where tables are indentified by their alias or name if no
-     *            alias is given)
-     * @param joinToRemove
-     *            the join to remove from joinSet
-     * @param joinSet
-     *            the set of joins being considered
-     * @param bestCostSoFar
-     *            the best way to join joinSet so far (minimum of previous
-     *            invocations of computeCostAndCardOfSubplan for this joinSet,
-     *            from returned CostCard)
-     * @param pc
-     *            the PlanCache for this join; should have subplans for all
-     *            plans of size joinSet.size()-1
-     * @return A {@link CostCard} objects desribing the cost, cardinality,
-     *         optimal subplan
-     * @throws ParsingException
-     *             when stats, filterSelectivities, or pc object is missing
-     *             tables involved in join
+     * The tables of the joins being ordered and the join predicates between
+     * them, and the best plans found for sets of the tables.  The tables are
+     * numbered breadth first from the first table of each connected part of
+     * the graph, as DPccp needs, and a set of them is a long with bit i set
+     * for table i.
      */
-    @SuppressWarnings("unchecked")
-    private CostCard computeCostAndCardOfSubplan(
-            Map<String, TableStats> stats,
-            Map<String, Double> filterSelectivities,
-            LogicalJoinNode joinToRemove, Set<LogicalJoinNode> joinSet,
-            double bestCostSoFar, PlanCache pc) throws ParsingException {
-
-        LogicalJoinNode j = joinToRemove;
-
-        List<LogicalJoinNode> prevBest;
-
-        if (this.p.getTableId(j.t1Alias) == null)
-            throw new ParsingException("Unknown table " + j.t1Alias);
-        if (this.p.getTableId(j.t2Alias) == null)
-            throw new ParsingException("Unknown table " + j.t2Alias);
-
-        String table1Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t1Alias));
-        String table2Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t2Alias));
-        String table1Alias = j.t1Alias;
-        String table2Alias = j.t2Alias;
-
-        Set<LogicalJoinNode> news = new HashSet<>(joinSet);
-        news.remove(j);
-
-        double t1cost, t2cost;
-        int t1card, t2card;
-        boolean leftPkey, rightPkey;
-
-        if (news.isEmpty()) { // base case -- both are base relations
-            prevBest = new ArrayList<>();
-            t1cost = stats.get(table1Name).estimateScanCost();
-            t1card = stats.get(table1Name).estimateTableCardinality(
-                    filterSelectivities.get(j.t1Alias));
-            leftPkey = isPkey(j.t1Alias, j.f1PureName);
-
-            t2cost = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateScanCost();
-            t2card = table2Alias == null ? 0 : stats.get(table2Name)
-                    .estimateTableCardinality(
-                            filterSelectivities.get(j.t2Alias));
-            rightPkey = table2Alias != null && isPkey(table2Alias,
-                    j.f2PureName);
-        } else {
-            // news is not empty -- figure best way to join j to news
-            prevBest = pc.getOrder(news);
+    private class JoinGraph {
+        final Map<String, TableStats> stats;
+        final Map<String, Double> filterSelectivities;
+        /** the aliases of the tables, by number */
+        final List<String> aliases = new ArrayList<>();
+        final Map<String, Integer> numbers = new HashMap<>();
+        final List<LogicalJoinNode> edges;
+        /** per edge, the edge with its sides swapped */
+        final List<LogicalJoinNode> swapped = new ArrayList<>();
+        /** the edge each node of a plan is, either way round */
+        final Map<LogicalJoinNode, Integer> edgeOf = new IdentityHashMap<>();
+        /** the plans of single tables */
+        final List<CostCard> tables = new ArrayList<>();
+        /** per table, the tables it joins with, if there are less than 64 */
+        long[] neighbors;
+        final PlanCache pc = new PlanCache();
+
+        JoinGraph(List<LogicalJoinNode> edges, Map<String, TableStats> stats,
+                Map<String, Double> filterSelectivities) throws ParsingException {
+            this.edges = edges;
+            this.stats = stats;
+            this.filterSelectivities = filterSelectivities;
+            Map<String, List<String>> adjacent = new LinkedHashMap<>();
+            for (int e = 0; e < edges.size(); e++) {
+                LogicalJoinNode j = edges.get(e);
+                LogicalJoinNode k = j.swapInnerOuter();
+                swapped.add(k);
+                edgeOf.put(j, e);
+                edgeOf.put(k, e);
+                adjacent.computeIfAbsent(j.t1Alias, a -> new ArrayList<>()).add(j.t2Alias);
+                adjacent.computeIfAbsent(j.t2Alias, a -> new ArrayList<>()).add(j.t1Alias);
+            }
+            for (String start : adjacent.keySet()) {
+                if (numbers.containsKey(start)) {
+                    continue;
+                }
+                numbers.put(start, aliases.size());
+                aliases.add(start);
+                for (int i = aliases.size() - 1; i < aliases.size(); i++) {
+                    for (String next : adjacent.get(aliases.get(i))) {
+                        if (!numbers.containsKey(next)) {
+                            numbers.put(next, aliases.size());
+                            aliases.add(next);
+                        }
+                    }
+                }
+            }
+            for (String alias : aliases) {
+                if (p.getTableId(alias) == null)
+                    throw new ParsingException("Unknown table " + alias);
+                CostCard cc = new CostCard();
+                cc.cost = stats.get(Database.getCatalog().getTableName(p.getTableId(alias)))
+                        .estimateScanCost();
+                cc.card = tableCardinality(stats, filterSelectivities, alias);
+                cc.plan = new ArrayList<>();
+                tables.add(cc);
+            }
+            if (aliases.size() < Long.SIZE) {
+                neighbors = new long[aliases.size()];
+                for (LogicalJoinNode j : edges) {
+                    neighbors[numbers.get(j.t1Alias)] |= bit(j.t2Alias);
+                    neighbors[numbers.get(j.t2Alias)] |= bit(j.t1Alias);
+                }
+                for (int i = 0; i < tables.size(); i++) {
+                    CostCard cc = tables.get(i);
+                    pc.addPlan(1L << i, cc.cost, cc.card, cc.plan);
+                }
+            }
+        }
 
-            // possible that we have not cached an answer, if subset
-            // includes a cross product
-            if (prevBest == null) {
-                return null;
+        long bit(String alias) {
+            return 1L << numbers.get(alias);
+        }
+
+        /**
+         * @return the tables in s, or joining with one in s, but not in s
+         */
+        long neighbors(long s) {
+            long n = 0;
+            for (long t = s; t != 0; t &= t - 1) {
+                n |= neighbors[Long.numberOfTrailingZeros(t)];
             }
+            return n & ~s;
+        }
 
-            double prevBestCost = pc.getCost(news);
-            int bestCard = pc.getCard(news);
+        /**
+         * @return the set of tables 0 to i
+         */
+        long upTo(int i) {
+            return i >= Long.SIZE - 1 ? -1L : (1L << (i + 1)) - 1;
+        }
 
-            // estimate cost of right subtree
-            if (doesJoin(prevBest, table1Alias)) { // j.t1 is in prevBest
-                t1cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t1card = bestCard;
-                leftPkey = hasPkey(prevBest);
+        /**
+         * @return the cheapest plan joining all the tables, or null if they
+         *         are not all connected by joins
+         */
+        List<LogicalJoinNode> dpccp() {
+            for (int i = aliases.size() - 1; i >= 0; i--) {
+                emitCsg(1L << i);
+                enumerateCsgRec(1L << i, upTo(i));
+            }
+            List<LogicalJoinNode> order = pc.getOrder(upTo(aliases.size() - 1));
+            return order == null ? null : new ArrayList<>(order);
+        }
 
-                t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateScanCost();
-                t2card = j.t2Alias == null ? 0 : stats.get(table2Name)
-                        .estimateTableCardinality(
-                                filterSelectivities.get(j.t2Alias));
-                rightPkey = j.t2Alias != null && isPkey(j.t2Alias,
-                        j.f2PureName);
-            } else if (doesJoin(prevBest, j.t2Alias)) { // j.t2 is in prevbest
-                                                        // (both
-                // shouldn't be)
-                t2cost = prevBestCost; // left side just has cost of whatever
-                                       // left
-                // subtree is
-                t2card = bestCard;
-                rightPkey = hasPkey(prevBest);
-                t1cost = stats.get(table1Name).estimateScanCost();
-                t1card = stats.get(table1Name).estimateTableCardinality(
-                        filterSelectivities.get(j.t1Alias));
-                leftPkey = isPkey(j.t1Alias, j.f1PureName);
+        // Subsets are enumerated in increasing order, so that every set of
+        // tables has its best plan before it is joined with another.
 
-            } else {
-                // don't consider this plan if one of j.t1 or j.t2
-                // isn't a table joined in prevBest (cross product)
+        private void enumerateCsgRec(long s1, long x) {
+            long n = neighbors(s1) & ~x;
+            for (long s = n & -n; s != 0; s = (s - n) & n) {
+                emitCsg(s1 | s);
+            }
+            for (long s = n & -n; s != 0; s = (s - n) & n) {
+                enumerateCsgRec(s1 | s, x | n);
+            }
+        }
+
+        private void emitCsg(long s1) {
+            long x = s1 | upTo(Long.numberOfTrailingZeros(s1));
+            long n = neighbors(s1) & ~x;
+            for (int v = Long.SIZE - 1 - Long.numberOfLeadingZeros(n); v >= 0; v--) {
+                if ((n & (1L << v)) != 0) {
+                    emitCsgCmp(s1, 1L << v);
+                    enumerateCmpRec(s1, 1L << v, x | (upTo(v) & n));
+                }
+            }
+        }
+
+        private void enumerateCmpRec(long s1, long s2, long x) {
+            long n = neighbors(s2) & ~x;
+            for (long s = n & -n; s != 0; s = (s - n) & n) {
+                emitCsgCmp(s1, s2 | s);
+            }
+            for (long s = n & -n; s != 0; s = (s - n) & n) {
+                enumerateCmpRec(s1, s2 | s, x | n);
+            }
+        }
+
+        private CostCard plan(long s) {
+            CostCard cc = new CostCard();
+            cc.cost = pc.getCost(s);
+            cc.card = pc.getCard(s);
+            cc.plan = pc.getOrder(s);
+            return cc;
+        }
+
+        /**
+         * Cost joining the connected sets of tables s1 and s2 both ways
+         * round, and keep the plan if it is the best for their union.
+         */
+        private void emitCsgCmp(long s1, long s2) {
+            LogicalJoinNode j = null;
+            for (LogicalJoinNode e : edges) {
+                if ((bit(e.t1Alias) & s1) != 0 && (bit(e.t2Alias) & s2) != 0) {
+                    j = e;
+                    break;
+                } else if ((bit(e.t1Alias) & s2) != 0 && (bit(e.t2Alias) & s1) != 0) {
+                    j = swapped.get(edgeOf.get(e));
+                    break;
+                }
+            }
+            long s = s1 | s2;
+            CostCard best = pc.getOrder(s) == null ? null : plan(s);
+            CostCard cc = join(plan(s1), plan(s2), j, best);
+            if (cc != null) {
+                best = cc;
+            }
+            cc = join(plan(s2), plan(s1), swapped(j), best);
+            if (cc != null) {
+                best = cc;
+            }
+            pc.addPlan(s, best.cost, best.card, best.plan);
+        }
+
+        private LogicalJoinNode swapped(LogicalJoinNode j) {
+            int e = edgeOf.get(j);
+            return j == edges.get(e) ? swapped.get(e) : edges.get(e);
+        }
+
+        /**
+         * @return the plan joining left and right by j, whose first table is
+         *         in left, or null if it costs no less than best
+         */
+        private CostCard join(CostCard left, CostCard right, LogicalJoinNode j, CostCard best) {
+            double cost = estimateJoinCost(j, left.card, right.card, left.cost, right.cost);
+            if (best != null && cost >= best.cost) {
                 return null;
             }
+            CostCard cc = new CostCard();
+            cc.cost = cost;
+            cc.plan = new ArrayList<>(left.plan);
+            cc.plan.addAll(right.plan);
+            cc.plan.add(j);
+            Long observed = CardinalityFeedback.lookup(joinSetSignature(cc.plan));
+            cc.card = observed != null ? (int) Math.min(observed, Integer.MAX_VALUE)
+                    : estimateJoinCardinality(j, left.card, right.card,
+                            left.plan.isEmpty() ? isPkey(j.t1Alias, j.f1PureName) : hasPkey(left.plan),
+                            right.plan.isEmpty() ? isPkey(j.t2Alias, j.f2PureName) : hasPkey(right.plan),
+                            stats);
+            return cc;
         }
 
-        // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        /**
+         * @return a plan joining the tables connected by joins, made by
+         *         joining the two parts of the plan with the smallest result
+         *         until no two parts join
+         */
+        List<LogicalJoinNode> greedy() {
+            int n = aliases.size();
+            // per table, the table whose part it is in, and per part its plan
+            int[] part = new int[n];
+            CostCard[] plans = new CostCard[n];
+            long[] sets = new long[n];
+            for (int i = 0; i < n; i++) {
+                part[i] = i;
+                plans[i] = tables.get(i);
+                sets[i] = neighbors == null ? 0 : 1L << i;
+            }
+            while (true) {
+                CostCard best = null;
+                int a = -1, b = -1;
+                for (int e = 0; e < edges.size(); e++) {
+                    LogicalJoinNode j = edges.get(e);
+                    int p1 = find(part, numbers.get(j.t1Alias)), p2 = find(part, numbers.get(j.t2Alias));
+                    if (p1 == p2) {
+                        continue;
+                    }
+                    CostCard cc = join(plans[p1], plans[p2], j, null);
+                    CostCard other = join(plans[p2], plans[p1], swapped.get(e), cc);
+                    if (other != null) {
+                        cc = other;
+                    }
+                    if (best == null || cc.card < best.card || (cc.card == best.card && cc.cost < best.cost)) {
+                        best = cc;
+                        a = p1;
+                        b = p2;
+                    }
+                }
+                if (best == null) {
+                    break;
+                }
+                part[b] = a;
+                plans[a] = best;
+                sets[a] |= sets[b];
+                if (neighbors != null) {
+                    pc.addPlan(sets[a], best.cost, best.card, best.plan);
+                }
+            }
+            List<LogicalJoinNode> order = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (part[i] == i) {
+                    order.addAll(plans[i].plan);
+                }
+            }
+            return order;
+        }
 
-        LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
-        if (cost2 < cost1) {
-            boolean tmp;
-            j = j2;
-            cost1 = cost2;
-            tmp = rightPkey;
-            rightPkey = leftPkey;
-            leftPkey = tmp;
+        private int find(int[] part, int i) {
+            while (part[i] != i) {
+                part[i] = part[part[i]];
+                i = part[i];
+            }
+            return i;
         }
-        if (cost1 >= bestCostSoFar)
-            return null;
 
-        CostCard cc = new CostCard();
+        /**
+         * @return the edges that are not in order, in the order given
+         */
+        List<LogicalJoinNode> unused(List<LogicalJoinNode> order) {
+            boolean[] used = new boolean[edges.size()];
+            for (LogicalJoinNode j : order) {
+                used[edgeOf.get(j)] = true;
+            }
+            List<LogicalJoinNode> rest = new ArrayList<>();
+            for (int e = 0; e < edges.size(); e++) {
+                if (!used[e]) {
+                    rest.add(edges.get(e));
+                }
+            }
+            return rest;
+        }
+    }
 
-        cc.card = estimateJoinCardinality(j, t1card, t2card, leftPkey,
-                rightPkey, stats);
-        cc.cost = cost1;
-        cc.plan = new ArrayList<>(prevBest);
-        cc.plan.add(j); // prevbest is left -- add new join to end
-        return cc;
+    /**
+     * @return the number of tuples of the table with the given alias that
+     *         pass its filters: as last seen by {@link CardinalityFeedback},
+     *         or else as estimated from stats
+     */
+    private int tableCardinality(Map<String, TableStats> stats,
+            Map<String, Double> filterSelectivities, String alias) {
+        Long observed = CardinalityFeedback.lookup(p.getRelationSignature(alias));
+        if (observed != null) {
+            return (int) Math.min(observed, Integer.MAX_VALUE);
+        }
+        String tableName = Database.getCatalog().getTableName(p.getTableId(alias));
+        return stats.get(tableName).estimateTableCardinality(filterSelectivities.get(alias));
     }
 
     /**
-     * Return true if the specified table is in the list of joins, false
-     * otherwise
+     * @return the {@link CardinalityFeedback} signature of the result of
+     *         joins, or null if it has none because a join is with a subquery
      */
-    private boolean doesJoin(List<LogicalJoinNode> joinlist, String table) {
-        for (LogicalJoinNode j : joinlist) {
-            if (j.t1Alias.equals(table)
-                    || (j.t2Alias != null && j.t2Alias.equals(table)))
-                return true;
+    private String joinSetSignature(Collection<LogicalJoinNode> joins) {
+        List<String> relations = new ArrayList<>();
+        List<String> predicates = new ArrayList<>();
+        Set<String> aliases = new HashSet<>();
+        for (LogicalJoinNode j : joins) {
+            String r1 = p.getRelationSignature(j.t1Alias);
+            String r2 = j.t2Alias == null ? null : p.getRelationSignature(j.t2Alias);
+            if (j instanceof LogicalSubplanJoinNode || r1 == null || r2 == null) {
+                return null;
+            }
+            if (aliases.add(j.t1Alias)) {
+                relations.add(r1);
+            }
+            if (aliases.add(j.t2Alias)) {
+                relations.add(r2);
+            }
+            predicates.add(CardinalityFeedback.join(r1, j.f1PureName, j.p, r2, j.f2PureName));
         }
-        return false;
+        return CardinalityFeedback.joinSet(relations, predicates);
     }
 
     /**
@@ -451,7 +660,7 @@ public class JoinOptimizer {
      *            alias is given)
      */
     private void printJoins(List<LogicalJoinNode> js, PlanCache pc,
-            Map<String, TableStats> stats,
+            List<String> aliases, Map<String, TableStats> stats,
             Map<String, Double> selectivities) {
 
         JFrame f = new JFrame("Join Plan for " + p.getQuery());
@@ -464,76 +673,36 @@ public class JoinOptimizer {
 
         f.setSize(300, 500);
 
+        // per table, the tree of the tables joined with it so far, and their set
         Map<String, DefaultMutableTreeNode> m = new HashMap<>();
+        Map<String, Long> joined = new HashMap<>();
 
-        // int numTabs = 0;
-
-        // int k;
         DefaultMutableTreeNode root = null, treetop = null;
-        HashSet<LogicalJoinNode> pathSoFar = new HashSet<>();
-        boolean neither;
 
         System.out.println(js);
         for (LogicalJoinNode j : js) {
-            pathSoFar.add(j);
-            System.out.println("PATH SO FAR = " + pathSoFar);
-
-            String table1Name = Database.getCatalog().getTableName(
-                    this.p.getTableId(j.t1Alias));
-            String table2Name = Database.getCatalog().getTableName(
-                    this.p.getTableId(j.t2Alias));
-
-            // Double c = pc.getCost(pathSoFar);
-            neither = true;
-
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
-                    + pc.getCost(pathSoFar) + ", card = "
-                    + pc.getCard(pathSoFar) + ")");
-            DefaultMutableTreeNode n = m.get(j.t1Alias);
-            if (n == null) { // never seen this table before
-                n = new DefaultMutableTreeNode(j.t1Alias
-                        + " (Cost = "
-                        + stats.get(table1Name).estimateScanCost()
-                        + ", card = "
-                        + stats.get(table1Name).estimateTableCardinality(
-                                selectivities.get(j.t1Alias)) + ")");
-                root.add(n);
-            } else {
-                // make left child root n
-                root.add(n);
-                neither = false;
+            long s1 = tableSet(j.t1Alias, aliases, joined);
+            long s2 = tableSet(j.t2Alias, aliases, joined);
+            // false for subplans and for predicates between joined tables
+            boolean merge = j.t2Alias != null && s1 != s2;
+
+            root = new DefaultMutableTreeNode("Join " + j + (merge ? " (Cost ="
+                    + pc.getCost(s1 | s2) + ", card = " + pc.getCard(s1 | s2) + ")" : ""));
+            root.add(tableTree(j.t1Alias, m, stats, selectivities));
+            if (merge) {
+                root.add(tableTree(j.t2Alias, m, stats, selectivities));
+            } else if (j.t2Alias == null) {
+                root.add(new DefaultMutableTreeNode("Subplan"));
             }
-            m.put(j.t1Alias, root);
-
-            n = m.get(j.t2Alias);
-            if (n == null) { // never seen this table before
-
-                n = new DefaultMutableTreeNode(
-                        j.t2Alias == null ? "Subplan"
-                                : (j.t2Alias
-                                        + " (Cost = "
-                                        + stats.get(table2Name)
-                                                .estimateScanCost()
-                                        + ", card = "
-                                        + stats.get(table2Name)
-                                                .estimateTableCardinality(
-                                                        selectivities
-                                                                .get(j.t2Alias)) + ")"));
-                root.add(n);
-            } else {
-                // make right child root n
-                root.add(n);
-                neither = false;
-            }
-            m.put(j.t2Alias, root);
 
-            // unless this table doesn't join with other tables,
-            // all tables are accessed from root
-            if (!neither) {
-                for (String key : m.keySet()) {
-                    m.put(key, root);
+            // the tables of both sides are now accessed from root
+            for (int i = 0; i < aliases.size(); i++) {
+                if (((s1 | s2) & (1L << i)) != 0) {
+                    m.put(aliases.get(i), root);
+                    joined.put(aliases.get(i), s1 | s2);
                 }
             }
+            m.put(j.t1Alias, root);
 
             treetop = root;
         }
@@ -566,4 +735,32 @@ public class JoinOptimizer {
 
     }
 
+    /**
+     * @return the set of tables joined with alias so far, in joined
+     */
+    private static long tableSet(String alias, List<String> aliases, Map<String, Long> joined) {
+        if (alias == null) {
+            return 0;
+        }
+        Long s = joined.get(alias);
+        int i = aliases.indexOf(alias);
+        return s != null ? s : i < 0 ? 0 : 1L << i;
+    }
+
+    /**
+     * @return the tree of the tables joined with alias so far, or a leaf of
+     *         the table alone
+     */
+    private DefaultMutableTreeNode tableTree(String alias, Map<String, DefaultMutableTreeNode> m,
+            Map<String, TableStats> stats, Map<String, Double> selectivities) {
+        DefaultMutableTreeNode n = m.get(alias);
+        if (n != null) {
+            return n;
+        }
+        String tableName = Database.getCatalog().getTableName(this.p.getTableId(alias));
+        return new DefaultMutableTreeNode(alias + " (Cost = "
+                + stats.get(tableName).estimateScanCost() + ", card = "
+                + stats.get(tableName).estimateTableCardinality(selectivities.get(alias)) + ")");
+    }
+
 }
@@ -30,6 +30,8 @@ public class LogicalPlan {
     private final List<LogicalFilterNode> filters;
     private final Map<String, OpIterator> subplanMap;
     private final Map<String,Integer> tableMap;
+    /** per alias, the signature of the table and the predicates on it; see {@link CardinalityFeedback} */
+    private final Map<String,String> relationSignatures = new HashMap<>();
 
     private final List<LogicalSelectListNode> selectList;
     private String groupByField = null;
@@ -79,6 +81,15 @@ public class LogicalPlan {
         return tableMap.get(alias);
     }
     
+    /**
+     * @return the signature of the table with the given alias and the
+     *         predicates on it, once {@link #physicalPlan} has been called;
+     *         see {@link CardinalityFeedback}
+     */
+    String getRelationSignature(String alias) {
+        return relationSignatures.get(alias);
+    }
+
     public Map<String,Integer> getTableAliasToIdMapping()
     {
         return this.tableMap;
@@ -309,6 +320,9 @@ public class LogicalPlan {
 
         }
 
+        // the predicates on each table, and their estimated selectivities
+        Map<String,List<Predicate>> tablePredicates = new LinkedHashMap<>();
+        Map<String,List<Double>> tableSelectivities = new HashMap<>();
         for (LogicalFilterNode lf : filters) {
             OpIterator subplan = subplanMap.get(lf.tableAlias);
             if (subplan == null) {
@@ -324,10 +338,11 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c));
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            try {
+                f = ftyp.parse(lf.c);
+            } catch (java.text.ParseException e) {
+                throw new ParsingException("Value " + lf.c + " is not a " + ftyp + ", in filter on " + lf.fieldQuantifiedName);
+            }
 
             Predicate p = null;
             try {
@@ -335,15 +350,45 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
-
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
 
             double sel = s.estimateSelectivity(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p, f);
             filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
+            tablePredicates.computeIfAbsent(lf.tableAlias, a -> new ArrayList<>()).add(p);
+            tableSelectivities.computeIfAbsent(lf.tableAlias, a -> new ArrayList<>()).add(sel);
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
+
+        // selectivities seen when the same predicates last ran replace the estimates
+        for (LogicalScanNode table : tables) {
+            String name = Database.getCatalog().getTableName(table.t);
+            List<String> ps = new ArrayList<>();
+            TupleDesc td = subplanMap.get(table.alias).getTupleDesc();
+            for (Predicate p : tablePredicates.getOrDefault(table.alias, Collections.emptyList())) {
+                ps.add(CardinalityFeedback.predicate(td, p));
+            }
+            String signature = CardinalityFeedback.relation(name, ps);
+            relationSignatures.put(table.alias, signature);
+            Long filtered = CardinalityFeedback.lookup(signature);
+            Long all = CardinalityFeedback.lookup(CardinalityFeedback.relation(name, Collections.emptyList()));
+            if (!ps.isEmpty() && filtered != null && all != null && all > 0) {
+                filterSelectivities.put(table.alias, (double) filtered / all);
+            }
+        }
+
+        // one filter per table, which orders its predicates itself
+        for (Map.Entry<String,List<Predicate>> e : tablePredicates.entrySet()) {
+            OpIterator subplan = subplanMap.get(e.getKey());
+            List<Predicate> ps = e.getValue();
+            // the scan skips the pages its zone map rules out
+            ((SeqScan) subplan).setPagePredicates(ps);
+            if (ps.size() == 1) {
+                subplanMap.put(e.getKey(), new Filter(ps.get(0), subplan));
+            } else {
+                subplanMap.put(e.getKey(), new ConjunctiveFilter(ps, tableSelectivities.get(e.getKey()), subplan));
+            }
+        }
         
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
@@ -415,14 +460,17 @@ public class LogicalPlan {
             if (si.aggOp != null) {
                 outFields.add(groupByField!=null?1:0);
                 TupleDesc td = node.getTupleDesc();
-//                int  id;
+                int  id;
                 try {
-//                    id = 
-                    td.fieldNameToIndex(si.fname);
+                    id = td.fieldNameToIndex(si.fname);
                 } catch (NoSuchElementException e) {
                     throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
                 }
-                outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
+                try {
+                    outTypes.add(Aggregate.resultType(td.getFieldType(id), getAggOp(si.aggOp)));
+                } catch (UnsupportedOperationException e) {
+                    throw new ParsingException(e.getMessage());
+                }
 
             } else if (hasAgg) {
                     if (groupByField == null) {
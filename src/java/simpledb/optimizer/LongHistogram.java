@@ -0,0 +1,138 @@
+package simpledb.optimizer;
+
+import simpledb.execution.Predicate;
+
+/**
+ * A class to represent a fixed-width histogram over a single field whose
+ * values are 64-bit integers: longs, and dates, timestamps and booleans,
+ * which tuples keep as the number of days or milliseconds since the epoch,
+ * or as 0 and 1.
+ * <p>
+ * Values within a bucket are taken to be spread evenly over its range.
+ */
+public class LongHistogram {
+
+    private final long min;
+    private final long max;
+    private final int[] counts;
+    /** the number of values each bucket covers, possibly fractional */
+    private final double width;
+    private int total;
+
+    /**
+     * Create a new LongHistogram.
+     *
+     * @param buckets The number of buckets to split the input value into.
+     * @param min     The minimum value that will ever be passed to this
+     *                class for histogramming
+     * @param max     The maximum value that will ever be passed to this
+     *                class for histogramming
+     */
+    public LongHistogram(int buckets, long min, long max) {
+        this.min = min;
+        this.max = max;
+        double range = (double) max - min + 1;
+        this.counts = new int[(int) Math.max(1, Math.min(buckets, range))];
+        this.width = range / counts.length;
+    }
+
+    private int bucket(long v) {
+        return (int) Math.min(counts.length - 1, ((double) v - min) / width);
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     *
+     * @param v Value to add to the histogram
+     */
+    public void addValue(long v) {
+        if (v < min || v > max) {
+            throw new IllegalArgumentException(v + " is outside [" + min + ", " + max + "]");
+        }
+        counts[bucket(v)]++;
+        total++;
+    }
+
+    /** @return the estimated fraction of values equal to v */
+    private double equal(long v) {
+        if (v < min || v > max) {
+            return 0;
+        }
+        return counts[bucket(v)] / Math.max(1, width) / total;
+    }
+
+    /** @return the estimated fraction of values greater than v */
+    private double greater(long v) {
+        if (v < min) {
+            return 1;
+        }
+        if (v >= max) {
+            return 0;
+        }
+        int b = bucket(v);
+        double right = min + (b + 1) * width;
+        double part = Math.max(0, Math.min(1, (right - (v + 1)) / width));
+        double n = counts[b] * part;
+        for (int i = b + 1; i < counts.length; i++) {
+            n += counts[i];
+        }
+        return n / total;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this
+     * table.
+     *
+     * @param op Operator
+     * @param v  Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, long v) {
+        if (total == 0) {
+            return 0;
+        }
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return equal(v);
+            case NOT_EQUALS:
+                return 1 - equal(v);
+            case GREATER_THAN:
+                return greater(v);
+            case GREATER_THAN_OR_EQ:
+                return Math.min(1, greater(v) + equal(v));
+            case LESS_THAN:
+                return Math.max(0, 1 - greater(v) - equal(v));
+            case LESS_THAN_OR_EQ:
+                return 1 - greater(v);
+        }
+        return 1.0;
+    }
+
+    /**
+     * @return the average selectivity of an equality predicate on this
+     *         histogram
+     */
+    public double avgSelectivity() {
+        if (total == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int c : counts) {
+            sum += (double) c * c;
+        }
+        return sum / Math.max(1, width) / ((double) total * total);
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("LongHistogram[").append(min).append(", ").append(max).append("]");
+        for (int c : counts) {
+            sb.append(' ').append(c);
+        }
+        return sb.toString();
+    }
+}
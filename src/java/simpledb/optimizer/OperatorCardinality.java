@@ -26,6 +26,9 @@ public class OperatorCardinality {
         if (o instanceof Filter) {
             return updateFilterCardinality((Filter) o, tableAliasToId,
                     tableStats);
+        } else if (o instanceof ConjunctiveFilter) {
+            return updateConjunctiveFilterCardinality((ConjunctiveFilter) o,
+                    tableAliasToId, tableStats);
         } else if (o instanceof Join) {
             return updateJoinCardinality((Join) o, tableAliasToId, tableStats);
         } else if (o instanceof HashEquiJoin) {
@@ -90,6 +93,32 @@ public class OperatorCardinality {
         return false;
     }
 
+    private static boolean updateConjunctiveFilterCardinality(
+            ConjunctiveFilter f, Map<String, Integer> tableAliasToId,
+            Map<String, TableStats> tableStats) {
+        OpIterator child = f.getChildren()[0];
+        double selectivity = 1.0;
+        if (f.getSelectivities() != null) {
+            for (double s : f.getSelectivities())
+                selectivity *= s;
+        }
+        if (child instanceof Operator) {
+            Operator oChild = (Operator) child;
+            boolean hasJoinPK = updateOperatorCardinality(oChild,
+                    tableAliasToId, tableStats);
+            f.setEstimatedCardinality((int) (oChild
+                    .getEstimatedCardinality() * selectivity) + 1);
+            return hasJoinPK;
+        } else if (child instanceof SeqScan) {
+            f.setEstimatedCardinality((int) (tableStats.get(
+                    ((SeqScan) child).getTableName())
+                    .estimateTableCardinality(1.0) * selectivity) + 1);
+            return false;
+        }
+        f.setEstimatedCardinality(1);
+        return false;
+    }
+
     private static boolean updateJoinCardinality(Join j,
             Map<String, Integer> tableAliasToId,
             Map<String, TableStats> tableStats) {
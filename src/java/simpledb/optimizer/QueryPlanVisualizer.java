@@ -219,6 +219,31 @@ public class QueryPlanVisualizer {
                                 - currentStartPosition);
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
+            } else if (plan instanceof ConjunctiveFilter) {
+                ConjunctiveFilter f = (ConjunctiveFilter) plan;
+                StringBuilder preds = new StringBuilder();
+                for (Predicate p : f.getPredicates()) {
+                    if (preds.length() > 0)
+                        preds.append(",");
+                    preds.append(children[0].getTupleDesc().getFieldName(p.getField()))
+                            .append(p.getOp()).append(p.getOperand());
+                }
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", SELECT,
+                        preds, f.getEstimatedCardinality());
+                int upBarShift = parentUpperBarStartShift;
+                if (SELECT.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = SELECT.length() / 2;
+                SubTreeDescriptor child = this.buildTree(queryPlanDepth,
+                        currentDepth + 2 + adjustDepth, children[0],
+                        currentStartPosition, upBarShift);
+                thisNode.upBarPosition = child.upBarPosition;
+                thisNode.textStartPosition = thisNode.upBarPosition
+                        - SELECT.length() / 2;
+                thisNode.width = Math.max(child.width,
+                        thisNode.textStartPosition + thisNode.text.length()
+                                - currentStartPosition);
+                thisNode.leftChild = child;
+                thisNode.height = currentDepth;
             } else if (plan instanceof OrderBy) {
                 OrderBy o = (OrderBy) plan;
                 thisNode.text = String.format(
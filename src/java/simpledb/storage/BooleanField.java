@@ -0,0 +1,66 @@
+package simpledb.storage;
+
+import simpledb.execution.Predicate;
+import simpledb.common.Type;
+
+import java.io.*;
+
+/**
+ * Instance of Field that stores a single boolean.  false is less than true.
+ */
+public class BooleanField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean value;
+
+    public boolean getValue() {
+        return value;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param b The value of this field.
+     */
+    public BooleanField(boolean b) {
+        value = b;
+    }
+
+    public String toString() {
+        return Boolean.toString(value);
+    }
+
+    public int hashCode() {
+        return Boolean.hashCode(value);
+    }
+
+    public boolean equals(Object field) {
+        if (!(field instanceof BooleanField)) return false;
+        return ((BooleanField) field).value == value;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeBoolean(value);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a BooleanField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return IntField.compare(op, Boolean.compare(value, ((BooleanField) val).value), 0);
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.BOOLEAN_TYPE
+     */
+    public Type getType() {
+        return Type.BOOLEAN_TYPE;
+    }
+}
@@ -7,6 +7,14 @@ import simpledb.transaction.TransactionId;
 import java.io.*;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -16,6 +24,30 @@ import java.util.*;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * The pool runs a STEAL / NO-FORCE policy on top of the write-ahead log.
+ * Committing a transaction logs the after images of the pages it dirtied
+ * but does not write them; a background flusher thread writes committed
+ * dirty pages in (table, page number) order, coalescing runs of adjacent
+ * pages into single writes, after forcing the log up to the last update
+ * record of the pages it writes.  Eviction prefers pages that are clean on
+ * disk, and when it must write a page dirtied by a running transaction
+ * (a steal), the update is logged and forced first.  The flusher also
+ * writes out the pages handed to it by fuzzy checkpoints.
+ * <p>
+ * Scans can ask the pool to read pages ahead of them with
+ * {@link #prefetch}.  The reads run on a small shared pool of I/O threads,
+ * and a prefetched page only takes the place of a page that is clean on
+ * disk, so read-ahead never forces a write.
+ * <p>
+ * Behind the pages it caches as objects the pool can keep a second tier of
+ * pages, a {@link PageFrameArena} of off-heap frames holding the images of
+ * clean pages it has evicted.  A miss on a page in the arena rebuilds the
+ * page from its image instead of reading it from disk, so a large pool can
+ * be made of a few hot pages on the Java heap and many more off it, out of
+ * reach of the garbage collector.  The arena is sized by the
+ * simpledb.storage.BufferPool.framePages system property, or by
+ * {@link #BufferPool(int, int)}; it is off by default.
  * 
  * @Threadsafe, all fields are final
  */
@@ -27,21 +59,84 @@ public class BufferPool {
     other classes. BufferPool should use the numPages argument to the
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
+    /** How often the background flusher looks for committed dirty pages. */
+    private static final long FLUSH_INTERVAL_NANOS = 20_000_000L;
+    /** Longest run of adjacent pages the flusher writes in one call. */
+    private static final int MAX_FLUSH_RUN = 16;
     private Integer numPages;
     private Map<PageId, Page> cacheMap;
     private LinkedList<PageId> lruList;
+    /** dirty page table: the log offset at which each dirty page was first
+        dirtied (its recLSN), recorded by fuzzy checkpoints */
+    private final Map<PageId, Long> dirtyPages = new ConcurrentHashMap<>();
+    /** pages each running transaction has dirtied, including pages that
+        have since been stolen and written */
+    private final Map<TransactionId, Set<PageId>> txnPages = new ConcurrentHashMap<>();
+    /** for each committed dirty page, the log offset just past its last
+        update record, up to which the log is forced before it is written */
+    private final Map<PageId, Long> pageLsns = new ConcurrentHashMap<>();
+    /** pages left for the flusher to write by checkpoints */
+    private final Queue<PageId> checkpointPages = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean flusherRunning = new AtomicBoolean(false);
+    private volatile Thread flusher;
+
+    /** How many pages scans read ahead; 0 turns read-ahead off. */
+    private static final int READ_AHEAD_PAGES =
+            Math.max(0, Integer.getInteger("simpledb.storage.BufferPool.readAhead", 8));
+    /** I/O threads shared by the read-ahead of every buffer pool. */
+    private static final ExecutorService readAheadThreads = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger("simpledb.storage.BufferPool.readAheadThreads", 2)), r -> {
+                Thread t = new Thread(r, "simpledb-read-ahead");
+                t.setDaemon(true);
+                return t;
+            });
+    /** pages being read ahead; removing an entry cancels its install */
+    private final Map<PageId, CompletableFuture<Void>> readsInFlight = new ConcurrentHashMap<>();
+
+    /** off-heap images of evicted clean pages; null if there is no arena */
+    private final PageFrameArena frames;
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, with an
+     * off-heap arena of simpledb.storage.BufferPool.framePages pages.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, Integer.getInteger("simpledb.storage.BufferPool.framePages", 0));
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages as objects and
+     * up to framePages more as images in off-heap frames.
+     *
+     * @param numPages   maximum number of pages cached as objects
+     * @param framePages number of off-heap page frames; 0 for none
+     */
+    public BufferPool(int numPages, int framePages) {
         this.numPages = numPages;
         this.cacheMap = new HashMap<>();
         lruList = new LinkedList<>();
+        this.frames = framePages > 0 ? new PageFrameArena(framePages, pageSize) : null;
+    }
+
+    /**
+     * @return the number of pages held in the off-heap arena
+     */
+    public synchronized int getFrameCount() {
+        return frames == null ? 0 : frames.size();
     }
     
+    /**
+     * @return the number of pages scans should keep read ahead of
+     * themselves, set by the simpledb.storage.BufferPool.readAhead system
+     * property; 0 if read-ahead is off
+     */
+    public static int getReadAheadPages() {
+        return READ_AHEAD_PAGES;
+    }
+
     public static int getPageSize() {
       return pageSize;
     }
@@ -79,6 +174,33 @@ public class BufferPool {
         return cacheMap.get(pid);
     }
 
+    private void noteDirty(TransactionId tid, PageId pid) {
+        dirtyPages.putIfAbsent(pid, Database.getLogFile().currentOffset());
+        if (tid != null) {
+            txnPages.computeIfAbsent(tid, k -> ConcurrentHashMap.newKeySet()).add(pid);
+        }
+        startFlusher();
+    }
+
+    /**
+     * @return a snapshot of the dirty page table, mapping each dirty page to
+     * the log offset at which it was first dirtied. Used by checkpoints.
+     */
+    Map<PageId, Long> getDirtyPageTable() {
+        return new HashMap<>(dirtyPages);
+    }
+
+    /**
+     * The log has been truncated: move the log offsets the pool holds back
+     * by the specified number of bytes.  Called with the pool locked and
+     * appends to the log stopped.
+     */
+    void logTruncated(long dropped) {
+        long least = LogFile.LOG_HEADER_SIZE;
+        dirtyPages.replaceAll((pid, lsn) -> Math.max(lsn - dropped, least));
+        pageLsns.replaceAll((pid, lsn) -> Math.max(lsn - dropped, least));
+    }
+
     /**
      * Retrieve the specified page with the associated permissions.
      * Will acquire a lock and may block if that lock is held by another
@@ -96,22 +218,135 @@ public class BufferPool {
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
-        if (!cacheMap.containsKey(pid)){
-            Catalog catalog = Database.getCatalog();
-            DbFile dbFile = catalog.getDatabaseFile(pid.getTableId());
-            if (dbFile == null){
-                throw new DbException("BufferPool, getPage: no such dbFile with tid " + pid.getTableId());
+        synchronized (this) {
+            if (cacheMap.containsKey(pid)) {
+                return fetchPage(pid);
             }
-            Page page = dbFile.readPage(pid);
-            if (page == null){
-                throw new DbException("BufferPool, getPage: no such page with pid " + pid);
+        }
+        // wait for a read-ahead of the page rather than reading it twice
+        CompletableFuture<Void> pending = readsInFlight.get(pid);
+        if (pending != null) {
+            pending.join();
+        }
+        synchronized (this) {
+            if (!cacheMap.containsKey(pid)) {
+                Catalog catalog = Database.getCatalog();
+                DbFile dbFile = catalog.getDatabaseFile(pid.getTableId());
+                if (dbFile == null){
+                    throw new DbException("BufferPool, getPage: no such dbFile with tid " + pid.getTableId());
+                }
+                byte[] image = frames == null ? null : frames.get(pid);
+                Page page;
+                if (image != null) {
+                    // the pool holds each page once, as an object or an image
+                    frames.remove(pid);
+                    try {
+                        page = LogFile.newPage(pid, image);
+                    } catch (IOException e) {
+                        throw new DbException("BufferPool, getPage: bad page image for " + pid);
+                    }
+                } else {
+                    page = dbFile.readPage(pid);
+                }
+                if (page == null){
+                    throw new DbException("BufferPool, getPage: no such page with pid " + pid);
+                }
+                addPage(pid, page);
             }
-            addPage(pid, page);
+            if (cacheMap.size() != lruList.size()){
+                throw new RuntimeException("not match");
+            }
+            return fetchPage(pid);
         }
-        if (cacheMap.size() != lruList.size()){
-            throw new RuntimeException("not match");
+    }
+
+    /**
+     * Start reading a page into the pool in the background, if it is not
+     * already cached or being read.  Takes no locks; the page is only
+     * cached, and a transaction still gets it through {@link #getPage}.
+     *
+     * @param pid the page to read
+     */
+    public void prefetch(PageId pid) {
+        prefetch(pid, 1, null);
+    }
+
+    /**
+     * Read a chain of pages into the pool in the background, where each
+     * page names the next, like the right sibling pointers of B+ tree
+     * leaves.
+     *
+     * @param pid   the first page to read
+     * @param count the number of pages to read, including pid
+     * @param next  gives the id of the page after a page, or null at the
+     *              end of the chain; null to read pid only
+     */
+    public void prefetch(PageId pid, int count, Function<Page, ? extends PageId> next) {
+        if (pid == null || count <= 0) {
+            return;
         }
-        return fetchPage(pid);
+        Page cached;
+        synchronized (this) {
+            cached = cacheMap.get(pid);
+        }
+        if (cached != null) {
+            // already here; just follow the chain
+            if (next != null && count > 1) {
+                prefetch(next.apply(cached), count - 1, next);
+            }
+            return;
+        }
+        CompletableFuture<Void> read = new CompletableFuture<>();
+        if (readsInFlight.putIfAbsent(pid, read) != null) {
+            return;
+        }
+        readAheadThreads.execute(() -> {
+            Page page = null;
+            try {
+                // stop if the database has been reset underneath us
+                if (Database.getBufferPool() == this) {
+                    page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
+                    installPrefetched(pid, page, read);
+                }
+            } catch (RuntimeException e) {
+                // read-ahead is only a hint; a failed read is retried by getPage
+                page = null;
+            } finally {
+                readsInFlight.remove(pid, read);
+                read.complete(null);
+            }
+            if (page != null && next != null && count > 1) {
+                prefetch(next.apply(page), count - 1, next);
+            }
+        });
+    }
+
+    /**
+     * Cache a page read ahead, unless its read was cancelled, the page
+     * has been cached meanwhile, or there is no clean page to evict.
+     */
+    private synchronized void installPrefetched(PageId pid, Page page, CompletableFuture<Void> read) {
+        if (readsInFlight.get(pid) != read || cacheMap.containsKey(pid)) {
+            return;
+        }
+        if (cacheMap.size() >= numPages) {
+            PageId victim = null;
+            Iterator<PageId> it = lruList.descendingIterator();
+            while (it.hasNext()) {
+                PageId candidate = it.next();
+                if (!needsWrite(candidate, cacheMap.get(candidate))) {
+                    victim = candidate;
+                    break;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            lruList.remove(victim);
+            retire(victim, cacheMap.remove(victim));
+        }
+        lruList.addFirst(pid);
+        cacheMap.put(pid, page);
     }
 
     /**
@@ -134,8 +369,7 @@ public class BufferPool {
      * @param tid the ID of the transaction requesting the unlock
      */
     public void transactionComplete(TransactionId tid) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
@@ -153,15 +387,62 @@ public class BufferPool {
      * @param commit a flag indicating whether we should commit or abort
      */
     public void transactionComplete(TransactionId tid, boolean commit) {
-        // some code goes here
-        // not necessary for lab1|lab2
+        Set<PageId> pids = txnPages.remove(tid);
+        synchronized (this) {
+            Set<PageId> touched = new HashSet<>();
+            if (pids != null) {
+                touched.addAll(pids);
+            }
+            for (Map.Entry<PageId, Page> e : cacheMap.entrySet()) {
+                if (tid.equals(e.getValue().isDirty())) {
+                    touched.add(e.getKey());
+                }
+            }
+            for (PageId pid : touched) {
+                Page page = cacheMap.get(pid);
+                if (page == null) {
+                    continue;
+                }
+                if (!commit) {
+                    // a page stolen by the transaction was restored on disk
+                    // and dropped by LogFile.rollback; one still holding its
+                    // changes goes back to its before image, which keeps the
+                    // commits before it that the flusher has yet to write
+                    if (tid.equals(page.isDirty())) {
+                        Page restored = page.getBeforeImage();
+                        restored.setBeforeImage();
+                        cacheMap.put(pid, restored);
+                        if (!pageLsns.containsKey(pid)) {
+                            dirtyPages.remove(pid);
+                        }
+                    }
+                    continue;
+                }
+                if (tid.equals(page.isDirty())) {
+                    // NO-FORCE: log the change and leave the write to the
+                    // flusher, which forces the log up to the record first
+                    try {
+                        long lsn = Database.getLogFile().logWrite(tid, page.getBeforeImage(), page);
+                        pageLsns.merge(pid, lsn, Math::max);
+                    } catch (IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                    page.markDirty(false, null);
+                    dirtyPages.putIfAbsent(pid, Database.getLogFile().currentOffset());
+                }
+                page.setBeforeImage();
+            }
+        }
+        if (commit) {
+            startFlusher();
+        }
     }
 
-    public int getMapSize(){
+    public synchronized int getMapSize(){
         return cacheMap.size();
     }
 
-    public int getListSize(){
+    public synchronized int getListSize(){
         return lruList.size();
     }
 
@@ -186,12 +467,44 @@ public class BufferPool {
         // lab2
         DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
         List<Page> pageList = dbFile.insertTuple(tid, t);
-        for (Page p : pageList) {
-            p.markDirty(true, tid);
-            if (cacheMap.containsKey(p.getId())){
-                updatePage(p.getId(), p);
-            }else{
-                addPage(p.getId(), p);
+        synchronized (this) {
+            for (Page p : pageList) {
+                p.markDirty(true, tid);
+                noteDirty(tid, p.getId());
+                if (cacheMap.containsKey(p.getId())){
+                    updatePage(p.getId(), p);
+                }else{
+                    addPage(p.getId(), p);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a batch of tuples to the specified table on behalf of transaction
+     * tid.  Files that support it fill each page with as many of the tuples
+     * as fit, so each modified page is dirtied, and logged at commit, once
+     * for the whole batch rather than once per tuple.
+     *
+     * @param tid the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples the tuples to add
+     * @see DbFile#insertTuples
+     */
+    public void insertTuples(TransactionId tid, int tableId, Iterable<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
+        List<Page> pageList = dbFile.insertTuples(tid, tuples);
+        synchronized (this) {
+            for (Page p : pageList) {
+                // a page that is no longer cached was stolen, and written
+                // and logged, after the batch had finished with it
+                if (cacheMap.get(p.getId()) != p) {
+                    continue;
+                }
+                p.markDirty(true, tid);
+                noteDirty(tid, p.getId());
+                promotePage(p.getId());
             }
         }
     }
@@ -216,12 +529,15 @@ public class BufferPool {
         int tableId = t.getRecordId().getPageId().getTableId();
         DbFile dbFile = Database.getCatalog().getDatabaseFile(tableId);
         List<Page> pageList = dbFile.deleteTuple(tid, t);
-        for (Page p : pageList) {
-            p.markDirty(true, tid);
-            if (cacheMap.containsKey(p.getId())){
-                updatePage(p.getId(), p);
-            }else{
-                addPage(p.getId(), p);
+        synchronized (this) {
+            for (Page p : pageList) {
+                p.markDirty(true, tid);
+                noteDirty(tid, p.getId());
+                if (cacheMap.containsKey(p.getId())){
+                    updatePage(p.getId(), p);
+                }else{
+                    addPage(p.getId(), p);
+                }
             }
         }
     }
@@ -254,6 +570,18 @@ public class BufferPool {
             cacheMap.remove(pid);
             lruList.remove(pid);
         }
+        // a read-ahead of the page may have read it before it was discarded
+        readsInFlight.remove(pid);
+        if (frames != null) {
+            frames.remove(pid);
+        }
+        dirtyPages.remove(pid);
+        pageLsns.remove(pid);
+    }
+
+    /** @return true if the cached copy of pid differs from the one on disk */
+    private boolean needsWrite(PageId pid, Page page) {
+        return page.isDirty() != null || dirtyPages.containsKey(pid);
     }
 
     /**
@@ -264,17 +592,172 @@ public class BufferPool {
         // some code goes here
         // lab2
         Page page = cacheMap.get(pid);
-        if(page.isDirty() != null){
+        if (page == null) {
+            dirtyPages.remove(pid);
+            pageLsns.remove(pid);
+            return;
+        }
+        forceLog(Collections.singletonList(page));
+        TransactionId dirtier = page.isDirty();
+        if (dirtier != null) {
+            // STEAL: the page holds uncommitted changes, so the update must
+            // be on stable storage before the page is (write-ahead logging)
+            LogFile log = Database.getLogFile();
+            log.logWrite(dirtier, page.getBeforeImage(), page);
+            log.force();
+            txnPages.computeIfAbsent(dirtier, k -> ConcurrentHashMap.newKeySet()).add(pid);
+        }
+        if (dirtier != null || dirtyPages.containsKey(pid)) {
             Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
             page.markDirty(false, null);
         }
+        dirtyPages.remove(pid);
+        pageLsns.remove(pid);
+    }
+
+    /**
+     * Have the background flusher write the specified pages out, one page
+     * at a time, so that transactions using the buffer pool are never held
+     * up for more than a single page write.  Pages that have been cleaned
+     * or evicted in the meantime are skipped.  Used by fuzzy checkpoints to
+     * trickle out the pages in their dirty page table.
+     *
+     * @param pids the pages to write
+     */
+    public void flushPagesInBackground(Collection<PageId> pids) {
+        if (pids.isEmpty()) {
+            return;
+        }
+        checkpointPages.addAll(pids);
+        startFlusher();
     }
 
     /** Write all pages of the specified transaction to disk.
      */
     public synchronized void flushPages(TransactionId tid) throws IOException {
-        // some code goes here
-        // not necessary for lab1|lab2
+        Set<PageId> pids = txnPages.get(tid);
+        if (pids == null) {
+            return;
+        }
+        for (PageId pid : pids) {
+            flushPage(pid);
+        }
+    }
+
+    private void startFlusher() {
+        Thread t = flusher;
+        if (t != null && flusherRunning.get()) {
+            LockSupport.unpark(t);
+        } else if (flusherRunning.compareAndSet(false, true)) {
+            t = new Thread(this::runFlusher, "simpledb-page-flusher");
+            t.setDaemon(true);
+            flusher = t;
+            t.start();
+        }
+    }
+
+    private void runFlusher() {
+        // the flusher lives as long as this is the database's buffer pool
+        while (Database.getBufferPool() == this) {
+            try {
+                flushCheckpointPages();
+                flushCommittedPages();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (flusherIdle()) {
+                flusherRunning.set(false);
+                if (flusherIdle() || !flusherRunning.compareAndSet(false, true)) {
+                    return;
+                }
+                flusher = Thread.currentThread();
+            }
+            LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+        }
+        flusherRunning.set(false);
+    }
+
+    private boolean flusherIdle() {
+        return dirtyPages.isEmpty() && checkpointPages.isEmpty();
+    }
+
+    /** Write out the pages handed to the flusher by checkpoints. */
+    private void flushCheckpointPages() throws IOException {
+        PageId pid;
+        while (Database.getBufferPool() == this && (pid = checkpointPages.poll()) != null) {
+            flushPage(pid);
+        }
+    }
+
+    /**
+     * Write out every committed dirty page in the pool, in (table, page
+     * number) order, with each run of adjacent pages of a table written by
+     * a single {@link DbFile#writePages} call.  Pages holding uncommitted
+     * changes are left for eviction to steal.  The pool is locked for one
+     * run at a time, so foreground work interleaves with the flusher.
+     */
+    void flushCommittedPages() throws IOException {
+        List<PageId> candidates = new ArrayList<>(dirtyPages.keySet());
+        candidates.sort(Comparator.comparingInt(PageId::getTableId)
+                .thenComparingInt(PageId::getPageNumber));
+
+        int i = 0;
+        while (i < candidates.size()) {
+            int j = i + 1;
+            while (j < candidates.size() && j - i < MAX_FLUSH_RUN
+                    && candidates.get(j).getTableId() == candidates.get(i).getTableId()
+                    && candidates.get(j).getPageNumber() == candidates.get(j - 1).getPageNumber() + 1) {
+                j++;
+            }
+            flushRun(candidates.subList(i, j));
+            i = j;
+        }
+    }
+
+    private synchronized void flushRun(List<PageId> run) throws IOException {
+        List<Page> pages = new ArrayList<>(run.size());
+        for (PageId pid : run) {
+            Page page = cacheMap.get(pid);
+            if (page == null || page.isDirty() != null || !dirtyPages.containsKey(pid)) {
+                // evicted, uncommitted, or cleaned since the run was
+                // collected; this breaks the run
+                if (page == null) {
+                    dirtyPages.remove(pid);
+                }
+                writeRun(pages);
+                pages.clear();
+                continue;
+            }
+            pages.add(page);
+        }
+        writeRun(pages);
+    }
+
+    private void writeRun(List<Page> pages) throws IOException {
+        if (pages.isEmpty()) {
+            return;
+        }
+        forceLog(pages);
+        int tableId = pages.get(0).getId().getTableId();
+        Database.getCatalog().getDatabaseFile(tableId).writePages(pages);
+        for (Page p : pages) {
+            dirtyPages.remove(p.getId());
+            pageLsns.remove(p.getId());
+        }
+    }
+
+    /**
+     * Write-ahead logging: force the log up to the last update record of
+     * each of the specified pages before they are written.
+     */
+    private void forceLog(List<Page> pages) throws IOException {
+        long lsn = 0;
+        for (Page p : pages) {
+            lsn = Math.max(lsn, pageLsns.getOrDefault(p.getId(), 0L));
+        }
+        if (lsn > 0) {
+            Database.getLogFile().force(lsn);
+        }
     }
 
     /**
@@ -284,12 +767,37 @@ public class BufferPool {
     private synchronized void evictPage() throws DbException {
         // some code goes here
         // lab2
-        PageId leastUsed = lruList.removeLast();
+        // prefer the least recently used page that is already clean on disk;
+        // only steal a dirty page if there is none
+        PageId leastUsed = null;
+        Iterator<PageId> it = lruList.descendingIterator();
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (!needsWrite(pid, cacheMap.get(pid))) {
+                leastUsed = pid;
+                break;
+            }
+        }
+        if (leastUsed == null) {
+            leastUsed = lruList.getLast();
+            startFlusher();
+        }
         try {
             flushPage(leastUsed);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        cacheMap.remove(leastUsed);
+        lruList.remove(leastUsed);
+        retire(leastUsed, cacheMap.remove(leastUsed));
+    }
+
+    /**
+     * Keep the image of a page that has just been evicted clean in the
+     * off-heap arena, if there is one.
+     */
+    private void retire(PageId pid, Page page) {
+        if (frames != null && page != null) {
+            frames.put(pid, page.getPageData());
+        }
     }
 }
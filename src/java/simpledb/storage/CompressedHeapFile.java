@@ -0,0 +1,151 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are compressed on disk.
+ * <p>
+ * Pages in the buffer pool are ordinary, uncompressed {@link HeapPage}s;
+ * only {@link #readPage} and {@link #writePage} see the compressed form,
+ * produced by {@link HeapPageCompressor}.  Compressed pages vary in size,
+ * so the file is accompanied by a page map, stored next to it with a
+ * <tt>.map</tt> suffix, that holds for each page number the offset of the
+ * page in the data file, its compressed length and the space allocated for
+ * it.  A page that grows beyond its allocation is moved to the end of the
+ * data file, and its old space is not reused.
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    // offset, length, capacity
+    private static final int MAP_ENTRY_SIZE = 8 + 4 + 4;
+
+    private final File mapFile;
+    private final HeapPageCompressor compressor;
+    private final List<long[]> pageMap = new ArrayList<>();
+    private long dataEnd;
+
+    /**
+     * Constructs a compressed heap file backed by the specified file and
+     * its page map.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+        this.mapFile = new File(f.getPath() + ".map");
+        this.compressor = new HeapPageCompressor(td);
+        if (mapFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mapFile)))) {
+                long entries = mapFile.length() / MAP_ENTRY_SIZE;
+                for (long i = 0; i < entries; i++) {
+                    long[] e = {in.readLong(), in.readInt(), in.readInt()};
+                    pageMap.add(e);
+                    dataEnd = Math.max(dataEnd, e[0] + e[2]);
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("cannot read page map " + mapFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return the file holding this file's page map
+     */
+    public File getMapFile() {
+        return mapFile;
+    }
+
+    @Override
+    public synchronized Page readPage(PageId pid) {
+        int pgNo = pid.getPageNumber();
+        if (pgNo < 0 || pgNo >= pageMap.size()) {
+            throw new IllegalArgumentException("page " + pgNo + " is not in the page map");
+        }
+        long[] e = pageMap.get(pgNo);
+        byte[] compressed = new byte[(int) e[1]];
+        try (RandomAccessFile raf = new RandomAccessFile(getFile(), "r")) {
+            raf.seek(e[0]);
+            raf.readFully(compressed);
+            return createPage((HeapPageId) pid, compressor.decompress(compressed));
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void writePage(Page page) throws IOException {
+        int pgNo = page.getId().getPageNumber();
+        // pages are appended one at a time, but fill any gap with empty pages
+        while (pageMap.size() < pgNo) {
+            writeCompressed(pageMap.size(), compressor.compress(HeapPage.createEmptyPageData()));
+        }
+        List<Page> pages = Collections.singletonList(page);
+        zoneMap().beforeWrite(pages);
+        writeCompressed(pgNo, compressor.compress(page.getPageData()));
+        zoneMap().afterWrite(pages);
+        noteFreeSpace(pages);
+    }
+
+    private void writeCompressed(int pgNo, byte[] compressed) throws IOException {
+        long[] e = pgNo < pageMap.size() ? pageMap.get(pgNo) : null;
+        if (e == null || compressed.length > e[2]) {
+            // leave some room to grow in place
+            e = new long[]{dataEnd, 0, compressed.length + compressed.length / 8};
+            dataEnd += e[2];
+        }
+        e[1] = compressed.length;
+        try (RandomAccessFile raf = new RandomAccessFile(getFile(), "rw")) {
+            raf.seek(e[0]);
+            raf.write(compressed);
+        }
+        if (pgNo < pageMap.size()) {
+            pageMap.set(pgNo, e);
+        } else {
+            pageMap.add(e);
+        }
+        try (RandomAccessFile map = new RandomAccessFile(mapFile, "rw")) {
+            map.seek((long) pgNo * MAP_ENTRY_SIZE);
+            map.writeLong(e[0]);
+            map.writeInt((int) e[1]);
+            map.writeInt((int) e[2]);
+        }
+    }
+
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages) {
+            writePage(p);
+        }
+    }
+
+    @Override
+    synchronized int extend(int count) throws IOException {
+        int first = pageMap.size();
+        List<Page> empty = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            empty.add(createPage(new HeapPageId(getId(), first + i), HeapPage.createEmptyPageData()));
+        }
+        writePages(empty);
+        return first;
+    }
+
+    @Override
+    public synchronized int numPages() {
+        return pageMap.size();
+    }
+
+    /**
+     * @return the number of bytes the pages of this file take on disk
+     */
+    public synchronized long compressedSize() {
+        long size = 0;
+        for (long[] e : pageMap) {
+            size += e[1];
+        }
+        return size;
+    }
+}
@@ -0,0 +1,80 @@
+package simpledb.storage;
+
+import simpledb.execution.Predicate;
+import simpledb.common.Type;
+
+import java.io.*;
+import java.time.LocalDate;
+
+/**
+ * Instance of Field that stores a calendar date, as the number of days
+ * since 1970-01-01.  Dates are written and parsed in ISO-8601 form, for
+ * example 2021-03-14.
+ */
+public class DateField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int days;
+
+    /**
+     * @return the number of days since 1970-01-01
+     */
+    public int getValue() {
+        return days;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param days The number of days since 1970-01-01.
+     */
+    public DateField(int days) {
+        this.days = days;
+    }
+
+    /**
+     * @return the DateField for a date in the form yyyy-mm-dd
+     * @throws java.time.format.DateTimeParseException if s is not a date
+     */
+    public static DateField parse(String s) {
+        return new DateField((int) LocalDate.parse(s.trim()).toEpochDay());
+    }
+
+    public String toString() {
+        return LocalDate.ofEpochDay(days).toString();
+    }
+
+    public int hashCode() {
+        return days;
+    }
+
+    public boolean equals(Object field) {
+        if (!(field instanceof DateField)) return false;
+        return ((DateField) field).days == days;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeInt(days);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a DateField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return IntField.compare(op, days, ((DateField) val).days);
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.DATE_TYPE
+     */
+    public Type getType() {
+        return Type.DATE_TYPE;
+    }
+}
@@ -33,6 +33,21 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Push a run of pages with consecutive page numbers to disk.  Files that
+     * can write the whole run with one sequential write should override
+     * this; by default each page is written on its own.
+     *
+     * @param pages The pages to write, in increasing page number order with
+     *              no gaps.
+     * @throws IOException if the write fails
+     */
+    default void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages) {
+            writePage(p);
+        }
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -48,6 +63,32 @@ public interface DbFile {
     List<Page> insertTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts a batch of tuples to the file on behalf of transaction.  Each
+     * modified page is marked dirty by tid as soon as it is modified, so the
+     * buffer pool cannot drop it as clean while the rest of the batch is
+     * inserted.  Files that can fill pages in bulk should override this; by
+     * default each tuple is inserted on its own.
+     *
+     * @param tid The transaction performing the update
+     * @param tuples The tuples to add, each updated to reflect that it is
+     *               now stored in this file.
+     * @return The pages that were modified, each once, most recent copy
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    default List<Page> insertTuples(TransactionId tid, Iterable<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        Map<PageId, Page> dirtied = new LinkedHashMap<>();
+        for (Tuple t : tuples) {
+            for (Page p : insertTuple(tid, t)) {
+                p.markDirty(true, tid);
+                dirtied.put(p.getId(), p);
+            }
+        }
+        return new ArrayList<>(dirtied.values());
+    }
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -0,0 +1,78 @@
+package simpledb.storage;
+
+import simpledb.execution.Predicate;
+import simpledb.common.Type;
+
+import java.io.*;
+
+/**
+ * Instance of Field that stores a single double.  Values are ordered as by
+ * {@link Double#compare}, so NaN equals itself and is greater than every
+ * other value.
+ */
+public class DoubleField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private final double value;
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param d The value of this field.
+     */
+    public DoubleField(double d) {
+        value = d;
+    }
+
+    public String toString() {
+        return Double.toString(value);
+    }
+
+    public int hashCode() {
+        return Double.hashCode(value);
+    }
+
+    public boolean equals(Object field) {
+        if (!(field instanceof DoubleField)) return false;
+        return Double.compare(((DoubleField) field).value, value) == 0;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeDouble(value);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a DoubleField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return compare(op, value, ((DoubleField) val).value);
+    }
+
+    /**
+     * Compare two double values the way DoubleField.compare compares two
+     * DoubleFields, without creating the fields.
+     *
+     * @return true if value op val holds
+     */
+    public static boolean compare(Predicate.Op op, double value, double val) {
+        return IntField.compare(op, Double.compare(value, val), 0);
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.DOUBLE_TYPE
+     */
+    public Type getType() {
+        return Type.DOUBLE_TYPE;
+    }
+}
@@ -0,0 +1,168 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.BitSet;
+
+/**
+ * FreeSpaceMap records which pages of a {@link HeapFile} are full, so that
+ * inserts can go straight to a page with room instead of scanning the file
+ * from its first page.
+ * <p>
+ * The map is a bitmap with one bit per page, set when the page is known to
+ * be full, kept in a file next to the heap file with a <tt>.fsm</tt> suffix.
+ * Pages beyond the end of the bitmap, including every page of a file that
+ * has no map yet, are assumed to have room.  The map is only a hint: it is
+ * not logged, and callers must check that a page it returns really has room,
+ * and update the map when it does not.
+ * <p>
+ * Like the {@link ZoneMap}, the file starts with a header holding the length
+ * and modification time of the heap file as of the last write through
+ * {@link HeapFile}.  If the heap file has been changed since by other means
+ * the map is dropped and rebuilt from scratch, as inserts find which pages
+ * are full.
+ */
+class FreeSpaceMap {
+
+    private static final long MAGIC = 0x4653504143454d31L;
+    private static final int HEADER_SIZE = 24;
+
+    private final File file;
+    private final File dataFile;
+    private BitSet full;
+    // no page before this one has room
+    private int firstFree;
+    /** the bytes of the bitmap not yet written, [unsavedFrom, unsavedTo) */
+    private int unsavedFrom = Integer.MAX_VALUE, unsavedTo;
+    /** the heap file's length and modification time in the header on disk */
+    private long savedLength = -1, savedModified = -1;
+
+    /**
+     * @param file     the file that stores the bitmap
+     * @param dataFile the heap file
+     */
+    FreeSpaceMap(File file, File dataFile) {
+        this.file = file;
+        this.dataFile = dataFile;
+    }
+
+    /**
+     * @return the file that stores the bitmap
+     */
+    File getFile() {
+        return file;
+    }
+
+    private BitSet bits() {
+        if (full == null) {
+            full = new BitSet();
+            if (!file.exists()) {
+                return full;
+            }
+            try {
+                ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+                if (b.remaining() < HEADER_SIZE || b.getLong() != MAGIC
+                        || b.getLong() != dataFile.length() || b.getLong() != dataFile.lastModified()) {
+                    // the heap file was written without the map
+                    Files.delete(file.toPath());
+                    return full;
+                }
+                full = BitSet.valueOf(b);
+                savedLength = dataFile.length();
+                savedModified = dataFile.lastModified();
+            } catch (IOException e) {
+                // the map is only a hint, start over
+                full = new BitSet();
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Returns the first page at or after from that may have room.
+     *
+     * @param from the first page number to consider
+     * @return the number of a page that may have room; this may be past the
+     *         end of the heap file
+     */
+    synchronized int nextWithRoom(int from) {
+        if (from <= firstFree) {
+            firstFree = bits().nextClearBit(firstFree);
+            return firstFree;
+        }
+        return bits().nextClearBit(from);
+    }
+
+    /**
+     * Record whether a page has room for more tuples, and write the map.
+     *
+     * @param pgNo    the page number
+     * @param hasRoom true if the page has room
+     */
+    synchronized void update(int pgNo, boolean hasRoom) {
+        set(pgNo, hasRoom);
+        flush();
+    }
+
+    /**
+     * Record whether a page has room for more tuples.  The map is written
+     * by the next {@link #flush}.
+     *
+     * @param pgNo    the page number
+     * @param hasRoom true if the page has room
+     */
+    synchronized void set(int pgNo, boolean hasRoom) {
+        BitSet bits = bits();
+        if (bits.get(pgNo) != hasRoom) {
+            return;
+        }
+        bits.set(pgNo, !hasRoom);
+        if (hasRoom) {
+            firstFree = Math.min(firstFree, pgNo);
+        }
+        unsavedFrom = Math.min(unsavedFrom, pgNo / 8);
+        unsavedTo = Math.max(unsavedTo, pgNo / 8 + 1);
+    }
+
+    /**
+     * Write the bytes of the bitmap not yet written, and the header if the
+     * heap file has changed since it was written.  A file with no map and
+     * no full pages is left without one.
+     */
+    synchronized void flush() {
+        BitSet bits = bits();
+        long length = dataFile.length();
+        long modified = dataFile.lastModified();
+        if (unsavedFrom >= unsavedTo && (length == savedLength && modified == savedModified
+                || savedLength < 0 && !file.exists())) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (unsavedFrom < unsavedTo) {
+                byte[] run = new byte[unsavedTo - unsavedFrom];
+                for (int i = unsavedFrom; i < unsavedTo; i++) {
+                    for (int k = 0; k < 8; k++) {
+                        if (bits.get(i * 8 + k)) {
+                            run[i - unsavedFrom] |= 1 << k;
+                        }
+                    }
+                }
+                raf.seek(HEADER_SIZE + unsavedFrom);
+                raf.write(run);
+            }
+            raf.seek(0);
+            raf.writeLong(MAGIC);
+            raf.writeLong(length);
+            raf.writeLong(modified);
+            savedLength = length;
+            savedModified = modified;
+        } catch (IOException e) {
+            // the map is only a hint; the page will be checked on the next insert
+        }
+        unsavedFrom = Integer.MAX_VALUE;
+        unsavedTo = 0;
+    }
+}
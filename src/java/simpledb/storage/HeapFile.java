@@ -1,6 +1,7 @@
 package simpledb.storage;
 
 import simpledb.common.*;
+import simpledb.execution.Predicate;
 import simpledb.index.BTreeFile;
 import simpledb.index.BTreeLeafPage;
 import simpledb.index.BTreePageId;
@@ -12,6 +13,7 @@ import javax.xml.crypto.Data;
 import java.io.*;
 import java.nio.Buffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
@@ -27,8 +29,32 @@ public class HeapFile implements DbFile {
 
     private final File file;
 
+    /** the channels reads and writes of pages go through, kept open */
+    private final PageIO.OpenFile io;
+
     private final TupleDesc tupleDesc;
 
+    private final FreeSpaceMap freeSpace;
+
+    private final ZoneMap zoneMap;
+
+    /** A lower bound on the number of pages, kept up to date by the writes
+        that grow the file, so that scans and inserts need not stat the file
+        for every page they visit.  Pages {@link #extend} has preallocated
+        past it are not counted until they are handed out. */
+    private final AtomicInteger knownPages = new AtomicInteger();
+
+    /** The length of the file in pages, preallocated ones included, as of
+        the last time this HeapFile grew it or looked at it.  A longer file
+        has had pages appended by other means. */
+    private final AtomicInteger allocatedPages = new AtomicInteger();
+
+    /** Most pages {@link #extend} adds to the file at once. */
+    static final int MAX_EXTEND_PAGES = 16;
+
+    /** Pages the next extent written by {@link #extend} holds, at least. */
+    private int nextExtent = 1;
+
     /**
      * Constructs a heap file backed by the specified file.
      *
@@ -37,7 +63,10 @@ public class HeapFile implements DbFile {
      */
     public HeapFile(File f, TupleDesc td) {
         this.file = f;
+        this.io = new PageIO.OpenFile(f);
         this.tupleDesc = td;
+        this.freeSpace = new FreeSpaceMap(new File(f.getPath() + ".fsm"), f);
+        this.zoneMap = new ZoneMap(new File(f.getPath() + ".zm"), f, td);
     }
 
     /**
@@ -49,6 +78,23 @@ public class HeapFile implements DbFile {
         return this.file;
     }
 
+    /**
+     * Returns the file holding this HeapFile's free-space map, which records
+     * the pages that are full so that inserts can skip them.
+     */
+    public File getFreeSpaceMapFile() {
+        return freeSpace.getFile();
+    }
+
+    /**
+     * Returns the file holding this HeapFile's zone map, which records the
+     * range of values of each column on each page so that filtered scans can
+     * skip pages.
+     */
+    public File getZoneMapFile() {
+        return zoneMap.getFile();
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere to ensure that each
@@ -75,34 +121,107 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) {
         HeapPage heapPage;
         byte[] data = new byte[BufferPool.getPageSize()];
-        try (RandomAccessFile raf = new RandomAccessFile(this.file, "r")) {
-            raf.seek((long) pid.getPageNumber() * BufferPool.getPageSize());
-            int n = raf.read(data, 0, data.length);
+        try {
+            int n = PageIO.read(this.io, (long) pid.getPageNumber() * BufferPool.getPageSize(), data);
             if (n == -1) {
                 throw new IOException("read page failed, reach the end of the file!");
             }
-            heapPage = new HeapPage((HeapPageId) pid, data);
+            heapPage = createPage((HeapPageId) pid, data);
         } catch (IOException e) {
             throw new IllegalArgumentException(e);
         }
         return heapPage;
     }
 
+    /**
+     * Construct a page of this file from its on-disk representation.
+     * Subclasses that store tuples in a different page format override this.
+     *
+     * @param pid  the id of the page
+     * @param data the page's bytes, as returned by {@link Page#getPageData}
+     */
+    public HeapPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // lab2
-        RandomAccessFile rf = new RandomAccessFile(file, "rw");
-        rf.seek(page.getId().getPageNumber() * BufferPool.getPageSize());
-        rf.write(page.getPageData());
-        rf.close();
+        byte[] data = page.getPageData();
+        List<Page> pages = Collections.singletonList(page);
+        zoneMap.beforeWrite(pages);
+        PageIO.write(io, (long) page.getId().getPageNumber() * BufferPool.getPageSize(), data, 0, data.length);
+        notePages(page.getId().getPageNumber() + 1);
+        zoneMap.afterWrite(pages);
+        noteFreeSpace(pages);
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        if (pages.isEmpty()) {
+            return;
+        }
+        int pageSize = BufferPool.getPageSize();
+        byte[] run = new byte[pages.size() * pageSize];
+        for (int i = 0; i < pages.size(); i++) {
+            System.arraycopy(pages.get(i).getPageData(), 0, run, i * pageSize, pageSize);
+        }
+        zoneMap.beforeWrite(pages);
+        PageIO.write(io, (long) pages.get(0).getId().getPageNumber() * pageSize, run, 0, run.length);
+        notePages(pages.get(pages.size() - 1).getId().getPageNumber() + 1);
+        zoneMap.afterWrite(pages);
+        noteFreeSpace(pages);
+    }
+
+    /**
+     * Record in the free-space map whether each of a run of pages has room.
+     * Called whenever pages are written, so that pages restored by rollback
+     * or recovery are reflected in the map, and so that the map's header
+     * matches the file.
+     */
+    void noteFreeSpace(List<Page> pages) {
+        for (Page p : pages) {
+            freeSpace.set(p.getId().getPageNumber(), ((HeapPage) p).getNumEmptySlots() > 0);
+        }
+        freeSpace.flush();
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * The zone map of this file, which subclasses that write pages
+     * themselves must tell about the pages they write.
+     */
+    ZoneMap zoneMap() {
+        return zoneMap;
+    }
+
+    /**
+     * Returns the number of pages in this HeapFile.  Pages appended to the
+     * file without going through this HeapFile are counted, along with any
+     * pages {@link #extend} preallocated before them.
      */
     public int numPages() {
-        return (int) Math.ceil(this.file.length() * 1.0 / BufferPool.getPageSize());
+        int filePages = (int) Math.ceil(this.file.length() * 1.0 / BufferPool.getPageSize());
+        if (filePages > allocatedPages.get()) {
+            notePages(filePages);
+        }
+        return knownPages.get();
+    }
+
+    /** Note that the file holds at least n pages. */
+    private void notePages(int n) {
+        allocatedPages.accumulateAndGet(n, Math::max);
+        knownPages.accumulateAndGet(n, Math::max);
+    }
+
+    /**
+     * Returns true if page pgNo is in this file.  Only looks at the file
+     * itself when pgNo is past the pages already known to exist, so a scan
+     * checks the file once at its end rather than once per page.
+     */
+    boolean hasPage(int pgNo) {
+        return pgNo < knownPages.get() || pgNo < numPages();
     }
 
     // see DbFile.java for javadocs
@@ -110,25 +229,124 @@ public class HeapFile implements DbFile {
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // lab2
-        int pgNum = 0;
+        // only visit the pages the free-space map says may have room
+        int pgNum = freeSpace.nextWithRoom(0);
         HeapPage heapPage = null;
 
-        while (pgNum < numPages()) {
+        while (hasPage(pgNum)) {
             heapPage = (HeapPage) Database.getBufferPool().getPage(tid, new HeapPageId(getId(), pgNum), Permissions.READ_WRITE);
-            if (heapPage.getNumEmptySlots() > 0) {
+            if (heapPage.hasRoomFor(t)) {
                 break;
             }
-            pgNum++;
+            freeSpace.update(pgNum, heapPage.getNumEmptySlots() > 0);
+            pgNum = freeSpace.nextWithRoom(pgNum + 1);
         }
-        if (pgNum == numPages()) {
-            heapPage = new HeapPage(new HeapPageId(getId(), pgNum), HeapPage.createEmptyPageData());
+        if (!hasPage(pgNum)) {
+            // grows the file by extents, see extend
+            heapPage = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(getId(), extend(1)), Permissions.READ_WRITE);
         }
 
         heapPage.insertTuple(t);
-        writePage(heapPage);
+        zoneMap.inserted(heapPage.getId().getPageNumber(), t);
+        freeSpace.update(heapPage.getId().getPageNumber(), heapPage.getNumEmptySlots() > 0);
         return Arrays.asList(heapPage);
     }
 
+    /**
+     * Inserts a batch of tuples, filling each page with as many tuples as fit
+     * before moving on to the next page with room, so that every page is
+     * fetched and dirtied once.  When the file runs out of room it grows a
+     * page at a time, by {@link #extend}, like {@link #insertTuple}.
+     *
+     * @see DbFile#insertTuples
+     */
+    @Override
+    public List<Page> insertTuples(TransactionId tid, Iterable<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        List<Page> dirtied = new ArrayList<>();
+        HeapPage heapPage = null;
+        int pgNum = -1;
+
+        for (Tuple t : tuples) {
+            if (heapPage == null || !heapPage.hasRoomFor(t)) {
+                if (heapPage != null) {
+                    freeSpace.update(pgNum, heapPage.getNumEmptySlots() > 0);
+                }
+                heapPage = null;
+                // pages are only visited in increasing order, so each is
+                // fetched and dirtied once
+                pgNum = freeSpace.nextWithRoom(pgNum + 1);
+                while (heapPage == null) {
+                    boolean fresh = false;
+                    if (!hasPage(pgNum)) {
+                        pgNum = extend(1);
+                        fresh = true;
+                    }
+                    HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid,
+                            new HeapPageId(getId(), pgNum), Permissions.READ_WRITE);
+                    // a tuple that does not fit an empty page fails below
+                    if (fresh || p.hasRoomFor(t)) {
+                        heapPage = p;
+                    } else {
+                        freeSpace.update(pgNum, p.getNumEmptySlots() > 0);
+                        pgNum = freeSpace.nextWithRoom(pgNum + 1);
+                    }
+                }
+                heapPage.markDirty(true, tid);
+                dirtied.add(heapPage);
+            }
+            heapPage.insertTuple(t);
+            zoneMap.inserted(pgNum, t);
+        }
+        if (heapPage != null) {
+            freeSpace.update(pgNum, heapPage.getNumEmptySlots() > 0);
+        }
+        return dirtied;
+    }
+
+    /**
+     * Add count empty pages to the end of the file.  The file grows in
+     * extents of zeroed pages, each written with a single write: when the
+     * pages preallocated by the last extent run out, the next extent is
+     * twice as long, up to {@link #MAX_EXTEND_PAGES} pages.  Pages of an
+     * extent only count towards {@link #numPages} once they are handed out,
+     * so that single and batch inserts both add pages one at a time but
+     * only write to grow the file once per extent.
+     * The pages are then filled in the buffer pool like any other page, so
+     * that the data writes go through the log.  Appends are serialized, so
+     * concurrent inserters that both find the file full each get their own
+     * new pages rather than both writing the old end of file.
+     * <p>
+     * An all-zero page is an empty page in every heap page format, so the
+     * extent is just zeroes, and preallocated pages found after the file is
+     * reopened read as empty pages.  Subclasses that store pages
+     * differently override this.
+     *
+     * @return the page number of the first new page
+     */
+    synchronized int extend(int count) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        int first = numPages();
+        int allocated = (int) ((file.length() + pageSize - 1) / pageSize);
+        if (first + count > allocated) {
+            int extent = Math.max(first + count - allocated, nextExtent);
+            nextExtent = Math.min(nextExtent * 2, MAX_EXTEND_PAGES);
+            byte[] zeroes = new byte[extent * pageSize];
+            // noted first, so numPages() does not take the extent for
+            // pages appended by other means
+            allocatedPages.accumulateAndGet(allocated + extent, Math::max);
+            PageIO.write(io, (long) allocated * pageSize, zeroes, 0, zeroes.length);
+            zoneMap.extended(allocated, extent);
+        }
+        notePages(first + count);
+        for (int i = 0; i < count; i++) {
+            freeSpace.set(first + i, true);
+        }
+        freeSpace.flush();
+        return first;
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
@@ -136,13 +354,28 @@ public class HeapFile implements DbFile {
         // lab2
         HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
         heapPage.deleteTuple(t);
+        freeSpace.update(heapPage.getId().getPageNumber(), true);
 //        writePage(heapPage);
         return new ArrayList<>(Arrays.asList(heapPage));
     }
 
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
-        return new HeapFileIterator(this, tid);
+        return new HeapFileIterator(this, tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that skips the pages
+     * its zone map shows cannot hold a tuple satisfying all of predicates.
+     * Tuples on the pages it does read are returned whether they satisfy the
+     * predicates or not, so the caller must still filter them.
+     *
+     * @param tid        the transaction reading the file
+     * @param predicates predicates on the columns of this file (their field
+     *                   indexes are indexes into this file's TupleDesc)
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates) {
+        return new HeapFileIterator(this, tid, predicates.isEmpty() ? null : predicates);
     }
 
 }
@@ -151,28 +384,64 @@ class HeapFileIterator extends AbstractDbFileIterator {
 
     Iterator<Tuple> it = null;
     HeapPage heapPage = null;
+    ReadAhead readAhead = null;
 
     final TransactionId tid;
     final HeapFile f;
+    /** predicates used to skip pages, or null to read every page */
+    final List<Predicate> predicates;
 
     /**
      * Constructor for this iterator
      *
-     * @param f   - the HeapFile containing the tuples
-     * @param tid - the transaction id
+     * @param f          - the HeapFile containing the tuples
+     * @param tid        - the transaction id
+     * @param predicates - predicates used to skip pages, or null
      */
-    public HeapFileIterator(HeapFile f, TransactionId tid) {
+    public HeapFileIterator(HeapFile f, TransactionId tid, List<Predicate> predicates) {
         this.f = f;
         this.tid = tid;
+        this.predicates = predicates;
     }
 
     /**
      * Open this iterator by getting an iterator on the first page
      */
     public void open() throws DbException, TransactionAbortedException {
-        PageId pid = new HeapPageId(this.f.getId(), 0);
+        int pgNo = nextPage(0);
+        if (predicates != null && !this.f.hasPage(pgNo)) {
+            // every page skipped
+            return;
+        }
+        PageId pid = new HeapPageId(this.f.getId(), pgNo);
+        this.readAhead = new ReadAhead(this.f, predicates == null ? null : this::mayMatch);
+        this.readAhead.visit(pgNo);
         this.heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
         it = this.heapPage.iterator();
+        noteScanned();
+    }
+
+    private boolean mayMatch(int pgNo) {
+        return f.zoneMap().mayMatch(pgNo, predicates);
+    }
+
+    /**
+     * @return the first page at or after pgNo the scan has to read; past the
+     *         end of the file if there is none
+     */
+    private int nextPage(int pgNo) {
+        if (predicates != null) {
+            while (this.f.hasPage(pgNo) && !mayMatch(pgNo)) {
+                pgNo++;
+            }
+        }
+        return pgNo;
+    }
+
+    private void noteScanned() {
+        if (predicates != null) {
+            f.zoneMap().scanned(heapPage);
+        }
     }
 
     /**
@@ -189,15 +458,17 @@ class HeapFileIterator extends AbstractDbFileIterator {
         }
         while (it == null && heapPage != null) {
             // 下一页在文件中偏移量
-            int pgNo = heapPage.pid.getPageNumber() + 1;
+            int pgNo = nextPage(heapPage.pid.getPageNumber() + 1);
             // 判断下一页有没有超出文件范围，超过了则遍历结束
-            if (pgNo >= this.f.numPages()) {
+            if (!this.f.hasPage(pgNo)) {
                 heapPage = null;
                 break;
             }
             HeapPageId nextPageId = new HeapPageId(heapPage.pid.getTableId(), pgNo);
+            readAhead.visit(pgNo);
             heapPage = (HeapPage) Database.getBufferPool().getPage(tid, nextPageId, Permissions.READ_WRITE);
             it = heapPage.iterator();
+            noteScanned();
             // 有下一个 tuple，不用继续找下一个 Page 了
             if (it != null && it.hasNext()) {
                 break;
@@ -226,5 +497,12 @@ class HeapFileIterator extends AbstractDbFileIterator {
         super.close();
         it = null;
         heapPage = null;
+        if (predicates != null) {
+            try {
+                f.zoneMap().flush();
+            } catch (IOException e) {
+                // the ranges are recorded again by the next filtered scan
+            }
+        }
     }
 }
@@ -158,6 +158,13 @@ public class HeapFileEncoder {
                 while (overflow-- > 0)
                     pageStream.write((byte)0);
             }
+            else {
+                try {
+                    typeAr[fieldNo].parse(s).serialize(pageStream);
+                } catch (java.text.ParseException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+            }
             curpos = 0;
             if (c == '\n')
                 fieldNo = 0;
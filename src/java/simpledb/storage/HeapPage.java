@@ -26,6 +26,8 @@ public class HeapPage implements Page {
     final Tuple[] tuples;
     final int numSlots;
 
+    /** the page before the changes made since the last setBeforeImage, or
+        null if there have been none: the before image is copied on write */
     byte[] oldData;
     private final Byte oldDataLock = (byte) 0;
 
@@ -73,6 +75,21 @@ public class HeapPage implements Page {
         setBeforeImage();
     }
 
+    /**
+     * Constructor for subclasses that lay out their data differently.  The
+     * fixed slot header and tuple array are left empty, and the subclass is
+     * responsible for parsing the page and calling {@link #setBeforeImage}.
+     * Subclasses that keep the page's bytes must call {@link #beforeChange}
+     * before changing them.
+     */
+    HeapPage(HeapPageId id, TupleDesc td) {
+        this.pid = id;
+        this.td = td;
+        this.numSlots = 0;
+        this.header = new byte[0];
+        this.tuples = new Tuple[0];
+    }
+
     /**
      * Retrieve the number of tuples on this page.
      *
@@ -101,7 +118,8 @@ public class HeapPage implements Page {
             synchronized (oldDataLock) {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid, oldDataRef);
+            // unchanged since the last before image was taken
+            return fromData(oldDataRef != null ? oldDataRef : getPageData());
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -110,12 +128,45 @@ public class HeapPage implements Page {
         return null;
     }
 
+    /**
+     * @return a page of the same format as this one, with this page's id,
+     * parsed from data
+     */
+    HeapPage fromData(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
+    /**
+     * Make the current contents of the page its before image.  No copy is
+     * made until the page is next changed.
+     */
     public void setBeforeImage() {
         synchronized (oldDataLock) {
-            oldData = getPageData().clone();
+            oldData = null;
         }
     }
 
+    /**
+     * Called before each change to the page.  The first change since the
+     * last {@link #setBeforeImage} saves the page's bytes as its before
+     * image, so that pages that are only read never pay for one.
+     */
+    void beforeChange() {
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                oldData = takePageData();
+            }
+        }
+    }
+
+    /**
+     * @return the page's bytes, which the page will not change afterwards;
+     * pages that keep their bytes hand them over and go on with a copy
+     */
+    byte[] takePageData() {
+        return getPageData();
+    }
+
     /**
      * @return the PageId associated with this page.
      */
@@ -146,10 +197,9 @@ public class HeapPage implements Page {
         t.setRecordId(rid);
         try {
             for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
+                t.readField(j, dis);
             }
-        } catch (java.text.ParseException e) {
+        } catch (IOException e) {
             e.printStackTrace();
             throw new NoSuchElementException("parsing error!");
         }
@@ -201,9 +251,8 @@ public class HeapPage implements Page {
 
             // non-empty slot
             for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
                 try {
-                    f.serialize(dos);
+                    tuples[i].writeField(j, dos);
 
                 } catch (IOException e) {
                     e.printStackTrace();
@@ -270,6 +319,7 @@ public class HeapPage implements Page {
         if(tuples[tupleNo] == null){
             throw new DbException("tuple is not exist");
         }
+        beforeChange();
         markSlotUsed(tupleNo, false);
     }
 
@@ -289,6 +339,7 @@ public class HeapPage implements Page {
         }
         for (int i = 0; i < numSlots; i++) {
             if(!isSlotUsed(i)){
+                beforeChange();
                 markSlotUsed(i, true);
                 t.setRecordId(new RecordId(pid, i));
                 tuples[i] = t;
@@ -334,6 +385,13 @@ public class HeapPage implements Page {
         return cnt;
     }
 
+    /**
+     * Returns true if the specified tuple can be inserted into this page.
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
     /**
      * Returns true if associated slot on this page is filled.
      */
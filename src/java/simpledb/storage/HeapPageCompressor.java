@@ -0,0 +1,304 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * HeapPageCompressor converts the bytes of a {@link HeapPage} to and from a
+ * compact, column-wise encoding, for {@link CompressedHeapFile}.
+ * <p>
+ * The compressed form is the page's slot bitmap, followed by the values of
+ * each column for the used slots only, each column in the lightweight
+ * encoding that suits it:
+ * <ul>
+ * <li> INT_TYPE columns are stored either run-length encoded, as (value,
+ * run length) pairs, or frame-of-reference encoded, as the column minimum
+ * followed by every value's offset from it packed in just enough bits,
+ * whichever is smaller.
+ * <li> STRING_TYPE columns are dictionary encoded: the distinct strings of
+ * the page, followed by each value's index in the dictionary packed in
+ * just enough bits.
+ * <li> Any other column is stored raw.
+ * </ul>
+ * Empty slots and padding are all zeroes in a HeapPage, so
+ * {@link #decompress} reproduces the page's bytes exactly.
+ */
+class HeapPageCompressor {
+
+    private static final byte RAW = 0;
+    private static final byte RLE = 1;
+    private static final byte FRAME_OF_REFERENCE = 2;
+    private static final byte DICTIONARY = 3;
+
+    private final TupleDesc td;
+    private final int pageSize;
+    private final int numSlots;
+    private final int headerSize;
+    private final int tupleSize;
+
+    HeapPageCompressor(TupleDesc td) {
+        this.td = td;
+        this.pageSize = BufferPool.getPageSize();
+        this.tupleSize = td.getSize();
+        // same layout as HeapPage
+        this.numSlots = pageSize * 8 / (tupleSize * 8 + 1);
+        this.headerSize = (numSlots + 7) / 8;
+    }
+
+    private boolean isSlotUsed(byte[] page, int i) {
+        return (page[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    private int fieldOffset(int slot, int col) {
+        int off = headerSize + slot * tupleSize;
+        for (int j = 0; j < col; j++) {
+            off += td.getFieldType(j).getLen();
+        }
+        return off;
+    }
+
+    /**
+     * @param page the bytes of a HeapPage, as returned by getPageData()
+     * @return the compressed form of page
+     */
+    byte[] compress(byte[] page) {
+        int[] used = usedSlots(page);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(pageSize / 4);
+        DataOutputStream out = new DataOutputStream(baos);
+        try {
+            out.write(page, 0, headerSize);
+            for (int j = 0; j < td.numFields(); j++) {
+                Type type = td.getFieldType(j);
+                if (type == Type.INT_TYPE) {
+                    compressInts(out, page, used, j);
+                } else if (type == Type.STRING_TYPE) {
+                    compressStrings(out, page, used, j);
+                } else {
+                    out.writeByte(RAW);
+                    for (int slot : used) {
+                        out.write(page, fieldOffset(slot, j), type.getLen());
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // writing to a byte array
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * @param data the compressed form of a page, as returned by compress
+     * @return the bytes of the page
+     */
+    byte[] decompress(byte[] data) throws IOException {
+        byte[] page = new byte[pageSize];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.readFully(page, 0, headerSize);
+        int[] used = usedSlots(page);
+        for (int j = 0; j < td.numFields(); j++) {
+            byte encoding = in.readByte();
+            switch (encoding) {
+            case RLE:
+            case FRAME_OF_REFERENCE:
+                decompressInts(in, encoding, page, used, j);
+                break;
+            case DICTIONARY:
+                decompressStrings(in, page, used, j);
+                break;
+            case RAW:
+                int len = td.getFieldType(j).getLen();
+                for (int slot : used) {
+                    in.readFully(page, fieldOffset(slot, j), len);
+                }
+                break;
+            default:
+                throw new IOException("unknown column encoding " + encoding);
+            }
+        }
+        return page;
+    }
+
+    private int[] usedSlots(byte[] page) {
+        int n = 0;
+        int[] used = new int[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            if (isSlotUsed(page, i)) {
+                used[n++] = i;
+            }
+        }
+        return Arrays.copyOf(used, n);
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+                | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    /** @return the number of bits needed to hold values 0..max */
+    private static int bitsFor(long max) {
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    private void compressInts(DataOutputStream out, byte[] page, int[] used, int col) throws IOException {
+        int n = used.length;
+        int[] vals = new int[n];
+        int runs = 0;
+        long min = Integer.MAX_VALUE;
+        long max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            vals[i] = getInt(page, fieldOffset(used[i], col));
+            if (i == 0 || vals[i] != vals[i - 1]) {
+                runs++;
+            }
+            min = Math.min(min, vals[i]);
+            max = Math.max(max, vals[i]);
+        }
+        int width = n == 0 ? 0 : bitsFor(max - min);
+        long rleSize = 4 + 8L * runs;
+        long forSize = 4 + 1 + ((long) n * width + 7) / 8;
+
+        if (rleSize <= forSize) {
+            out.writeByte(RLE);
+            out.writeInt(runs);
+            for (int i = 0; i < n; ) {
+                int j = i;
+                while (j < n && vals[j] == vals[i]) {
+                    j++;
+                }
+                out.writeInt(vals[i]);
+                out.writeInt(j - i);
+                i = j;
+            }
+        } else {
+            out.writeByte(FRAME_OF_REFERENCE);
+            out.writeInt((int) min);
+            out.writeByte(width);
+            long[] offsets = new long[n];
+            for (int i = 0; i < n; i++) {
+                offsets[i] = vals[i] - min;
+            }
+            pack(out, offsets, width);
+        }
+    }
+
+    private void decompressInts(DataInputStream in, byte encoding, byte[] page, int[] used, int col)
+            throws IOException {
+        if (encoding == RLE) {
+            int runs = in.readInt();
+            int i = 0;
+            while (runs-- > 0) {
+                int v = in.readInt();
+                int len = in.readInt();
+                while (len-- > 0) {
+                    putInt(page, fieldOffset(used[i++], col), v);
+                }
+            }
+        } else {
+            int min = in.readInt();
+            int width = in.readByte();
+            long[] offsets = unpack(in, used.length, width);
+            for (int i = 0; i < used.length; i++) {
+                putInt(page, fieldOffset(used[i], col), (int) (min + offsets[i]));
+            }
+        }
+    }
+
+    private void compressStrings(DataOutputStream out, byte[] page, int[] used, int col) throws IOException {
+        // strings are kept as latin-1 so that every byte round trips
+        Map<String, Integer> dict = new LinkedHashMap<>();
+        long[] ids = new long[used.length];
+        for (int i = 0; i < used.length; i++) {
+            int off = fieldOffset(used[i], col);
+            int len = Math.min(Math.max(getInt(page, off), 0), Type.STRING_LEN);
+            String s = new String(page, off + 4, len, StandardCharsets.ISO_8859_1);
+            Integer id = dict.get(s);
+            if (id == null) {
+                id = dict.size();
+                dict.put(s, id);
+            }
+            ids[i] = id;
+        }
+        out.writeByte(DICTIONARY);
+        out.writeInt(dict.size());
+        for (String s : dict.keySet()) {
+            byte[] bs = s.getBytes(StandardCharsets.ISO_8859_1);
+            out.writeShort(bs.length);
+            out.write(bs);
+        }
+        int width = dict.size() <= 1 ? 0 : bitsFor(dict.size() - 1);
+        out.writeByte(width);
+        pack(out, ids, width);
+    }
+
+    private void decompressStrings(DataInputStream in, byte[] page, int[] used, int col) throws IOException {
+        byte[][] dict = new byte[in.readInt()][];
+        for (int i = 0; i < dict.length; i++) {
+            dict[i] = new byte[in.readUnsignedShort()];
+            in.readFully(dict[i]);
+        }
+        int width = in.readByte();
+        long[] ids = unpack(in, used.length, width);
+        for (int i = 0; i < used.length; i++) {
+            byte[] s = dict[(int) ids[i]];
+            int off = fieldOffset(used[i], col);
+            putInt(page, off, s.length);
+            System.arraycopy(s, 0, page, off + 4, s.length);
+        }
+    }
+
+    /**
+     * Write the low width bits of each value, most significant bit first.
+     * width is at most 32.
+     */
+    private static void pack(DataOutputStream out, long[] vals, int width) throws IOException {
+        if (width == 0) {
+            return;
+        }
+        long mask = (1L << width) - 1;
+        long acc = 0;
+        int bits = 0;
+        for (long v : vals) {
+            acc = (acc << width) | (v & mask);
+            bits += width;
+            while (bits >= 8) {
+                bits -= 8;
+                out.writeByte((int) (acc >>> bits));
+            }
+            acc &= (1L << bits) - 1;
+        }
+        if (bits > 0) {
+            out.writeByte((int) (acc << (8 - bits)));
+        }
+    }
+
+    private static long[] unpack(DataInputStream in, int n, int width) throws IOException {
+        long[] vals = new long[n];
+        if (width == 0) {
+            return vals;
+        }
+        long acc = 0;
+        int bits = 0;
+        for (int i = 0; i < n; i++) {
+            while (bits < width) {
+                acc = (acc << 8) | in.readUnsignedByte();
+                bits += 8;
+            }
+            bits -= width;
+            vals[i] = (acc >>> bits) & ((1L << width) - 1);
+            acc &= (1L << bits) - 1;
+        }
+        return vals;
+    }
+}
@@ -52,23 +52,30 @@ public class IntField implements Field {
      * @see Field#compare
      */
     public boolean compare(Predicate.Op op, Field val) {
+        return compare(op, value, ((IntField) val).value);
+    }
 
-        IntField iVal = (IntField) val;
-
+    /**
+     * Compare two int values the way IntField.compare compares two
+     * IntFields, without creating the fields.
+     *
+     * @return true if value op val holds
+     */
+    public static boolean compare(Predicate.Op op, int value, int val) {
         switch (op) {
             case EQUALS:
             case LIKE:
-                return value == iVal.value;
+                return value == val;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return value != val;
             case GREATER_THAN:
-                return value > iVal.value;
+                return value > val;
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return value >= val;
             case LESS_THAN:
-                return value < iVal.value;
+                return value < val;
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return value <= val;
         }
 
         return false;
@@ -0,0 +1,311 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LogBuffer is the in-memory ring buffer that sits in front of the log
+ * file.  Log sequence numbers (LSNs) are simply byte offsets in the log
+ * file, so a record's LSN is also the offset at which it will be written.
+ * <p>
+ * Appending a record is a two step protocol:
+ * <ol>
+ * <li> {@link #reserve} claims <tt>len</tt> bytes of log by atomically
+ * advancing the tail LSN.  This is the only point at which appenders
+ * contend, and it is a single atomic add.
+ * <li> {@link #write} copies the record into its reserved range and
+ * publishes it.  Any number of appenders may be copying at once.
+ * </ol>
+ * A background writer thread collects the longest contiguous run of
+ * published records starting at the last written LSN and hands it to the
+ * file channel in one (or, on wrap around, two) sequential writes.
+ * Records that are published out of order are linked by the length stored
+ * in their start slot, so the writer never waits for a slow appender
+ * further down the buffer.
+ * <p>
+ * The writer thread is started on demand and exits once the buffer has
+ * been idle for a while, so an unused LogFile does not pin a thread.
+ *
+ * @Threadsafe
+ */
+class LogBuffer {
+
+    /** Default capacity of the ring, in bytes. Must be a power of two. */
+    static final int DEFAULT_CAPACITY = 1 << 19;
+
+    /** How long the writer thread parks between polls of the ring. */
+    private static final long WRITER_PARK_NANOS = 1_000_000L;
+
+    /** How many idle polls the writer makes before exiting. */
+    private static final int WRITER_IDLE_POLLS = 200;
+
+    private final byte[] ring;
+    private final int mask;
+
+    /**
+     * links[lsn & mask] holds the length of the record starting at lsn once
+     * that record has been copied into the ring, and 0 otherwise.
+     */
+    private final AtomicIntegerArray links;
+
+    /** next LSN to hand out to an appender */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** everything below this LSN has been handed to the file channel */
+    private volatile long written;
+
+    /** everything below this LSN has been forced to stable storage */
+    private volatile long forced;
+
+    private volatile FileChannel channel;
+    private volatile IOException failure;
+
+    private final AtomicBoolean writerRunning = new AtomicBoolean(false);
+    private volatile Thread writer;
+
+    private final Object flushLock = new Object();
+    private final Object forceLock = new Object();
+
+    /**
+     * Create a log buffer that appends to the specified channel.
+     *
+     * @param channel the channel backing the log file
+     * @param startLsn the LSN (file offset) of the first record to append
+     * @param capacity the size of the ring, in bytes; must be a power of two
+     */
+    LogBuffer(FileChannel channel, long startLsn, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("log buffer capacity must be a power of two: " + capacity);
+        }
+        this.ring = new byte[capacity];
+        this.mask = capacity - 1;
+        this.links = new AtomicIntegerArray(capacity);
+        this.channel = channel;
+        tail.set(startLsn);
+        written = startLsn;
+        forced = startLsn;
+    }
+
+    LogBuffer(FileChannel channel, long startLsn) {
+        this(channel, startLsn, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @return the LSN one past the last reserved byte, i.e. where the
+     * next record will begin
+     */
+    long tail() {
+        return tail.get();
+    }
+
+    /**
+     * Reserve len bytes at the end of the log.
+     *
+     * @return the LSN at which the reserved range begins
+     * @throws IOException if the record cannot fit in the buffer
+     */
+    long reserve(int len) throws IOException {
+        if (len <= 0 || len > ring.length) {
+            throw new IOException("log record of " + len + " bytes does not fit in a "
+                    + ring.length + " byte log buffer");
+        }
+        return tail.getAndAdd(len);
+    }
+
+    /**
+     * Copy a record into the range previously reserved for it at lsn and
+     * make it visible to the writer thread.  Blocks only if the ring is
+     * full of data the writer has not yet written.
+     */
+    void write(long lsn, byte[] rec) throws IOException {
+        int len = rec.length;
+        if (lsn + len - written > ring.length) {
+            awaitWritten(lsn + len - ring.length, "waiting for log buffer space");
+        }
+
+        int pos = (int) (lsn & mask);
+        int first = Math.min(len, ring.length - pos);
+        System.arraycopy(rec, 0, ring, pos, first);
+        if (first < len) {
+            System.arraycopy(rec, first, ring, 0, len - first);
+        }
+        // the volatile store publishes the copy above to the writer
+        links.set(pos, len);
+        wakeWriter();
+    }
+
+    /**
+     * Block until every record that begins below lsn has been handed to the
+     * file channel.
+     */
+    void flush(long lsn) throws IOException {
+        if (written < lsn) {
+            awaitWritten(lsn, "flushing log");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Block until the writer has handed everything below lsn to the file
+     * channel.  The writer notifies flushLock each time it advances written
+     * and when it fails, so waiters sleep rather than poll.
+     */
+    private void awaitWritten(long lsn, String what) throws IOException {
+        wakeWriter();
+        synchronized (flushLock) {
+            while (written < lsn) {
+                checkFailure();
+                try {
+                    flushLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while " + what, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Block until every record that begins below lsn is on stable storage.
+     * Concurrent callers share a single channel force (group commit).
+     */
+    void force(long lsn) throws IOException {
+        flush(lsn);
+        if (forced >= lsn) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forced >= lsn) {
+                return;
+            }
+            long upTo = written;
+            channel.force(true);
+            forced = upTo;
+        }
+    }
+
+    /** Write out everything reserved so far. */
+    void drain() throws IOException {
+        flush(tail.get());
+    }
+
+    /**
+     * Point the buffer at a new channel, e.g. after the log file has been
+     * truncated and replaced.  The caller must make sure there are no
+     * concurrent appenders and that the buffer has been drained.
+     */
+    void reset(FileChannel channel, long startLsn) throws IOException {
+        drain();
+        synchronized (forceLock) {
+            this.channel = channel;
+            tail.set(startLsn);
+            written = startLsn;
+            forced = startLsn;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("log writer failed", e);
+        }
+    }
+
+    private void wakeWriter() {
+        Thread t = writer;
+        if (t != null && writerRunning.get()) {
+            LockSupport.unpark(t);
+        } else if (writerRunning.compareAndSet(false, true)) {
+            t = new Thread(this::runWriter, "simpledb-log-writer");
+            t.setDaemon(true);
+            writer = t;
+            t.start();
+        }
+    }
+
+    /** @return true if there is a published record at the written LSN */
+    private boolean hasPublished() {
+        return written < tail.get() && links.get((int) (written & mask)) != 0;
+    }
+
+    private void runWriter() {
+        int idle = 0;
+        while (true) {
+            boolean wrote;
+            try {
+                wrote = writeOut();
+            } catch (IOException e) {
+                failure = e;
+                wrote = false;
+            }
+            if (wrote || failure != null) {
+                synchronized (flushLock) {
+                    flushLock.notifyAll();
+                }
+            }
+            if (wrote) {
+                idle = 0;
+                continue;
+            }
+            if (++idle < WRITER_IDLE_POLLS && failure == null) {
+                LockSupport.parkNanos(WRITER_PARK_NANOS);
+                continue;
+            }
+            // about to exit; an appender that publishes after this point
+            // will see writerRunning == false and start a new writer
+            writerRunning.set(false);
+            if (failure != null || !hasPublished() || !writerRunning.compareAndSet(false, true)) {
+                return;
+            }
+            writer = Thread.currentThread();
+            idle = 0;
+        }
+    }
+
+    /**
+     * Hand the longest contiguous run of published records to the channel.
+     *
+     * @return true if anything was written
+     */
+    private boolean writeOut() throws IOException {
+        if (failure != null) {
+            return false;
+        }
+        long from = written;
+        long to = from;
+        long end = tail.get();
+        while (to < end) {
+            int slot = (int) (to & mask);
+            int len = links.get(slot);
+            if (len == 0) {
+                break;
+            }
+            links.set(slot, 0);
+            to += len;
+        }
+        if (to == from) {
+            return false;
+        }
+
+        int pos = (int) (from & mask);
+        int len = (int) (to - from);
+        int first = Math.min(len, ring.length - pos);
+        writeFully(ByteBuffer.wrap(ring, pos, first), from);
+        if (first < len) {
+            writeFully(ByteBuffer.wrap(ring, 0, len - first), from + first);
+        }
+        written = to;
+        return true;
+    }
+
+    private void writeFully(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+}
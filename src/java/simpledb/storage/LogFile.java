@@ -2,12 +2,16 @@
 package simpledb.storage;
 
 import simpledb.common.Database;
+import simpledb.index.*;
 import simpledb.transaction.TransactionId;
 import simpledb.common.Debug;
 
 import java.io.*;
 import java.util.*;
-import java.lang.reflect.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /*
 LogFile implements the recovery subsystem of SimpleDb.  This class is
@@ -44,16 +48,18 @@ must not be declared synchronized and must begin with a block like:
 <ul>
 
 <li> The first long integer of the file represents the offset of the
-last written checkpoint, or -1 if there are no checkpoints
+last written checkpoint, or -1 if there are no checkpoints.  It is
+followed by an integer giving the version of the record format.
 
 <li> All additional data in the log consists of log records.  Log
 records are variable length.
 
-<li> Each log record begins with an integer type and a long integer
-transaction id.
+<li> Each log record begins with an integer type, a long integer
+transaction id and the integer length of its body.
 
-<li> Each log record ends with a long integer file offset representing
-the position in the log file where the record began.
+<li> Each log record ends with a CRC-32C checksum of the record and a
+long integer file offset representing the position in the log file where
+the record began.  See {@link LogRecord}.
 
 <li> There are five record types: ABORT, COMMIT, UPDATE, BEGIN, and
 CHECKPOINT
@@ -63,21 +69,50 @@ CHECKPOINT
 <li>UPDATE RECORDS consist of two entries, a before image and an
 after image.  These images are serialized Page objects, and can be
 accessed with the LogFile.readPageData() and LogFile.writePageData()
-methods.  See LogFile.print() for an example.
-
-<li> CHECKPOINT records consist of active transactions at the time
-the checkpoint was taken and their first log record on disk.  The format
-of the record is an integer count of the number of transactions, as well
-as a long integer transaction id and a long integer first record offset
-for each active transaction.
+methods.  A serialized page is its page id (see writePageId) followed by
+the length and bytes of its page data; a page id is a one byte code for
+the kind of page it names followed by its table id and page number, so
+pages are decoded without reflection.  See LogFile.print() for an
+example.
+
+<li> CHECKPOINT records consist of the end of the log when the
+checkpoint began, the active transactions at that time and their first
+log record on disk, followed by the pages that were dirty in the buffer
+pool at that time.  The format of the record is a long integer begin
+offset; an integer count of the number of transactions, as well as a
+long integer transaction id and a long integer first record offset for
+each active transaction; then an integer count of dirty pages, and for
+each dirty page its serialized page id (see writePageId) and the long
+integer log offset at which it was first dirtied (its recLSN).
+Checkpoints are fuzzy: pages are not flushed while the checkpoint is
+taken, so recovery must redo from the smallest recLSN in this table, and
+records appended between the begin offset and the checkpoint record,
+which neither table may reflect, must be replayed too.
 
 </ul>
+
+<p> Records are not written to the file directly.  Each record is
+serialized into a private byte array, a range of the log is reserved for
+it in the {@link LogBuffer} with a single atomic add on the tail offset,
+and the record is copied into the buffer; a background writer thread
+streams the buffer to the file in large sequential writes.  Appends
+therefore do not serialize on the LogFile monitor.  Anything that reads
+the log back (truncation, rollback, recovery, print) first drains the
+buffer, and commit and abort force it.
+
+<p> Recovery is done by {@link LogRecovery}, which streams the log once
+and partitions update records by page across several worker threads so
+that redo and undo proceed in parallel.
 */
 public class LogFile {
 
     final File logFile;
     private RandomAccessFile raf;
-    Boolean recoveryUndecided; // no call to recover() and no append to log
+    private final LogBuffer logBuffer;
+    // appenders share this; truncation, which replaces the file under the
+    // buffer, takes it exclusively
+    private final ReadWriteLock appendLock = new ReentrantReadWriteLock();
+    volatile boolean recoveryUndecided; // no call to recover() and no append to log
 
     static final int ABORT_RECORD = 1;
     static final int COMMIT_RECORD = 2;
@@ -86,14 +121,47 @@ public class LogFile {
     static final int CHECKPOINT_RECORD = 5;
     static final long NO_CHECKPOINT_ID = -1;
 
+    // codes for the kinds of page a serialized page id can name
+    static final byte HEAP_PAGE = 1;
+    static final byte BTREE_ROOT_PTR_PAGE = 2;
+    static final byte BTREE_INTERNAL_PAGE = 3;
+    static final byte BTREE_LEAF_PAGE = 4;
+    static final byte BTREE_HEADER_PAGE = 5;
+
     final static int INT_SIZE = 4;
     final static int LONG_SIZE = 8;
 
-    long currentOffset = -1;//protected by this
-//    int pageSize;
-    int totalRecords = 0; // for PatchTest //protected by this
+    // checkpoint offset and format version; the first record follows
+    final static int LOG_HEADER_SIZE = LONG_SIZE + INT_SIZE;
 
-    final Map<Long,Long> tidToFirstLogRecord = new HashMap<>();
+//    int pageSize;
+    final AtomicInteger totalRecords = new AtomicInteger(); // for PatchTest
+    private volatile long recoveredBytes; // for the recovery benchmark
+
+    final Map<Long,Long> tidToFirstLogRecord = new ConcurrentHashMap<>();
+
+    // for tests: run by logCheckpoint between taking its snapshots and
+    // appending the checkpoint record
+    volatile Runnable checkpointHook;
+    // for tests: run by logTruncate between copying the records on disk and
+    // stopping appenders to copy the rest
+    volatile Runnable truncateHook;
+
+    /** checkpoints and truncations run one at a time */
+    private final Object checkpointLock = new Object();
+
+    /** the log is only truncated when at least this many bytes can go */
+    private static volatile long truncateBytes =
+            Long.getLong("simpledb.storage.LogFile.truncateBytes", 1 << 20);
+
+    /**
+     * Set how many bytes a truncation must be able to drop before the log
+     * is rewritten.  Defaults to the simpledb.storage.LogFile.truncateBytes
+     * system property, or 1 MB.
+     */
+    public static void setTruncateBytes(long bytes) {
+        truncateBytes = bytes;
+    }
 
     /** Constructor.
         Initialize and back the log file with the specified file.
@@ -109,6 +177,7 @@ public class LogFile {
     public LogFile(File f) throws IOException {
 	this.logFile = f;
         raf = new RandomAccessFile(f, "rw");
+        logBuffer = new LogBuffer(raf.getChannel(), raf.length());
         recoveryUndecided = true;
 
         // install shutdown hook to force cleanup on close
@@ -126,19 +195,60 @@ public class LogFile {
     // DB wants to do recovery, we're sure now -- it didn't. So truncate
     // the log.
     void preAppend() throws IOException {
-        totalRecords++;
+        totalRecords.incrementAndGet();
         if(recoveryUndecided){
-            recoveryUndecided = false;
-            raf.seek(0);
-            raf.setLength(0);
-            raf.writeLong(NO_CHECKPOINT_ID);
-            raf.seek(raf.length());
-            currentOffset = raf.getFilePointer();
+            synchronized (this) {
+                if (recoveryUndecided) {
+                    raf.seek(0);
+                    raf.setLength(0);
+                    raf.writeLong(NO_CHECKPOINT_ID);
+                    raf.writeInt(LogRecord.FORMAT_VERSION);
+                    logBuffer.reset(raf.getChannel(), raf.length());
+                    recoveryUndecided = false;
+                }
+            }
         }
     }
 
-    public synchronized int getTotalRecords() {
-        return totalRecords;
+    public int getTotalRecords() {
+        return totalRecords.get();
+    }
+
+    /** @return the number of bytes of log the last call to recover()
+        replayed, from the oldest record it needed to the end of the log */
+    public long getRecoveredBytes() {
+        return recoveredBytes;
+    }
+
+    /** Start serializing a record of the specified type for tid. */
+    private static DataOutputStream newRecord(ByteArrayOutputStream bytes, int type, long tid)
+        throws IOException {
+        return LogRecord.begin(bytes, type, tid);
+    }
+
+    /** Append a serialized record to the log.  The body length, checksum
+        and trailing start offset every record ends with are filled in here,
+        once the record's place in the log is known.
+
+        @return the offset in the log file at which the record begins
+    */
+    private long append(ByteArrayOutputStream bytes, DataOutputStream dos) throws IOException {
+        LogRecord.end(dos);
+        byte[] rec = bytes.toByteArray();
+        appendLock.readLock().lock();
+        try {
+            long start = logBuffer.reserve(rec.length);
+            LogRecord.seal(rec, start);
+            logBuffer.write(start, rec);
+            return start;
+        } finally {
+            appendLock.readLock().unlock();
+        }
+    }
+
+    /** @return the offset one past the last record appended to the log */
+    long currentOffset() {
+        return logBuffer.tail();
     }
     
     /** Write an abort record to the log for the specified tid, force
@@ -160,10 +270,8 @@ public class LogFile {
                 // live transactions (needs tidToFirstLogRecord)
                 rollback(tid);
 
-                raf.writeInt(ABORT_RECORD);
-                raf.writeLong(tid.getId());
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                append(bytes, newRecord(bytes, ABORT_RECORD, tid.getId()));
                 force();
                 tidToFirstLogRecord.remove(tid.getId());
             }
@@ -175,16 +283,14 @@ public class LogFile {
 
         @param tid The committing transaction.
     */
-    public synchronized void logCommit(TransactionId tid) throws IOException {
+    public void logCommit(TransactionId tid) throws IOException {
         preAppend();
         Debug.log("COMMIT " + tid.getId());
         //should we verify that this is a live transaction?
 
-        raf.writeInt(COMMIT_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
-        force();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long start = append(bytes, newRecord(bytes, COMMIT_RECORD, tid.getId()));
+        logBuffer.force(start + bytes.size());
         tidToFirstLogRecord.remove(tid.getId());
     }
 
@@ -193,13 +299,15 @@ public class LogFile {
         @param tid The transaction performing the write
         @param before The before image of the page
         @param after The after image of the page
+        @return the log offset just past the record; the page must not be
+        written before the log has been forced up to it
 
         @see Page#getBeforeImage
+        @see #force(long)
     */
-    public  synchronized void logWrite(TransactionId tid, Page before,
+    public long logWrite(TransactionId tid, Page before,
                                        Page after)
         throws IOException  {
-        Debug.log("WRITE, offset = " + raf.getFilePointer());
         preAppend();
         /* update record conists of
 
@@ -209,90 +317,114 @@ public class LogFile {
            after page data
            start offset
         */
-        raf.writeInt(UPDATE_RECORD);
-        raf.writeLong(tid.getId());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 * BufferPool.getPageSize() + 256);
+        DataOutputStream dos = newRecord(bytes, UPDATE_RECORD, tid.getId());
 
-        writePageData(raf,before);
-        writePageData(raf,after);
-        raf.writeLong(currentOffset);
-        currentOffset = raf.getFilePointer();
+        writePageData(dos,before);
+        writePageData(dos,after);
+        long start = append(bytes, dos);
 
-        Debug.log("WRITE OFFSET = " + currentOffset);
+        Debug.log("WRITE, offset = " + start);
+        return start + bytes.size();
     }
 
-    void writePageData(RandomAccessFile raf, Page p) throws IOException{
-        PageId pid = p.getId();
-        int[] pageInfo = pid.serialize();
-
+    void writePageData(DataOutput raf, Page p) throws IOException{
         //page data is:
-        // page class name
-        // id class name
-        // id class bytes
-        // id class data
-        // page class bytes
-        // page class data
-
-        String pageClassName = p.getClass().getName();
-        String idClassName = pid.getClass().getName();
-
-        raf.writeUTF(pageClassName);
-        raf.writeUTF(idClassName);
-
-        raf.writeInt(pageInfo.length);
-        for (int j : pageInfo) {
-            raf.writeInt(j);
-        }
+        // page id (see writePageId)
+        // page data length
+        // page data
+        writePageId(raf, p.getId());
         byte[] pageData = p.getPageData();
         raf.writeInt(pageData.length);
         raf.write(pageData);
-        //        Debug.log ("WROTE PAGE DATA, CLASS = " + pageClassName + ", table = " +  pid.getTableId() + ", page = " + pid.pageno());
     }
 
-    Page readPageData(RandomAccessFile raf) throws IOException {
-        PageId pid;
-        Page newPage = null;
-
-        String pageClassName = raf.readUTF();
-        String idClassName = raf.readUTF();
+    Page readPageData(DataInput raf) throws IOException {
+        PageId pid = readPageId(raf);
+        byte[] pageData = new byte[raf.readInt()];
+        raf.readFully(pageData);
+        return newPage(pid, pageData);
+    }
 
-        try {
-            Class<?> idClass = Class.forName(idClassName);
-            Class<?> pageClass = Class.forName(pageClassName);
-
-            Constructor<?>[] idConsts = idClass.getDeclaredConstructors();
-            int numIdArgs = raf.readInt();
-            Object[] idArgs = new Object[numIdArgs];
-            for (int i = 0; i<numIdArgs;i++) {
-                idArgs[i] = raf.readInt();
+    /** Construct the page named by pid from its serialized data. */
+    static Page newPage(PageId pid, byte[] pageData) throws IOException {
+        if (pid instanceof HeapPageId) {
+            // heap files may use different page formats for the same id
+            DbFile f = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            if (f instanceof HeapFile) {
+                return ((HeapFile) f).createPage((HeapPageId) pid, pageData);
             }
-            pid = (PageId)idConsts[0].newInstance(idArgs);
-
-            Constructor<?>[] pageConsts = pageClass.getDeclaredConstructors();
-            int pageSize = raf.readInt();
-
-            byte[] pageData = new byte[pageSize];
-            raf.read(pageData); //read before image
-
-            Object[] pageArgs = new Object[2];
-            pageArgs[0] = pid;
-            pageArgs[1] = pageData;
+            return new HeapPage((HeapPageId) pid, pageData);
+        }
+        BTreePageId bpid = (BTreePageId) pid;
+        switch (bpid.pgcateg()) {
+        case BTreePageId.ROOT_PTR:
+            return new BTreeRootPtrPage(bpid, pageData);
+        case BTreePageId.INTERNAL:
+            return new BTreeInternalPage(bpid, pageData, keyField(bpid));
+        case BTreePageId.LEAF:
+            return new BTreeLeafPage(bpid, pageData, keyField(bpid));
+        default:
+            return new BTreeHeaderPage(bpid, pageData);
+        }
+    }
 
-            newPage = (Page)pageConsts[0].newInstance(pageArgs);
+    private static int keyField(BTreePageId pid) {
+        return ((BTreeFile) Database.getCatalog().getDatabaseFile(pid.getTableId())).keyField();
+    }
 
-            //            Debug.log("READ PAGE OF TYPE " + pageClassName + ", table = " + newPage.getId().getTableId() + ", page = " + newPage.getId().pageno());
-        } catch (ClassNotFoundException | InvocationTargetException | IllegalAccessException | InstantiationException e){
-            e.printStackTrace();
-            throw new IOException();
+    void writePageId(DataOutput raf, PageId pid) throws IOException {
+        byte code;
+        if (pid instanceof HeapPageId) {
+            code = HEAP_PAGE;
+        } else if (pid instanceof BTreePageId) {
+            switch (((BTreePageId) pid).pgcateg()) {
+            case BTreePageId.ROOT_PTR:
+                code = BTREE_ROOT_PTR_PAGE;
+                break;
+            case BTreePageId.INTERNAL:
+                code = BTREE_INTERNAL_PAGE;
+                break;
+            case BTreePageId.LEAF:
+                code = BTREE_LEAF_PAGE;
+                break;
+            default:
+                code = BTREE_HEADER_PAGE;
+                break;
+            }
+        } else {
+            throw new IOException("cannot log pages of type " + pid.getClass().getName());
         }
-        return newPage;
+        raf.writeByte(code);
+        raf.writeInt(pid.getTableId());
+        raf.writeInt(pid.getPageNumber());
+    }
 
+    PageId readPageId(DataInput raf) throws IOException {
+        byte code = raf.readByte();
+        int tableId = raf.readInt();
+        int pgNo = raf.readInt();
+        switch (code) {
+        case HEAP_PAGE:
+            return new HeapPageId(tableId, pgNo);
+        case BTREE_ROOT_PTR_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.ROOT_PTR);
+        case BTREE_INTERNAL_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.INTERNAL);
+        case BTREE_LEAF_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.LEAF);
+        case BTREE_HEADER_PAGE:
+            return new BTreePageId(tableId, pgNo, BTreePageId.HEADER);
+        default:
+            throw new IOException("unknown page type code " + code + " in log");
+        }
     }
 
     /** Write a BEGIN record for the specified transaction
         @param tid The transaction that is beginning
 
     */
-    public synchronized  void logXactionBegin(TransactionId tid)
+    public void logXactionBegin(TransactionId tid)
         throws IOException {
         Debug.log("BEGIN");
         if(tidToFirstLogRecord.get(tid.getId()) != null){
@@ -300,150 +432,258 @@ public class LogFile {
             throw new IOException("double logXactionBegin()");
         }
         preAppend();
-        raf.writeInt(BEGIN_RECORD);
-        raf.writeLong(tid.getId());
-        raf.writeLong(currentOffset);
-        tidToFirstLogRecord.put(tid.getId(), currentOffset);
-        currentOffset = raf.getFilePointer();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long start;
+        // a truncation must not move the record between append and put
+        appendLock.readLock().lock();
+        try {
+            start = append(bytes, newRecord(bytes, BEGIN_RECORD, tid.getId()));
+            tidToFirstLogRecord.put(tid.getId(), start);
+        } finally {
+            appendLock.readLock().unlock();
+        }
 
-        Debug.log("BEGIN OFFSET = " + currentOffset);
+        Debug.log("BEGIN OFFSET = " + start);
     }
 
-    /** Checkpoint the log and write a checkpoint record. */
+    /** Take a fuzzy checkpoint of the log and write a checkpoint record.
+        Neither the buffer pool nor the log is frozen: the active
+        transaction table and the dirty page table are snapshotted, the
+        checkpoint record is appended like any other record, and the dirty
+        pages are handed to the buffer pool to be written out in the
+        background.
+    */
     public void logCheckpoint() throws IOException {
-        //make sure we have buffer pool lock before proceeding
-        synchronized (Database.getBufferPool()) {
-            synchronized (this) {
-                //Debug.log("CHECKPOINT, offset = " + raf.getFilePointer());
-                preAppend();
-                long startCpOffset, endCpOffset;
-                Set<Long> keys = tidToFirstLogRecord.keySet();
-                Iterator<Long> els = keys.iterator();
-                force();
-                Database.getBufferPool().flushAllPages();
-                startCpOffset = raf.getFilePointer();
-                raf.writeInt(CHECKPOINT_RECORD);
-                raf.writeLong(-1); //no tid , but leave space for convenience
-
-                //write list of outstanding transactions
-                raf.writeInt(keys.size());
-                while (els.hasNext()) {
-                    Long key = els.next();
-                    Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + key);
-                    raf.writeLong(key);
-                    //Debug.log("WRITING CHECKPOINT TRANSACTION OFFSET: " + tidToFirstLogRecord.get(key));
-                    raf.writeLong(tidToFirstLogRecord.get(key));
-                }
+        //Debug.log("CHECKPOINT, offset = " + currentOffset());
+        preAppend();
+        // the snapshots hold log offsets, which a truncation would move
+        synchronized (checkpointLock) {
+            long startCpOffset;
+            // anything appended from here on may be missing from the snapshots,
+            // e.g. a steal logged and written before the record is appended
+            long beginCpOffset = logBuffer.tail();
+            Map<Long, Long> active = new HashMap<>(tidToFirstLogRecord);
+            Map<PageId, Long> dirty = Database.getBufferPool().getDirtyPageTable();
+            Runnable hook = checkpointHook;
+            if (hook != null) {
+                hook.run();
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream dos = newRecord(bytes, CHECKPOINT_RECORD, -1); //no tid , but leave space for convenience
+            dos.writeLong(beginCpOffset);
+
+            //write list of outstanding transactions
+            dos.writeInt(active.size());
+            for (Map.Entry<Long, Long> e : active.entrySet()) {
+                Debug.log("WRITING CHECKPOINT TRANSACTION ID: " + e.getKey());
+                dos.writeLong(e.getKey());
+                //Debug.log("WRITING CHECKPOINT TRANSACTION OFFSET: " + e.getValue());
+                dos.writeLong(e.getValue());
+            }
+
+            //write the dirty page table
+            dos.writeInt(dirty.size());
+            for (Map.Entry<PageId, Long> e : dirty.entrySet()) {
+                writePageId(dos, e.getKey());
+                dos.writeLong(e.getValue());
+            }
+            startCpOffset = append(bytes, dos);
+            force();
 
-                //once the CP is written, make sure the CP location at the
-                // beginning of the log file is updated
-                endCpOffset = raf.getFilePointer();
+            //once the CP is durable, make sure the CP location at the
+            // beginning of the log file is updated
+            synchronized (this) {
                 raf.seek(0);
                 raf.writeLong(startCpOffset);
-                raf.seek(endCpOffset);
-                raf.writeLong(currentOffset);
-                currentOffset = raf.getFilePointer();
-                //Debug.log("CP OFFSET = " + currentOffset);
+                raf.getChannel().force(false);
             }
-        }
+            //Debug.log("CP OFFSET = " + startCpOffset);
 
-        logTruncate();
+            Database.getBufferPool().flushPagesInBackground(dirty.keySet());
+            truncate();
+        }
     }
 
     /** Truncate any unneeded portion of the log to reduce its space
-        consumption */
-    public synchronized void logTruncate() throws IOException {
+        consumption.  Nothing is done unless at least
+        simpledb.storage.LogFile.truncateBytes bytes can be dropped.  The
+        records to keep are copied to a new file while appends go on;
+        appenders are only held up to copy the records appended meanwhile
+        and to switch files. */
+    public void logTruncate() throws IOException {
         preAppend();
-        raf.seek(0);
-        long cpLoc = raf.readLong();
-
-        long minLogRecord = cpLoc;
+        synchronized (checkpointLock) {
+            truncate();
+        }
+    }
 
-        if (cpLoc != -1L) {
-            raf.seek(cpLoc);
-            int cpType = raf.readInt();
-            @SuppressWarnings("unused")
-            long cpTid = raf.readLong();
+    /** Read the log file header, leaving raf positioned at the first
+        record.
 
-            if (cpType != CHECKPOINT_RECORD) {
-                throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
-            }
+        @return the offset of the last checkpoint, or NO_CHECKPOINT_ID
+    */
+    private long readHeader() throws IOException {
+        raf.seek(0);
+        long cpLoc = raf.readLong();
+        int version = raf.readInt();
+        if (version != LogRecord.FORMAT_VERSION) {
+            throw new IOException("unsupported log format version " + version);
+        }
+        return cpLoc;
+    }
 
-            int numOutstanding = raf.readInt();
+    /** @return the oldest offset recovery may need: the offset at which
+        the checkpoint at cpLoc began, the first record of any transaction
+        active at it, or the recLSN of any page dirty at it
+    */
+    private long oldestNeededRecord(long cpLoc) throws IOException {
+        if (cpLoc == NO_CHECKPOINT_ID) {
+            return LOG_HEADER_SIZE;
+        }
+        raf.seek(cpLoc);
+        LogRecord cp = LogRecord.read(raf, cpLoc);
+        if (cp == null || cp.type != CHECKPOINT_RECORD) {
+            throw new RuntimeException("Checkpoint pointer does not point to checkpoint record");
+        }
+        DataInputStream in = cp.body();
+        long min = Math.min(cpLoc, in.readLong());
+        int numOutstanding = in.readInt();
+        while (numOutstanding-- > 0) {
+            in.readLong();
+            min = Math.min(min, in.readLong());
+        }
+        // redo starts at the oldest recLSN in the dirty page table
+        int numDirty = in.readInt();
+        while (numDirty-- > 0) {
+            readPageId(in);
+            min = Math.min(min, in.readLong());
+        }
+        return min;
+    }
 
-            for (int i = 0; i < numOutstanding; i++) {
-                @SuppressWarnings("unused")
-                long tid = raf.readLong();
-                long firstLogRecord = raf.readLong();
-                if (firstLogRecord < minLogRecord) {
-                    minLogRecord = firstLogRecord;
-                }
-            }
+    private void truncate() throws IOException {
+        long copyTo = logBuffer.tail();
+        logBuffer.flush(copyTo);
+        long cpLoc;
+        long minLogRecord;
+        synchronized (this) {
+            cpLoc = readHeader();
+            minLogRecord = oldestNeededRecord(cpLoc);
+        }
+        // transactions that began after the checkpoint's snapshot may still
+        // need their records to roll back
+        for (long first : tidToFirstLogRecord.values()) {
+            minLogRecord = Math.min(minLogRecord, first);
+        }
+        if (minLogRecord - LOG_HEADER_SIZE < truncateBytes) {
+            return;
         }
 
         // we can truncate everything before minLogRecord
         File newFile = new File("logtmp" + System.currentTimeMillis());
         RandomAccessFile logNew = new RandomAccessFile(newFile, "rw");
-        logNew.seek(0);
-        logNew.writeLong((cpLoc - minLogRecord) + LONG_SIZE);
-
-        raf.seek(minLogRecord);
+        RandomAccessFile in = new RandomAccessFile(logFile, "r");
+        Map<Long, Long> moved = new HashMap<>();
+        try {
+            logNew.writeLong(cpLoc == NO_CHECKPOINT_ID ? cpLoc : (cpLoc - minLogRecord) + LOG_HEADER_SIZE);
+            logNew.writeInt(LogRecord.FORMAT_VERSION);
+            long offset = copyRecords(in, logNew, minLogRecord, copyTo, minLogRecord, moved);
+            logNew.getChannel().force(false);
+            Runnable hook = truncateHook;
+            if (hook != null) {
+                hook.run();
+            }
 
-        //have to rewrite log records since offsets are different after truncation
-        while (true) {
-            try {
-                int type = raf.readInt();
-                long record_tid = raf.readLong();
-                long newStart = logNew.getFilePointer();
-
-                Debug.log("NEW START = " + newStart);
-
-                logNew.writeInt(type);
-                logNew.writeLong(record_tid);
-
-                switch (type) {
-                case UPDATE_RECORD:
-                    Page before = readPageData(raf);
-                    Page after = readPageData(raf);
-
-                    writePageData(logNew, before);
-                    writePageData(logNew, after);
-                    break;
-                case CHECKPOINT_RECORD:
-                    int numXactions = raf.readInt();
-                    logNew.writeInt(numXactions);
-                    while (numXactions-- > 0) {
-                        long xid = raf.readLong();
-                        long xoffset = raf.readLong();
-                        logNew.writeLong(xid);
-                        logNew.writeLong((xoffset - minLogRecord) + LONG_SIZE);
+            // the buffer pool's recLSNs and page LSNs move with the records
+            BufferPool bp = Database.getBufferPool();
+            synchronized (bp) {
+                appendLock.writeLock().lock();
+                try {
+                    synchronized (this) {
+                        logBuffer.drain();
+                        copyRecords(in, logNew, offset, Long.MAX_VALUE, minLogRecord, moved);
+                        logNew.getChannel().force(false);
+                        for (Map.Entry<Long, Long> e : moved.entrySet()) {
+                            tidToFirstLogRecord.replace(e.getKey(), e.getValue());
+                        }
+                        bp.logTruncated(minLogRecord - LOG_HEADER_SIZE);
+
+                        Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
+
+                        raf.close();
+                        logNew.close();
+                        logFile.delete();
+                        newFile.renameTo(logFile);
+                        raf = new RandomAccessFile(logFile, "rw");
+                        raf.seek(raf.length());
+                        logBuffer.reset(raf.getChannel(), raf.length());
                     }
-                    break;
-                case BEGIN_RECORD:
-                    tidToFirstLogRecord.put(record_tid,newStart);
-                    break;
+                } finally {
+                    appendLock.writeLock().unlock();
                 }
-
-                //all xactions finish with a pointer
-                logNew.writeLong(newStart);
-                raf.readLong();
-
-            } catch (EOFException e) {
-                break;
             }
+        } finally {
+            in.close();
+            logNew.close();
+            newFile.delete();
         }
+        //print();
+    }
 
-        Debug.log("TRUNCATING LOG;  WAS " + raf.length() + " BYTES ; NEW START : " + minLogRecord + " NEW LENGTH: " + (raf.length() - minLogRecord));
+    /** Copy the records of the log read by in that begin at or after from
+        and below to to the end of out, shifting the offsets they hold by
+        the minLogRecord bytes the copy drops.
 
-        raf.close();
-        logFile.delete();
-        newFile.renameTo(logFile);
-        raf = new RandomAccessFile(logFile, "rw");
-        raf.seek(raf.length());
-        newFile.delete();
+        @param moved collects the new offset of each BEGIN record copied
+        @return the offset in the log of the first record not copied
+    */
+    private long copyRecords(RandomAccessFile in, RandomAccessFile out, long from, long to,
+                             long minLogRecord, Map<Long, Long> moved) throws IOException {
+        //have to rewrite log records since offsets are different after truncation
+        long offset = from;
+        in.seek(offset);
+        LogRecord r;
+        while (offset < to && (r = LogRecord.read(in, offset)) != null) {
+            offset += r.size();
+            long newStart = out.getFilePointer();
+
+            Debug.log("NEW START = " + newStart);
+
+            byte[] body = r.body;
+            switch (r.type) {
+            case CHECKPOINT_RECORD:
+                // offsets below minLogRecord only appear in checkpoints
+                // older than the last one, and are no longer needed
+                DataInputStream cp = r.body();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length);
+                DataOutputStream dos = new DataOutputStream(bytes);
+                dos.writeLong(Math.max(cp.readLong() - minLogRecord, 0) + LOG_HEADER_SIZE);
+                int numXactions = cp.readInt();
+                dos.writeInt(numXactions);
+                while (numXactions-- > 0) {
+                    dos.writeLong(cp.readLong());
+                    dos.writeLong(Math.max(cp.readLong() - minLogRecord, 0) + LOG_HEADER_SIZE);
+                }
+                int numPages = cp.readInt();
+                dos.writeInt(numPages);
+                while (numPages-- > 0) {
+                    writePageId(dos, readPageId(cp));
+                    dos.writeLong(Math.max(cp.readLong() - minLogRecord, 0) + LOG_HEADER_SIZE);
+                }
+                dos.flush();
+                body = bytes.toByteArray();
+                break;
+            case BEGIN_RECORD:
+                moved.put(r.tid, newStart);
+                break;
+            }
 
-        currentOffset = raf.getFilePointer();
-        //print();
+            // update bodies hold no offsets and are copied as they are
+            byte[] rec = LogRecord.encode(r.type, r.tid, body);
+            LogRecord.seal(rec, newStart);
+            out.write(rec);
+        }
+        return offset;
     }
 
     /** Rollback the specified transaction, setting the state of any
@@ -459,7 +699,33 @@ public class LogFile {
         synchronized (Database.getBufferPool()) {
             synchronized(this) {
                 preAppend();
-                // some code goes here
+                Long firstRecord = tidToFirstLogRecord.get(tid.getId());
+                if (firstRecord == null) {
+                    throw new NoSuchElementException("rollback: no live transaction " + tid.getId());
+                }
+                logBuffer.drain();
+
+                // the first before image logged for a page is its state
+                // before the transaction touched it
+                Map<PageId, Page> beforeImages = new HashMap<>();
+                long offset = firstRecord;
+                raf.seek(offset);
+                LogRecord r;
+                while ((r = LogRecord.read(raf, offset)) != null) {
+                    offset += r.size();
+                    if (r.type == UPDATE_RECORD && r.tid == tid.getId()) {
+                        Page before = readPageData(r.body());
+                        beforeImages.putIfAbsent(before.getId(), before);
+                    }
+                }
+
+                // pages the transaction dirtied but which were never stolen
+                // are simply discarded from the buffer pool by the caller
+                for (Page before : beforeImages.values()) {
+                    PageId pid = before.getId();
+                    Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(before);
+                    Database.getBufferPool().discardPage(pid);
+                }
             }
         }
     }
@@ -468,10 +734,12 @@ public class LogFile {
         is necessary so that start up can happen quickly (without
         extensive recovery.)
     */
-    public synchronized void shutdown() {
+    public void shutdown() {
         try {
             logCheckpoint();  //simple way to shutdown is to write a checkpoint record
-            raf.close();
+            synchronized (this) {
+                raf.close();
+            }
         } catch (IOException e) {
             System.out.println("ERROR SHUTTING DOWN -- IGNORING.");
             e.printStackTrace();
@@ -486,89 +754,108 @@ public class LogFile {
         synchronized (Database.getBufferPool()) {
             synchronized (this) {
                 recoveryUndecided = false;
-                // some code goes here
+                logBuffer.drain();
+                recoveredBytes = 0;
+                if (raf.length() < LOG_HEADER_SIZE) {
+                    return;
+                }
+
+                // recovery has to start at the oldest of the last checkpoint,
+                // the first record of any transaction live at that checkpoint
+                // and the recLSN of any page dirty at that checkpoint
+                long start = oldestNeededRecord(readHeader());
+
+                LogRecovery recovery = new LogRecovery(this, LogRecovery.defaultWorkers());
+                for (PageId pid : recovery.recover(logFile, start)) {
+                    Database.getBufferPool().discardPage(pid);
+                }
+                recoveredBytes = recovery.bytesReplayed;
+                raf.seek(raf.length());
             }
          }
     }
 
     /** Print out a human readable represenation of the log */
     public void print() throws IOException {
+        logBuffer.drain();
         long curOffset = raf.getFilePointer();
 
-        raf.seek(0);
-
-        System.out.println("0: checkpoint record at offset " + raf.readLong());
-
-        while (true) {
-            try {
-                int cpType = raf.readInt();
-                long cpTid = raf.readLong();
-
-                System.out.println((raf.getFilePointer() - (INT_SIZE + LONG_SIZE)) + ": RECORD TYPE " + cpType);
-                System.out.println((raf.getFilePointer() - LONG_SIZE) + ": TID " + cpTid);
-
-                switch (cpType) {
-                case BEGIN_RECORD:
-                    System.out.println(" (BEGIN)");
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
-                    break;
-                case ABORT_RECORD:
-                    System.out.println(" (ABORT)");
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
-                    break;
-                case COMMIT_RECORD:
-                    System.out.println(" (COMMIT)");
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
-                    break;
-
-                case CHECKPOINT_RECORD:
-                    System.out.println(" (CHECKPOINT)");
-                    int numTransactions = raf.readInt();
-                    System.out.println((raf.getFilePointer() - INT_SIZE) + ": NUMBER OF OUTSTANDING RECORDS: " + numTransactions);
-
-                    while (numTransactions-- > 0) {
-                        long tid = raf.readLong();
-                        long firstRecord = raf.readLong();
-                        System.out.println((raf.getFilePointer() - (LONG_SIZE + LONG_SIZE)) + ": TID: " + tid);
-                        System.out.println((raf.getFilePointer() - LONG_SIZE) + ": FIRST LOG RECORD: " + firstRecord);
-                    }
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
-
-                    break;
-                case UPDATE_RECORD:
-                    System.out.println(" (UPDATE)");
-
-                    long start = raf.getFilePointer();
-                    Page before = readPageData(raf);
-
-                    long middle = raf.getFilePointer();
-                    Page after = readPageData(raf);
-
-                    System.out.println(start + ": before image table id " + before.getId().getTableId());
-                    System.out.println((start + INT_SIZE) + ": before image page number " + before.getId().getPageNumber());
-                    System.out.println((start + INT_SIZE) + " TO " + (middle - INT_SIZE) + ": page data");
+        long cpLoc = readHeader();
+        System.out.println("0: checkpoint record at offset " + cpLoc);
+        System.out.println(LONG_SIZE + ": log format version " + LogRecord.FORMAT_VERSION);
+
+        long offset = LOG_HEADER_SIZE;
+        LogRecord r;
+        while ((r = LogRecord.read(raf, offset)) != null) {
+            System.out.println(offset + ": RECORD TYPE " + r.type);
+            System.out.println((offset + INT_SIZE) + ": TID " + r.tid);
+            System.out.println((offset + INT_SIZE + LONG_SIZE) + ": BODY LENGTH " + r.body.length);
+            long bodyStart = offset + LogRecord.HEADER_SIZE;
+            DataInputStream in = r.body();
+
+            switch (r.type) {
+            case BEGIN_RECORD:
+                System.out.println(" (BEGIN)");
+                break;
+            case ABORT_RECORD:
+                System.out.println(" (ABORT)");
+                break;
+            case COMMIT_RECORD:
+                System.out.println(" (COMMIT)");
+                break;
 
-                    System.out.println(middle + ": after image table id " + after.getId().getTableId());
-                    System.out.println((middle + INT_SIZE) + ": after image page number " + after.getId().getPageNumber());
-                    System.out.println((middle + INT_SIZE) + " TO " + (raf.getFilePointer()) + ": page data");
+            case CHECKPOINT_RECORD:
+                System.out.println(" (CHECKPOINT)");
+                System.out.println(bodyStart + ": BEGIN OFFSET: " + in.readLong());
+                int numTransactions = in.readInt();
+                System.out.println((bodyStart + LONG_SIZE) + ": NUMBER OF OUTSTANDING RECORDS: " + numTransactions);
 
-                    System.out.println(raf.getFilePointer() + ": RECORD START OFFSET: " + raf.readLong());
+                while (numTransactions-- > 0) {
+                    long tid = in.readLong();
+                    long firstRecord = in.readLong();
+                    System.out.println(" TID: " + tid + ", FIRST LOG RECORD: " + firstRecord);
+                }
+                int numDirty = in.readInt();
+                System.out.println(" NUMBER OF DIRTY PAGES: " + numDirty);
 
-                    break;
+                while (numDirty-- > 0) {
+                    PageId pid = readPageId(in);
+                    long recLsn = in.readLong();
+                    System.out.println(" DIRTY PAGE: table " + pid.getTableId() + " page " + pid.getPageNumber() + ", RECLSN: " + recLsn);
                 }
+                break;
+            case UPDATE_RECORD:
+                System.out.println(" (UPDATE)");
+
+                Page before = readPageData(in);
+                long middle = bodyStart + (r.body.length - in.available());
+                Page after = readPageData(in);
 
-            } catch (EOFException e) {
-                //e.printStackTrace();
+                System.out.println(bodyStart + ": before image " + before.getClass().getSimpleName()
+                        + " table id " + before.getId().getTableId() + " page number " + before.getId().getPageNumber());
+                System.out.println(middle + ": after image " + after.getClass().getSimpleName()
+                        + " table id " + after.getId().getTableId() + " page number " + after.getId().getPageNumber());
                 break;
             }
+
+            offset += r.size();
+            System.out.println((offset - LONG_SIZE) + ": RECORD START OFFSET: " + r.start);
         }
 
         // Return the file pointer to its original position
         raf.seek(curOffset);
     }
 
-    public  synchronized void force() throws IOException {
-        raf.getChannel().force(true);
+    public void force() throws IOException {
+        logBuffer.force(logBuffer.tail());
+    }
+
+    /** Force every record that begins below offset to disk.  Cheap if
+        a commit or an earlier force has already done so.  Offsets taken
+        before a truncation may lie past the end of the shortened log; the
+        records they refer to were forced before it was truncated. */
+    public void force(long offset) throws IOException {
+        logBuffer.force(Math.min(offset, logBuffer.tail()));
     }
 
 }
@@ -0,0 +1,168 @@
+package simpledb.storage;
+
+import simpledb.common.Debug;
+
+import java.io.*;
+
+/**
+ * LogRecord is the binary framing shared by every record in the log.  A
+ * record is laid out as
+ *
+ * <pre>
+ *   int   record type
+ *   long  transaction id
+ *   int   body length
+ *   ...   body
+ *   int   CRC-32C of every other byte of the record
+ *   long  offset in the log at which the record begins
+ * </pre>
+ *
+ * The length lets readers skip records without decoding them, and the
+ * checksum lets them detect a record that was torn by a crash: reading
+ * stops at the first record whose checksum or start offset does not match.
+ */
+final class LogRecord {
+
+    /** Version of the record format, stored in the log file header. */
+    static final int FORMAT_VERSION = 3;
+
+    static final int HEADER_SIZE = 4 + 8 + 4;
+    static final int TRAILER_SIZE = 4 + 8;
+
+    /** Upper bound on a body, to reject garbage lengths without allocating. */
+    private static final int MAX_BODY_SIZE = 1 << 26;
+
+    final int type;
+    final long tid;
+    final long start;
+    final byte[] body;
+
+    private LogRecord(int type, long tid, long start, byte[] body) {
+        this.type = type;
+        this.tid = tid;
+        this.start = start;
+        this.body = body;
+    }
+
+    /** @return the number of bytes a record with the given body occupies */
+    static int size(int bodyLength) {
+        return HEADER_SIZE + bodyLength + TRAILER_SIZE;
+    }
+
+    /** @return the number of bytes this record occupies in the log */
+    int size() {
+        return size(body.length);
+    }
+
+    /** @return a stream over the record's body */
+    DataInputStream body() {
+        return new DataInputStream(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Start serializing a record.  The caller writes the body to the
+     * returned stream and passes the resulting bytes to {@link #seal}.
+     */
+    static DataOutputStream begin(ByteArrayOutputStream bytes, int type, long tid) throws IOException {
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeInt(type);
+        dos.writeLong(tid);
+        dos.writeInt(0); // body length, filled in by seal
+        return dos;
+    }
+
+    /** Append the placeholder trailer to a record started with {@link #begin}. */
+    static void end(DataOutputStream dos) throws IOException {
+        dos.writeInt(0);
+        dos.writeLong(0);
+        dos.flush();
+    }
+
+    /** @return an unsealed record with the specified body */
+    static byte[] encode(int type, long tid, byte[] body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size(body.length));
+        DataOutputStream dos = begin(bytes, type, tid);
+        dos.write(body);
+        end(dos);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Fill in the body length, start offset and checksum of a serialized
+     * record, once its place in the log is known.
+     */
+    static void seal(byte[] rec, long start) {
+        putInt(rec, 12, rec.length - size(0));
+        putLong(rec, rec.length - 8, start);
+        putInt(rec, rec.length - TRAILER_SIZE, checksum(rec));
+    }
+
+    private static int checksum(byte[] rec) {
+        Crc32c crc = new Crc32c();
+        crc.update(rec, 0, rec.length - TRAILER_SIZE);
+        crc.update(rec, rec.length - 8, 8);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Read the record that begins at offset start.
+     *
+     * @return the record, or null if the log ends before a complete and
+     * intact record
+     */
+    static LogRecord read(DataInput in, long start) throws IOException {
+        try {
+            int type = in.readInt();
+            long tid = in.readLong();
+            int len = in.readInt();
+            if (len < 0 || len > MAX_BODY_SIZE) {
+                Debug.log("LOG: bad record length %d at offset %d", len, start);
+                return null;
+            }
+            byte[] rec = new byte[size(len)];
+            putInt(rec, 0, type);
+            putLong(rec, 4, tid);
+            putInt(rec, 12, len);
+            in.readFully(rec, HEADER_SIZE, len + TRAILER_SIZE);
+            int crc = getInt(rec, rec.length - TRAILER_SIZE);
+            long recStart = getLong(rec, rec.length - 8);
+            if (recStart != start || crc != checksum(rec)) {
+                Debug.log("LOG: torn or corrupt record at offset %d", start);
+                return null;
+            }
+            byte[] body = new byte[len];
+            System.arraycopy(rec, HEADER_SIZE, body, 0, len);
+            return new LogRecord(type, tid, start, body);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        for (int i = 0; i < 4; i++) {
+            b[off + 3 - i] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        for (int i = 0; i < 8; i++) {
+            b[off + 7 - i] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private static int getInt(byte[] b, int off) {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            v = (v << 8) | (b[off + i] & 0xff);
+        }
+        return v;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) {
+            v = (v << 8) | (b[off + i] & 0xff);
+        }
+        return v;
+    }
+}
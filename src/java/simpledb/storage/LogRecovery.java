@@ -0,0 +1,309 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.Debug;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * LogRecovery replays the log after a crash on behalf of
+ * {@link LogFile#recover}.
+ * <p>
+ * A single reader streams the log sequentially from the oldest offset
+ * recovery may need: the last checkpoint, the first record of any
+ * transaction active at that checkpoint, or the oldest recLSN in its dirty
+ * page table.  Update records are partitioned by the hash of their PageId
+ * across a pool of worker threads, so every record for a page is seen by
+ * one worker, in log order.  Commit and abort records are passed, in the
+ * same order, to the workers that were handed updates of the transaction.
+ * <p>
+ * Because update records carry whole before and after images, a worker
+ * only has to remember, per page, the after image of the last committed
+ * update, and the runs of consecutive updates made by transactions that
+ * have not yet committed or aborted, each as its first before image and
+ * last after image.  When a transaction commits, its last run on a page
+ * becomes the page's committed image and every run before it is dropped;
+ * when it aborts, the before image of its first run does, and its runs are
+ * dropped.  The abort record does not prove that the pages its rollback
+ * wrote reached the disk, as the data files are not forced before it, so
+ * recovery writes those images again.  Memory therefore grows with the updates of
+ * transactions in flight, not with the length of the log.  Once the whole
+ * log has been read, each page is left with the before image of its first
+ * remaining run, which belongs to a loser, or else its committed image.
+ * Redo of winners and undo of losers therefore both happen in parallel,
+ * one page write per page.
+ * <p>
+ * The number of workers defaults to the number of processors (at most 8)
+ * and can be set with the system property
+ * <tt>simpledb.storage.LogRecovery.workers</tt>.
+ */
+class LogRecovery {
+
+    private static final int QUEUE_CAPACITY = 1024;
+
+    static int defaultWorkers() {
+        int procs = Math.min(8, Runtime.getRuntime().availableProcessors());
+        return Math.max(1, Integer.getInteger("simpledb.storage.LogRecovery.workers", procs));
+    }
+
+    private final LogFile log;
+    private final int numWorkers;
+
+    /** bytes of log read by the last call to recover */
+    long bytesReplayed;
+    /** time taken by the last call to recover */
+    long elapsedNanos;
+
+    LogRecovery(LogFile log, int numWorkers) {
+        this.log = log;
+        this.numWorkers = numWorkers;
+    }
+
+    /**
+     * One update, commit or abort record, as handed from the reader to a
+     * worker.
+     */
+    private static class Update {
+        final int type;
+        final long tid;
+        final PageId pid;
+        final byte[] before;
+        final byte[] after;
+
+        Update(int type, long tid, PageId pid, byte[] before, byte[] after) {
+            this.type = type;
+            this.tid = tid;
+            this.pid = pid;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private static final Update END = new Update(-1, -1, null, null, null);
+
+    /** Consecutive updates to a page by a single transaction. */
+    private static class Run {
+        final long tid;
+        final byte[] before;
+        byte[] after;
+
+        Run(long tid, byte[] before, byte[] after) {
+            this.tid = tid;
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    /** What a worker remembers of a page. */
+    static class PageHistory {
+        /** the image the last commit or abort left the page with, if any */
+        byte[] committed;
+        /** runs of transactions not yet seen to commit or abort, in log order */
+        final List<Run> runs = new ArrayList<>(2);
+
+        void update(long tid, byte[] before, byte[] after) {
+            Run last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+            if (last != null && last.tid == tid) {
+                last.after = after;
+            } else {
+                runs.add(new Run(tid, before, after));
+            }
+        }
+
+        /** tid has committed: earlier runs can no longer decide the page */
+        void commit(long tid) {
+            for (int i = runs.size() - 1; i >= 0; i--) {
+                if (runs.get(i).tid == tid) {
+                    committed = runs.get(i).after;
+                    runs.subList(0, i + 1).clear();
+                    return;
+                }
+            }
+        }
+
+        /** tid has aborted: the page is back to where tid found it */
+        void abort(long tid) {
+            if (!runs.isEmpty() && runs.get(0).tid == tid) {
+                committed = runs.get(0).before;
+            }
+            runs.removeIf(r -> r.tid == tid);
+        }
+
+        /**
+         * @return the image the page should be left with once the whole log
+         * has been read, or null if no commit or abort has decided it
+         */
+        byte[] finalImage() {
+            return runs.isEmpty() ? committed : runs.get(0).before;
+        }
+    }
+
+    private class Worker extends Thread {
+        final BlockingQueue<Update> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final Map<PageId, PageHistory> history = new HashMap<>();
+        /** the pages each transaction not yet committed or aborted has runs on */
+        final Map<Long, Set<PageId>> pagesOf = new HashMap<>();
+        final List<PageId> written = new ArrayList<>();
+        volatile Throwable failure;
+
+        Worker(int i) {
+            super("simpledb-recovery-" + i);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                Update u;
+                while ((u = queue.take()) != END) {
+                    switch (u.type) {
+                    case LogFile.UPDATE_RECORD:
+                        history.computeIfAbsent(u.pid, k -> new PageHistory()).update(u.tid, u.before, u.after);
+                        pagesOf.computeIfAbsent(u.tid, k -> new HashSet<>()).add(u.pid);
+                        break;
+                    case LogFile.COMMIT_RECORD:
+                    case LogFile.ABORT_RECORD:
+                        Set<PageId> pids = pagesOf.remove(u.tid);
+                        if (pids == null) {
+                            break;
+                        }
+                        for (PageId pid : pids) {
+                            PageHistory h = history.get(pid);
+                            if (u.type == LogFile.COMMIT_RECORD) {
+                                h.commit(u.tid);
+                            } else {
+                                h.abort(u.tid);
+                            }
+                        }
+                        break;
+                    }
+                }
+                for (Map.Entry<PageId, PageHistory> e : history.entrySet()) {
+                    PageId pid = e.getKey();
+                    byte[] image = e.getValue().finalImage();
+                    if (image == null) {
+                        // nothing logged for the page says what it holds
+                        continue;
+                    }
+                    Page page = log.newPage(pid, image);
+                    Database.getCatalog().getDatabaseFile(pid.getTableId()).writePage(page);
+                    written.add(pid);
+                }
+            } catch (Throwable t) {
+                failure = t;
+                // keep draining so the reader never blocks on a dead worker
+                try {
+                    while (queue.take() != END) {
+                        // discard
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay the log in logFile from startOffset to its end.
+     *
+     * @return the pages that were rewritten
+     */
+    List<PageId> recover(File logFile, long startOffset) throws IOException {
+        long start = System.nanoTime();
+        Worker[] workers = new Worker[numWorkers];
+        for (int i = 0; i < numWorkers; i++) {
+            workers[i] = new Worker(i);
+            workers[i].start();
+        }
+
+        // the workers handed updates of each transaction still in flight
+        Map<Long, BitSet> workersOf = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(logFile), 1 << 16))) {
+            long skipped = 0;
+            while (skipped < startOffset) {
+                long n = in.skip(startOffset - skipped);
+                if (n <= 0) {
+                    break;
+                }
+                skipped += n;
+            }
+            // stop at the end of the log or at a record torn by the crash
+            long offset = startOffset;
+            LogRecord r;
+            while ((r = LogRecord.read(in, offset)) != null) {
+                offset += r.size();
+                switch (r.type) {
+                case LogFile.UPDATE_RECORD:
+                    DataInputStream body = r.body();
+                    PageId pid = log.readPageId(body);
+                    byte[] before = readBytes(body);
+                    log.readPageId(body);
+                    byte[] after = readBytes(body);
+                    int i = Math.floorMod(pid.hashCode(), numWorkers);
+                    workers[i].queue.put(new Update(r.type, r.tid, pid, before, after));
+                    workersOf.computeIfAbsent(r.tid, k -> new BitSet(numWorkers)).set(i);
+                    break;
+                case LogFile.COMMIT_RECORD:
+                case LogFile.ABORT_RECORD:
+                    BitSet ws = workersOf.remove(r.tid);
+                    if (ws != null) {
+                        Update u = new Update(r.type, r.tid, null, null, null);
+                        for (int w = ws.nextSetBit(0); w >= 0; w = ws.nextSetBit(w + 1)) {
+                            workers[w].queue.put(u);
+                        }
+                    }
+                    break;
+                }
+            }
+            bytesReplayed = offset - startOffset;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted during recovery", e);
+        } finally {
+            for (Worker w : workers) {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        w.queue.put(END);
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        List<PageId> written = new ArrayList<>();
+        for (Worker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted during recovery", e);
+            }
+            if (w.failure != null) {
+                throw new IOException("recovery worker failed", w.failure);
+            }
+            written.addAll(w.written);
+        }
+
+        elapsedNanos = System.nanoTime() - start;
+        Debug.log("RECOVERY: replayed %d bytes of log with %d workers in %d ms (%.1f MB/s), %d pages rewritten",
+                bytesReplayed, numWorkers, elapsedNanos / 1_000_000,
+                bytesReplayed / (1024.0 * 1024.0) / Math.max(elapsedNanos / 1e9, 1e-9),
+                written.size());
+        return written;
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+}
@@ -0,0 +1,92 @@
+package simpledb.storage;
+
+import simpledb.execution.Predicate;
+import simpledb.common.Type;
+
+import java.io.*;
+
+/**
+ * Instance of Field that stores a single 64-bit integer.
+ */
+public class LongField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long value;
+
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param v The value of this field.
+     */
+    public LongField(long v) {
+        value = v;
+    }
+
+    public String toString() {
+        return Long.toString(value);
+    }
+
+    public int hashCode() {
+        return Long.hashCode(value);
+    }
+
+    public boolean equals(Object field) {
+        if (!(field instanceof LongField)) return false;
+        return ((LongField) field).value == value;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(value);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a LongField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return compare(op, value, ((LongField) val).value);
+    }
+
+    /**
+     * Compare two long values the way LongField.compare compares two
+     * LongFields, without creating the fields.
+     *
+     * @return true if value op val holds
+     */
+    public static boolean compare(Predicate.Op op, long value, long val) {
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                return value == val;
+            case NOT_EQUALS:
+                return value != val;
+            case GREATER_THAN:
+                return value > val;
+            case GREATER_THAN_OR_EQ:
+                return value >= val;
+            case LESS_THAN:
+                return value < val;
+            case LESS_THAN_OR_EQ:
+                return value <= val;
+        }
+
+        return false;
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.LONG_TYPE
+     */
+    public Type getType() {
+        return Type.LONG_TYPE;
+    }
+}
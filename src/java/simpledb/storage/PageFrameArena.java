@@ -0,0 +1,141 @@
+package simpledb.storage;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PageFrameArena is a fixed-size arena of off-heap page frames, used by the
+ * {@link BufferPool} to keep the images of clean pages that it has evicted.
+ * <p>
+ * Cached pages are Java object graphs (a HeapPage holds a Tuple and Field
+ * objects for every record), so a buffer pool that keeps all of its pages
+ * as objects makes for a huge old generation and long garbage collection
+ * pauses.  With an arena the pool keeps only its hot pages as objects, and
+ * the bulk of its pages as bytes in direct ByteBuffers, outside the Java
+ * heap, where the collector never looks at them.  A miss on a page that is
+ * in the arena rebuilds the page from its frame without any I/O.
+ * <p>
+ * Frames are allocated in chunks of up to 1 GB as they are first needed,
+ * up to the size of the arena, and are then reused in clock order.  The
+ * arena is not thread-safe; the buffer pool only uses it while holding its
+ * own monitor.
+ */
+class PageFrameArena {
+
+    private static final int CHUNK_BYTES = 1 << 30;
+
+    private final int pageSize;
+    private final int frames;
+    private final int framesPerChunk;
+    private final ByteBuffer[] chunks;
+
+    private final Map<PageId, Integer> frameOf = new HashMap<>();
+    private final PageId[] owner;
+    private final boolean[] referenced;
+    // frames at or after this one have never been used
+    private int fresh;
+    private int hand;
+
+    /**
+     * @param frames   the number of frames in the arena
+     * @param pageSize the size of each frame
+     */
+    PageFrameArena(int frames, int pageSize) {
+        this.pageSize = pageSize;
+        this.frames = frames;
+        this.framesPerChunk = Math.max(1, CHUNK_BYTES / pageSize);
+        this.chunks = new ByteBuffer[(frames + framesPerChunk - 1) / framesPerChunk];
+        this.owner = new PageId[frames];
+        this.referenced = new boolean[frames];
+    }
+
+    /**
+     * @return the number of pages held in the arena
+     */
+    int size() {
+        return frameOf.size();
+    }
+
+    /**
+     * @return a view of frame i, positioned at its start
+     */
+    private ByteBuffer frame(int i) {
+        int c = i / framesPerChunk;
+        if (chunks[c] == null) {
+            int n = Math.min(framesPerChunk, frames - c * framesPerChunk);
+            chunks[c] = ByteBuffer.allocateDirect(n * pageSize);
+        }
+        ByteBuffer b = chunks[c].duplicate();
+        b.position((i % framesPerChunk) * pageSize);
+        return b;
+    }
+
+    /**
+     * Store the image of a page, replacing any image of it already in the
+     * arena, and evicting another page's image if the arena is full.
+     *
+     * @param pid  the page
+     * @param data the page's bytes, as returned by getPageData()
+     */
+    void put(PageId pid, byte[] data) {
+        if (data.length != pageSize) {
+            // the page size was changed under us (by a test)
+            remove(pid);
+            return;
+        }
+        Integer f = frameOf.get(pid);
+        int i = f != null ? f : allocate();
+        frame(i).put(data);
+        owner[i] = pid;
+        referenced[i] = true;
+        frameOf.put(pid, i);
+    }
+
+    private int allocate() {
+        if (fresh < frames) {
+            return fresh++;
+        }
+        // clock: pass over recently used frames once
+        while (true) {
+            int i = hand;
+            hand = (hand + 1) % frames;
+            if (owner[i] == null) {
+                return i;
+            }
+            if (referenced[i]) {
+                referenced[i] = false;
+                continue;
+            }
+            frameOf.remove(owner[i]);
+            owner[i] = null;
+            return i;
+        }
+    }
+
+    /**
+     * @return a copy of the image of the page, or null if it is not in the
+     *         arena
+     */
+    byte[] get(PageId pid) {
+        Integer i = frameOf.get(pid);
+        if (i == null) {
+            return null;
+        }
+        byte[] data = new byte[pageSize];
+        frame(i).get(data);
+        referenced[i] = true;
+        return data;
+    }
+
+    /**
+     * Drop the image of the page, if the arena has one.
+     */
+    void remove(PageId pid) {
+        Integer i = frameOf.remove(pid);
+        if (i != null) {
+            owner[i] = null;
+            referenced[i] = false;
+        }
+    }
+}
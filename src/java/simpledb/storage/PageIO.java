@@ -0,0 +1,320 @@
+package simpledb.storage;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import simpledb.common.Debug;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * PageIO reads and writes runs of whole pages of a {@link HeapFile}, either
+ * through the operating system's page cache or, in direct mode, bypassing
+ * it, so that memory is spent on the buffer pool rather than on a second
+ * copy of every page in the kernel.
+ * <p>
+ * Direct mode is off by default; it is turned on with the
+ * simpledb.storage.directIO system property or {@link #setDirect}.  It
+ * opens files with the DIRECT open option and does all I/O through page
+ * aligned buffers, which are pooled because they are expensive to
+ * allocate.  Direct I/O needs a JVM that supports the DIRECT option
+ * (Java 10 and later), a file system that supports O_DIRECT, and transfers
+ * whose offset and length are multiples of {@link #ALIGNMENT}.  Whenever
+ * one of these does not hold, I/O falls back to the page cache; a file
+ * system that rejects O_DIRECT turns direct mode off for the rest of the
+ * run.
+ * <p>
+ * Each file's channels are opened the first time they are needed and kept
+ * open in an {@link OpenFile}, as the log keeps its file open, so that a
+ * run of pages costs no open and close of the file.  The channels are
+ * shared by all threads, so I/O is not interruptible: an interrupt does
+ * not close them, but stays pending for the thread to see.
+ */
+public final class PageIO {
+
+    /** Offsets, lengths and buffer addresses of direct I/O are multiples of this. */
+    public static final int ALIGNMENT = 4096;
+
+    private static final OpenOption DIRECT = directOption();
+    private static final Method ALIGNED_SLICE = alignedSlice();
+
+    private static volatile boolean direct = Boolean.getBoolean("simpledb.storage.directIO");
+
+    /** free aligned buffers, by capacity */
+    private static final Map<Integer, Queue<ByteBuffer>> buffers = new ConcurrentHashMap<>();
+
+    private PageIO() {
+    }
+
+    private static OpenOption directOption() {
+        // looked up by name, as it is missing before Java 10
+        for (ExtendedOpenOption o : ExtendedOpenOption.values()) {
+            if (o.name().equals("DIRECT")) {
+                return o;
+            }
+        }
+        return null;
+    }
+
+    private static Method alignedSlice() {
+        try {
+            // Java 9 and later
+            return ByteBuffer.class.getMethod("alignedSlice", int.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if this JVM can do direct I/O
+     */
+    public static boolean isDirectSupported() {
+        return DIRECT != null && ALIGNED_SLICE != null;
+    }
+
+    /**
+     * Turn direct mode on or off.  Has no effect on I/O already under way.
+     */
+    public static void setDirect(boolean on) {
+        direct = on;
+    }
+
+    /**
+     * @return true if page I/O bypasses the page cache where it can
+     */
+    public static boolean isDirect() {
+        return direct && isDirectSupported();
+    }
+
+    private static boolean useDirect(long pos, int len) {
+        return isDirect() && pos % ALIGNMENT == 0 && len % ALIGNMENT == 0 && len > 0;
+    }
+
+    /**
+     * The channels page I/O on one file goes through, opened when first
+     * needed and then kept open.  A channel closed under a thread, by an
+     * interrupt of another thread, is opened again.
+     */
+    static final class OpenFile {
+
+        private final File file;
+        private FileChannel channel;
+        private FileChannel directChannel;
+        private boolean readOnly;
+
+        /**
+         * @param file the file to do I/O on; it is not opened yet
+         */
+        OpenFile(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @return the open channel of the file, through the page cache or
+         *         not
+         */
+        synchronized FileChannel channel(boolean direct) throws IOException {
+            FileChannel c = direct ? directChannel : channel;
+            if (c != null && c.isOpen()) {
+                return c;
+            }
+            OpenOption[] options = direct
+                    ? new OpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, DIRECT}
+                    : new OpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+            try {
+                c = readOnly ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : FileChannel.open(file.toPath(), options);
+            } catch (AccessDeniedException e) {
+                // a read-only file can still be read
+                readOnly = true;
+                c = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            if (direct) {
+                directChannel = c;
+            } else {
+                channel = c;
+            }
+            return c;
+        }
+
+        /**
+         * Close the file's channels.  They are opened again by the next I/O.
+         */
+        synchronized void close() throws IOException {
+            for (FileChannel c : new FileChannel[]{channel, directChannel}) {
+                if (c != null) {
+                    c.close();
+                }
+            }
+            channel = null;
+            directChannel = null;
+        }
+    }
+
+    /** I/O on a channel, which may be retried if the channel is closed under it */
+    private interface ChannelIO<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Run io on the channel of f, with the thread's interrupt status held
+     * back so that it cannot close the shared channel, and again on a new
+     * channel if another thread's interrupt closed it meanwhile.
+     */
+    private static <T> T withChannel(OpenFile f, boolean direct, ChannelIO<T> io) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                FileChannel channel = f.channel(direct);
+                try {
+                    return io.run(channel);
+                } catch (ClosedChannelException e) {
+                    if (attempt > 0) {
+                        throw e;
+                    }
+                    // an interrupt that came during the I/O closed it
+                    interrupted |= Thread.interrupted();
+                } catch (NonWritableChannelException e) {
+                    throw new IOException("can't write to read-only file " + f.file, e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Read up to buf.length bytes of f starting at pos into buf.
+     *
+     * @return the number of bytes read, or -1 if pos is at or past the end
+     *         of the file
+     */
+    static int read(OpenFile f, long pos, byte[] buf) throws IOException {
+        boolean direct = useDirect(pos, buf.length);
+        if (direct) {
+            ByteBuffer bb = borrow(buf.length);
+            try {
+                return withChannel(f, true, channel -> {
+                    bb.clear();
+                    bb.limit(buf.length);
+                    int n = readFully(channel, bb, pos);
+                    bb.flip();
+                    bb.get(buf, 0, n);
+                    return n == 0 && pos >= channel.size() ? -1 : n;
+                });
+            } catch (IOException e) {
+                if (!rejected(e)) {
+                    throw e;
+                }
+            } finally {
+                giveBack(bb, buf.length);
+            }
+        }
+        return withChannel(f, false, channel -> {
+            int n = readFully(channel, ByteBuffer.wrap(buf), pos);
+            return n == 0 && pos >= channel.size() ? -1 : n;
+        });
+    }
+
+    /**
+     * Read into bb from channel at pos until bb is full or the end of the
+     * file is reached.
+     *
+     * @return the number of bytes read
+     */
+    private static int readFully(FileChannel channel, ByteBuffer bb, long pos) throws IOException {
+        int n = 0;
+        while (bb.hasRemaining()) {
+            int r = channel.read(bb, pos + n);
+            if (r < 0) {
+                break;
+            }
+            n += r;
+        }
+        return n;
+    }
+
+    /**
+     * Write len bytes of buf starting at off to f at pos.
+     */
+    static void write(OpenFile f, long pos, byte[] buf, int off, int len) throws IOException {
+        if (useDirect(pos, len)) {
+            ByteBuffer bb = borrow(len);
+            try {
+                withChannel(f, true, channel -> {
+                    bb.clear();
+                    bb.limit(len);
+                    bb.put(buf, off, len);
+                    bb.flip();
+                    writeFully(channel, bb, pos);
+                    return null;
+                });
+                return;
+            } catch (IOException e) {
+                if (!rejected(e)) {
+                    throw e;
+                }
+            } finally {
+                giveBack(bb, len);
+            }
+        }
+        withChannel(f, false, channel -> {
+            writeFully(channel, ByteBuffer.wrap(buf, off, len), pos);
+            return null;
+        });
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bb, long pos) throws IOException {
+        long p = pos;
+        while (bb.hasRemaining()) {
+            p += channel.write(bb, p);
+        }
+    }
+
+    /**
+     * Turn direct mode off if e says the file system does not support it.
+     *
+     * @return true if the I/O should be retried through the page cache
+     */
+    private static boolean rejected(IOException e) {
+        String msg = e.getMessage();
+        if (msg != null && msg.contains("Invalid argument")) {
+            Debug.log("PageIO: direct I/O not supported here, using the page cache: %s", msg);
+            direct = false;
+            return true;
+        }
+        return false;
+    }
+
+    private static ByteBuffer borrow(int capacity) {
+        Queue<ByteBuffer> free = buffers.get(capacity);
+        ByteBuffer bb = free == null ? null : free.poll();
+        if (bb == null) {
+            try {
+                ByteBuffer raw = ByteBuffer.allocateDirect(capacity + ALIGNMENT);
+                bb = (ByteBuffer) ALIGNED_SLICE.invoke(raw, ALIGNMENT);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        bb.clear();
+        bb.limit(capacity);
+        return bb;
+    }
+
+    private static void giveBack(ByteBuffer bb, int capacity) {
+        buffers.computeIfAbsent(capacity, k -> new ConcurrentLinkedQueue<>()).offer(bb);
+    }
+}
@@ -0,0 +1,135 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * PaxHeapFile is a HeapFile whose pages are {@link PaxHeapPage}s, storing
+ * each page's tuples column by column.  Besides the usual tuple iterator it
+ * offers {@link #iterator(TransactionId, int[], Predicate)}, which decodes
+ * only the columns a query projects or filters on.
+ *
+ * @see PaxHeapPage
+ * @see simpledb.execution.ColumnScan
+ */
+public class PaxHeapFile extends HeapFile {
+
+    /**
+     * Constructs a PAX heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public PaxHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    public HeapPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new PaxHeapPage(pid, data);
+    }
+
+    /**
+     * @return the TupleDesc of tuples holding only the specified columns of
+     * this file
+     */
+    public TupleDesc getTupleDesc(int[] columns) {
+        TupleDesc td = getTupleDesc();
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            types[k] = td.getFieldType(columns[k]);
+            names[k] = td.getFieldName(columns[k]);
+        }
+        return new TupleDesc(types, names);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy filter,
+     * holding only the specified columns.  The filter column is read first,
+     * and the other columns are read only for tuples that pass it.
+     *
+     * @param tid     the transaction reading the file
+     * @param columns the indexes of the columns to return
+     * @param filter  a predicate on a column of this file (its field index is
+     *                an index into this file's TupleDesc), or null
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate filter) {
+        return new PaxColumnIterator(this, tid, columns, filter);
+    }
+}
+
+class PaxColumnIterator extends AbstractDbFileIterator {
+
+    private final PaxHeapFile f;
+    private final TransactionId tid;
+    private final int[] columns;
+    private final Predicate filter;
+    private final TupleDesc projected;
+
+    private PaxHeapPage page;
+    private int slot;
+    private ReadAhead readAhead;
+
+    PaxColumnIterator(PaxHeapFile f, TransactionId tid, int[] columns, Predicate filter) {
+        this.f = f;
+        this.tid = tid;
+        this.columns = columns.clone();
+        this.filter = filter;
+        this.projected = f.getTupleDesc(columns);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        page = null;
+        slot = 0;
+        readAhead = new ReadAhead(f);
+        if (f.hasPage(0)) {
+            page = getPage(0);
+        }
+    }
+
+    private PaxHeapPage getPage(int pgNo) throws DbException, TransactionAbortedException {
+        HeapPageId pid = new HeapPageId(f.getId(), pgNo);
+        readAhead.visit(pgNo);
+        return (PaxHeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+    }
+
+    @Override
+    protected Tuple readNext() throws DbException, TransactionAbortedException {
+        while (page != null) {
+            for (; slot < page.getNumSlots(); slot++) {
+                if (!page.isSlotUsed(slot)) {
+                    continue;
+                }
+                if (filter != null
+                        && !page.getField(slot, filter.getField()).compare(filter.getOp(), filter.getOperand())) {
+                    continue;
+                }
+                return page.getTuple(slot++, columns, projected);
+            }
+            int pgNo = page.getId().getPageNumber() + 1;
+            page = f.hasPage(pgNo) ? getPage(pgNo) : null;
+            slot = 0;
+        }
+        return null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        page = null;
+    }
+}
@@ -0,0 +1,214 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * PaxHeapPage is a HeapPage that stores its tuples column by column (the
+ * PAX layout).  The page holds the same number of tuples as a HeapPage of
+ * the same schema, and has the same header bitmap of used slots.  But
+ * instead of storing each tuple's fields together, the rest of the page is
+ * divided into one minipage per column, and field j of the tuple in slot i
+ * lives at
+ *
+ * <pre>
+ *   header size + numSlots * (sum of the sizes of columns 0..j-1) + i * size of column j
+ * </pre>
+ *
+ * A scan that needs only a few of a table's columns can read just those
+ * minipages, see {@link #getField} and {@link PaxHeapFile#iterator(simpledb.transaction.TransactionId, int[], simpledb.execution.Predicate)}.
+ * Every tuple still lives on a single page, so the buffer pool, locking and
+ * the log treat PaxHeapPages like any other page.
+ *
+ * @see PaxHeapFile
+ */
+public class PaxHeapPage extends HeapPage {
+
+    // shared with the page's reader and before image until the page changes
+    private byte[] data;
+    private final int slots;
+    private final int headerSize;
+    private final int[] columnOffsets;
+
+    /**
+     * Create a PaxHeapPage from a set of bytes of data read from disk.
+     *
+     * @see PaxHeapPage
+     */
+    public PaxHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, Database.getCatalog().getTupleDesc(id.getTableId()));
+        int pageSize = BufferPool.getPageSize();
+        if (data.length != pageSize) {
+            throw new IOException("expected " + pageSize + " bytes of page data, got " + data.length);
+        }
+        this.data = data;
+        this.slots = pageSize * 8 / (td.getSize() * 8 + 1);
+        this.headerSize = (slots + 7) / 8;
+        this.columnOffsets = new int[td.numFields()];
+        int off = headerSize;
+        for (int j = 0; j < td.numFields(); j++) {
+            columnOffsets[j] = off;
+            off += slots * td.getFieldType(j).getLen();
+        }
+        setBeforeImage();
+    }
+
+    @Override
+    HeapPage fromData(byte[] data) throws IOException {
+        return new PaxHeapPage(pid, data);
+    }
+
+    /** @return the number of tuple slots on this page */
+    public int getNumSlots() {
+        return slots;
+    }
+
+    private int fieldOffset(int slot, int col) {
+        return columnOffsets[col] + slot * td.getFieldType(col).getLen();
+    }
+
+    /**
+     * Read one field of the tuple in the specified slot, without touching
+     * the other columns.
+     *
+     * @param slot the slot of the tuple; it must be in use
+     * @param col  the index of the field in the table's TupleDesc
+     */
+    public Field getField(int slot, int col) {
+        Type type = td.getFieldType(col);
+        DataInputStream dis = new DataInputStream(
+                new ByteArrayInputStream(data, fieldOffset(slot, col), type.getLen()));
+        try {
+            return type.parse(dis);
+        } catch (java.text.ParseException e) {
+            throw new NoSuchElementException("parsing error on slot " + slot + ", column " + col);
+        }
+    }
+
+    /**
+     * Build a tuple holding only some of the columns of the tuple in the
+     * specified slot.
+     *
+     * @param slot      the slot of the tuple; it must be in use
+     * @param columns   the indexes, in the table's TupleDesc, of the columns to read
+     * @param projected the TupleDesc of the result, one field per entry of columns
+     */
+    public Tuple getTuple(int slot, int[] columns, TupleDesc projected) {
+        Tuple t = new Tuple(projected);
+        t.setRecordId(new RecordId(pid, slot));
+        for (int k = 0; k < columns.length; k++) {
+            t.setField(k, getField(slot, columns[k]));
+        }
+        return t;
+    }
+
+    private Tuple getTuple(int slot) {
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        for (int j = 0; j < td.numFields(); j++) {
+            t.setField(j, getField(slot, j));
+        }
+        return t;
+    }
+
+    private void markSlot(int i, boolean used) {
+        if (used) {
+            data[i / 8] |= (byte) (1 << (i % 8));
+        } else {
+            data[i / 8] &= (byte) ~(1 << (i % 8));
+        }
+    }
+
+    @Override
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    @Override
+    byte[] takePageData() {
+        byte[] old = data;
+        data = old.clone();
+        return old;
+    }
+
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("insert failed,tuple desc not match");
+        }
+        for (int i = 0; i < slots; i++) {
+            if (!isSlotUsed(i)) {
+                beforeChange();
+                for (int j = 0; j < td.numFields(); j++) {
+                    int len = td.getFieldType(j).getLen();
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
+                    try {
+                        t.getField(j).serialize(new DataOutputStream(baos));
+                    } catch (IOException e) {
+                        // writing to a byte array
+                        throw new RuntimeException(e);
+                    }
+                    System.arraycopy(baos.toByteArray(), 0, data, fieldOffset(i, j), len);
+                }
+                markSlot(i, true);
+                t.setRecordId(new RecordId(pid, i));
+                return;
+            }
+        }
+        throw new DbException("insert tuple into page failed, page is full");
+    }
+
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        int slot = t.getRecordId().getTupleNumber();
+        if (!this.pid.equals(t.getRecordId().getPageId())) {
+            throw new DbException("page id is not equal");
+        }
+        if (slot < 0 || slot >= slots) {
+            throw new DbException("tuple number out of bound");
+        }
+        if (!isSlotUsed(slot)) {
+            throw new DbException("tuple is unused");
+        }
+        beforeChange();
+        markSlot(slot, false);
+        for (int j = 0; j < td.numFields(); j++) {
+            int off = fieldOffset(slot, j);
+            Arrays.fill(data, off, off + td.getFieldType(j).getLen(), (byte) 0);
+        }
+    }
+
+    @Override
+    public int getNumEmptySlots() {
+        int cnt = 0;
+        for (int i = 0; i < slots; i++) {
+            if (!isSlotUsed(i)) {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        if (i < 0 || i >= slots) {
+            return false;
+        }
+        return (data[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        List<Tuple> tupleList = new ArrayList<>();
+        for (int i = 0; i < slots; i++) {
+            if (isSlotUsed(i)) {
+                tupleList.add(getTuple(i));
+            }
+        }
+        return Collections.unmodifiableList(tupleList).iterator();
+    }
+}
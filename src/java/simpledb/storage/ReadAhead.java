@@ -0,0 +1,61 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+
+import java.util.function.IntPredicate;
+
+/**
+ * ReadAhead watches the pages a scan of a HeapFile visits and, once the scan
+ * has visited two pages in a row in page order, asks the buffer pool to read
+ * the following pages before the scan gets to them.  The window of pages
+ * read ahead is topped up each time the scan has consumed half of it, so
+ * reads are issued in batches and the scan rarely waits for the disk.
+ * <p>
+ * A scan that skips pages its zone map rules out names the pages it will
+ * read; only those are read ahead, and moving past skipped pages still
+ * counts as moving to the next page.
+ *
+ * @see BufferPool#getReadAheadPages
+ */
+class ReadAhead {
+
+    private final HeapFile f;
+    /** the pages the scan will read, or null for every page */
+    private final IntPredicate wanted;
+    private int last = -2;
+    // pages before this one have been requested
+    private int requested;
+
+    ReadAhead(HeapFile f) {
+        this(f, null);
+    }
+
+    ReadAhead(HeapFile f, IntPredicate wanted) {
+        this.f = f;
+        this.wanted = wanted;
+    }
+
+    /**
+     * Note that the scan has moved to page pgNo.
+     */
+    void visit(int pgNo) {
+        int window = BufferPool.getReadAheadPages();
+        boolean sequential = pgNo == last + 1 || (wanted != null && pgNo > last && last >= 0);
+        last = pgNo;
+        if (window == 0 || !sequential) {
+            requested = pgNo + 1;
+            return;
+        }
+        if (requested - pgNo > window / 2) {
+            return;
+        }
+        int end = pgNo + 1 + window;
+        int p = Math.max(requested, pgNo + 1);
+        for (; p < end && f.hasPage(p); p++) {
+            if (wanted == null || wanted.test(p)) {
+                Database.getBufferPool().prefetch(new HeapPageId(f.getId(), p));
+            }
+        }
+        requested = end;
+    }
+}
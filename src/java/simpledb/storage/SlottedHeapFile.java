@@ -0,0 +1,29 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * SlottedHeapFile is a HeapFile whose pages are {@link SlottedHeapPage}s,
+ * storing variable-length records.  It is a better fit than HeapFile for
+ * tables with STRING_TYPE columns holding mostly short strings.
+ *
+ * @see SlottedHeapPage
+ */
+public class SlottedHeapFile extends HeapFile {
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap
+     *          file.
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    @Override
+    public HeapPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+}
@@ -0,0 +1,358 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * SlottedHeapPage is a HeapPage that stores variable-length records.
+ * <p>
+ * HeapPage gives every tuple a fixed-size slot of {@link TupleDesc#getSize}
+ * bytes, so a STRING_TYPE field always takes STRING_LEN + 4 bytes however
+ * short the string is.  A SlottedHeapPage stores each string as a two byte
+ * length followed by its characters.  Records are therefore of varying
+ * size, and are located through a slot directory.  The page is laid out as
+ *
+ * <pre>
+ *   int    number of entries in the slot directory
+ *   int    offset of the start of the record area
+ *   ...    slot directory: for each slot, an unsigned short record offset
+ *          and an unsigned short record length; offset 0 marks an empty slot
+ *   ...    free space
+ *   ...    records, allocated from the end of the page towards the front
+ * </pre>
+ *
+ * A page of all zeroes is a valid empty page, so
+ * {@link HeapPage#createEmptyPageData} serves this format too.  Deleting a
+ * record leaves a hole in the record area.  Holes are reclaimed by
+ * compacting the page when an insert does not fit in the contiguous free
+ * space but does fit in the total free space.  Slot numbers, and so record
+ * ids, are stable across compaction.  Because offsets are unsigned shorts,
+ * pages may be at most 64KB.
+ *
+ * @see SlottedHeapFile
+ */
+public class SlottedHeapPage extends HeapPage {
+
+    static final int HEADER_SIZE = 8;
+    static final int SLOT_SIZE = 4;
+    private static final int MAX_PAGE_SIZE = 1 << 16;
+
+    // shared with the page's reader and before image until the page changes
+    private byte[] data;
+    private final List<Tuple> slots = new ArrayList<>();
+    private int dataStart;
+    private int liveBytes;
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     *
+     * @see SlottedHeapPage
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        super(id, Database.getCatalog().getTupleDesc(id.getTableId()));
+        int pageSize = BufferPool.getPageSize();
+        if (pageSize > MAX_PAGE_SIZE) {
+            throw new IOException("slotted pages must be at most " + MAX_PAGE_SIZE + " bytes");
+        }
+        if (data.length != pageSize) {
+            throw new IOException("expected " + pageSize + " bytes of page data, got " + data.length);
+        }
+        this.data = data;
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(this.data));
+        int numEntries = dis.readInt();
+        dataStart = dis.readInt();
+        if (dataStart == 0) {
+            dataStart = pageSize;
+        }
+        if (numEntries < 0 || HEADER_SIZE + numEntries * SLOT_SIZE > dataStart || dataStart > pageSize) {
+            throw new IOException("corrupt slotted page " + id.getPageNumber());
+        }
+        for (int i = 0; i < numEntries; i++) {
+            int off = slotOffset(i);
+            int len = slotLength(i);
+            if (off == 0) {
+                slots.add(null);
+                continue;
+            }
+            if (off < dataStart || off + len > pageSize) {
+                throw new IOException("corrupt slot " + i + " on slotted page " + id.getPageNumber());
+            }
+            slots.add(readRecord(off, len, i));
+            liveBytes += len;
+        }
+
+        setBeforeImage();
+    }
+
+    @Override
+    HeapPage fromData(byte[] data) throws IOException {
+        return new SlottedHeapPage(pid, data);
+    }
+
+    private int slotOffset(int i) {
+        return getShort(HEADER_SIZE + i * SLOT_SIZE);
+    }
+
+    private int slotLength(int i) {
+        return getShort(HEADER_SIZE + i * SLOT_SIZE + 2);
+    }
+
+    private void setSlot(int i, int off, int len) {
+        putShort(HEADER_SIZE + i * SLOT_SIZE, off);
+        putShort(HEADER_SIZE + i * SLOT_SIZE + 2, len);
+    }
+
+    private int getShort(int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private void putShort(int pos, int v) {
+        data[pos] = (byte) (v >>> 8);
+        data[pos + 1] = (byte) v;
+    }
+
+    private void putInt(int pos, int v) {
+        putShort(pos, v >>> 16);
+        putShort(pos + 2, v & 0xffff);
+    }
+
+    private Tuple readRecord(int off, int len, int slotId) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data, off, len));
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slotId));
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                Type type = td.getFieldType(j);
+                if (type == Type.STRING_TYPE) {
+                    byte[] bs = new byte[dis.readUnsignedShort()];
+                    dis.readFully(bs);
+                    t.setField(j, new StringField(new String(bs), Type.STRING_LEN));
+                } else {
+                    t.setField(j, type.parse(dis));
+                }
+            }
+        } catch (java.text.ParseException e) {
+            throw new IOException("parsing error on slot " + slotId, e);
+        }
+        return t;
+    }
+
+    private byte[] encode(Tuple t) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(encodedSize(t));
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                Field f = t.getField(j);
+                if (td.getFieldType(j) == Type.STRING_TYPE) {
+                    String s = stringValue(f);
+                    dos.writeShort(s.length());
+                    dos.writeBytes(s);
+                } else {
+                    f.serialize(dos);
+                }
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // writing to a byte array
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    private static String stringValue(Field f) {
+        String s = ((StringField) f).getValue();
+        return s.length() > Type.STRING_LEN ? s.substring(0, Type.STRING_LEN) : s;
+    }
+
+    /** @return the number of bytes the record for t takes on this page */
+    private int encodedSize(Tuple t) {
+        int size = 0;
+        for (int j = 0; j < td.numFields(); j++) {
+            Type type = td.getFieldType(j);
+            size += type == Type.STRING_TYPE ? 2 + stringValue(t.getField(j)).length() : type.getLen();
+        }
+        return size;
+    }
+
+    /** @return the size of the smallest record this page can hold */
+    private int minRecordSize() {
+        int size = 0;
+        for (int j = 0; j < td.numFields(); j++) {
+            Type type = td.getFieldType(j);
+            size += type == Type.STRING_TYPE ? 2 : type.getLen();
+        }
+        return Math.max(size, 1);
+    }
+
+    /** @return free bytes on the page, counting holes left by deletes */
+    int getFreeSpace() {
+        return data.length - HEADER_SIZE - slots.size() * SLOT_SIZE - liveBytes;
+    }
+
+    /** @return free bytes between the slot directory and the record area */
+    private int getContiguousFreeSpace() {
+        return dataStart - HEADER_SIZE - slots.size() * SLOT_SIZE;
+    }
+
+    private int firstEmptySlot() {
+        for (int i = 0; i < slots.size(); i++) {
+            if (slots.get(i) == null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Move all records to the end of the page, squeezing out the holes left
+     * by deleted records.  Slot numbers do not change.
+     */
+    private void compact() {
+        byte[] old = data.clone();
+        int end = data.length;
+        for (int i = 0; i < slots.size(); i++) {
+            if (slots.get(i) == null) {
+                continue;
+            }
+            int off = slotOffset(i);
+            int len = slotLength(i);
+            end -= len;
+            System.arraycopy(old, off, data, end, len);
+            setSlot(i, end, len);
+        }
+        Arrays.fill(data, HEADER_SIZE + slots.size() * SLOT_SIZE, end, (byte) 0);
+        dataStart = end;
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        putInt(0, slots.size());
+        putInt(4, dataStart == data.length ? 0 : dataStart);
+    }
+
+    @Override
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    @Override
+    byte[] takePageData() {
+        byte[] old = data;
+        data = old.clone();
+        return old;
+    }
+
+    @Override
+    public boolean hasRoomFor(Tuple t) {
+        int needed = encodedSize(t) + (firstEmptySlot() == -1 ? SLOT_SIZE : 0);
+        return getFreeSpace() >= needed;
+    }
+
+    @Override
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("insert failed,tuple desc not match");
+        }
+        byte[] rec = encode(t);
+        int slot = firstEmptySlot();
+        int needed = rec.length + (slot == -1 ? SLOT_SIZE : 0);
+        if (getFreeSpace() < needed) {
+            throw new DbException("insert tuple into page failed, page is full");
+        }
+        beforeChange();
+        if (getContiguousFreeSpace() < needed) {
+            compact();
+        }
+        if (slot == -1) {
+            slot = slots.size();
+            slots.add(null);
+        }
+        dataStart -= rec.length;
+        System.arraycopy(rec, 0, data, dataStart, rec.length);
+        setSlot(slot, dataStart, rec.length);
+        liveBytes += rec.length;
+        t.setRecordId(new RecordId(pid, slot));
+        slots.set(slot, t);
+        writeHeader();
+    }
+
+    @Override
+    public void deleteTuple(Tuple t) throws DbException {
+        int slot = t.getRecordId().getTupleNumber();
+        if (!this.pid.equals(t.getRecordId().getPageId())) {
+            throw new DbException("page id is not equal");
+        }
+        if (slot < 0 || slot >= slots.size()) {
+            throw new DbException("tuple number out of bound");
+        }
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tuple desc is not equal");
+        }
+        if (slots.get(slot) == null) {
+            throw new DbException("tuple is unused");
+        }
+        beforeChange();
+        int off = slotOffset(slot);
+        int len = slotLength(slot);
+        Arrays.fill(data, off, off + len, (byte) 0);
+        setSlot(slot, 0, 0);
+        slots.set(slot, null);
+        liveBytes -= len;
+        if (off == dataStart) {
+            dataStart += len;
+        }
+
+        // trailing empty slots can be dropped from the directory
+        while (!slots.isEmpty() && slots.get(slots.size() - 1) == null) {
+            slots.remove(slots.size() - 1);
+            setSlot(slots.size(), 0, 0);
+        }
+        if (slots.isEmpty()) {
+            dataStart = data.length;
+        }
+        writeHeader();
+    }
+
+    /**
+     * Returns the number of tuples of the smallest possible size that can
+     * still be inserted into this page.
+     */
+    @Override
+    public int getNumEmptySlots() {
+        int free = getFreeSpace();
+        int min = minRecordSize();
+        int emptyEntries = 0;
+        for (Tuple t : slots) {
+            if (t == null) {
+                emptyEntries++;
+            }
+        }
+        int n = Math.min(emptyEntries, free / min);
+        free -= n * min;
+        if (n == emptyEntries) {
+            n += free / (min + SLOT_SIZE);
+        }
+        return n;
+    }
+
+    @Override
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < slots.size() && slots.get(i) != null;
+    }
+
+    @Override
+    public Iterator<Tuple> iterator() {
+        List<Tuple> tupleList = new ArrayList<>();
+        for (Tuple t : slots) {
+            if (t != null) {
+                tupleList.add(t);
+            }
+        }
+        return Collections.unmodifiableList(tupleList).iterator();
+    }
+}
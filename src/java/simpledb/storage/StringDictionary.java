@@ -0,0 +1,130 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StringDictionary maps the values of a dictionary-encoded string column to
+ * small int codes, and back.
+ * <p>
+ * When a tuple of a column marked dictionary-encoded in its
+ * {@link TupleDesc} is read, the tuple keeps the code of the string beside
+ * it (see {@link Tuple#getCode}).  Compiled equality predicates and
+ * equi-joins then compare codes rather than strings, and the strings and
+ * {@link StringField}s of a code are single shared instances, so that
+ * grouping on them hashes a cached hash code and compares references.
+ * <p>
+ * Each dictionary-encoded column of a table has a dictionary of its own,
+ * held by the table's TupleDesc in the catalog and shared by the
+ * TupleDescs derived from it, so codes only mean something within one
+ * column, and a column with many distinct values can only fill its own
+ * dictionary.  Codes are never reassigned.  A dictionary holds at most
+ * simpledb.storage.StringDictionary.maxEntries strings (65536 by default);
+ * strings met once it is full get no code, and are compared as strings.
+ * <p>
+ * Codes live in memory only; on disk the strings of a row-format table are
+ * stored whole.  The compressed table format (see {@link HeapPageCompressor})
+ * stores string columns dictionary encoded page by page.
+ */
+public final class StringDictionary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the code of strings that are not in the dictionary */
+    public static final int NO_CODE = 0;
+
+    private static final int MAX_ENTRIES = Integer.getInteger("simpledb.storage.StringDictionary.maxEntries", 1 << 16);
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    // indexed by code; replaced, never changed in place, when they grow
+    private volatile String[] strings = new String[64];
+    private volatile StringField[] fields = new StringField[64];
+    private int size;
+
+    /**
+     * Create an empty dictionary of simpledb.storage.StringDictionary.maxEntries
+     * strings.
+     */
+    public StringDictionary() {
+        this(MAX_ENTRIES);
+    }
+
+    /**
+     * Create an empty dictionary.
+     *
+     * @param maxEntries the most strings the dictionary gives codes to
+     */
+    public StringDictionary(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the code of s, or NO_CODE if s is not in the dictionary; never
+     *         adds s
+     */
+    public int lookup(String s) {
+        Integer code = codes.get(s);
+        return code != null ? code : NO_CODE;
+    }
+
+    /**
+     * @return the code of s, adding s to the dictionary if it is not in it
+     *         and there is room, or NO_CODE if there is not
+     */
+    public int encode(String s) {
+        Integer code = codes.get(s);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(s);
+            if (code != null) {
+                return code;
+            }
+            if (size >= maxEntries) {
+                return NO_CODE;
+            }
+            int c = ++size;
+            if (c >= strings.length) {
+                int n = Math.min(strings.length * 2, maxEntries + 1);
+                String[] ss = Arrays.copyOf(strings, n);
+                StringField[] fs = Arrays.copyOf(fields, n);
+                ss[c] = s;
+                fs[c] = new StringField(s, Type.STRING_LEN);
+                fields = fs;
+                strings = ss;
+            } else {
+                fields[c] = new StringField(s, Type.STRING_LEN);
+                strings[c] = s;
+            }
+            // published last, so a reader that gets the code finds the string
+            codes.put(s, c);
+            return c;
+        }
+    }
+
+    /**
+     * @return the string with the given code
+     */
+    public String decode(int code) {
+        return strings[code];
+    }
+
+    /**
+     * @return the shared StringField holding the string with the given code
+     */
+    public StringField field(int code) {
+        return fields[code];
+    }
+
+    /**
+     * @return the number of strings in the dictionary
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -78,9 +78,17 @@ public class StringField implements Field {
 	 * @see Field#compare
 	 */
 	public boolean compare(Predicate.Op op, Field val) {
+		return compare(op, value, ((StringField) val).value);
+	}
 
-		StringField iVal = (StringField) val;
-		int cmpVal = value.compareTo(iVal.value);
+	/**
+	 * Compare two strings the way StringField.compare compares two
+	 * StringFields, without creating the fields.
+	 *
+	 * @return true if value op val holds
+	 */
+	public static boolean compare(Predicate.Op op, String value, String val) {
+		int cmpVal = value.compareTo(val);
 
 		switch (op) {
 		case EQUALS:
@@ -102,7 +110,7 @@ public class StringField implements Field {
 			return cmpVal <= 0;
 
 		case LIKE:
-			return value.contains(iVal.value);
+			return value.contains(val);
 		}
 
 		return false;
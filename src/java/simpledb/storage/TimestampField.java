@@ -0,0 +1,90 @@
+package simpledb.storage;
+
+import simpledb.execution.Predicate;
+import simpledb.common.Type;
+
+import java.io.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Instance of Field that stores a point in time, as the number of
+ * milliseconds since 1970-01-01 00:00:00 UTC.  Timestamps are written and
+ * parsed in ISO-8601 form in UTC, with a space or a T between the date and
+ * the time, for example 2021-03-14 15:09:26.535.
+ */
+public class TimestampField implements Field {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long millis;
+
+    /**
+     * @return the number of milliseconds since the epoch
+     */
+    public long getValue() {
+        return millis;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param millis The number of milliseconds since the epoch.
+     */
+    public TimestampField(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * @return the TimestampField for a time in the form
+     *         yyyy-mm-dd hh:mm[:ss[.fff]], or for a date, taken as midnight
+     * @throws java.time.format.DateTimeParseException if s is not a time
+     */
+    public static TimestampField parse(String s) {
+        s = s.trim();
+        if (s.length() <= 10) {
+            return new TimestampField(DateField.parse(s).getValue() * 86400000L);
+        }
+        LocalDateTime t = LocalDateTime.parse(s.replace(' ', 'T'));
+        return new TimestampField(t.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    public String toString() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC)
+                .toString().replace('T', ' ');
+    }
+
+    public int hashCode() {
+        return Long.hashCode(millis);
+    }
+
+    public boolean equals(Object field) {
+        if (!(field instanceof TimestampField)) return false;
+        return ((TimestampField) field).millis == millis;
+    }
+
+    public void serialize(DataOutputStream dos) throws IOException {
+        dos.writeLong(millis);
+    }
+
+    /**
+     * Compare the specified field to the value of this Field.
+     * Return semantics are as specified by Field.compare
+     *
+     * @throws IllegalCastException if val is not a TimestampField
+     * @see Field#compare
+     */
+    public boolean compare(Predicate.Op op, Field val) {
+        return LongField.compare(op, millis, ((TimestampField) val).millis);
+    }
+
+    /**
+     * Return the Type of this field.
+     *
+     * @return Type.TIMESTAMP_TYPE
+     */
+    public Type getType() {
+        return Type.TIMESTAMP_TYPE;
+    }
+}
@@ -2,9 +2,12 @@ package simpledb.storage;
 
 import simpledb.common.Type;
 
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -12,12 +15,35 @@ import java.util.List;
  * Tuple maintains information about the contents of a tuple. Tuples have a
  * specified schema specified by a TupleDesc object and contain Field objects
  * with the data for each field.
+ * <p>
+ * The values themselves are kept unboxed: fixed-width columns in a long
+ * array and string columns in a String array, read and written with the
+ * typed accessors {@link #getInt}, {@link #getLong}, {@link #getDouble},
+ * {@link #getString} and their setters.  Operators that use these never
+ * allocate a Field.
+ * <p>
+ * For string columns the long array holds the code of the string in the
+ * column's {@link StringDictionary}, if the column is dictionary encoded
+ * and the string has a code, and {@link StringDictionary#NO_CODE} otherwise.
+ * Fields are a view of the values, created when {@link #getField} is first
+ * called for a column; a field passed to {@link #setField} is kept as the
+ * column's view.
  */
 public class Tuple implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private TupleDesc tupleDesc;
-    private List<Field> fields;
+    /**
+     * the values of the fixed-width columns: ints and longs as themselves,
+     * doubles as their bits, dates as days and timestamps as milliseconds
+     * since the epoch, and booleans as 0 or 1; and the dictionary codes of
+     * the string columns
+     */
+    private final long[] values;
+    /** the values of the string columns; null until one is set */
+    private String[] strings;
+    /** Field views of the columns; null until one is needed */
+    private Field[] fields;
     private RecordId recordId;
 
     /**
@@ -29,7 +55,7 @@ public class Tuple implements Serializable {
      */
     public Tuple(TupleDesc td) {
         this.tupleDesc = td;
-        this.fields = new ArrayList<>();
+        this.values = new long[td.numFields()];
     }
 
     /**
@@ -63,20 +89,271 @@ public class Tuple implements Serializable {
      * @param i
      *            index of the field to change. It must be a valid index.
      * @param f
-     *            new value for the field.
+     *            new value for the field, or null to unset it.
      */
     public void setField(int i, Field f) {
-        this.fields.add(i, f);
+        if (f instanceof StringField) {
+            setString(i, f.toString());
+        } else if (f != null) {
+            values[i] = bits(f);
+        } else {
+            values[i] = 0;
+            if (strings != null) {
+                strings[i] = null;
+            }
+        }
+        if (fields == null) {
+            fields = new Field[values.length];
+        }
+        fields[i] = f;
     }
 
     /**
      * @return the value of the ith field, or null if it has not been set.
+     *         A fixed-width field that has not been set reads as 0, or the
+     *         equivalent of 0 for its type.
      *
      * @param i
      *            field index to return. Must be a valid index.
      */
     public Field getField(int i) {
-       return this.fields.get(i);
+        if (fields != null && fields[i] != null) {
+            return fields[i];
+        }
+        Field f;
+        long v = values[i];
+        switch (tupleDesc.getFieldType(i)) {
+        case INT_TYPE:
+            f = new IntField((int) v);
+            break;
+        case LONG_TYPE:
+            f = new LongField(v);
+            break;
+        case DOUBLE_TYPE:
+            f = new DoubleField(Double.longBitsToDouble(v));
+            break;
+        case DATE_TYPE:
+            f = new DateField((int) v);
+            break;
+        case TIMESTAMP_TYPE:
+            f = new TimestampField(v);
+            break;
+        case BOOLEAN_TYPE:
+            f = new BooleanField(v != 0);
+            break;
+        default:
+            if (v != StringDictionary.NO_CODE) {
+                f = tupleDesc.getDictionary(i).field((int) v);
+            } else if (strings == null || strings[i] == null) {
+                return null;
+            } else {
+                f = new StringField(strings[i], Type.STRING_LEN);
+            }
+        }
+        if (fields == null) {
+            fields = new Field[values.length];
+        }
+        fields[i] = f;
+        return f;
+    }
+
+    /**
+     * @return the value of a fixed-width field, as kept in values
+     */
+    static long bits(Field f) {
+        switch (f.getType()) {
+        case INT_TYPE:
+            return ((IntField) f).getValue();
+        case LONG_TYPE:
+            return ((LongField) f).getValue();
+        case DOUBLE_TYPE:
+            return Double.doubleToLongBits(((DoubleField) f).getValue());
+        case DATE_TYPE:
+            return ((DateField) f).getValue();
+        case TIMESTAMP_TYPE:
+            return ((TimestampField) f).getValue();
+        case BOOLEAN_TYPE:
+            return ((BooleanField) f).getValue() ? 1 : 0;
+        default:
+            throw new IllegalArgumentException("not a fixed-width field: " + f.getType());
+        }
+    }
+
+    private String[] strings() {
+        if (strings == null) {
+            strings = new String[values.length];
+        }
+        return strings;
+    }
+
+    /**
+     * @return the value of the ith field, which must be an int field
+     */
+    public int getInt(int i) {
+        return (int) values[i];
+    }
+
+    /**
+     * Change the value of the ith field, which must be an int field.
+     */
+    public void setInt(int i, int v) {
+        values[i] = v;
+        if (fields != null) {
+            fields[i] = null;
+        }
+    }
+
+    /**
+     * @return the value of the ith field, which must be a long, date,
+     *         timestamp or boolean field, as a number of days or
+     *         milliseconds, or 0 or 1 for a boolean
+     */
+    public long getLong(int i) {
+        return values[i];
+    }
+
+    /**
+     * Change the value of the ith field, which must be a long, date,
+     * timestamp or boolean field.
+     */
+    public void setLong(int i, long v) {
+        values[i] = v;
+        if (fields != null) {
+            fields[i] = null;
+        }
+    }
+
+    /**
+     * @return the value of the ith field, which must be a double field
+     */
+    public double getDouble(int i) {
+        return Double.longBitsToDouble(values[i]);
+    }
+
+    /**
+     * Change the value of the ith field, which must be a double field.
+     */
+    public void setDouble(int i, double v) {
+        setLong(i, Double.doubleToLongBits(v));
+    }
+
+    /**
+     * @return the value of the ith field, which must be a string field, or
+     *         null if it has not been set
+     */
+    public String getString(int i) {
+        return strings == null ? null : strings[i];
+    }
+
+    /**
+     * @return the code of the ith field, which must be a string field, in
+     *         the {@link StringDictionary} of its column, or
+     *         {@link StringDictionary#NO_CODE} if it has none
+     */
+    public int getCode(int i) {
+        return (int) values[i];
+    }
+
+    /**
+     * Change the value of the ith field, which must be a string field.
+     * Strings longer than {@link Type#STRING_LEN} are truncated.
+     */
+    public void setString(int i, String s) {
+        if (s.length() > Type.STRING_LEN) {
+            s = s.substring(0, Type.STRING_LEN);
+        }
+        int code = StringDictionary.NO_CODE;
+        StringDictionary dictionary = tupleDesc.getDictionary(i);
+        if (dictionary != null) {
+            code = dictionary.encode(s);
+            if (code != StringDictionary.NO_CODE) {
+                s = dictionary.decode(code);
+            }
+        }
+        strings()[i] = s;
+        values[i] = code;
+        if (fields != null) {
+            fields[i] = null;
+        }
+    }
+
+    /**
+     * Set the ith field of this tuple to the jth field of src, which must
+     * be of the same type, without going through a Field.  The code of a
+     * string is only kept if both columns share one dictionary.
+     */
+    public void copyField(int i, Tuple src, int j) {
+        values[i] = src.values[j];
+        if (values[i] != StringDictionary.NO_CODE && tupleDesc.getFieldType(i) == Type.STRING_TYPE
+                && tupleDesc.getDictionary(i) != src.tupleDesc.getDictionary(j)) {
+            values[i] = StringDictionary.NO_CODE;
+        }
+        if (tupleDesc.getFieldType(i) == Type.STRING_TYPE) {
+            strings()[i] = src.strings == null ? null : src.strings[j];
+        }
+        Field f = src.fields == null ? null : src.fields[j];
+        if (f != null || fields != null) {
+            if (fields == null) {
+                fields = new Field[values.length];
+            }
+            fields[i] = f;
+        }
+    }
+
+    /**
+     * Read the ith field of this tuple in the format written by
+     * {@link Field#serialize}.
+     */
+    public void readField(int i, DataInput in) throws IOException {
+        Type type = tupleDesc.getFieldType(i);
+        switch (type) {
+        case INT_TYPE:
+        case DATE_TYPE:
+            setLong(i, in.readInt());
+            break;
+        case LONG_TYPE:
+        case DOUBLE_TYPE:
+        case TIMESTAMP_TYPE:
+            setLong(i, in.readLong());
+            break;
+        case BOOLEAN_TYPE:
+            setLong(i, in.readBoolean() ? 1 : 0);
+            break;
+        case STRING_TYPE:
+            int len = in.readInt();
+            byte[] bs = new byte[Type.STRING_LEN];
+            in.readFully(bs);
+            setString(i, new String(bs, 0, Math.max(0, Math.min(len, Type.STRING_LEN)), StandardCharsets.ISO_8859_1));
+            break;
+        default:
+            throw new IOException("can't read a field of type " + type);
+        }
+    }
+
+    /**
+     * Write the ith field of this tuple in the format of
+     * {@link Field#serialize}.
+     */
+    public void writeField(int i, DataOutputStream out) throws IOException {
+        Type type = tupleDesc.getFieldType(i);
+        if (fields != null && fields[i] != null) {
+            fields[i].serialize(out);
+        } else if (type == Type.INT_TYPE || type == Type.DATE_TYPE) {
+            out.writeInt((int) values[i]);
+        } else if (type == Type.LONG_TYPE || type == Type.DOUBLE_TYPE || type == Type.TIMESTAMP_TYPE) {
+            out.writeLong(values[i]);
+        } else if (type == Type.BOOLEAN_TYPE) {
+            out.writeBoolean(values[i] != 0);
+        } else if (type == Type.STRING_TYPE && getString(i) != null) {
+            String s = getString(i);
+            out.writeInt(s.length());
+            out.writeBytes(s);
+            for (int k = s.length(); k < Type.STRING_LEN; k++) {
+                out.write(0);
+            }
+        } else {
+            getField(i).serialize(out);
+        }
     }
 
     /**
@@ -107,7 +384,11 @@ public class Tuple implements Serializable {
      * */
     public Iterator<Field> fields()
     {
-        return fields.iterator();
+        List<Field> view = new ArrayList<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            view.add(getField(i));
+        }
+        return view.iterator();
     }
 
     /**
@@ -11,6 +11,8 @@ import java.util.*;
 public class TupleDesc implements Serializable {
 
     private List<TDItem> items;
+    /** the dictionary of each dictionary-encoded field, or null if none are */
+    private StringDictionary[] dictionaries;
 
     /**
      * A help class to facilitate organizing the information of each field
@@ -85,6 +87,54 @@ public class TupleDesc implements Serializable {
         this(typeAr, null);
     }
 
+    /**
+     * Constructor. Create a new tuple desc like {@link #TupleDesc(Type[], String[])},
+     * some of whose string fields are dictionary encoded.
+     *
+     * @param typeAr            the types of the fields
+     * @param fieldAr           the names of the fields, or null
+     * @param dictionaryEncoded for each field, whether tuples read with this
+     *                          TupleDesc keep the {@link StringDictionary}
+     *                          code of its value; each such field gets a new,
+     *                          empty dictionary of its own.  Only string
+     *                          fields can be dictionary encoded
+     */
+    public TupleDesc(Type[] typeAr, String[] fieldAr, boolean[] dictionaryEncoded) {
+        this(typeAr, fieldAr, newDictionaries(dictionaryEncoded));
+    }
+
+    /**
+     * Constructor. Create a new tuple desc like {@link #TupleDesc(Type[], String[])},
+     * whose string fields code their values with the specified dictionaries.
+     *
+     * @param typeAr       the types of the fields
+     * @param fieldAr      the names of the fields, or null
+     * @param dictionaries for each field, the dictionary tuples read with
+     *                     this TupleDesc code its value with, shared with
+     *                     the caller, or null if it is not dictionary
+     *                     encoded.  Only string fields can be dictionary
+     *                     encoded
+     */
+    public TupleDesc(Type[] typeAr, String[] fieldAr, StringDictionary[] dictionaries) {
+        this(typeAr, fieldAr);
+        for (int i = 0; i < dictionaries.length; i++) {
+            if (dictionaries[i] != null && typeAr[i] != Type.STRING_TYPE) {
+                throw new IllegalArgumentException("only string fields can be dictionary encoded");
+            }
+        }
+        this.dictionaries = dictionaries.clone();
+    }
+
+    private static StringDictionary[] newDictionaries(boolean[] dictionaryEncoded) {
+        StringDictionary[] dictionaries = new StringDictionary[dictionaryEncoded.length];
+        for (int i = 0; i < dictionaryEncoded.length; i++) {
+            if (dictionaryEncoded[i]) {
+                dictionaries[i] = new StringDictionary();
+            }
+        }
+        return dictionaries;
+    }
+
     /**
      * @return the number of fields in this TupleDesc
      */
@@ -121,6 +171,22 @@ public class TupleDesc implements Serializable {
         return items.get(i).fieldType;
     }
 
+    /**
+     * @return true if tuples read with this TupleDesc keep the
+     *         {@link StringDictionary} code of their ith field
+     */
+    public boolean isDictionaryEncoded(int i) {
+        return getDictionary(i) != null;
+    }
+
+    /**
+     * @return the dictionary the ith field is coded with, or null if it is
+     *         not dictionary encoded
+     */
+    public StringDictionary getDictionary(int i) {
+        return dictionaries == null ? null : dictionaries[i];
+    }
+
     /**
      * Find the index of the field with a given name.
      *
@@ -164,6 +230,11 @@ public class TupleDesc implements Serializable {
     public static TupleDesc merge(TupleDesc td1, TupleDesc td2) {
         Type[] types = new Type[td1.numFields() + td2.numFields()];
         String[] names = new String[td1.numFields() + td2.numFields()];
+        StringDictionary[] dictionaries = new StringDictionary[types.length];
+        for (int j = 0; j < types.length; j++) {
+            dictionaries[j] = j < td1.numFields() ? td1.getDictionary(j)
+                    : td2.getDictionary(j - td1.numFields());
+        }
         int i = 0;
         TDItem item = null;
 
@@ -183,7 +254,7 @@ public class TupleDesc implements Serializable {
             i++;
         }
 
-        return new TupleDesc(types, names);
+        return new TupleDesc(types, names, dictionaries);
     }
 
     /**
@@ -0,0 +1,392 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ZoneMap records the smallest and largest value of each column on each page
+ * of a {@link HeapFile}, so that scans with range or equality predicates can
+ * skip the pages that cannot hold a matching tuple without reading them.
+ * <p>
+ * Every column but string columns is mapped.  The ranges of a page are kept
+ * in a file next to the heap file with a <tt>.zm</tt> suffix: a header, then
+ * one record per page of a flag saying whether the page's ranges are known,
+ * followed by the smallest and largest value of each mapped column.  Doubles
+ * are stored in an order-preserving form of their bits, so that all ranges
+ * compare as longs.  A page with no tuples has an empty range.
+ * <p>
+ * Unlike the free-space map, the ranges must be right: a range may be wider
+ * than the values on its page, but never narrower.  So
+ * <ul>
+ * <li>inserts widen the range of their page in memory as they add tuples;</li>
+ * <li>before a run of pages is written, any range on disk that does not
+ * cover the new contents is widened to cover them too, and after it is
+ * written the ranges are set to the new contents, so a crash between the
+ * two writes leaves ranges that cover both the old and the new pages.  The
+ * map's file is written at most twice per run: before the pages, only if
+ * a range had to be widened, and once after them;</li>
+ * <li>deletes leave ranges as they are, until the page is written;</li>
+ * <li>pages whose ranges are not known, such as those of a file written by
+ * {@link HeapFileEncoder}, are never skipped, and get their ranges the
+ * first time a filtered scan reads them while they are clean.</li>
+ * </ul>
+ * The header holds the length and modification time of the heap file as of
+ * the last write through {@link HeapFile}; if the file has been changed since
+ * by other means the whole map is ignored.
+ */
+class ZoneMap {
+
+    private static final long MAGIC = 0x5a4f4e454d415031L;
+    private static final int HEADER_SIZE = 24;
+
+    private final File file;
+    private final File dataFile;
+    private final Type[] types;
+    /** the mapped columns */
+    private final int[] columns;
+    private final int recordSize;
+
+    /** per page, the ranges covering its tuples in the buffer pool, or null if not known */
+    private List<long[]> live;
+    /** per page, the ranges in the file, or null if not known */
+    private List<long[]> saved;
+    /** the pages whose saved ranges have not yet been written, [unsavedFrom, unsavedTo) */
+    private int unsavedFrom = Integer.MAX_VALUE, unsavedTo;
+
+    /**
+     * @param file     the file that stores the map
+     * @param dataFile the heap file
+     * @param td       the schema of the heap file
+     */
+    ZoneMap(File file, File dataFile, TupleDesc td) {
+        this.file = file;
+        this.dataFile = dataFile;
+        this.types = new Type[td.numFields()];
+        int n = 0;
+        for (int i = 0; i < types.length; i++) {
+            types[i] = td.getFieldType(i);
+            if (types[i] != Type.STRING_TYPE) {
+                n++;
+            }
+        }
+        this.columns = new int[n];
+        n = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != Type.STRING_TYPE) {
+                columns[n++] = i;
+            }
+        }
+        this.recordSize = 1 + 16 * columns.length;
+    }
+
+    /**
+     * @return the file that stores the map
+     */
+    File getFile() {
+        return file;
+    }
+
+    private void load() {
+        if (live != null) {
+            return;
+        }
+        live = new ArrayList<>();
+        saved = new ArrayList<>();
+        if (columns.length == 0 || !file.exists()) {
+            return;
+        }
+        try {
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (b.remaining() < HEADER_SIZE || b.getLong() != MAGIC
+                    || b.getLong() != dataFile.length() || b.getLong() != dataFile.lastModified()) {
+                // the heap file was written without the map; drop the
+                // map, so that none of its records is taken up again
+                Files.delete(file.toPath());
+                return;
+            }
+            while (b.remaining() >= recordSize) {
+                long[] r = null;
+                if (b.get() != 0) {
+                    r = new long[2 * columns.length];
+                    for (int k = 0; k < r.length; k++) {
+                        r[k] = b.getLong();
+                    }
+                } else {
+                    b.position(b.position() + recordSize - 1);
+                }
+                live.add(r);
+                saved.add(r == null ? null : r.clone());
+            }
+        } catch (IOException e) {
+            // start over; unknown pages are never skipped
+            live.clear();
+            saved.clear();
+        }
+    }
+
+    private static long[] get(List<long[]> l, int pgNo) {
+        return pgNo < l.size() ? l.get(pgNo) : null;
+    }
+
+    private static void set(List<long[]> l, int pgNo, long[] r) {
+        while (l.size() <= pgNo) {
+            l.add(null);
+        }
+        l.set(pgNo, r);
+    }
+
+    /**
+     * @return the value of column i of t, as a long that orders like the
+     *         value
+     */
+    private long key(Tuple t, int i) {
+        long v = t.getLong(i);
+        return types[i] == Type.DOUBLE_TYPE ? sortable(v) : v;
+    }
+
+    /**
+     * @return the bits of a double flipped so that they order as the doubles
+     *         do under Double.compare
+     */
+    private static long sortable(long bits) {
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private long[] empty() {
+        long[] r = new long[2 * columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            r[2 * k] = Long.MAX_VALUE;
+            r[2 * k + 1] = Long.MIN_VALUE;
+        }
+        return r;
+    }
+
+    /**
+     * @return true if r changed to cover t
+     */
+    private boolean widen(long[] r, Tuple t) {
+        boolean changed = false;
+        for (int k = 0; k < columns.length; k++) {
+            long v = key(t, columns[k]);
+            if (v < r[2 * k]) {
+                r[2 * k] = v;
+                changed = true;
+            }
+            if (v > r[2 * k + 1]) {
+                r[2 * k + 1] = v;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private long[] ranges(Page page) {
+        long[] r = empty();
+        Iterator<Tuple> it = ((HeapPage) page).iterator();
+        while (it.hasNext()) {
+            widen(r, it.next());
+        }
+        return r;
+    }
+
+    /**
+     * Note that t has been inserted into page pgNo in the buffer pool.
+     */
+    synchronized void inserted(int pgNo, Tuple t) {
+        load();
+        long[] r = get(live, pgNo);
+        if (r != null) {
+            widen(r, t);
+        }
+    }
+
+    /**
+     * Note that a run of pages is about to be written, and make sure the
+     * ranges on disk cover both their old and their new contents.
+     */
+    synchronized void beforeWrite(List<Page> pages) throws IOException {
+        if (columns.length == 0) {
+            return;
+        }
+        load();
+        boolean widened = false;
+        for (Page p : pages) {
+            int pgNo = p.getId().getPageNumber();
+            long[] r = get(saved, pgNo);
+            if (r == null) {
+                continue;
+            }
+            boolean changed = false;
+            Iterator<Tuple> it = ((HeapPage) p).iterator();
+            while (it.hasNext()) {
+                changed |= widen(r, it.next());
+            }
+            if (changed) {
+                unsaved(pgNo);
+                widened = true;
+            }
+        }
+        if (widened) {
+            flush();
+        }
+    }
+
+    /**
+     * Note that a run of pages has been written, and set their ranges to
+     * their contents.
+     */
+    synchronized void afterWrite(List<Page> pages) throws IOException {
+        if (columns.length == 0) {
+            return;
+        }
+        load();
+        for (Page p : pages) {
+            int pgNo = p.getId().getPageNumber();
+            long[] r = ranges(p);
+            set(saved, pgNo, r);
+            // r is taken from the page object rather than the bytes written,
+            // so it covers tuples inserted since, and later inserts widen it
+            set(live, pgNo, r.clone());
+            unsaved(pgNo);
+        }
+        flush();
+    }
+
+    /**
+     * Note that count empty pages starting at first have been written.  Their
+     * ranges are written with those of the next run of pages, or by the
+     * next {@link #flush}; until then they are not known on disk.
+     */
+    synchronized void extended(int first, int count) throws IOException {
+        if (columns.length == 0) {
+            return;
+        }
+        load();
+        for (int pgNo = first; pgNo < first + count; pgNo++) {
+            set(saved, pgNo, empty());
+            set(live, pgNo, empty());
+            unsaved(pgNo);
+        }
+    }
+
+    /**
+     * Note that a scan has read page, and record its ranges if they are not
+     * known.  The page must be clean, so that its contents are those on disk.
+     * The ranges are written by the next {@link #flush}.
+     */
+    synchronized void scanned(HeapPage page) {
+        if (columns.length == 0 || page.isDirty() != null) {
+            return;
+        }
+        load();
+        int pgNo = page.getId().getPageNumber();
+        if (get(live, pgNo) != null) {
+            return;
+        }
+        long[] r = ranges(page);
+        set(live, pgNo, r);
+        set(saved, pgNo, r.clone());
+        unsaved(pgNo);
+    }
+
+    /**
+     * @return false if no tuple on page pgNo can satisfy all of predicates
+     */
+    synchronized boolean mayMatch(int pgNo, List<Predicate> predicates) {
+        load();
+        long[] r = get(live, pgNo);
+        if (r == null) {
+            return true;
+        }
+        for (Predicate p : predicates) {
+            int k = indexOf(p.getField());
+            if (k < 0 || p.getOperand().getType() != types[p.getField()]) {
+                continue;
+            }
+            long lo = r[2 * k], hi = r[2 * k + 1];
+            if (lo > hi) {
+                // no tuples
+                return false;
+            }
+            long c = Tuple.bits(p.getOperand());
+            if (types[p.getField()] == Type.DOUBLE_TYPE) {
+                c = sortable(c);
+            }
+            boolean may;
+            switch (p.getOp()) {
+                case EQUALS:
+                    may = lo <= c && c <= hi;
+                    break;
+                case NOT_EQUALS:
+                    may = lo != c || hi != c;
+                    break;
+                case GREATER_THAN:
+                    may = hi > c;
+                    break;
+                case GREATER_THAN_OR_EQ:
+                    may = hi >= c;
+                    break;
+                case LESS_THAN:
+                    may = lo < c;
+                    break;
+                case LESS_THAN_OR_EQ:
+                    may = lo <= c;
+                    break;
+                default:
+                    may = true;
+            }
+            if (!may) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(int field) {
+        for (int k = 0; k < columns.length; k++) {
+            if (columns[k] == field) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private void unsaved(int pgNo) {
+        unsavedFrom = Math.min(unsavedFrom, pgNo);
+        unsavedTo = Math.max(unsavedTo, pgNo + 1);
+    }
+
+    /**
+     * Write the ranges not yet written, and the header, to the map's file.
+     */
+    synchronized void flush() throws IOException {
+        if (unsavedFrom >= unsavedTo) {
+            return;
+        }
+        ByteBuffer b = ByteBuffer.allocate((unsavedTo - unsavedFrom) * recordSize);
+        for (int pgNo = unsavedFrom; pgNo < unsavedTo; pgNo++) {
+            long[] r = get(saved, pgNo);
+            b.put((byte) (r == null ? 0 : 1));
+            for (int k = 0; k < 2 * columns.length; k++) {
+                b.putLong(r == null ? 0 : r[k]);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(HEADER_SIZE + (long) unsavedFrom * recordSize);
+            raf.write(b.array());
+            raf.seek(0);
+            raf.writeLong(MAGIC);
+            raf.writeLong(dataFile.length());
+            raf.writeLong(dataFile.lastModified());
+        }
+        unsavedFrom = Integer.MAX_VALUE;
+        unsavedTo = 0;
+    }
+}
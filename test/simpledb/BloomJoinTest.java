@@ -0,0 +1,121 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapFileEncoder;
+import simpledb.storage.IntField;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class BloomJoinTest extends SimpleDbTestBase {
+
+  private TransactionId tid;
+  private HeapFile dim;
+  private HeapFile fact;
+
+  /**
+   * Create a small dimension table and a large fact table, whose keys
+   * rarely match
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    tid = new TransactionId();
+    dim = SystemTestUtil.createRandomHeapFile(2, 200, 1000000, null, null);
+    fact = SystemTestUtil.createRandomHeapFile(2, 20000, 1000000, null, null);
+  }
+
+  @After public void tearDown() {
+    HashEquiJoin.setBloomFiltersEnabled(true);
+  }
+
+  private HashEquiJoin join(JoinPredicate p, OpIterator build, OpIterator probe) {
+    return new HashEquiJoin(p, build, probe);
+  }
+
+  /**
+   * Run a join built by make with Bloom filters on and off, and check that
+   * both give the same tuples
+   */
+  private HashEquiJoin compare(java.util.function.Supplier<HashEquiJoin> make) throws Exception {
+    HashEquiJoin.setBloomFiltersEnabled(false);
+    HashEquiJoin plain = make.get();
+    plain.open();
+    HashEquiJoin.setBloomFiltersEnabled(true);
+    HashEquiJoin bloom = make.get();
+    bloom.open();
+    TestUtil.compareDbIterators(plain, bloom);
+    plain.close();
+    bloom.close();
+    assertEquals(0, plain.getBloomRejected());
+    return bloom;
+  }
+
+  /**
+   * The scan of the probe side drops the tuples that can't join, and the
+   * join still finds every match, including keys that match often
+   */
+  @Test public void dropsProbeTuples() throws Exception {
+    // make some keys match: copy them into the dimension table
+    List<List<Integer>> factTuples = new ArrayList<>();
+    fact = SystemTestUtil.createRandomHeapFile(2, 20000, 1000000, null, factTuples);
+    List<List<Integer>> dimTuples = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      dimTuples.add(Arrays.asList(factTuples.get(i * 7).get(0), i));
+    }
+    java.io.File f = java.io.File.createTempFile("dim", ".dat");
+    f.deleteOnExit();
+    HeapFileEncoder.convert(dimTuples, f, BufferPool.getPageSize(), 2);
+    dim = Utility.openHeapFile(2, f);
+
+    HashEquiJoin j = compare(() -> join(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new SeqScan(tid, dim.getId()), new SeqScan(tid, fact.getId())));
+    assertTrue("rejected " + j.getBloomRejected(), j.getBloomRejected() > 19000);
+  }
+
+  /**
+   * The key is followed down through filters and projections to the scan
+   */
+  @Test public void throughFilterAndProject() throws Exception {
+    HashEquiJoin j = compare(() -> {
+      SeqScan s = new SeqScan(tid, fact.getId());
+      Filter f = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(1000)), s);
+      Project p = new Project(Arrays.asList(1, 0), new Type[] { Type.INT_TYPE, Type.INT_TYPE }, f);
+      return join(new JoinPredicate(0, Predicate.Op.EQUALS, 1), new SeqScan(tid, dim.getId()), p);
+    });
+    assertTrue(j.getBloomRejected() > 0);
+  }
+
+  /**
+   * A build side too large for one hash table is joined in batches, each
+   * with its own filter
+   */
+  @Test public void batches() throws Exception {
+    HeapFile big = SystemTestUtil.createRandomHeapFile(1, HashEquiJoin.MAP_SIZE + 5000, 100000, null, null);
+    HeapFile probe = SystemTestUtil.createRandomHeapFile(1, 3000, 100000, null, null);
+    compare(() -> join(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new SeqScan(tid, big.getId()), new SeqScan(tid, probe.getId())));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(BloomJoinTest.class);
+  }
+}
@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.After;
@@ -19,6 +20,7 @@ import simpledb.storage.*;
 import simpledb.systemtest.SystemTestUtil;
 import static org.junit.Assert.*;
 import junit.framework.JUnit4TestAdapter;
+import simpledb.transaction.Transaction;
 import simpledb.transaction.TransactionId;
 
 public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
@@ -140,6 +142,34 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     	assertEquals(10, count);
     }
 
+    /**
+     * Aborting a transaction that changed a page holding another
+     * transaction's committed, not yet written changes keeps those changes
+     */
+    @Test public void abortKeepsEarlierCommit() throws Exception {
+        BufferPool bp = Database.getBufferPool();
+        List<Integer> values = new ArrayList<>();
+        // hold the pool, so the flusher cannot write the page meanwhile
+        synchronized (bp) {
+            Transaction t1 = new Transaction();
+            t1.start();
+            bp.insertTuple(t1.getId(), empty.getId(), Utility.getHeapTuple(1, 2));
+            t1.commit();
+            Transaction t2 = new Transaction();
+            t2.start();
+            bp.insertTuple(t2.getId(), empty.getId(), Utility.getHeapTuple(2, 2));
+            t2.abort();
+
+            DbFileIterator it = empty.iterator(tid);
+            it.open();
+            while (it.hasNext()) {
+                values.add(((IntField) it.next().getField(0)).getValue());
+            }
+            it.close();
+        }
+        assertEquals(Collections.singletonList(1), values);
+    }
+
     /**
      * JUnit suite target
      */
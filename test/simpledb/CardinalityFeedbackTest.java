@@ -0,0 +1,190 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.CardinalityFeedback;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class CardinalityFeedbackTest extends SimpleDbTestBase {
+
+  private TransactionId tid;
+  private HeapFile left;
+  private HeapFile right;
+  private Predicate filter;
+
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    CardinalityFeedback.clear();
+    tid = new TransactionId();
+    left = SystemTestUtil.createRandomHeapFile(2, 3000, 1000, null, null);
+    right = SystemTestUtil.createRandomHeapFile(2, 500, 1000, null, null);
+    filter = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(300));
+  }
+
+  /**
+   * @return the join of the filtered left table and the right table
+   */
+  private HashEquiJoin plan() {
+    Filter f = new Filter(filter, new SeqScan(tid, left.getId(), "l"));
+    return new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), f,
+        new SeqScan(tid, right.getId(), "r"));
+  }
+
+  /**
+   * @return the tuples of op, sorted by their string forms
+   */
+  private static List<String> drain(OpIterator op) throws Exception {
+    List<String> tuples = new ArrayList<>();
+    while (op.hasNext()) {
+      tuples.add(op.next().toString());
+    }
+    Collections.sort(tuples);
+    return tuples;
+  }
+
+  /**
+   * A query read to the end leaves the counts of its scans, filters and
+   * joins, under signatures naming tables and fields rather than aliases
+   */
+  @Test public void recordsCounts() throws Exception {
+    HashEquiJoin j = plan();
+    Query q = new Query(j, tid);
+    q.start();
+    int n = 0;
+    while (q.hasNext()) {
+      q.next();
+      n++;
+    }
+    q.close();
+
+    String l = Database.getCatalog().getTableName(left.getId());
+    String r = Database.getCatalog().getTableName(right.getId());
+    Filter f = (Filter) j.getChildren()[0];
+    String filtered = CardinalityFeedback.relation(l,
+        Collections.singletonList(CardinalityFeedback.predicate(f.getChildren()[0].getTupleDesc(), filter)));
+    String all = CardinalityFeedback.relation(r, Collections.emptyList());
+    String field = CardinalityFeedback.fieldName(right.getTupleDesc(), 0);
+
+    assertEquals(Long.valueOf(3000), CardinalityFeedback.lookup(CardinalityFeedback.relation(l, Collections.emptyList())));
+    assertEquals(Long.valueOf(500), CardinalityFeedback.lookup(all));
+    assertEquals(Long.valueOf(f.getActualCardinality()), CardinalityFeedback.lookup(filtered));
+    assertTrue(f.getActualCardinality() > 0 && f.getActualCardinality() < 3000);
+    // the join predicate is the same whichever side is named first
+    String joined = CardinalityFeedback.joinSet(Arrays.asList(all, filtered),
+        Collections.singletonList(CardinalityFeedback.join(all, field, Predicate.Op.EQUALS, filtered, field)));
+    assertEquals(Long.valueOf(n), CardinalityFeedback.lookup(joined));
+
+    // a later plan of the same query shows the counts as its estimates
+    HashEquiJoin again = plan();
+    CardinalityFeedback.correctEstimates(again);
+    assertEquals(n, again.getEstimatedCardinality());
+    assertEquals(f.getActualCardinality(), ((Operator) again.getChildren()[0]).getEstimatedCardinality());
+  }
+
+  /**
+   * A scan whose zone map skips pages counts fewer tuples than its table
+   * has, so only the filter above it is recorded
+   */
+  @Test public void prunedScan() throws Exception {
+    File f = File.createTempFile("pruned", ".dat");
+    f.deleteOnExit();
+    HeapFile hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+    hf.getFreeSpaceMapFile().deleteOnExit();
+    hf.getZoneMapFile().deleteOnExit();
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 4 * 504; i++) {
+      tuples.add(Utility.getHeapTuple(new int[] { i, i }));
+    }
+    Database.getBufferPool().insertTuples(tid, hf.getId(), tuples);
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    tid = new TransactionId();
+
+    Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100));
+    SeqScan scan = new SeqScan(tid, hf.getId(), "p");
+    scan.setPagePredicates(Collections.singletonList(p));
+    Filter filtered = new Filter(p, scan);
+    Query q = new Query(filtered, tid);
+    q.start();
+    int n = 0;
+    while (q.hasNext()) {
+      q.next();
+      n++;
+    }
+    q.close();
+    assertEquals(100, n);
+    assertTrue(scan.getActualCardinality() < tuples.size());
+
+    String name = Database.getCatalog().getTableName(hf.getId());
+    assertNull(CardinalityFeedback.lookup(CardinalityFeedback.relation(name, Collections.emptyList())));
+    String signature = CardinalityFeedback.relation(name,
+        Collections.singletonList(CardinalityFeedback.predicate(scan.getTupleDesc(), p)));
+    assertEquals(Long.valueOf(100), CardinalityFeedback.lookup(signature));
+  }
+
+  /**
+   * Counts are kept per full pass, so rewinding and reading again does not
+   * add up
+   */
+  @Test public void rewound() throws Exception {
+    HashEquiJoin j = plan();
+    j.open();
+    List<String> first = drain(j);
+    j.rewind();
+    assertEquals(first, drain(j));
+    assertEquals(first.size(), j.getActualCardinality());
+    j.close();
+  }
+
+  /**
+   * A left child far larger than its estimate makes the join hash its right
+   * child instead, with the same result
+   */
+  @Test public void reversesSides() throws Exception {
+    HeapFile big = SystemTestUtil.createRandomHeapFile(2, HashEquiJoin.MAP_SIZE + 5000, 1000, null, null);
+    Predicate all = new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0));
+    List<String> expected = null;
+    for (int estimate : new int[] { 0, 10 }) {
+      Filter f = new Filter(all, new SeqScan(tid, big.getId(), "b"));
+      f.setEstimatedCardinality(estimate);
+      HashEquiJoin j = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), f,
+          new SeqScan(tid, right.getId(), "r"));
+      j.open();
+      List<String> tuples = drain(j);
+      assertEquals(estimate > 0, j.isReversed());
+      j.close();
+      if (expected == null) {
+        expected = tuples;
+        assertFalse(expected.isEmpty());
+      } else {
+        assertEquals(expected, tuples);
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(CardinalityFeedbackTest.class);
+  }
+}
@@ -0,0 +1,112 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 1200;
+
+    private File f;
+    private TupleDesc td;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = File.createTempFile("compressed", ".dat");
+        f.deleteOnExit();
+        new File(f.getPath() + ".map").deleteOnExit();
+        td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE},
+                new String[]{"id", "status", "city"});
+    }
+
+    private Tuple row(int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(1000000 + i));
+        t.setField(1, new IntField(i / 500));
+        t.setField(2, new StringField("city" + (i % 7), Type.STRING_LEN));
+        return t;
+    }
+
+    /**
+     * Pages written through the buffer pool are much smaller on disk, and
+     * read back intact after the file is reopened.
+     */
+    @Test public void writeAndReopen() throws Exception {
+        CompressedHeapFile hf = new CompressedHeapFile(f, td);
+        Database.getCatalog().addTable(hf, "compressed");
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), row(i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        long raw = (long) hf.numPages() * BufferPool.getPageSize();
+        assertTrue(hf.numPages() > 1);
+        assertTrue(f.length() * 5 < raw);
+
+        // reopen from the page map
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        CompressedHeapFile reopened = new CompressedHeapFile(f, td);
+        Database.getCatalog().addTable(reopened, "compressed");
+        assertEquals(hf.numPages(), reopened.numPages());
+
+        Set<Integer> ids = new HashSet<>();
+        DbFileIterator it = reopened.iterator(new TransactionId());
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int i = ((IntField) t.getField(0)).getValue() - 1000000;
+            assertTrue(TestUtil.compareTuples(row(i), t));
+            assertTrue(ids.add(i));
+        }
+        it.close();
+        assertEquals(ROWS, ids.size());
+    }
+
+    /**
+     * A page that no longer fits its allocation is moved, and the others
+     * are unaffected.
+     */
+    @Test public void pageGrows() throws Exception {
+        CompressedHeapFile hf = new CompressedHeapFile(f, td);
+        Database.getCatalog().addTable(hf, "compressed");
+        HeapPageId pid0 = new HeapPageId(hf.getId(), 0);
+        HeapPageId pid1 = new HeapPageId(hf.getId(), 1);
+        HeapPage p0 = new HeapPage(pid0, HeapPage.createEmptyPageData());
+        HeapPage p1 = new HeapPage(pid1, HeapPage.createEmptyPageData());
+        p1.insertTuple(row(1));
+        hf.writePage(p0);
+        hf.writePage(p1);
+
+        Random r = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            Tuple t = row(r.nextInt());
+            p0.insertTuple(t);
+        }
+        hf.writePage(p0);
+
+        assertArrayEquals(p0.getPageData(), hf.readPage(pid0).getPageData());
+        assertArrayEquals(p1.getPageData(), hf.readPage(pid1).getPageData());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,94 @@
+package simpledb;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.execution.ConjunctiveFilter;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+
+public class ConjunctiveFilterTest extends SimpleDbTestBase {
+
+  private static Predicate pred(int field, Predicate.Op op, int c) {
+    return new Predicate(field, op, TestUtil.getField(c));
+  }
+
+  /**
+   * A conjunctive filter passes the same tuples as a stack of Filters
+   */
+  @Test public void sameAsFilters() throws Exception {
+    List<Predicate> ps = Arrays.asList(
+        pred(0, Predicate.Op.GREATER_THAN, -3),
+        pred(1, Predicate.Op.NOT_EQUALS, 0),
+        pred(2, Predicate.Op.LESS_THAN_OR_EQ, 3),
+        pred(0, Predicate.Op.LESS_THAN, 4));
+    OpIterator expected = new TestUtil.MockScan(-5, 5, 3);
+    for (Predicate p : ps)
+      expected = new Filter(p, expected);
+    ConjunctiveFilter op = new ConjunctiveFilter(ps, null, new TestUtil.MockScan(-5, 5, 3));
+    expected.open();
+    op.open();
+    TestUtil.compareDbIterators(expected, op);
+    op.rewind();
+    expected.rewind();
+    TestUtil.compareDbIterators(expected, op);
+    op.close();
+    expected.close();
+  }
+
+  /**
+   * Predicates start out ordered by their estimated selectivities, and are
+   * reordered by the pass rates observed when those are wrong
+   */
+  @Test public void reorders() throws Exception {
+    // column 0 counts up; column 1 is always 0
+    int n = 20000;
+    int[] data = new int[2 * n];
+    for (int i = 0; i < n; i++)
+      data[2 * i] = i;
+    Predicate rare = pred(0, Predicate.Op.LESS_THAN, 100);
+    Predicate common = pred(1, Predicate.Op.EQUALS, 0);
+
+    // the estimates are right, so the order does not change
+    ConjunctiveFilter op = new ConjunctiveFilter(Arrays.asList(common, rare), Arrays.asList(1.0, 0.005),
+        TestUtil.createTupleList(2, data));
+    op.open();
+    assertEquals(Arrays.asList(rare, common), op.getEvaluationOrder());
+    assertEquals(100, drain(op));
+    assertEquals(Arrays.asList(rare, common), op.getEvaluationOrder());
+    op.close();
+
+    // the estimates are the wrong way round
+    op = new ConjunctiveFilter(Arrays.asList(common, rare), Arrays.asList(0.005, 1.0),
+        TestUtil.createTupleList(2, data));
+    op.open();
+    assertEquals(Arrays.asList(common, rare), op.getEvaluationOrder());
+    assertEquals(100, drain(op));
+    assertEquals(Arrays.asList(rare, common), op.getEvaluationOrder());
+    op.close();
+  }
+
+  private static int drain(OpIterator op) throws Exception {
+    int count = 0;
+    while (op.hasNext()) {
+      op.next();
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ConjunctiveFilterTest.class);
+  }
+}
@@ -0,0 +1,145 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LongHistogram;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class FieldTypesTest extends SimpleDbTestBase {
+
+  private static final Type[] TYPES = { Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE,
+      Type.DATE_TYPE, Type.TIMESTAMP_TYPE, Type.BOOLEAN_TYPE, Type.STRING_TYPE };
+
+  private static final String[] ROWS = {
+      "1,5000000000,1.5,2021-03-14,2021-03-14 15:09:26.535,true,a",
+      "2,-7,-0.25,1969-12-31,1970-01-01 00:00,false,b",
+      "3,3000000000,2.0E10,2000-02-29,2038-01-19 03:14:08,1,c",
+  };
+
+  private HeapFile table() throws Exception {
+    File txt = File.createTempFile("types", ".txt");
+    txt.deleteOnExit();
+    try (FileWriter w = new FileWriter(txt)) {
+      for (String row : ROWS)
+        w.write(row + "\n");
+    }
+    File dat = File.createTempFile("types", ".dat");
+    dat.deleteOnExit();
+    HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), TYPES.length, TYPES);
+    return Utility.openHeapFile(TYPES.length, "c", dat, new TupleDesc(TYPES));
+  }
+
+  private static List<Tuple> drain(OpIterator it) throws Exception {
+    List<Tuple> ts = new ArrayList<>();
+    it.open();
+    while (it.hasNext())
+      ts.add(it.next());
+    it.close();
+    return ts;
+  }
+
+  /**
+   * Values of every type are parsed from text, stored on heap pages, and
+   * read back and printed as they were written
+   */
+  @Test public void roundTrip() throws Exception {
+    HeapFile hf = table();
+    List<Tuple> ts = drain(new SeqScan(new TransactionId(), hf.getId()));
+    assertEquals(ROWS.length, ts.size());
+    for (int r = 0; r < ROWS.length; r++) {
+      String[] cols = ROWS[r].split(",");
+      Tuple t = ts.get(r);
+      for (int j = 0; j < TYPES.length; j++) {
+        assertEquals(TYPES[j], t.getField(j).getType());
+        assertEquals(TYPES[j].parse(cols[j]), t.getField(j));
+      }
+    }
+    Tuple t = ts.get(0);
+    assertEquals(5000000000L, t.getLong(1));
+    assertEquals(1.5, t.getDouble(2), 0);
+    assertEquals("2021-03-14", t.getField(3).toString());
+    assertEquals("2021-03-14 15:09:26.535", t.getField(4).toString());
+    assertEquals(1, t.getLong(5));
+  }
+
+  /**
+   * Compiled predicates on the new types agree with Field.compare
+   */
+  @Test public void predicates() throws Exception {
+    HeapFile hf = table();
+    TupleDesc td = hf.getTupleDesc();
+    List<Tuple> ts = drain(new SeqScan(new TransactionId(), hf.getId()));
+    for (int j = 1; j < TYPES.length - 1; j++) {
+      for (Tuple operand : ts) {
+        for (Predicate.Op op : Predicate.Op.values()) {
+          Predicate p = new Predicate(j, op, operand.getField(j));
+          PredicateCompiler.TupleCondition c = PredicateCompiler.compile(td, p);
+          PredicateCompiler.PairCondition jc = PredicateCompiler.compile(td, td, new JoinPredicate(j, op, j));
+          for (Tuple t : ts) {
+            assertEquals(p + " on " + t, t.getField(j).compare(op, operand.getField(j)), c.test(t));
+            assertEquals(t.getField(j).compare(op, operand.getField(j)), jc.test(t, operand));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Longs sum past the int range, and MIN and MAX keep the column type
+   */
+  @Test public void aggregates() throws Exception {
+    HeapFile hf = table();
+    Aggregate sum = new Aggregate(new SeqScan(new TransactionId(), hf.getId()), 1, -1, Aggregator.Op.SUM);
+    assertEquals(Type.LONG_TYPE, sum.getTupleDesc().getFieldType(0));
+    assertEquals(new LongField(7999999993L), drain(sum).get(0).getField(0));
+
+    Aggregate avg = new Aggregate(new SeqScan(new TransactionId(), hf.getId()), 2, -1, Aggregator.Op.AVG);
+    assertEquals(new DoubleField((1.5 - 0.25 + 2.0E10) / 3), drain(avg).get(0).getField(0));
+
+    Aggregate min = new Aggregate(new SeqScan(new TransactionId(), hf.getId()), 4, 5, Aggregator.Op.MIN);
+    assertEquals(Type.TIMESTAMP_TYPE, min.getTupleDesc().getFieldType(1));
+    for (Tuple t : drain(min)) {
+      String expected = ((BooleanField) t.getField(0)).getValue() ? "2021-03-14 15:09:26.535" : "1970-01-01 00:00";
+      assertEquals(Type.TIMESTAMP_TYPE.parse(expected), t.getField(1));
+    }
+
+    Aggregate trues = new Aggregate(new SeqScan(new TransactionId(), hf.getId()), 5, -1, Aggregator.Op.SUM);
+    assertEquals(new LongField(2), drain(trues).get(0).getField(0));
+  }
+
+  /**
+   * LongHistogram estimates over a range wider than an int
+   */
+  @Test public void longHistogram() {
+    long base = 1L << 40;
+    LongHistogram h = new LongHistogram(10, base, base + 999);
+    for (int i = 0; i < 1000; i++)
+      h.addValue(base + i);
+    assertEquals(0.001, h.estimateSelectivity(Predicate.Op.EQUALS, base + 500), 1e-6);
+    assertEquals(0.5, h.estimateSelectivity(Predicate.Op.LESS_THAN, base + 500), 0.01);
+    assertEquals(0.75, h.estimateSelectivity(Predicate.Op.GREATER_THAN_OR_EQ, base + 250), 0.01);
+    assertEquals(1.0, h.estimateSelectivity(Predicate.Op.GREATER_THAN, base - 1), 0);
+    assertEquals(0.0, h.estimateSelectivity(Predicate.Op.EQUALS, base + 1000), 0);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(FieldTypesTest.class);
+  }
+}
@@ -7,12 +7,14 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import junit.framework.JUnit4TestAdapter;
 import simpledb.common.Database;
+import simpledb.common.Permissions;
 import simpledb.common.Utility;
 import simpledb.storage.*;
 import simpledb.systemtest.SystemTestUtil;
 import simpledb.transaction.TransactionId;
 
-import java.util.Arrays;
+import java.io.RandomAccessFile;
+import java.util.*;
 
 public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
     private TransactionId tid;
@@ -50,6 +52,108 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Inserting into a file whose pages are full reads only the page the
+     * tuple goes to, even after the file is reopened.
+     */
+    @Test public void insertSkipsFullPages() throws Exception {
+        empty.getFreeSpaceMapFile().deleteOnExit();
+        for (int i = 0; i < 504 * 4; ++i) {
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(4, empty.numPages());
+        Database.getBufferPool().flushAllPages();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        List<Page> pages = empty.insertTuple(tid, Utility.getHeapTuple(0, 2));
+        assertEquals(4, pages.get(0).getId().getPageNumber());
+        assertEquals(1, Database.getBufferPool().getMapSize());
+
+        // free a slot on page 1, then reopen the file
+        HeapPageId pid = new HeapPageId(empty.getId(), 1);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+        Database.getBufferPool().flushAllPages();
+
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        pages = reopened.insertTuple(tid, Utility.getHeapTuple(0, 2));
+        assertEquals(pid, pages.get(0).getId());
+        assertEquals(1, Database.getBufferPool().getMapSize());
+    }
+
+    /**
+     * The free-space map of a file changed without going through its
+     * HeapFile is dropped, rather than trusted, when the file is reopened.
+     */
+    @Test public void freeSpaceMapOfChangedFile() throws Exception {
+        empty.getFreeSpaceMapFile().deleteOnExit();
+        for (int i = 0; i < 504 * 4; ++i) {
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        // empty page 0 and append an empty page behind the HeapFile's back
+        try (RandomAccessFile raf = new RandomAccessFile(empty.getFile(), "rw")) {
+            raf.write(HeapPage.createEmptyPageData());
+            raf.seek(raf.length());
+            raf.write(HeapPage.createEmptyPageData());
+        }
+
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+        List<Page> pages = reopened.insertTuple(tid, Utility.getHeapTuple(0, 2));
+        assertEquals(0, pages.get(0).getId().getPageNumber());
+    }
+
+    /**
+     * A batch insert fills pages in turn, even when the buffer pool is too
+     * small to hold them all, and extends the file in growing runs.
+     */
+    @Test public void insertTuplesBatch() throws Exception {
+        empty.getFreeSpaceMapFile().deleteOnExit();
+        Database.resetBufferPool(2);
+        List<Tuple> batch = new ArrayList<>();
+        for (int i = 0; i < 504 * 3 + 1; ++i) {
+            batch.add(Utility.getHeapTuple(i, 2));
+        }
+        Database.getBufferPool().insertTuples(tid, empty.getId(), batch);
+        // one page to start with, then runs of one and two pages
+        assertEquals(4, empty.numPages());
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Set<Integer> seen = new HashSet<>();
+        DbFileIterator it = empty.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            assertTrue(seen.add(((IntField) it.next().getField(0)).getValue()));
+        }
+        it.close();
+        assertEquals(batch.size(), seen.size());
+    }
+
+    /**
+     * Single inserts count pages one at a time, but grow the file in
+     * extents that double in length.
+     */
+    @Test public void insertTupleExtents() throws Exception {
+        empty.getFreeSpaceMapFile().deleteOnExit();
+        for (int i = 0; i < 504 * 4 + 1; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(5, empty.numPages());
+        // one page to start with, then extents of one, two and four pages
+        assertEquals(8L * BufferPool.getPageSize(), empty.getFile().length());
+
+        // the preallocated pages are empty pages once the file is reopened
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        assertEquals(8, reopened.numPages());
+    }
+
     @Test
     public void testAlternateEmptyAndFullPagesThenIterate() throws Exception {
         // Create HeapFile/Table
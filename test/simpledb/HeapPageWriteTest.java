@@ -1,5 +1,6 @@
 package simpledb;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -131,6 +132,24 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage() and setBeforeImage(): the
+     * before image keeps the page as it was until setBeforeImage is called
+     */
+    @Test public void beforeImage() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPageReadTest.EXAMPLE_DATA);
+        byte[] original = page.getPageData();
+        assertTrue(Arrays.equals(original, page.getBeforeImage().getPageData()));
+
+        page.insertTuple(Utility.getHeapTuple(1, 2));
+        page.insertTuple(Utility.getHeapTuple(2, 2));
+        assertTrue(Arrays.equals(original, page.getBeforeImage().getPageData()));
+        assertFalse(Arrays.equals(original, page.getPageData()));
+
+        page.setBeforeImage();
+        assertTrue(Arrays.equals(page.getPageData(), page.getBeforeImage().getPageData()));
+    }
+
     /**
      * JUnit suite target
      */
@@ -1,6 +1,7 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import java.util.NoSuchElementException;
 
@@ -9,7 +10,9 @@ import junit.framework.JUnit4TestAdapter;
 import org.junit.Before;
 import org.junit.Test;
 
+import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.execution.Aggregate;
 import simpledb.execution.Aggregator;
 import simpledb.execution.IntegerAggregator;
 import simpledb.execution.OpIterator;
@@ -82,6 +85,36 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  /**
+   * A sum that does not fit in an int is an error, not a wrapped value,
+   * and so is the aggregate over it
+   */
+  @Test public void sumOverflow() throws Exception {
+    OpIterator big = TestUtil.createTupleList(width1,
+        new int[] { 1, Integer.MAX_VALUE,
+                    1, 1 });
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM);
+    big.open();
+    while (big.hasNext()) {
+      agg.mergeTupleIntoGroup(big.next());
+    }
+    try {
+      agg.iterator();
+      fail("expected the sum to overflow");
+    } catch (ArithmeticException e) {
+      // expected
+    }
+
+    big.close();
+    Aggregate op = new Aggregate(big, 1, 0, Aggregator.Op.SUM);
+    try {
+      op.open();
+      fail("expected the sum to overflow");
+    } catch (DbException e) {
+      // expected
+    }
+  }
+
   /**
    * Test IntegerAggregator.mergeTupleIntoGroup() and iterator() over a min
    */
@@ -0,0 +1,179 @@
+package simpledb;
+
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.execution.*;
+import simpledb.optimizer.CardinalityFeedback;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class JoinEnumerationTest extends SimpleDbTestBase {
+
+  private static final int TABLES = 30;
+
+  private TransactionId tid;
+  private Map<String, TableStats> stats;
+
+  /**
+   * Create tables t0 to t29 with columns c0 and c1, and two more, big and
+   * small
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    CardinalityFeedback.clear();
+    tid = new TransactionId();
+    stats = new HashMap<>();
+    for (int i = 0; i < TABLES; i++) {
+      add("t" + i, SystemTestUtil.createRandomHeapFile(2, 40, 20, null, null, "c"));
+    }
+    add("big", SystemTestUtil.createRandomHeapFile(2, 3000, 100, null, null, "c"));
+    add("small", SystemTestUtil.createRandomHeapFile(2, 20, 100, null, null, "c"));
+  }
+
+  @After public void tearDown() {
+    JoinOptimizer.setDpJoinLimit(12);
+  }
+
+  private void add(String name, HeapFile f) {
+    Database.getCatalog().addTable(f, name);
+    stats.put(name, new TableStats(f.getId(), 1));
+  }
+
+  /**
+   * @return a query joining t0 to t(n-1) in a chain, each joined to the
+   *         next, and also to t0 if star
+   */
+  private static String chain(int n, boolean star) {
+    StringBuilder from = new StringBuilder("t0");
+    StringBuilder where = new StringBuilder();
+    for (int i = 1; i < n; i++) {
+      from.append(", t").append(i);
+      where.append(i == 1 ? " WHERE " : " AND ");
+      if (star) {
+        where.append("t0.c0 = t").append(i).append(".c1");
+      } else {
+        where.append("t").append(i - 1).append(".c1 = t").append(i).append(".c0");
+      }
+    }
+    return "SELECT t0.c0, t" + (n - 1) + ".c1 FROM " + from + where + ";";
+  }
+
+  /**
+   * @return the joins of query, ordered
+   */
+  private List<LogicalJoinNode> order(String query, int joins) throws Exception {
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+    Map<String, Double> selectivities = new HashMap<>();
+    for (String alias : lp.getTableAliasToIdMapping().keySet()) {
+      selectivities.put(alias, 1.0);
+    }
+    // the same joins the parser made, which it keeps to itself
+    List<LogicalJoinNode> nodes = new ArrayList<>();
+    for (String s : query.substring(query.indexOf("WHERE") + 6, query.length() - 1).split(" AND ")) {
+      String[] sides = s.split(" = ");
+      nodes.add(new LogicalJoinNode(sides[0].split("[.]")[0], sides[1].split("[.]")[0],
+          sides[0], sides[1], Predicate.Op.EQUALS));
+    }
+    assertEquals(joins, nodes.size());
+    return new JoinOptimizer(lp, nodes).orderJoins(stats, selectivities, false);
+  }
+
+  /**
+   * Check that order holds every join once, and that each joins two tables
+   * not yet joined
+   */
+  private static void assertPlan(List<LogicalJoinNode> order, int joins) {
+    assertEquals(joins, order.size());
+    Map<String, Set<String>> joined = new HashMap<>();
+    for (LogicalJoinNode j : order) {
+      Set<String> a = joined.computeIfAbsent(j.t1Alias, k -> new HashSet<>(Collections.singleton(k)));
+      Set<String> b = joined.computeIfAbsent(j.t2Alias, k -> new HashSet<>(Collections.singleton(k)));
+      assertNotSame("cross or repeated join " + j, a, b);
+      a.addAll(b);
+      for (String t : a) {
+        joined.put(t, a);
+      }
+    }
+  }
+
+  /**
+   * @return the sorted tuples of query
+   */
+  private List<String> run(String query) throws Exception {
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+    Query q = new Query(lp.physicalPlan(tid, stats, false), tid);
+    q.start();
+    List<String> tuples = new ArrayList<>();
+    while (q.hasNext()) {
+      tuples.add(q.next().toString());
+    }
+    q.close();
+    Collections.sort(tuples);
+    return tuples;
+  }
+
+  /**
+   * Dynamic programming and the greedy fallback plan every join of chains
+   * and stars, and their plans give the same results
+   */
+  @Test public void dpAndGreedy() throws Exception {
+    for (boolean star : new boolean[] { false, true }) {
+      String q = chain(8, star);
+      assertPlan(order(q, 7), 7);
+      List<String> dp = run(q);
+      JoinOptimizer.setDpJoinLimit(0);
+      assertPlan(order(q, 7), 7);
+      assertEquals(dp, run(q));
+      JoinOptimizer.setDpJoinLimit(12);
+    }
+  }
+
+  /**
+   * Large join graphs are planned quickly: a chain of 30 tables by dynamic
+   * programming, and a star of 30 by the greedy fallback
+   */
+  @Test(timeout = 20000) public void manyJoins() throws Exception {
+    JoinOptimizer.setDpJoinLimit(TABLES);
+    assertPlan(order(chain(TABLES, false), TABLES - 1), TABLES - 1);
+    JoinOptimizer.setDpJoinLimit(12);
+    assertPlan(order(chain(TABLES, true), TABLES - 1), TABLES - 1);
+    // 13 tables in a star, 2^12 connected subsets, by dynamic programming
+    assertPlan(order(chain(13, true), 12), 12);
+  }
+
+  /**
+   * Once the sizes of the tables have been seen, the smaller one is hashed
+   */
+  @Test public void hashesSmallerSide() throws Exception {
+    String q = "SELECT * FROM big, small WHERE big.c0 = small.c0;";
+    run(q);
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, q);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    while (!(plan instanceof HashEquiJoin)) {
+      plan = ((Operator) plan).getChildren()[0];
+    }
+    assertEquals("small", ((SeqScan) ((HashEquiJoin) plan).getChildren()[0]).getAlias());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(JoinEnumerationTest.class);
+  }
+}
@@ -0,0 +1,109 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PageFrameArenaTest extends SimpleDbTestBase {
+
+    private static final String FRAME_PAGES = "simpledb.storage.BufferPool.framePages";
+
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Create a 10 page table.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 10, null, null);
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() {
+        Database.getBufferPool().transactionComplete(tid);
+        System.clearProperty(FRAME_PAGES);
+    }
+
+    private BufferPool pool(int pages, int frames) {
+        System.setProperty(FRAME_PAGES, Integer.toString(frames));
+        return Database.resetBufferPool(pages);
+    }
+
+    private HeapPage page(BufferPool bp, int pgNo) throws Exception {
+        return (HeapPage) bp.getPage(tid, new HeapPageId(hf.getId(), pgNo), Permissions.READ_ONLY);
+    }
+
+    /** Overwrite a page on disk behind the buffer pool's back. */
+    private void clearOnDisk(int pgNo) throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), pgNo);
+        hf.writePage(new HeapPage(pid, HeapPage.createEmptyPageData()));
+    }
+
+    /**
+     * Evicted pages are kept in the arena, and a miss on one of them is
+     * served from the arena rather than from disk.
+     */
+    @Test public void missServedFromArena() throws Exception {
+        BufferPool bp = pool(2, 8);
+        for (int i = 0; i < 6; i++) {
+            page(bp, i);
+        }
+        assertEquals(2, bp.getMapSize());
+        assertEquals(4, bp.getFrameCount());
+
+        clearOnDisk(0);
+        assertEquals(0, page(bp, 0).getNumEmptySlots());
+        // page 0 left the arena, and another page took its place
+        assertEquals(4, bp.getFrameCount());
+    }
+
+    /**
+     * A discarded page is dropped from the arena too, so the next miss on
+     * it reads the page from disk.
+     */
+    @Test public void discardDropsImage() throws Exception {
+        BufferPool bp = pool(2, 8);
+        for (int i = 0; i < 6; i++) {
+            page(bp, i);
+        }
+        bp.discardPage(new HeapPageId(hf.getId(), 1));
+        assertEquals(3, bp.getFrameCount());
+
+        clearOnDisk(1);
+        assertEquals(504, page(bp, 1).getNumEmptySlots());
+    }
+
+    /**
+     * A full arena replaces old images with new ones.
+     */
+    @Test public void arenaIsBounded() throws Exception {
+        BufferPool bp = pool(2, 3);
+        for (int i = 0; i < 10; i++) {
+            page(bp, i);
+        }
+        assertEquals(2, bp.getMapSize());
+        assertEquals(3, bp.getFrameCount());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, page(bp, i).getNumEmptySlots());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageFrameArenaTest.class);
+    }
+}
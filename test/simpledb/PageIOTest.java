@@ -0,0 +1,87 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.*;
+
+public class PageIOTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 3, null, null);
+        PageIO.setDirect(true);
+    }
+
+    @After public void tearDown() {
+        PageIO.setDirect(false);
+        BufferPool.resetPageSize();
+    }
+
+    /**
+     * Pages written and read in direct mode round trip, whether or not
+     * direct I/O is available here.
+     */
+    @Test public void directRoundTrip() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 1);
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        page.deleteTuple(page.iterator().next());
+        hf.writePage(page);
+        assertArrayEquals(page.getPageData(), hf.readPage(pid).getPageData());
+
+        hf.writePages(java.util.Arrays.asList(hf.readPage(new HeapPageId(hf.getId(), 0)), page));
+        assertArrayEquals(page.getPageData(), hf.readPage(new HeapPageId(hf.getId(), 1)).getPageData());
+    }
+
+    /**
+     * Pages that are not a multiple of the alignment go through the page
+     * cache instead.
+     */
+    @Test public void unalignedFallsBack() throws Exception {
+        BufferPool.setPageSize(1000);
+        HeapFile small = Utility.createEmptyHeapFile(
+                java.io.File.createTempFile("pageio", ".dat").getAbsolutePath(), 2);
+        small.getFile().deleteOnExit();
+        HeapPage page = new HeapPage(new HeapPageId(small.getId(), 2), HeapPage.createEmptyPageData());
+        page.insertTuple(Utility.getHeapTuple(7, 2));
+        small.writePage(page);
+        assertEquals(3, small.numPages());
+        assertArrayEquals(page.getPageData(), small.readPage(page.getId()).getPageData());
+    }
+
+    /**
+     * A thread with an interrupt pending can still read and write pages,
+     * keeps its interrupt, and does not close the file for other threads.
+     */
+    @Test public void interruptedIO() throws Exception {
+        PageIO.setDirect(false);
+        HeapPageId pid = new HeapPageId(hf.getId(), 1);
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        page.deleteTuple(page.iterator().next());
+        Thread.currentThread().interrupt();
+        try {
+            hf.writePage(page);
+            assertArrayEquals(page.getPageData(), hf.readPage(pid).getPageData());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertArrayEquals(page.getPageData(), hf.readPage(pid).getPageData());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageIOTest.class);
+    }
+}
@@ -0,0 +1,127 @@
+package simpledb;
+
+import java.io.File;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.ColumnScan;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class PaxHeapFileTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 1000;
+
+    private PaxHeapFile pax;
+    private TransactionId tid;
+
+    /**
+     * Create a PAX table of (int, string, int) rows.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        File f = File.createTempFile("pax", ".dat");
+        f.deleteOnExit();
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE},
+                new String[]{"a", "b", "c"});
+        pax = new PaxHeapFile(f, td);
+        Database.getCatalog().addTable(pax, "pax");
+        tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            t.setField(1, new StringField("row" + i, Type.STRING_LEN));
+            t.setField(2, new IntField(i * 10));
+            Database.getBufferPool().insertTuple(tid, pax.getId(), t);
+        }
+    }
+
+    @After public void tearDown() {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * PAX pages hold whole tuples and survive a round trip through
+     * getPageData().
+     */
+    @Test public void fullTuples() throws Exception {
+        assertTrue(pax.numPages() > 1);
+        PaxHeapPage page = (PaxHeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(pax.getId(), 0), simpledb.common.Permissions.READ_ONLY);
+        PaxHeapPage copy = new PaxHeapPage(page.getId(), page.getPageData());
+        Iterator<Tuple> it1 = page.iterator();
+        Iterator<Tuple> it2 = copy.iterator();
+        while (it1.hasNext()) {
+            assertTrue(TestUtil.compareTuples(it1.next(), it2.next()));
+        }
+        assertFalse(it2.hasNext());
+
+        DbFileIterator it = pax.iterator(tid);
+        it.open();
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(3, t.getTupleDesc().numFields());
+            count++;
+        }
+        it.close();
+        assertEquals(ROWS, count);
+    }
+
+    /**
+     * ColumnScan returns just the projected columns of the tuples that
+     * pass its filter.
+     */
+    @Test public void projectAndFilter() throws Exception {
+        Predicate filter = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100));
+        ColumnScan scan = new ColumnScan(tid, pax.getId(), "p", new int[]{2, 1}, filter);
+        assertEquals("p.c", scan.getTupleDesc().getFieldName(0));
+        assertEquals(Type.STRING_TYPE, scan.getTupleDesc().getFieldType(1));
+
+        scan.open();
+        Set<Integer> seen = new HashSet<>();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertEquals(2, t.getTupleDesc().numFields());
+            int c = ((IntField) t.getField(0)).getValue();
+            assertEquals("row" + c / 10, ((StringField) t.getField(1)).getValue());
+            assertTrue(seen.add(c / 10));
+        }
+        scan.close();
+        assertEquals(100, seen.size());
+    }
+
+    /**
+     * Tuples returned by a column scan can be deleted through their record id.
+     */
+    @Test public void deleteProjected() throws Exception {
+        Predicate filter = new Predicate(0, Predicate.Op.EQUALS, new IntField(42));
+        ColumnScan scan = new ColumnScan(tid, pax.getId(), "p", new int[]{0}, filter);
+        scan.open();
+        assertTrue(scan.hasNext());
+        Database.getBufferPool().deleteTuple(tid, scan.next());
+        scan.close();
+
+        scan.open();
+        assertFalse(scan.hasNext());
+        scan.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxHeapFileTest.class);
+    }
+}
@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.JoinPredicate;
+import simpledb.execution.Predicate;
+import simpledb.execution.PredicateCompiler;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.systemtest.SimpleDbTestBase;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import junit.framework.JUnit4TestAdapter;
+
+public class PredicateCompilerTest extends SimpleDbTestBase {
+
+  private static final int[] VALUES = { Integer.MIN_VALUE, -2, -1, 0, 1, 2, Integer.MAX_VALUE };
+
+  private static boolean interpret(List<Predicate> ps, Tuple t) {
+    for (Predicate p : ps) {
+      if (!p.filter(t))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compiled conjunctions of int comparisons agree with Predicate.filter,
+   * including at the ends of the int range
+   */
+  @Test public void intConjunctions() {
+    TupleDesc td = Utility.getTupleDesc(2);
+    Random r = new Random(0);
+    for (int n = 0; n < 500; n++) {
+      List<Predicate> ps = new ArrayList<>();
+      int k = 1 + r.nextInt(3);
+      for (int i = 0; i < k; i++) {
+        Predicate.Op op = Predicate.Op.values()[r.nextInt(Predicate.Op.values().length)];
+        ps.add(new Predicate(r.nextInt(2), op, new IntField(VALUES[r.nextInt(VALUES.length)])));
+      }
+      PredicateCompiler.TupleCondition c = PredicateCompiler.compile(td, ps);
+      for (int a : VALUES) {
+        for (int b : VALUES) {
+          Tuple t = Utility.getHeapTuple(new int[] { a, b });
+          assertEquals(ps.toString(), interpret(ps, t), c.test(t));
+        }
+      }
+    }
+  }
+
+  /**
+   * An empty range is folded to false
+   */
+  @Test public void emptyRange() {
+    List<Predicate> ps = new ArrayList<>();
+    ps.add(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(5)));
+    ps.add(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(6)));
+    PredicateCompiler.TupleCondition c = PredicateCompiler.compile(Utility.getTupleDesc(1), ps);
+    for (int i = 0; i < 10; i++) {
+      assertFalse(c.test(Utility.getHeapTuple(i)));
+    }
+  }
+
+  /**
+   * Compiled string and join predicates agree with the interpreted ones
+   */
+  @Test public void stringsAndJoins() {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+    String[] strings = { "", "a", "ab", "b", "ba" };
+    for (Predicate.Op op : Predicate.Op.values()) {
+      for (String s : strings) {
+        Predicate p = new Predicate(0, op, new StringField(s, Type.STRING_LEN));
+        PredicateCompiler.TupleCondition c = PredicateCompiler.compile(td, p);
+        JoinPredicate jp = new JoinPredicate(0, op, 0);
+        PredicateCompiler.PairCondition jc = PredicateCompiler.compile(td, td, jp);
+        Tuple st = new Tuple(td);
+        st.setString(0, s);
+        for (String u : strings) {
+          Tuple t = new Tuple(td);
+          t.setString(0, u);
+          assertEquals(p.filter(t), c.test(t));
+          assertEquals(jp.filter(t, st), jc.test(t, st));
+        }
+      }
+    }
+
+    TupleDesc itd = Utility.getTupleDesc(1);
+    for (Predicate.Op op : Predicate.Op.values()) {
+      JoinPredicate jp = new JoinPredicate(0, op, 0);
+      PredicateCompiler.PairCondition jc = PredicateCompiler.compile(itd, itd, jp);
+      for (int a : VALUES) {
+        for (int b : VALUES) {
+          Tuple t1 = Utility.getHeapTuple(a);
+          Tuple t2 = Utility.getHeapTuple(b);
+          assertEquals(jp.filter(t1, t2), jc.test(t1, t2));
+        }
+      }
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(PredicateCompilerTest.class);
+  }
+}
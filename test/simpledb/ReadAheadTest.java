@@ -0,0 +1,95 @@
+package simpledb;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Create a 20 page table.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, null);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static void waitForMapSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Database.getBufferPool().getMapSize() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Once a scan has moved on to its second page, the next pages are read
+     * in ahead of it.
+     */
+    @Test public void sequentialScanReadsAhead() throws Exception {
+        assumeTrue(BufferPool.getReadAheadPages() > 0);
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 504 + 1; i++) {
+            it.next();
+        }
+        int expected = 2 + BufferPool.getReadAheadPages();
+        waitForMapSize(expected);
+        assertEquals(expected, Database.getBufferPool().getMapSize());
+
+        int count = 504 + 1;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        it.close();
+        assertEquals(504 * 20, count);
+    }
+
+    /**
+     * A page read ahead never takes the place of a dirty page.
+     */
+    @Test public void prefetchKeepsDirtyPages() throws Exception {
+        Database.resetBufferPool(2);
+        for (int i = 0; i < 2; i++) {
+            HeapPageId pid = new HeapPageId(hf.getId(), i);
+            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            Database.getBufferPool().deleteTuple(tid, p.iterator().next());
+        }
+        Database.getBufferPool().prefetch(new HeapPageId(hf.getId(), 5));
+        Thread.sleep(100);
+        assertEquals(2, Database.getBufferPool().getMapSize());
+        for (int i = 0; i < 2; i++) {
+            HeapPage p = (HeapPage) Database.getBufferPool().getPage(tid,
+                    new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+            assertEquals(tid, p.isDirty());
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,144 @@
+package simpledb;
+
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import static org.junit.Assert.*;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private HeapPageId pid;
+    private TupleDesc td;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        this.td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static List<Tuple> contents(HeapPage page) {
+        List<Tuple> tuples = new ArrayList<>();
+        page.iterator().forEachRemaining(tuples::add);
+        return tuples;
+    }
+
+    /**
+     * An all-zero page is an empty slotted page.
+     */
+    @Test public void emptyPage() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        assertFalse(page.iterator().hasNext());
+        assertArrayEquals(HeapPage.createEmptyPageData(), page.getPageData());
+    }
+
+    /**
+     * Short strings take far less room than fixed STRING_TYPE slots, and
+     * the page survives a round trip through getPageData().
+     */
+    @Test public void insertAndReread() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        int n = 0;
+        while (page.hasRoomFor(tuple(n, "s" + n))) {
+            Tuple t = tuple(n, "s" + n);
+            page.insertTuple(t);
+            assertEquals(n, t.getRecordId().getTupleNumber());
+            n++;
+        }
+        int fixedCapacity = BufferPool.getPageSize() * 8 / (td.getSize() * 8 + 1);
+        assertTrue(n > 5 * fixedCapacity);
+
+        try {
+            page.insertTuple(tuple(n, "s" + n));
+            fail("inserted into a full page");
+        } catch (DbException e) {
+            // expected
+        }
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        List<Tuple> before = contents(page);
+        List<Tuple> after = contents(copy);
+        assertEquals(n, after.size());
+        for (int i = 0; i < n; i++) {
+            assertTrue(TestUtil.compareTuples(before.get(i), after.get(i)));
+            assertEquals(before.get(i).getRecordId(), after.get(i).getRecordId());
+        }
+    }
+
+    /**
+     * Space freed by deletes is reclaimed by compaction, without moving any
+     * surviving tuple to a different slot.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, HeapPage.createEmptyPageData());
+        List<Tuple> inserted = new ArrayList<>();
+        for (int i = 0; page.hasRoomFor(tuple(i, "abcdefgh")); i++) {
+            Tuple t = tuple(i, "abcdefgh");
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        int freeBefore = page.getNumEmptySlots();
+
+        // free every other record, then insert records too large for any
+        // single hole
+        Map<Integer, Tuple> survivors = new HashMap<>();
+        for (int i = 0; i < inserted.size(); i++) {
+            if (i % 2 == 0) {
+                page.deleteTuple(inserted.get(i));
+            } else {
+                survivors.put(inserted.get(i).getRecordId().getTupleNumber(), inserted.get(i));
+            }
+        }
+        assertTrue(page.getNumEmptySlots() > freeBefore);
+
+        String big = "abcdefghijklmnopqrstuvwxyz";
+        int added = 0;
+        while (page.hasRoomFor(tuple(-1, big))) {
+            page.insertTuple(tuple(-1, big));
+            added++;
+        }
+        assertTrue(added > 0);
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        int bigCount = 0;
+        for (Tuple t : contents(copy)) {
+            if (((IntField) t.getField(0)).getValue() == -1) {
+                bigCount++;
+                continue;
+            }
+            Tuple orig = survivors.remove(t.getRecordId().getTupleNumber());
+            assertNotNull(orig);
+            assertTrue(TestUtil.compareTuples(orig, t));
+        }
+        assertTrue(survivors.isEmpty());
+        assertEquals(added, bigCount);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
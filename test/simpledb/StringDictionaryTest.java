@@ -0,0 +1,217 @@
+package simpledb;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class StringDictionaryTest extends SimpleDbTestBase {
+
+  private static final Type[] TYPES = { Type.INT_TYPE, Type.STRING_TYPE, Type.STRING_TYPE };
+  private static final String[] STATUSES = { "open", "closed", "pending", "on hold" };
+
+  private HeapFile hf;
+
+  /**
+   * Create a table whose second column is dictionary encoded, and whose
+   * third column holds the same strings unencoded.
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    hf = createTable(2000, "", new StringDictionary[] { null, new StringDictionary(), null });
+  }
+
+  /**
+   * Create a table of the given number of rows, whose second and third
+   * columns hold the same strings, coded with the given dictionaries
+   */
+  private static HeapFile createTable(int rows, String prefix, StringDictionary[] dictionaries) throws Exception {
+    File txt = File.createTempFile("dict", ".txt");
+    txt.deleteOnExit();
+    try (FileWriter w = new FileWriter(txt)) {
+      for (int i = 0; i < rows; i++) {
+        String s = prefix + STATUSES[i % STATUSES.length];
+        w.write(i + "," + s + "," + s + "\n");
+      }
+    }
+    File dat = File.createTempFile("dict", ".dat");
+    dat.deleteOnExit();
+    HeapFileEncoder.convert(txt, dat, BufferPool.getPageSize(), TYPES.length, TYPES);
+    TupleDesc td = new TupleDesc(TYPES, new String[] { "id", "status", "plain" }, dictionaries);
+    return Utility.openHeapFile(TYPES.length, prefix, dat, td);
+  }
+
+  private List<Tuple> scan() throws Exception {
+    return scan(hf);
+  }
+
+  private static List<Tuple> scan(HeapFile hf) throws Exception {
+    List<Tuple> ts = new ArrayList<>();
+    OpIterator it = new SeqScan(new TransactionId(), hf.getId(), "t");
+    it.open();
+    while (it.hasNext())
+      ts.add(it.next());
+    it.close();
+    return ts;
+  }
+
+  /**
+   * Values of an encoded column carry codes, equal strings share one code,
+   * one String and one StringField, and unencoded columns carry no code
+   */
+  @Test public void codes() throws Exception {
+    StringDictionary dictionary = hf.getTupleDesc().getDictionary(1);
+    Map<String, Integer> seen = new HashMap<>();
+    for (Tuple t : scan()) {
+      int code = t.getCode(1);
+      assertNotEquals(StringDictionary.NO_CODE, code);
+      assertEquals(t.getString(2), t.getString(1));
+      Integer other = seen.putIfAbsent(t.getString(1), code);
+      if (other != null)
+        assertEquals((int) other, code);
+      assertSame(dictionary.decode(code), t.getString(1));
+      assertSame(dictionary.field(code), t.getField(1));
+      assertEquals(StringDictionary.NO_CODE, t.getCode(2));
+    }
+    assertEquals(STATUSES.length, seen.size());
+    assertEquals(STATUSES.length, dictionary.size());
+  }
+
+  /**
+   * Compiled predicates on an encoded column pass the same tuples as on
+   * the unencoded copy of it, also for tuples that have no codes
+   */
+  @Test public void predicates() throws Exception {
+    TupleDesc td = new SeqScan(new TransactionId(), hf.getId(), "t").getTupleDesc();
+    assertTrue(td.isDictionaryEncoded(1));
+    List<Tuple> ts = scan();
+    // a tuple made without a code
+    Tuple uncoded = new Tuple(new TupleDesc(TYPES));
+    uncoded.setString(1, "closed");
+    uncoded.setString(2, "closed");
+    ts.add(uncoded);
+
+    for (String c : new String[] { "closed", "pending", "missing" }) {
+      for (Predicate.Op op : Predicate.Op.values()) {
+        StringField operand = new StringField(c, Type.STRING_LEN);
+        PredicateCompiler.TupleCondition coded = PredicateCompiler.compile(td, new Predicate(1, op, operand));
+        PredicateCompiler.TupleCondition plain = PredicateCompiler.compile(td, new Predicate(2, op, operand));
+        for (Tuple t : ts)
+          assertEquals(op + " " + c + " on " + t, plain.test(t), coded.test(t));
+      }
+    }
+
+    PredicateCompiler.PairCondition join = PredicateCompiler.compile(td, td, new JoinPredicate(1, Predicate.Op.EQUALS, 1));
+    for (int i = 0; i < 8; i++)
+      for (Tuple t : ts)
+        assertEquals(ts.get(i).getString(1).equals(t.getString(1)), join.test(ts.get(i), t));
+  }
+
+  /**
+   * Compiling a predicate on a literal no stored value has does not add
+   * the literal to the dictionary, and the predicate still passes the
+   * right tuples
+   */
+  @Test public void literalsNotAdded() throws Exception {
+    TupleDesc td = new SeqScan(new TransactionId(), hf.getId(), "t").getTupleDesc();
+    StringDictionary dictionary = td.getDictionary(1);
+    List<Tuple> ts = scan();
+    int size = dictionary.size();
+    StringField operand = new StringField("never stored", Type.STRING_LEN);
+    PredicateCompiler.TupleCondition eq = PredicateCompiler.compile(td, new Predicate(1, Predicate.Op.EQUALS, operand));
+    PredicateCompiler.TupleCondition ne = PredicateCompiler.compile(td, new Predicate(1, Predicate.Op.NOT_EQUALS, operand));
+    assertEquals(size, dictionary.size());
+    assertEquals(StringDictionary.NO_CODE, dictionary.lookup("never stored"));
+    for (Tuple t : ts) {
+      assertFalse(eq.test(t));
+      assertTrue(ne.test(t));
+    }
+    // stored values are found with the codes their tuples carry
+    assertEquals(ts.get(0).getCode(1), dictionary.lookup(ts.get(0).getString(1)));
+  }
+
+  /**
+   * A column that fills its dictionary leaves the dictionaries of other
+   * tables alone, and the strings it could not code still filter and join
+   * right, also against the coded strings of another table
+   */
+  @Test public void fullDictionary() throws Exception {
+    StringDictionary full = new StringDictionary(2);
+    HeapFile other = createTable(400, "", new StringDictionary[] { null, full, null });
+    List<Tuple> ts = scan(other);
+    assertEquals(2, full.size());
+    int coded = 0;
+    for (Tuple t : ts) {
+      if (t.getCode(1) != StringDictionary.NO_CODE)
+        coded++;
+      assertEquals(t.getString(2), t.getString(1));
+      assertEquals(t.getString(2), t.getField(1).toString());
+    }
+    assertEquals(200, coded);
+
+    // the first table still codes all its strings, with its own dictionary
+    for (Tuple t : scan())
+      assertNotEquals(StringDictionary.NO_CODE, t.getCode(1));
+    assertEquals(STATUSES.length, hf.getTupleDesc().getDictionary(1).size());
+    assertNotSame(full, hf.getTupleDesc().getDictionary(1));
+
+    TupleDesc td = new SeqScan(new TransactionId(), other.getId(), "o").getTupleDesc();
+    assertSame(full, td.getDictionary(1));
+    for (String c : STATUSES) {
+      StringField operand = new StringField(c, Type.STRING_LEN);
+      for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.EQUALS, Predicate.Op.NOT_EQUALS }) {
+        PredicateCompiler.TupleCondition byCode = PredicateCompiler.compile(td, new Predicate(1, op, operand));
+        PredicateCompiler.TupleCondition plain = PredicateCompiler.compile(td, new Predicate(2, op, operand));
+        for (Tuple t : ts)
+          assertEquals(op + " " + c + " on " + t, plain.test(t), byCode.test(t));
+      }
+    }
+
+    // codes of different dictionaries are not compared
+    TupleDesc td1 = new SeqScan(new TransactionId(), hf.getId(), "t").getTupleDesc();
+    PredicateCompiler.PairCondition join = PredicateCompiler.compile(td1, td, new JoinPredicate(1, Predicate.Op.EQUALS, 1));
+    List<Tuple> ts1 = scan();
+    for (int i = 0; i < 8; i++)
+      for (Tuple t : ts)
+        assertEquals(ts1.get(i).getString(1).equals(t.getString(1)), join.test(ts1.get(i), t));
+  }
+
+  /**
+   * Grouping on an encoded column counts each value once per tuple
+   */
+  @Test public void groupBy() throws Exception {
+    Aggregate agg = new Aggregate(new SeqScan(new TransactionId(), hf.getId(), "t"), 0, 1, Aggregator.Op.COUNT);
+    agg.open();
+    int groups = 0;
+    while (agg.hasNext()) {
+      Tuple t = agg.next();
+      assertEquals(500, t.getInt(1));
+      groups++;
+    }
+    agg.close();
+    assertEquals(STATUSES.length, groups);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(StringDictionaryTest.class);
+  }
+}
@@ -1,10 +1,12 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
 
+import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
@@ -31,6 +33,53 @@ public class TupleTest extends SimpleDbTestBase {
         assertEquals(new IntField(37), tup.getField(1));
     }
 
+    /**
+     * Unit test for the typed accessors, and the Field view of the values
+     * they set
+     */
+    @Test public void typedFields() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        Tuple tup = new Tuple(td);
+        tup.setInt(0, 42);
+        tup.setString(1, "abc");
+        assertEquals(42, tup.getInt(0));
+        assertEquals("abc", tup.getString(1));
+        assertEquals(new IntField(42), tup.getField(0));
+        assertEquals(new StringField("abc", Type.STRING_LEN), tup.getField(1));
+
+        tup.setField(0, new IntField(-7));
+        tup.setInt(0, 8);
+        assertEquals(new IntField(8), tup.getField(0));
+
+        Tuple copy = new Tuple(td);
+        copy.copyField(0, tup, 0);
+        copy.copyField(1, tup, 1);
+        assertEquals(8, copy.getInt(0));
+        assertEquals("abc", copy.getString(1));
+    }
+
+    /**
+     * Unsetting a field, or copying an unset field over it, leaves no trace
+     * of its old value
+     */
+    @Test public void unsetFields() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+        Tuple tup = new Tuple(td);
+        tup.setInt(0, 42);
+        tup.setString(1, "abc");
+        tup.setField(0, null);
+        tup.setField(1, null);
+        assertEquals(0, tup.getInt(0));
+        assertNull(tup.getString(1));
+        assertNull(tup.getField(1));
+
+        Tuple copy = new Tuple(td);
+        copy.setString(1, "abc");
+        copy.copyField(1, new Tuple(td), 1);
+        assertNull(copy.getString(1));
+        assertNull(copy.getField(1));
+    }
+
     /**
      * Unit test for Tuple.getTupleDesc()
      */
@@ -0,0 +1,177 @@
+package simpledb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class ZoneMapTest extends TestUtil.CreateHeapFile {
+
+  private static final int PAGES = 8;
+  private static final int PER_PAGE = 504;
+
+  private TransactionId tid;
+
+  /**
+   * Fill the two-column table with ascending values, so each page holds a
+   * distinct range, and write it out
+   */
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    empty.getFreeSpaceMapFile().deleteOnExit();
+    empty.getZoneMapFile().deleteOnExit();
+    tid = new TransactionId();
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < PAGES * PER_PAGE; i++) {
+      tuples.add(Utility.getHeapTuple(new int[] { i, -i }));
+    }
+    Database.getBufferPool().insertTuples(tid, empty.getId(), tuples);
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    tid = new TransactionId();
+  }
+
+  @After public void tearDown() {
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * @return the number of tuples a page-skipping iterator reads
+   */
+  private int read(HeapFile hf, Predicate... ps) throws Exception {
+    DbFileIterator it = hf.iterator(tid, Arrays.asList(ps));
+    it.open();
+    int n = 0;
+    while (it.hasNext()) {
+      it.next();
+      n++;
+    }
+    it.close();
+    return n;
+  }
+
+  private static Predicate pred(int field, Predicate.Op op, int v) {
+    return new Predicate(field, op, new IntField(v));
+  }
+
+  /**
+   * A filtered scan reads only the pages whose ranges match, and returns
+   * the same tuples through a Filter as an unfiltered scan
+   */
+  @Test public void skipsPages() throws Exception {
+    int last = PAGES * PER_PAGE - 1;
+    assertEquals(PER_PAGE, read(empty, pred(0, Predicate.Op.GREATER_THAN, last - 10)));
+    assertEquals(PER_PAGE, read(empty, pred(1, Predicate.Op.EQUALS, -600)));
+    assertEquals(2 * PER_PAGE, read(empty, pred(0, Predicate.Op.LESS_THAN_OR_EQ, PER_PAGE),
+        pred(1, Predicate.Op.LESS_THAN_OR_EQ, 0)));
+    assertEquals(0, read(empty, pred(0, Predicate.Op.LESS_THAN, 0)));
+    assertEquals(PAGES * PER_PAGE, read(empty, pred(0, Predicate.Op.NOT_EQUALS, 5)));
+
+    Predicate p = pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 3 * PER_PAGE + 7);
+    SeqScan skipping = new SeqScan(tid, empty.getId(), "t");
+    skipping.setPagePredicates(Collections.singletonList(p));
+    OpIterator expected = new Filter(p, new SeqScan(tid, empty.getId(), "t"));
+    OpIterator actual = new Filter(p, skipping);
+    expected.open();
+    actual.open();
+    TestUtil.compareDbIterators(expected, actual);
+  }
+
+  /**
+   * Tuples inserted but not yet written are seen by filtered scans, also
+   * when they lie outside the ranges on disk, and so are rewritten pages
+   */
+  @Test public void insertsAndWrites() throws Exception {
+    Predicate big = pred(0, Predicate.Op.GREATER_THAN, 1000000);
+    assertEquals(0, read(empty, big));
+
+    // a slot freed on page 2 takes the next insert
+    HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+        new HeapPageId(empty.getId(), 2), simpledb.common.Permissions.READ_WRITE);
+    Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+    Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(new int[] { 2000000, 0 }));
+    assertEquals(PER_PAGE, read(empty, big));
+
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    tid = new TransactionId();
+    HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    assertEquals(PER_PAGE, read(reopened, big));
+  }
+
+  /**
+   * Ranges survive reopening the file, and are dropped when the file is
+   * rewritten without the map
+   */
+  @Test public void persisted() throws Exception {
+    Predicate first = pred(0, Predicate.Op.LESS_THAN, 10);
+    HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    assertEquals(PER_PAGE, read(reopened, first));
+
+    // rewrite the file as HeapFileEncoder does, past the map
+    File txt = File.createTempFile("zonemap", ".txt");
+    txt.deleteOnExit();
+    java.io.FileWriter w = new java.io.FileWriter(txt);
+    for (int i = 0; i < 2 * PER_PAGE; i++) {
+      w.write((2 * PER_PAGE - i) + "," + i + "\n");
+    }
+    w.close();
+    HeapFileEncoder.convert(txt, empty.getFile(), BufferPool.getPageSize(), 2);
+    HeapFile rewritten = Utility.openHeapFile(2, empty.getFile());
+    Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    // unknown pages are read, and their ranges taken from that read
+    assertEquals(2 * PER_PAGE, read(rewritten, first));
+    assertEquals(PER_PAGE, read(rewritten, first));
+  }
+
+  /**
+   * Doubles, negative ones included, are ranged in their own order
+   */
+  @Test public void doubles() throws Exception {
+    File f = File.createTempFile("zonemap", ".dat");
+    f.deleteOnExit();
+    new File(f.getPath() + ".fsm").deleteOnExit();
+    new File(f.getPath() + ".zm").deleteOnExit();
+    HeapFile hf = Utility.openHeapFile(1, "d", f, new TupleDesc(new Type[] { Type.DOUBLE_TYPE }));
+    int perPage = BufferPool.getPageSize() * 8 / (Type.DOUBLE_TYPE.getLen() * 8 + 1);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < 4 * perPage; i++) {
+      Tuple t = new Tuple(hf.getTupleDesc());
+      t.setDouble(0, (i - 2 * perPage) / 10.0);
+      tuples.add(t);
+    }
+    Database.getBufferPool().insertTuples(tid, hf.getId(), tuples);
+    Database.getBufferPool().transactionComplete(tid);
+    Database.getBufferPool().flushAllPages();
+    tid = new TransactionId();
+
+    assertEquals(perPage, read(hf, new Predicate(0, Predicate.Op.LESS_THAN, new DoubleField(-perPage / 10.0 - 1))));
+    assertEquals(2 * perPage, read(hf, new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new DoubleField(-0.0))));
+    assertEquals(perPage, read(hf, new Predicate(0, Predicate.Op.EQUALS, new DoubleField(-0.5))));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ZoneMapTest.class);
+  }
+}
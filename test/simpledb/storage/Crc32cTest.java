@@ -0,0 +1,89 @@
+package simpledb.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+
+public class Crc32cTest extends SimpleDbTestBase {
+
+  private static long crc(byte[] b) {
+    Crc32c c = new Crc32c();
+    c.update(b, 0, b.length);
+    return c.getValue();
+  }
+
+  /**
+   * The check value of the Castagnoli polynomial and the test vectors of
+   * RFC 3720, appendix B.4
+   */
+  @Test public void knownVectors() {
+    assertEquals(0L, crc(new byte[0]));
+    assertEquals(0xE3069283L, crc("123456789".getBytes(StandardCharsets.US_ASCII)));
+
+    byte[] b = new byte[32];
+    assertEquals(0x8A9136AAL, crc(b));
+    java.util.Arrays.fill(b, (byte) 0xff);
+    assertEquals(0x62A8AB43L, crc(b));
+    for (int i = 0; i < 32; i++) {
+      b[i] = (byte) i;
+    }
+    assertEquals(0x46DD794EL, crc(b));
+    for (int i = 0; i < 32; i++) {
+      b[i] = (byte) (31 - i);
+    }
+    assertEquals(0x113FDB5CL, crc(b));
+  }
+
+  /**
+   * Eight bytes at a time gives the same checksum as one at a time, from
+   * any offset and for any length
+   */
+  @Test public void slicedMatchesBytewise() {
+    byte[] b = new byte[100];
+    new Random(3).nextBytes(b);
+    for (int off = 0; off < 9; off++) {
+      for (int len = 0; off + len <= b.length; len += 7) {
+        Crc32c sliced = new Crc32c();
+        sliced.update(b, off, len);
+        Crc32c bytewise = new Crc32c();
+        for (int i = off; i < off + len; i++) {
+          bytewise.update(b[i]);
+        }
+        assertEquals(bytewise.getValue(), sliced.getValue());
+      }
+    }
+  }
+
+  /**
+   * Updates may be split anywhere, and reset starts over
+   */
+  @Test public void incrementalAndReset() {
+    byte[] b = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+    Crc32c c = new Crc32c();
+    c.update(b, 0, 5);
+    c.update(b, 5, b.length - 5);
+    assertEquals(crc(b), c.getValue());
+    c.reset();
+    c.update(b, 0, b.length);
+    assertEquals(crc(b), c.getValue());
+    // a different polynomial from the zip CRC-32
+    CRC32 zip = new CRC32();
+    zip.update(b, 0, b.length);
+    assertNotEquals(zip.getValue(), c.getValue());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(Crc32cTest.class);
+  }
+}
@@ -0,0 +1,176 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import static org.junit.Assert.*;
+
+public class LogBufferTest extends SimpleDbTestBase {
+
+  private File file;
+  private FileChannel channel;
+
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    file = File.createTempFile("logbuffer", ".log");
+    file.deleteOnExit();
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  @After public void tearDown() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * @return a record of len bytes, each set to seed plus its offset
+   */
+  private static byte[] record(int len, int seed) {
+    byte[] rec = new byte[len];
+    for (int i = 0; i < len; i++) {
+      rec[i] = (byte) (seed + i);
+    }
+    return rec;
+  }
+
+  /**
+   * @return the len bytes of the log file at lsn
+   */
+  private byte[] read(long lsn, int len) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(len);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, lsn + buf.position()) < 0) {
+        break;
+      }
+    }
+    return buf.array();
+  }
+
+  /**
+   * Records written through a ring many times smaller than the log, some of
+   * them split across its end, reach the file whole and in order
+   */
+  @Test public void wrapAround() throws Exception {
+    LogBuffer buf = new LogBuffer(channel, 0, 64);
+    Random r = new Random(1);
+    List<byte[]> records = new ArrayList<>();
+    long end = 0;
+    boolean split = false;
+    for (int i = 0; i < 500; i++) {
+      byte[] rec = record(1 + r.nextInt(40), i);
+      long lsn = buf.reserve(rec.length);
+      assertEquals(end, lsn);
+      split |= (lsn & 63) + rec.length > 64;
+      buf.write(lsn, rec);
+      records.add(rec);
+      end += rec.length;
+    }
+    assertTrue(split);
+    buf.force(end);
+    assertEquals(end, channel.size());
+
+    long lsn = 0;
+    for (byte[] rec : records) {
+      assertArrayEquals(rec, read(lsn, rec.length));
+      lsn += rec.length;
+    }
+  }
+
+  /**
+   * A record larger than the ring is refused rather than written in part
+   */
+  @Test(expected = IOException.class) public void tooLarge() throws Exception {
+    new LogBuffer(channel, 0, 64).reserve(65);
+  }
+
+  /**
+   * Appenders reserving, writing and forcing at once through a small ring
+   * each find their own records on disk once their forces return
+   */
+  @Test(timeout = 30000) public void concurrentAppends() throws Exception {
+    LogBuffer buf = new LogBuffer(channel, 0, 256);
+    Map<Long, byte[]> written = new ConcurrentHashMap<>();
+    List<Throwable> errors = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      final int id = t;
+      threads.add(new Thread(() -> {
+        Random r = new Random(id);
+        try {
+          for (int i = 0; i < 300; i++) {
+            byte[] rec = record(1 + r.nextInt(60), id * 1000 + i);
+            long lsn = buf.reserve(rec.length);
+            buf.write(lsn, rec);
+            written.put(lsn, rec);
+            if (i % 25 == 0) {
+              buf.force(lsn + rec.length);
+              assertArrayEquals(rec, read(lsn, rec.length));
+            }
+          }
+        } catch (Throwable e) {
+          synchronized (errors) {
+            errors.add(e);
+          }
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(errors.toString(), 0, errors.size());
+
+    buf.drain();
+    buf.force(buf.tail());
+    long lsn = 0;
+    while (lsn < buf.tail()) {
+      byte[] rec = written.get(lsn);
+      assertNotNull("no record at " + lsn, rec);
+      assertArrayEquals(rec, read(lsn, rec.length));
+      lsn += rec.length;
+    }
+    assertEquals(8 * 300, written.size());
+    assertEquals(buf.tail(), channel.size());
+  }
+
+  /**
+   * A flush waiting on a writer that fails is woken with the failure
+   * instead of waiting forever
+   */
+  @Test(timeout = 10000) public void writerFailureWakesFlush() throws Exception {
+    LogBuffer buf = new LogBuffer(channel, 0, 64);
+    channel.close();
+    byte[] rec = record(10, 0);
+    buf.write(buf.reserve(rec.length), rec);
+    try {
+      buf.flush(rec.length);
+      fail("flush should report the writer's failure");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LogBufferTest.class);
+  }
+}
@@ -0,0 +1,158 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.Transaction;
+
+import static org.junit.Assert.*;
+
+public class LogCheckpointTest extends SimpleDbTestBase {
+
+  private File file;
+  private HeapFile hf;
+
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    file = File.createTempFile("checkpoint", ".dat");
+    file.deleteOnExit();
+    hf = Utility.createEmptyHeapFile(file.getAbsolutePath(), 2);
+  }
+
+  private void insert(Transaction t, int v) throws Exception {
+    Database.getBufferPool().insertTuple(t.getId(), hf.getId(), Utility.getHeapTuple(v, 2));
+  }
+
+  /**
+   * @return the first column of every tuple of the table, as read by a new
+   *         transaction
+   */
+  private Set<Integer> values() throws Exception {
+    Transaction t = new Transaction();
+    t.start();
+    SeqScan scan = new SeqScan(t.getId(), hf.getId(), "");
+    scan.open();
+    Set<Integer> values = new HashSet<>();
+    while (scan.hasNext()) {
+      values.add(((IntField) scan.next().getField(0)).getValue());
+    }
+    scan.close();
+    t.commit();
+    return values;
+  }
+
+  private void crash() throws IOException {
+    Database.reset();
+    hf = Utility.openHeapFile(2, file);
+    Database.getLogFile().recover();
+  }
+
+  /**
+   * A transaction that begins and has a page stolen after a checkpoint has
+   * taken its snapshots, but before it has appended its record, is in
+   * neither of its tables; recovery still undoes it, since it replays from
+   * where the checkpoint began
+   */
+  @Test public void stealDuringCheckpoint() throws Exception {
+    Transaction t0 = new Transaction();
+    t0.start();
+    insert(t0, 1);
+    t0.commit();
+    Database.getBufferPool().flushAllPages();
+
+    LogFile log = Database.getLogFile();
+    Transaction t1 = new Transaction();
+    log.checkpointHook = () -> {
+      try {
+        t1.start();
+        insert(t1, 2);
+        // steal: the update is logged and forced, then the page written
+        Database.getBufferPool().flushAllPages();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    };
+    log.logCheckpoint();
+    log.checkpointHook = null;
+    HeapPage onDisk = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), 0));
+    assertEquals(onDisk.getNumEmptySlots() + 2, onDisk.numSlots);
+
+    crash();
+    Set<Integer> expected = new HashSet<>();
+    expected.add(1);
+    assertEquals(expected, values());
+  }
+
+  /**
+   * A truncation copies the records it keeps while a transaction commits
+   * alongside it; the log loses everything before the checkpoint, and
+   * recovery still redoes the transaction from the copied records
+   */
+  @Test public void truncateWhileAppending() throws Exception {
+    Transaction t0 = new Transaction();
+    t0.start();
+    insert(t0, 1);
+    t0.commit();
+    Database.getBufferPool().flushAllPages();
+
+    LogFile log = Database.getLogFile();
+    LogFile.setTruncateBytes(1);
+    log.truncateHook = () -> {
+      Thread appender = new Thread(() -> {
+        try {
+          Transaction t1 = new Transaction();
+          t1.start();
+          insert(t1, 2);
+          t1.commit();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      appender.start();
+      try {
+        // appends are not held up by the copy
+        appender.join(10000);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      assertFalse(appender.isAlive());
+    };
+    try {
+      log.logCheckpoint();
+    } finally {
+      log.truncateHook = null;
+      LogFile.setTruncateBytes(1 << 20);
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(log.logFile, "r")) {
+      // the checkpoint is now the first record
+      assertEquals(LogFile.LOG_HEADER_SIZE, raf.readLong());
+      raf.seek(LogFile.LOG_HEADER_SIZE);
+      assertEquals(LogFile.CHECKPOINT_RECORD, LogRecord.read(raf, LogFile.LOG_HEADER_SIZE).type);
+    }
+
+    crash();
+    Set<Integer> expected = new HashSet<>();
+    expected.add(1);
+    expected.add(2);
+    assertEquals(expected, values());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LogCheckpointTest.class);
+  }
+}
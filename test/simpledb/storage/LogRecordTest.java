@@ -0,0 +1,198 @@
+package simpledb.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class LogRecordTest extends SimpleDbTestBase {
+
+  private HeapFile hf;
+  private LogFile log;
+
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    File f = File.createTempFile("logrecord", ".dat");
+    f.deleteOnExit();
+    hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+    for (int p = 0; p < 3; p++) {
+      hf.writePage(image(p, -1));
+    }
+    log = Database.getLogFile();
+  }
+
+  private HeapPage image(int p, int v) throws Exception {
+    HeapPage page = new HeapPage(new HeapPageId(hf.getId(), p), HeapPage.createEmptyPageData());
+    page.insertTuple(Utility.getHeapTuple(new int[] { v, p }));
+    return page;
+  }
+
+  private int onDisk(int p) {
+    HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), p));
+    return ((IntField) page.iterator().next().getField(0)).getValue();
+  }
+
+  private static LogRecord read(byte[] rec, long start) throws Exception {
+    return LogRecord.read(new DataInputStream(new ByteArrayInputStream(rec)), start);
+  }
+
+  /**
+   * Every record type comes back as it was sealed, and only from the
+   * offset it was sealed at
+   */
+  @Test public void encodeDecode() throws Exception {
+    Random r = new Random(5);
+    int[] types = { LogFile.ABORT_RECORD, LogFile.COMMIT_RECORD, LogFile.UPDATE_RECORD,
+        LogFile.BEGIN_RECORD, LogFile.CHECKPOINT_RECORD };
+    for (int type : types) {
+      byte[] body = new byte[type == LogFile.UPDATE_RECORD || type == LogFile.CHECKPOINT_RECORD ? 300 : 0];
+      r.nextBytes(body);
+      long start = 1000 + r.nextInt(1 << 20);
+      byte[] rec = LogRecord.encode(type, 42 + type, body);
+      LogRecord.seal(rec, start);
+      assertEquals(LogRecord.size(body.length), rec.length);
+
+      LogRecord back = read(rec, start);
+      assertNotNull(back);
+      assertEquals(type, back.type);
+      assertEquals(42 + type, back.tid);
+      assertEquals(start, back.start);
+      assertArrayEquals(body, back.body);
+      assertEquals(rec.length, back.size());
+
+      assertNull(read(rec, start + 1));
+    }
+  }
+
+  /**
+   * The records LogFile writes decode to what was logged: transaction ids,
+   * update images and the checkpoint's tables
+   */
+  @Test public void logFileRecords() throws Exception {
+    TransactionId t0 = new TransactionId();
+    log.logXactionBegin(t0);
+    long t0Start = log.tidToFirstLogRecord.get(t0.getId());
+    log.logCheckpoint();
+    TransactionId t1 = new TransactionId();
+    log.logXactionBegin(t1);
+    HeapPage before = image(0, -1), after = image(0, 1);
+    log.logWrite(t1, before, after);
+    log.logCommit(t1);
+    TransactionId t2 = new TransactionId();
+    log.logXactionBegin(t2);
+    log.logWrite(t2, image(1, -1), image(1, 2));
+    log.logAbort(t2);
+
+    List<LogRecord> records = new ArrayList<>();
+    try (RandomAccessFile raf = new RandomAccessFile(log.logFile, "r")) {
+      long offset = LogFile.LOG_HEADER_SIZE;
+      raf.seek(offset);
+      LogRecord rec;
+      while ((rec = LogRecord.read(raf, offset)) != null) {
+        records.add(rec);
+        offset += rec.size();
+      }
+      assertEquals(raf.length(), offset);
+    }
+
+    int[] types = new int[records.size()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = records.get(i).type;
+    }
+    assertArrayEquals(new int[] { LogFile.BEGIN_RECORD, LogFile.CHECKPOINT_RECORD,
+        LogFile.BEGIN_RECORD, LogFile.UPDATE_RECORD, LogFile.COMMIT_RECORD,
+        LogFile.BEGIN_RECORD, LogFile.UPDATE_RECORD, LogFile.ABORT_RECORD }, types);
+    assertEquals(t0.getId(), records.get(0).tid);
+    assertEquals(t1.getId(), records.get(4).tid);
+    assertEquals(t2.getId(), records.get(7).tid);
+
+    DataInputStream cp = records.get(1).body();
+    long begin = cp.readLong();
+    assertTrue(begin > t0Start && begin <= records.get(1).start);
+    assertEquals(1, cp.readInt());
+    assertEquals(t0.getId(), cp.readLong());
+    assertEquals(t0Start, cp.readLong());
+    assertEquals(0, cp.readInt());
+
+    DataInputStream update = records.get(3).body();
+    Page b = log.readPageData(update);
+    Page a = log.readPageData(update);
+    assertEquals(before.getId(), b.getId());
+    assertArrayEquals(before.getPageData(), b.getPageData());
+    assertArrayEquals(after.getPageData(), a.getPageData());
+    assertEquals(0, update.available());
+  }
+
+  /**
+   * Records cut short, or with a length no record can have, end the log
+   */
+  @Test public void truncated() throws Exception {
+    byte[] rec = LogRecord.encode(LogFile.UPDATE_RECORD, 1, new byte[100]);
+    LogRecord.seal(rec, 0);
+    for (int len : new int[] { 0, 3, LogRecord.HEADER_SIZE, rec.length - 1 }) {
+      assertNull(read(Arrays.copyOf(rec, len), 0));
+    }
+    rec[12] = (byte) 0xff;
+    assertNull(read(rec, 0));
+  }
+
+  /**
+   * Recovery stops at a record whose checksum does not match: it replays
+   * the transaction committed before it, and ignores everything from it
+   * on, even a later commit
+   */
+  @Test public void badChecksumStopsRecovery() throws Exception {
+    TransactionId t1 = new TransactionId();
+    log.logXactionBegin(t1);
+    log.logWrite(t1, image(0, -1), image(0, 1));
+    log.logCommit(t1);
+    TransactionId t2 = new TransactionId();
+    log.logXactionBegin(t2);
+    long bad = log.currentOffset();
+    log.logWrite(t2, image(1, -1), image(1, 2));
+    log.logCommit(t2);
+    TransactionId t3 = new TransactionId();
+    log.logXactionBegin(t3);
+    log.logWrite(t3, image(2, -1), image(2, 3));
+    log.logCommit(t3);
+    log.force();
+
+    try (RandomAccessFile raf = new RandomAccessFile(log.logFile, "rw")) {
+      long pos = bad + LogRecord.HEADER_SIZE + 20;
+      raf.seek(pos);
+      int b = raf.read();
+      raf.seek(pos);
+      raf.write(b ^ 0x10);
+    }
+
+    LogRecovery recovery = new LogRecovery(log, 2);
+    recovery.recover(log.logFile, LogFile.LOG_HEADER_SIZE);
+    assertEquals(bad - LogFile.LOG_HEADER_SIZE, recovery.bytesReplayed);
+    assertEquals(1, onDisk(0));
+    assertEquals(-1, onDisk(1));
+    assertEquals(-1, onDisk(2));
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LogRecordTest.class);
+  }
+}
@@ -0,0 +1,256 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.transaction.TransactionId;
+
+import static org.junit.Assert.*;
+
+public class LogRecoveryTest extends SimpleDbTestBase {
+
+  private static final int PAGES = 32;
+
+  private HeapFile hf;
+  private LogFile log;
+
+  @Before public void setUp() throws Exception {
+    super.setUp();
+    File f = File.createTempFile("recovery", ".dat");
+    f.deleteOnExit();
+    hf = Utility.createEmptyHeapFile(f.getAbsolutePath(), 2);
+    for (int p = 0; p < PAGES; p++) {
+      hf.writePage(image(p, -1));
+    }
+    log = Database.getLogFile();
+  }
+
+  private HeapPageId pid(int p) {
+    return new HeapPageId(hf.getId(), p);
+  }
+
+  /**
+   * @return page p holding a single tuple whose first field is v
+   */
+  private HeapPage image(int p, int v) throws Exception {
+    HeapPage page = new HeapPage(pid(p), HeapPage.createEmptyPageData());
+    page.insertTuple(Utility.getHeapTuple(new int[] { v, p }));
+    return page;
+  }
+
+  /**
+   * @return the first field of the tuple on page p on disk
+   */
+  private int onDisk(int p) {
+    HeapPage page = (HeapPage) hf.readPage(pid(p));
+    return ((IntField) page.iterator().next().getField(0)).getValue();
+  }
+
+  private void update(TransactionId tid, int p, int before, int after) throws Exception {
+    log.logWrite(tid, image(p, before), image(p, after));
+  }
+
+  /**
+   * Write v to every page in pages, as if they had been stolen just
+   * before a crash, and replay the whole log with the specified number of
+   * workers
+   */
+  private void crashAndRecover(Map<Integer, Integer> pages, int workers) throws Exception {
+    for (Map.Entry<Integer, Integer> e : pages.entrySet()) {
+      hf.writePage(image(e.getKey(), e.getValue()));
+    }
+    log.force();
+    new LogRecovery(log, workers).recover(log.logFile, LogFile.LOG_HEADER_SIZE);
+  }
+
+  /**
+   * Interleaved transactions over pages spread across the workers, some
+   * committing out of the order they started in, some aborting and some
+   * left running at the crash, recover to the committed state whatever the
+   * number of workers, though the workers drain their queues at different
+   * rates
+   */
+  @Test public void outOfOrderPartitions() throws Exception {
+    Random r = new Random(7);
+    int[] committed = new int[PAGES];
+    int[] current = new int[PAGES];
+    Arrays.fill(committed, -1);
+    Arrays.fill(current, -1);
+    TransactionId[] owner = new TransactionId[PAGES];
+    List<TransactionId> active = new ArrayList<>();
+    Map<TransactionId, Set<Integer>> touched = new HashMap<>();
+    int next = 0;
+    for (int step = 0; step < 3000; step++) {
+      int action = r.nextInt(10);
+      if (active.size() < 4 && (active.isEmpty() || action == 0)) {
+        TransactionId tid = new TransactionId();
+        log.logXactionBegin(tid);
+        active.add(tid);
+        touched.put(tid, new HashSet<>());
+        continue;
+      }
+      TransactionId tid = active.get(r.nextInt(active.size()));
+      if (action < 8) {
+        int p = r.nextInt(PAGES);
+        if (owner[p] != null && !owner[p].equals(tid)) {
+          continue;
+        }
+        owner[p] = tid;
+        touched.get(tid).add(p);
+        update(tid, p, current[p], next);
+        current[p] = next++;
+      } else {
+        boolean commit = action == 8;
+        if (commit) {
+          log.logCommit(tid);
+        } else {
+          // rolls the pages back on disk too
+          log.logAbort(tid);
+        }
+        for (int p : touched.remove(tid)) {
+          if (commit) {
+            committed[p] = current[p];
+          } else {
+            current[p] = committed[p];
+          }
+          owner[p] = null;
+        }
+        active.remove(tid);
+      }
+    }
+    assertFalse(active.isEmpty());
+
+    for (int workers : new int[] { 1, 3, 8 }) {
+      Map<Integer, Integer> stolen = new HashMap<>();
+      for (int p = 0; p < PAGES; p++) {
+        stolen.put(p, current[p]);
+      }
+      crashAndRecover(stolen, workers);
+      for (int p = 0; p < PAGES; p++) {
+        assertEquals("page " + p + " with " + workers + " workers", committed[p], onDisk(p));
+      }
+    }
+  }
+
+  /**
+   * A loser with pages on every worker is undone on all of them, back to
+   * the images left by the winner before it
+   */
+  @Test public void losersSpanWorkers() throws Exception {
+    TransactionId winner = new TransactionId();
+    log.logXactionBegin(winner);
+    for (int p = 0; p < PAGES; p++) {
+      update(winner, p, -1, 1);
+    }
+    log.logCommit(winner);
+    TransactionId loser = new TransactionId();
+    log.logXactionBegin(loser);
+    Map<Integer, Integer> stolen = new HashMap<>();
+    for (int p = 0; p < PAGES; p++) {
+      update(loser, p, 1, 2);
+      update(loser, p, 2, 3);
+      stolen.put(p, 3);
+    }
+
+    crashAndRecover(stolen, 4);
+    for (int p = 0; p < PAGES; p++) {
+      assertEquals(1, onDisk(p));
+    }
+  }
+
+  /**
+   * A commit record torn by the crash does not count: its transaction is
+   * undone, and everything before it is replayed
+   */
+  @Test public void tornTail() throws Exception {
+    TransactionId t1 = new TransactionId();
+    log.logXactionBegin(t1);
+    update(t1, 0, -1, 1);
+    log.logCommit(t1);
+    TransactionId t2 = new TransactionId();
+    log.logXactionBegin(t2);
+    update(t2, 1, -1, 2);
+    long commit = log.currentOffset();
+    log.logCommit(t2);
+    log.force();
+    try (RandomAccessFile raf = new RandomAccessFile(log.logFile, "rw")) {
+      raf.setLength(commit + 5);
+    }
+
+    Map<Integer, Integer> stolen = new HashMap<>();
+    stolen.put(0, -1);
+    stolen.put(1, 2);
+    for (int p = 0; p < 2; p++) {
+      hf.writePage(image(p, stolen.get(p)));
+    }
+    LogRecovery recovery = new LogRecovery(log, 2);
+    recovery.recover(log.logFile, LogFile.LOG_HEADER_SIZE);
+    assertEquals(commit - LogFile.LOG_HEADER_SIZE, recovery.bytesReplayed);
+    assertEquals(1, onDisk(0));
+    assertEquals(-1, onDisk(1));
+  }
+
+  /**
+   * The pages an aborted transaction's rollback wrote may not have reached
+   * the disk though its abort record did; recovery writes them again
+   */
+  @Test public void lostRollback() throws Exception {
+    TransactionId t1 = new TransactionId();
+    log.logXactionBegin(t1);
+    update(t1, 0, -1, 1);
+    log.logCommit(t1);
+    TransactionId t2 = new TransactionId();
+    log.logXactionBegin(t2);
+    update(t2, 0, 1, 2);
+    update(t2, 1, -1, 2);
+    log.logAbort(t2);
+
+    Map<Integer, Integer> stolen = new HashMap<>();
+    stolen.put(0, 2);
+    stolen.put(1, 2);
+    crashAndRecover(stolen, 2);
+    assertEquals(1, onDisk(0));
+    assertEquals(-1, onDisk(1));
+  }
+
+  /**
+   * A page keeps no more than the runs of the transactions still in flight
+   * on it, however many have committed or aborted before
+   */
+  @Test public void historyIsBounded() {
+    LogRecovery.PageHistory h = new LogRecovery.PageHistory();
+    byte[] image = null;
+    for (int i = 0; i < 10000; i++) {
+      byte[] before = image;
+      image = new byte[] { (byte) i };
+      h.update(i, before, image);
+      h.update(i, before, image);
+      if (i % 3 == 0) {
+        h.abort(i);
+        image = before;
+      } else {
+        h.commit(i);
+      }
+      assertTrue(h.runs.isEmpty());
+    }
+    h.update(-1, image, new byte[0]);
+    assertEquals(1, h.runs.size());
+    assertSame(image, h.finalImage());
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(LogRecoveryTest.class);
+  }
+}